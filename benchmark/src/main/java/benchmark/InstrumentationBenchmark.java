@@ -0,0 +1,117 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pojo.Account;
+import util.Data;
+import util.metrics.LatencyHistogram;
+import util.store.AccountKeys;
+import util.strategy.AccountOperationStrategy;
+import util.strategy.StrategyFactory;
+import util.strategy.impl.InstrumentedStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link InstrumentedStrategy} on top of the strategy it wraps.
+ * <p>
+ * Each operation is measured with and without the decorator, so the difference is the cost of two
+ * System.nanoTime() calls and the histogram update. {@link #record} measures the histogram alone.
+ * Run with several threads (-t) to see the effect of contention on the shared counters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Datm.journal.enabled=false", "-Datm.snapshot.intervalSeconds=0"})
+@State(Scope.Benchmark)
+public class InstrumentationBenchmark {
+    private static final int ACCOUNTS = 10000; // Number of generated accounts
+    private static final int KEYS = 1 << 16; // Pre-drawn account numbers
+
+    @Param({"consistent", "lockfree"})
+    public String strategy;
+
+    @Param({"false", "true"})
+    public boolean instrumented;
+
+    private AccountOperationStrategy operations; // Strategy under test, wrapped or not
+    private final LatencyHistogram histogram = new LatencyHistogram(); // Target of the record benchmark
+    private String[] keys; // Account numbers in drawing order
+
+    /**
+     * Generates the accounts, installs them as the Data instance and creates the strategy.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Account> generated = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            generated.add(new Account(AccountKeys.formatAccountNum(i), "0000", "Benchmark" + i, 1000));
+        }
+        Data.setInstance(Data.inMemory(generated));
+        AccountOperationStrategy plain = StrategyFactory.create(strategy);
+        operations = instrumented ? new InstrumentedStrategy(plain) : plain;
+        SplittableRandom random = new SplittableRandom(42);
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = AccountKeys.formatAccountNum(random.nextInt(ACCOUNTS));
+        }
+    }
+
+    /**
+     * Position in the pre-drawn account numbers, one per thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next; // Position of the next account number
+
+        /**
+         * Retrieves the next account number.
+         *
+         * @param benchmark The benchmark state holding the account numbers
+         * @return The account number
+         */
+        String next(InstrumentationBenchmark benchmark) {
+            String accountNum = benchmark.keys[next];
+            next = (next + 1) & (KEYS - 1);
+            return accountNum;
+        }
+    }
+
+    /**
+     * Deposits one unit.
+     *
+     * @param cursor The position of this thread
+     */
+    @Benchmark
+    public void deposit(Cursor cursor) {
+        operations.deposit(cursor.next(this), 1);
+    }
+
+    /**
+     * Looks up an account, the cheapest operation, where the overhead weighs most.
+     *
+     * @param cursor The position of this thread
+     * @return The account, returned so the lookup is not optimized away
+     */
+    @Benchmark
+    public Account inquire(Cursor cursor) {
+        return operations.inquire(cursor.next(this));
+    }
+
+    /**
+     * Times nothing and records the result, the fixed cost the decorator adds to every call.
+     */
+    @Benchmark
+    public void record() {
+        long start = System.nanoTime();
+        histogram.record(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import pojo.Account;
+import ui.simulator.ZipfSampler;
+import util.Data;
+import util.store.AccountKeys;
+import util.strategy.AccountOperationStrategy;
+import util.strategy.StrategyFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of deposit, withdraw, transfer and inquire for each {@link AccountOperationStrategy}.
+ * <p>
+ * Every trial runs against a fresh in-memory set of accounts, so the data file and the transaction log
+ * are not involved. Account numbers are drawn uniformly or with a Zipf skew of 1 ("hot"), where a handful
+ * of accounts receive most operations. The thread count is chosen with JMH's -t option.
+ * <p>
+ * InconsistentStrategy sleeps for a second inside every update and is left out of the default parameters;
+ * select it with -p strategy=inconsistent.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Datm.journal.enabled=false", "-Datm.snapshot.intervalSeconds=0"})
+@State(Scope.Benchmark)
+public class StrategyBenchmark {
+    private static final int KEYS_PER_THREAD = 1 << 16; // Pre-drawn account numbers per thread
+
+    @Param({"consistent", "striped", "lockfree"})
+    public String strategy;
+
+    @Param({"1000", "100000", "1000000"})
+    public int accounts;
+
+    @Param({"uniform", "hot"})
+    public String distribution;
+
+    private AccountOperationStrategy operations; // Strategy under test
+    private String[] accountNums; // Account numbers of the generated accounts
+    private ZipfSampler sampler; // Account popularity
+    private final AtomicInteger threadSeeds = new AtomicInteger(); // Gives each thread its own seed
+
+    /**
+     * Generates the accounts and installs them as the Data instance.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Account> generated = new ArrayList<>(accounts);
+        accountNums = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountNums[i] = AccountKeys.formatAccountNum(i);
+            generated.add(new Account(accountNums[i], "0000", "Benchmark" + i, 1000));
+        }
+        Data.setInstance(Data.inMemory(generated));
+        operations = StrategyFactory.create(strategy);
+        sampler = new ZipfSampler(accounts, "hot".equals(distribution) ? 1.0 : 0.0);
+    }
+
+    /**
+     * Per-thread sequence of account numbers, drawn up front so sampling does not count against the strategy.
+     */
+    @State(Scope.Thread)
+    public static class Keys {
+        private String[] sequence; // Account numbers in drawing order
+        private int next; // Position of the next account number
+
+        /**
+         * Draws the account numbers of this thread.
+         *
+         * @param benchmark The benchmark state holding the accounts
+         */
+        @Setup(Level.Trial)
+        public void setUp(StrategyBenchmark benchmark) {
+            SplittableRandom random = new SplittableRandom(benchmark.threadSeeds.incrementAndGet());
+            sequence = new String[KEYS_PER_THREAD];
+            for (int i = 0; i < KEYS_PER_THREAD; i++) {
+                sequence[i] = benchmark.accountNums[benchmark.sampler.next(random)];
+            }
+        }
+
+        /**
+         * Retrieves the next account number.
+         *
+         * @return The account number
+         */
+        String next() {
+            String accountNum = sequence[next];
+            next = (next + 1) & (KEYS_PER_THREAD - 1);
+            return accountNum;
+        }
+    }
+
+    /**
+     * Deposits one unit.
+     *
+     * @param keys The account numbers of this thread
+     */
+    @Benchmark
+    public void deposit(Keys keys) {
+        operations.deposit(keys.next(), 1);
+    }
+
+    /**
+     * Withdraws one unit.
+     *
+     * @param keys The account numbers of this thread
+     */
+    @Benchmark
+    public void withdraw(Keys keys) {
+        operations.withdraw(keys.next(), 1);
+    }
+
+    /**
+     * Transfers one unit between two drawn accounts.
+     *
+     * @param keys The account numbers of this thread
+     */
+    @Benchmark
+    public void transfer(Keys keys) {
+        operations.transfer(keys.next(), keys.next(), 1);
+    }
+
+    /**
+     * Looks up an account.
+     *
+     * @param keys The account numbers of this thread
+     * @return The account, returned so the lookup is not optimized away
+     */
+    @Benchmark
+    public Account inquire(Keys keys) {
+        return operations.inquire(keys.next());
+    }
+}
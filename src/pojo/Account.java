@@ -5,14 +5,101 @@
  */
 package pojo;
 
+import util.Money;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Represents an Account object with attributes such as account number, PIN, username, and balance.
+ * The balance is held in minor units (pence) in a single long that can be updated with compare-and-set.
+ * <p>
+ * While a {@link PendingUpdate} changes several balances as one, the stored balance of each of its accounts
+ * holds a marker naming the update instead of a value. {@link #getBalanceMinor()} resolves the marker to the
+ * balance the update gives the account at that moment, {@link #getStoredBalanceMinor()} returns it as is.
+ * Markers are the lowest 2^40 longs above Long.MIN_VALUE, which no balance comes near.
  */
 public class Account {
+    private static final VarHandle BALANCE_MINOR; // Handle for atomic updates of balanceMinor
+    private static final long MARKER_BASE = Long.MIN_VALUE + 1; // Lowest marker, Long.MIN_VALUE is left to the stores
+    private static final long MARKER_MASK = (1L << 40) - 1; // Markers are MARKER_BASE plus an id of 40 bits
+    private static final AtomicLong NEXT_MARKER = new AtomicLong(); // Id of the next published update
+    private static final Map<Long, PendingUpdate> PENDING_UPDATES = new ConcurrentHashMap<>(); // Published updates by marker
+
     private String accountNum; // Account number associated with the account
     private String PIN; // PIN (Personal Identification Number) for security
     private String username; // Username of the account holder
-    private double balance; // Current balance of the account
+    private volatile long balanceMinor; // Current balance of the account in minor units
+
+    static {
+        try {
+            BALANCE_MINOR = MethodHandles.lookup().findVarHandle(Account.class, "balanceMinor", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * A change of several balances applied as one, see {@link #publish(PendingUpdate)}.
+     */
+    public interface PendingUpdate {
+        /**
+         * Retrieves the balance the update gives an account it covers: the balance before it until it
+         * succeeds, the balance after it from then on.
+         *
+         * @param account The account, matched by account number
+         * @return The balance in minor units
+         */
+        long balanceOf(Account account);
+    }
+
+    /**
+     * Publishes an update under a new marker, so readers that find the marker in a balance can resolve it.
+     * The publisher stores the marker in the balances it covers with compare-and-set, and replaces it with the
+     * final balance of each before retiring the update.
+     *
+     * @param update The update
+     * @return The marker
+     */
+    public static long publish(PendingUpdate update) {
+        long marker = MARKER_BASE + (NEXT_MARKER.getAndIncrement() & MARKER_MASK);
+        PENDING_UPDATES.put(marker, update);
+        return marker;
+    }
+
+    /**
+     * Retires an update once no balance holds its marker any more.
+     *
+     * @param marker The marker returned by {@link #publish(PendingUpdate)}
+     */
+    public static void retire(long marker) {
+        PENDING_UPDATES.remove(marker);
+    }
+
+    /**
+     * Retrieves the update a marker names.
+     *
+     * @param marker The marker
+     * @return The update, or null if it was retired
+     */
+    public static PendingUpdate pendingUpdate(long marker) {
+        return PENDING_UPDATES.get(marker);
+    }
+
+    /**
+     * Checks whether a stored balance is a marker rather than a value.
+     *
+     * @param storedBalanceMinor The stored balance
+     * @return true if it is a marker
+     */
+    public static boolean isMarker(long storedBalanceMinor) {
+        return storedBalanceMinor >= MARKER_BASE && storedBalanceMinor <= MARKER_BASE + MARKER_MASK;
+    }
 
     /**
      * Constructor for creating an Account object with account number and PIN.
@@ -37,7 +124,7 @@ public class Account {
         this.accountNum = accountNum;
         this.PIN = PIN;
         this.username = username;
-        this.balance = balance;
+        this.balanceMinor = Money.toMinor(balance);
     }
 
     /**
@@ -91,7 +178,7 @@ public class Account {
      * @return The current balance.
      */
     public double getBalance() {
-        return balance;
+        return Money.toMajor(getBalanceMinor());
     }
 
     /**
@@ -100,7 +187,68 @@ public class Account {
      * @param balance The new balance to set.
      */
     public void setBalance(double balance) {
-        this.balance = balance;
+        setBalanceMinor(Money.toMinor(balance));
+    }
+
+    /**
+     * Retrieves the current balance of the account in minor units, resolving the marker of an update in progress.
+     *
+     * @return The current balance in minor units.
+     */
+    public long getBalanceMinor() {
+        while (true) {
+            long stored = getStoredBalanceMinor();
+            if (!isMarker(stored)) {
+                return stored;
+            }
+            PendingUpdate update = PENDING_UPDATES.get(stored);
+            if (update != null) {
+                return update.balanceOf(this);
+            }
+            // Retired meanwhile, so the balance holds a value again
+        }
+    }
+
+    /**
+     * Retrieves the balance as stored, which is a marker while an update covering the account is in progress.
+     * Stores that keep the balance elsewhere override this together with the setter and compare-and-set.
+     *
+     * @return The stored balance in minor units, or a marker.
+     */
+    public long getStoredBalanceMinor() {
+        return balanceMinor;
+    }
+
+    /**
+     * Sets the current balance of the account in minor units.
+     *
+     * @param balanceMinor The new balance in minor units.
+     */
+    public void setBalanceMinor(long balanceMinor) {
+        this.balanceMinor = balanceMinor;
+    }
+
+    /**
+     * Atomically sets the stored balance to the new value if it currently equals the expected value.
+     *
+     * @param expected The stored balance in minor units, or marker, the caller last observed.
+     * @param newValue The new balance in minor units.
+     * @return true if the balance was updated, false if another thread changed it first.
+     */
+    public boolean compareAndSetBalanceMinor(long expected, long newValue) {
+        return BALANCE_MINOR.compareAndSet(this, expected, newValue);
+    }
+
+    /**
+     * Checks whether the given PIN matches the PIN of the account. The comparison takes the same time
+     * wherever the first differing digit is, so timing does not reveal how much of a guess was right.
+     *
+     * @param PIN The PIN to check.
+     * @return true if the PIN matches, false otherwise.
+     */
+    public boolean checkPIN(String PIN) {
+        return this.PIN != null && PIN != null
+                && MessageDigest.isEqual(this.PIN.getBytes(StandardCharsets.UTF_8), PIN.getBytes(StandardCharsets.UTF_8));
     }
 
     /**
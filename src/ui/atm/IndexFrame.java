@@ -6,11 +6,14 @@
 package ui.atm;
 
 import ui.main.Controller;
-import util.Data;
+import util.auth.Session;
+import util.event.BalanceChange;
+import util.event.BalanceSubscriber;
 import util.strategy.AccountOperationStrategy;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -20,22 +23,66 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class IndexFrame extends JFrame {
     private final AccountOperationStrategy strategy;
+    private final Session session; // Session of the logged-in user, holding the account handle
+    private final String accountNum; // Account shown by this frame
+    private final BalanceSubscriber balanceSubscriber; // Pushes balance changes of the account to this frame
     private double balance;
+    private JLabel balanceLabel; // Label showing the balance on the current panel, null if it shows none
+    private String balanceFormat; // Format of balanceLabel, with %s for the balance
 
     /**
      * Constructor to initialize the IndexFrame interface.
      *
-     * @param username Username of the user
-     * @param accountNum Account number
+     * @param session Session of the logged-in user
      * @param strategy Account operation strategy
      */
-    public IndexFrame(String username, String accountNum, AccountOperationStrategy strategy) {
+    public IndexFrame(Session session, AccountOperationStrategy strategy) {
         this.strategy = strategy;
-        this.balance = Data.getInstance().getBalanceByAccountNum(accountNum);
-        initialize(welcomePanel(username,accountNum));
+        this.session = session;
+        this.accountNum = session.getAccountNum();
+        this.balance = session.getAccount().getBalance();
+        this.balanceSubscriber = BalanceSubscriber.subscribe(SwingUtilities::invokeLater, this::onBalanceChanges);
+        initialize(welcomePanel(session.getUsername(), accountNum));
         setVisible(true);
     }
 
+    /**
+     * Updates the balance when the account changes, including changes made by other terminals.
+     *
+     * @param changes The changed balances delivered by the balance event bus
+     */
+    private void onBalanceChanges(List<BalanceChange> changes) {
+        for (BalanceChange change : changes) {
+            if (change.getAccountNum().equals(accountNum)) {
+                balance = change.getBalance();
+                if (balanceLabel != null) {
+                    balanceLabel.setText(String.format(balanceFormat, balance));
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes a label of the current panel show the balance, and keep showing it as it changes.
+     *
+     * @param label The label
+     * @param format The text of the label, with %s for the balance
+     */
+    private void showBalance(JLabel label, String format) {
+        balanceLabel = label;
+        balanceFormat = format;
+        label.setText(String.format(format, balance));
+    }
+
+    /**
+     * Stops receiving balance changes and releases the frame.
+     */
+    @Override
+    public void dispose() {
+        balanceSubscriber.cancel();
+        super.dispose();
+    }
+
     /**
      * Method to initialize the interface, setting JFrame attributes and adding the main panel.
      *
@@ -58,6 +105,7 @@ public class IndexFrame extends JFrame {
      * @return JPanel Welcome panel
      */
     private JPanel welcomePanel(String username, String accountNum) {
+        balanceLabel = null;
         JPanel mainPanel = new JPanel(new BorderLayout());
         mainPanel.setPreferredSize(new Dimension(720, 500));
         JPanel welcomeMessage = new JPanel();
@@ -87,8 +135,10 @@ public class IndexFrame extends JFrame {
 
         buttons1[0].setPreferredSize(new Dimension(150, 60));
         buttons1[0].addActionListener((e) -> {
-            dispose();
-            new TransferFrame(username, accountNum, strategy);
+            if (UIUtil.resumeSession(IndexFrame.this, session)) {
+                dispose();
+                new TransferFrame(session, strategy);
+            }
         });
         buttonPanelLeft.add(buttons1[0]);
         buttons1[1].setVisible(false);
@@ -137,6 +187,7 @@ public class IndexFrame extends JFrame {
         exitJButtonPanel.setLayout(new BorderLayout());
         exitJButtonPanel.add(exitJButton, BorderLayout.WEST);
         exitJButton.addActionListener((e) -> {
+            strategy.logout(session);
             dispose();
             Controller.getInstance().setVisible(true);
         });
@@ -164,7 +215,8 @@ public class IndexFrame extends JFrame {
         depositMessage1.setVerticalAlignment(SwingConstants.CENTER);
         welcomeMessage.add(depositMessage1);
 
-        JLabel depositMessage2 = new JLabel("Your balance is ￡" + balance + ".");
+        JLabel depositMessage2 = new JLabel();
+        showBalance(depositMessage2, "Your balance is ￡%s.");
         depositMessage2.setPreferredSize(new Dimension(720, 50));
         depositMessage2.setFont(new Font("Serif", Font.PLAIN, 20));
         depositMessage2.setHorizontalAlignment(SwingConstants.CENTER);
@@ -249,14 +301,21 @@ public class IndexFrame extends JFrame {
         enterJButtonPanel.setLayout(new BorderLayout());
         enterJButtonPanel.add(enterJButton, BorderLayout.WEST);
         enterJButton.addActionListener((e) -> {
-            if (depositAmount.get() >= Data.getInstance().getBalanceByAccountNum(accountNum)) {
+            if (!UIUtil.resumeSession(IndexFrame.this, session)) {
+                return;
+            }
+            if (depositAmount.get() >= session.getAccount().getBalance()) {
                 JOptionPane.showMessageDialog(IndexFrame.this, "Deposit amount exceeds balance.", "Error", JOptionPane.ERROR_MESSAGE);
             } else {
                 System.out.println("Entered amount: " + depositAmount);
-                balance += depositAmount.get();
-                strategy.deposit(accountNum, depositAmount.get());
-                JOptionPane.showMessageDialog(IndexFrame.this, "Deposit successful!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                initialize(welcomePanel(username, accountNum));
+                int amount = depositAmount.get();
+                OperationWorker.forBalance(IndexFrame.this, "Deposit", session.getAccount(), () -> strategy.deposit(session.getAccount(), amount),
+                        depositMessage2, (newBalance) -> {
+                            balance = newBalance;
+                            depositMessage2.setText(String.format(balanceFormat, balance));
+                            JOptionPane.showMessageDialog(IndexFrame.this, "Deposit successful!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                            initialize(welcomePanel(username, accountNum));
+                        }, mainPanel).start();
             }
         });
         mainPanel.add(enterJButtonPanel, BorderLayout.SOUTH);
@@ -283,7 +342,8 @@ public class IndexFrame extends JFrame {
         withdrawMessage1.setVerticalAlignment(SwingConstants.CENTER);
         welcomeMessage.add(withdrawMessage1);
 
-        JLabel withdrawMessage2 = new JLabel("Your balance is ￡" + balance + ".");
+        JLabel withdrawMessage2 = new JLabel();
+        showBalance(withdrawMessage2, "Your balance is ￡%s.");
         withdrawMessage2.setPreferredSize(new Dimension(720, 50));
         withdrawMessage2.setFont(new Font("Serif", Font.PLAIN, 20));
         withdrawMessage2.setHorizontalAlignment(SwingConstants.CENTER);
@@ -368,11 +428,23 @@ public class IndexFrame extends JFrame {
         enterJButtonPanel.setLayout(new BorderLayout());
         enterJButtonPanel.add(enterJButton, BorderLayout.WEST);
         enterJButton.addActionListener((e) -> {
+            if (!UIUtil.resumeSession(IndexFrame.this, session)) {
+                return;
+            }
             System.out.println("Entered amount: " + withdrawAmount);
-            balance -= withdrawAmount.get();
-            strategy.withdraw(accountNum, withdrawAmount.get());
-            JOptionPane.showMessageDialog(IndexFrame.this, "Withdraw successful!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            initialize(welcomePanel(username, accountNum));
+            int amount = withdrawAmount.get();
+            // The strategy checks the balance as it withdraws, so another terminal on the account cannot overdraw it
+            new OperationWorker<Boolean>(IndexFrame.this, "Withdraw", () -> strategy.withdrawIfCovered(session.getAccount(), amount),
+                    withdrawMessage2, (withdrawn) -> {
+                        balance = session.getAccount().getBalance();
+                        withdrawMessage2.setText(String.format(balanceFormat, balance));
+                        if (!withdrawn) {
+                            JOptionPane.showMessageDialog(IndexFrame.this, "Insufficient funds.", "Error", JOptionPane.ERROR_MESSAGE);
+                            return;
+                        }
+                        JOptionPane.showMessageDialog(IndexFrame.this, "Withdraw successful!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                        initialize(welcomePanel(username, accountNum));
+                    }, mainPanel).start();
         });
         mainPanel.add(enterJButtonPanel, BorderLayout.SOUTH);
         return mainPanel;
@@ -408,8 +480,10 @@ public class IndexFrame extends JFrame {
 
         buttons1[0].setPreferredSize(new Dimension(150,60));
         buttons1[0].addActionListener((e) -> {
-            dispose();
-            new TransferFrame(username, accountNum, strategy);
+            if (UIUtil.resumeSession(IndexFrame.this, session)) {
+                dispose();
+                new TransferFrame(session, strategy);
+            }
         });
         buttonPanelLeft.add(buttons1[0]);
         buttons1[1].setVisible(false);
@@ -458,6 +532,7 @@ public class IndexFrame extends JFrame {
         exitJButtonPanel.setLayout(new BorderLayout());
         exitJButtonPanel.add(exitJButton, BorderLayout.WEST);
         exitJButton.addActionListener((e)-> {
+            strategy.logout(session);
             dispose();
             Controller.getInstance().setVisible(true);
         });
@@ -466,6 +541,7 @@ public class IndexFrame extends JFrame {
         JPanel informationPanel = new JPanel(new GridLayout(4,1,10,10));
         informationPanel.setBackground(new Color(173, 216, 230));
         JLabel[] information = new JLabel[]{new JLabel("Account Number: " + accountNum), new JLabel("Account Balance: " + balance), new JLabel("Account Type: Saving"), new JLabel("Account Status: Active")};
+        showBalance(information[1], "Account Balance: %s");
         for (JLabel label : information) {
             label.setFont(new Font("Serif", Font.PLAIN, 20));
             label.setHorizontalAlignment(SwingConstants.CENTER);
@@ -474,6 +550,13 @@ public class IndexFrame extends JFrame {
         }
         informationPanel.setPreferredSize(new Dimension(400,200));
         centralPane.add(informationPanel, BorderLayout.CENTER);
+
+        // Show the cached balance at once and replace it with the current one when the inquiry returns
+        OperationWorker.forBalance(IndexFrame.this, "Inquiry", session.getAccount(), () -> strategy.inquire(accountNum),
+                information[1], (newBalance) -> {
+                    balance = newBalance;
+                    information[1].setText(String.format(balanceFormat, balance));
+                }, mainPanel).start();
         return mainPanel;
     }
 }
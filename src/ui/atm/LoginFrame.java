@@ -5,9 +5,8 @@
  */
 package ui.atm;
 
-import pojo.Account;
 import ui.main.Controller;
-import util.Data;
+import util.auth.Session;
 import util.strategy.AccountOperationStrategy;
 
 import javax.swing.*;
@@ -23,8 +22,6 @@ public class LoginFrame extends JFrame {
     private JTextField accountField; // Text field for entering account number
     private JPasswordField pinField; // Password field for entering PIN
     private NumKeyBoardFrame numKeyBoardFrame; // On-screen keyboard frame
-    private Account account; // Account object for the entered account details
-    private Account accountWithFullDetail; // Account object with full account details
     private boolean openController = true; // Flag to control whether the controller window should be opened
 
     /**
@@ -115,11 +112,18 @@ public class LoginFrame extends JFrame {
                         @Override
                         public void onConfirm(String value, boolean shouldSwitch) {
                             accountField.setText(value);
-                            if (shouldSwitch && isAccountValid(value)) {
-                                numKeyBoardFrame.dispose();
-                                switchToPinPanel();
-                            } else if (shouldSwitch) {
+                            if (shouldSwitch && !isAccountValid(value)) {
                                 JOptionPane.showMessageDialog(LoginFrame.this, "Invalid account number.", "Error", JOptionPane.ERROR_MESSAGE);
+                            } else if (shouldSwitch) {
+                                // The lookup may be a round trip to the server, so keep it off the event dispatch thread
+                                new OperationWorker<>(LoginFrame.this, "Account lookup", () -> strategy.find(value), null, (account) -> {
+                                    if (account != null) {
+                                        numKeyBoardFrame.dispose();
+                                        switchToPinPanel();
+                                    } else {
+                                        JOptionPane.showMessageDialog(LoginFrame.this, "Invalid account number.", "Error", JOptionPane.ERROR_MESSAGE);
+                                    }
+                                }, accountPanel, numKeyBoardFrame).start();
                             }
                         }
 
@@ -200,17 +204,20 @@ public class LoginFrame extends JFrame {
             @Override
             public void onConfirm(String value, boolean shouldSwitch) {
                 pinField.setText(value);
-                account = new Account(accountField.getText(),pinField.getText());
-                if (shouldSwitch && isPINValid(value) && checkLogin(account.getAccountNum(), account.getPIN())) {
-                    accountWithFullDetail = initializeAccountWithDetails(account.getAccountNum(),account.getPIN());
-                    new IndexFrame(accountWithFullDetail.getUsername(), accountWithFullDetail.getAccountNum(),strategy).setVisible(true);
-                    openController = false;
-                    numKeyBoardFrame.dispose();
-                    dispose();
-                } else if (shouldSwitch && !isPINValid(value)) {
+                if (shouldSwitch && !isPINValid(value)) {
                     JOptionPane.showMessageDialog(LoginFrame.this, "Invalid PIN. Please enter a 4-digit number.", "Error", JOptionPane.ERROR_MESSAGE);
-                } else if (shouldSwitch && isPINValid(value) && !checkLogin(account.getAccountNum(), account.getPIN())){
-                    JOptionPane.showMessageDialog(LoginFrame.this, "Invalid account. Please enter the correct account and PIN.", "Error", JOptionPane.ERROR_MESSAGE);
+                } else if (shouldSwitch) {
+                    String accountNum = accountField.getText();
+                    new OperationWorker<Session>(LoginFrame.this, "Login", () -> strategy.login(accountNum, value), null, (session) -> {
+                        if (session != null) {
+                            new IndexFrame(session, strategy).setVisible(true);
+                            openController = false;
+                            numKeyBoardFrame.dispose();
+                            dispose();
+                        } else {
+                            JOptionPane.showMessageDialog(LoginFrame.this, "Invalid account. Please enter the correct account and PIN.", "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    }, pinPanel, numKeyBoardFrame).start();
                 }
             }
 
@@ -222,13 +229,13 @@ public class LoginFrame extends JFrame {
     }
 
     /**
-     * Checks if the entered account number is valid.
+     * Checks if the entered account number is well formed. Whether it exists is asked of the strategy.
      *
      * @param account the account number to validate
      * @return true if the account number is valid, false otherwise
      */
     private boolean isAccountValid(String account) {
-        return account.matches("\\d{6}") && Data.getInstance().getAccounts().stream().anyMatch(a -> a.getAccountNum().equals(account));
+        return account.matches("\\d{6}");
     }
 
     /**
@@ -240,42 +247,4 @@ public class LoginFrame extends JFrame {
     private boolean isPINValid(String pin) {
         return pin.matches("\\d{4}");
     }
-
-    /**
-     * Checks if the login credentials are correct.
-     *
-     * @param accountNum the account number
-     * @param pin the PIN
-     * @return true if the account number and PIN match, false otherwise
-     */
-    private boolean checkLogin(String accountNum, String pin) {
-        for (Account account : Data.getInstance().getAccounts()) {
-            if (account.getAccountNum().equals(accountNum) && account.getPIN().equals(pin)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Initializes the account with full details.
-     *
-     * @param accountNum the account number
-     * @param pin the PIN
-     * @return the account with full details
-     */
-    private Account initializeAccountWithDetails(String accountNum, String pin) {
-        Account newAccount = new Account(accountNum, pin, "", 0.0);
-
-        // Find Accounts with matching accounts and passwords in the data
-        for (Account account : Data.getInstance().getAccounts()) {
-            if (account.getAccountNum().equals(accountNum) && account.getPIN().equals(pin)) {
-                // If a matching Account is found, reinitialise the rest of the newAccount properties with its data.
-                newAccount.setUsername(account.getUsername());
-                newAccount.setBalance(account.getBalance());
-                break;
-            }
-        }
-        return newAccount;
-    }
 }
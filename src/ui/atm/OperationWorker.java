@@ -0,0 +1,155 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package ui.atm;
+
+import pojo.Account;
+import util.concurrent.OperationExecutor;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Runs a strategy call of an ATM frame off the event dispatch thread, such as an account operation, a login
+ * or an account lookup, any of which may be a network round trip.
+ * <p>
+ * While the operation is pending the frame is busy: the buttons under the given components are disabled,
+ * given windows such as the keypad stop taking input, the status label shows progress and the cursor waits.
+ * The operation itself runs on the shared {@link OperationExecutor}, so a slow strategy never blocks the UI.
+ * When it finishes, the frame is re-enabled on the event dispatch thread and the success handler receives
+ * the result of the call, for {@link #forBalance} the balance of the account read after the operation;
+ * a failure restores the status label and is reported in an error dialog.
+ *
+ * @param <T> The type of the result of the call
+ */
+class OperationWorker<T> extends SwingWorker<T, Void> {
+    private final JFrame frame; // Frame showing the operation
+    private final String name; // Name of the operation shown to the user
+    private final Supplier<T> operation; // The blocking strategy call
+    private final JLabel status; // Label showing progress, may be null
+    private final Component[] busyComponents; // Components that take no input while pending
+    private final Consumer<T> onSuccess; // Receives the result of the call, on the event dispatch thread
+    private final List<Component> disabled = new ArrayList<>(); // Components disabled by this worker
+    private Cursor previousCursor; // Cursor of the frame before the operation
+    private String previousStatus; // Text of the status label before the operation
+
+    /**
+     * Constructs a worker.
+     *
+     * @param frame The frame showing the operation
+     * @param name The name of the operation, such as "Login"
+     * @param operation The blocking strategy call, returning its result
+     * @param status The label showing progress, or null
+     * @param onSuccess Receives the result of the call
+     * @param busyComponents The components that take no input while the operation is pending
+     */
+    OperationWorker(JFrame frame, String name, Supplier<T> operation, JLabel status,
+                    Consumer<T> onSuccess, Component... busyComponents) {
+        this.frame = frame;
+        this.name = name;
+        this.operation = operation;
+        this.status = status;
+        this.onSuccess = onSuccess;
+        this.busyComponents = busyComponents;
+    }
+
+    /**
+     * Constructs a worker for an account operation that reports the balance of the account after it.
+     *
+     * @param frame The frame showing the operation
+     * @param name The name of the operation, such as "Deposit"
+     * @param account The account whose balance is reported to the success handler
+     * @param operation The blocking strategy call
+     * @param status The label showing progress, or null
+     * @param onSuccess Receives the balance after the operation
+     * @param busyComponents The components that take no input while the operation is pending
+     * @return The worker, not yet started
+     */
+    static OperationWorker<Double> forBalance(JFrame frame, String name, Account account, Runnable operation,
+                                              JLabel status, DoubleConsumer onSuccess, Component... busyComponents) {
+        return new OperationWorker<>(frame, name, () -> {
+            operation.run();
+            return account.getBalance();
+        }, status, onSuccess::accept, busyComponents);
+    }
+
+    /**
+     * Marks the frame busy and starts the operation. Must be called on the event dispatch thread.
+     */
+    void start() {
+        for (Component component : busyComponents) {
+            disable(component);
+        }
+        previousCursor = frame.getCursor();
+        frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        if (status != null) {
+            previousStatus = status.getText();
+            status.setText("Processing " + name.toLowerCase() + ", please wait...");
+        }
+        // SwingWorker.execute() would use its own small pool; run on the shared executor instead
+        OperationExecutor.getInstance().execute(this);
+    }
+
+    /**
+     * Disables a window, or the enabled buttons inside a container.
+     *
+     * @param component The window or container
+     */
+    private void disable(Component component) {
+        if (component instanceof Window || component instanceof AbstractButton) {
+            if (component.isEnabled()) {
+                component.setEnabled(false);
+                disabled.add(component);
+            }
+        } else if (component instanceof Container) {
+            for (Component child : ((Container) component).getComponents()) {
+                disable(child);
+            }
+        }
+    }
+
+    /**
+     * Runs the operation, off the event dispatch thread.
+     *
+     * @return The result of the call
+     */
+    @Override
+    protected T doInBackground() {
+        return operation.get();
+    }
+
+    /**
+     * Re-enables the frame and reports the outcome, on the event dispatch thread.
+     */
+    @Override
+    protected void done() {
+        for (Component component : disabled) {
+            component.setEnabled(true);
+        }
+        disabled.clear();
+        frame.setCursor(previousCursor);
+        if (status != null) {
+            status.setText(previousStatus);
+        }
+        T result;
+        try {
+            result = get();
+        } catch (ExecutionException | InterruptedException e) {
+            e.printStackTrace();
+            // Show why a remote call failed, such as a timeout, rather than just that it did
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            String message = cause.getMessage() != null ? name + " failed: " + cause.getMessage() : name + " failed.";
+            JOptionPane.showMessageDialog(frame, message, "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        onSuccess.accept(result);
+    }
+}
@@ -10,7 +10,8 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 
-import util.Data;
+import pojo.Account;
+import util.auth.Session;
 import util.strategy.AccountOperationStrategy;
 
 /**
@@ -22,22 +23,24 @@ public class TransferFrame extends JFrame {
     private final JPanel amountPanel;
     private JTextField accountField;
     private JTextField amountField;
+    private JLabel amountLabel;
     private NumKeyBoardFrame numKeyBoardFrame;
+    private final Session session; // Session of the logged-in user, holding the source account
     private final String userName;
     private final String fromAccountNumber;
-    private String toAccountNumber;
+    private Account toAccount; // Destination account, resolved once when its number is confirmed
     private final AccountOperationStrategy accountOperationStrategy;
 
     /**
      * Constructs a TransferFrame instance.
      *
-     * @param userName                The username initiating the transfer.
-     * @param fromAccountNumber       The account number from which the transfer is initiated.
+     * @param session                 The session of the user initiating the transfer.
      * @param accountOperationStrategy The strategy for account operations (e.g., transfer).
      */
-    public TransferFrame(String userName, String fromAccountNumber, AccountOperationStrategy accountOperationStrategy) {
-        this.userName = userName;
-        this.fromAccountNumber = fromAccountNumber;
+    public TransferFrame(Session session, AccountOperationStrategy accountOperationStrategy) {
+        this.session = session;
+        this.userName = session.getUsername();
+        this.fromAccountNumber = session.getAccountNum();
         this.accountOperationStrategy = accountOperationStrategy;
         mainPanel = new JPanel(new CardLayout());
         accountPanel = createAccountPanel();
@@ -111,16 +114,12 @@ public class TransferFrame extends JFrame {
                         @Override
                         public void onConfirm(String value, boolean shouldSwitch) {
                             accountField.setText(value);
-                            if (shouldSwitch && isAccountValid(value)) {
-                                if (value.equals(fromAccountNumber)) {
-                                    JOptionPane.showMessageDialog(TransferFrame.this, "You cannot transfer to your own account.", "Error", JOptionPane.ERROR_MESSAGE);;
-                                } else {
-                                    toAccountNumber = value;
-                                    numKeyBoardFrame.dispose();
-                                    switchToAmountPanel();
-                                }
-                            } else if (shouldSwitch) {
+                            if (shouldSwitch && !value.matches("\\d{6}")) {
                                 JOptionPane.showMessageDialog(TransferFrame.this, "Invalid account number.", "Error", JOptionPane.ERROR_MESSAGE);
+                            } else if (shouldSwitch) {
+                                // The lookup may be a round trip to the server, so keep it off the event dispatch thread
+                                new OperationWorker<>(TransferFrame.this, "Account lookup", () -> accountOperationStrategy.find(value), null,
+                                        TransferFrame.this::selectDestination, accountPanel, numKeyBoardFrame).start();
                             }
                         }
 
@@ -174,7 +173,7 @@ public class TransferFrame extends JFrame {
         panel.add(Box.createVerticalStrut(50), gbc);
 
         // Amount Label
-        JLabel amountLabel = new JLabel("Please enter the transfer amount:");
+        amountLabel = new JLabel("Please enter the transfer amount:");
         amountLabel.setFont(new Font("Serif", Font.PLAIN, 20));
         gbc.gridy = 2;
         gbc.gridwidth = 1;
@@ -208,10 +207,24 @@ public class TransferFrame extends JFrame {
             public void onConfirm(String value, boolean shouldSwitch) {
                 amountField.setText(value);
                 if (shouldSwitch && isAmountValid(value)) {
-                    accountOperationStrategy.transfer(fromAccountNumber, toAccountNumber, Double.parseDouble(value));
-                    JOptionPane.showMessageDialog(TransferFrame.this, "Transfer successful!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                    dispose();
-                    new IndexFrame(userName, fromAccountNumber, accountOperationStrategy);
+                    double amount = Double.parseDouble(value);
+                    // Keep the keypad and the amount panel from taking input until the transfer returns
+                    if (!UIUtil.resumeSession(TransferFrame.this, session)) {
+                        return;
+                    }
+                    // The strategy checks the balance as it transfers, so another terminal on the account cannot overdraw it
+                    new OperationWorker<Boolean>(TransferFrame.this, "Transfer",
+                            () -> accountOperationStrategy.transferIfCovered(session.getAccount(), toAccount, amount),
+                            amountLabel, (transferred) -> {
+                                amountLabel.setText("Your balance is ￡" + session.getAccount().getBalance() + ".");
+                                if (!transferred) {
+                                    JOptionPane.showMessageDialog(TransferFrame.this, "Insufficient funds.", "Error", JOptionPane.ERROR_MESSAGE);
+                                    return;
+                                }
+                                JOptionPane.showMessageDialog(TransferFrame.this, "Transfer successful!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                                dispose();
+                                new IndexFrame(session, accountOperationStrategy);
+                            }, amountPanel, numKeyBoardFrame).start();
                 } else if (shouldSwitch) {
                     JOptionPane.showMessageDialog(TransferFrame.this, "Invalid amount. Please enter a value up to 8 digits.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
@@ -225,13 +238,20 @@ public class TransferFrame extends JFrame {
     }
 
     /**
-     * Checks if the provided account number is valid.
+     * Takes the resolved destination account and moves on to the amount, or reports why it cannot be used.
      *
-     * @param account The account number to validate.
-     * @return true if the account number is valid, false otherwise.
+     * @param account The account, or null if the account number is unknown.
      */
-    private boolean isAccountValid(String account) {
-        return account.matches("\\d{6}") && Data.getInstance().getAccounts().stream().anyMatch(a -> a.getAccountNum().equals(account));
+    private void selectDestination(Account account) {
+        if (account == null) {
+            JOptionPane.showMessageDialog(TransferFrame.this, "Invalid account number.", "Error", JOptionPane.ERROR_MESSAGE);
+        } else if (account.getAccountNum().equals(session.getAccountNum())) {
+            JOptionPane.showMessageDialog(TransferFrame.this, "You cannot transfer to your own account.", "Error", JOptionPane.ERROR_MESSAGE);
+        } else {
+            toAccount = account;
+            numKeyBoardFrame.dispose();
+            switchToAmountPanel();
+        }
     }
 
     /**
@@ -241,6 +261,6 @@ public class TransferFrame extends JFrame {
      * @return true if the amount is valid, false otherwise.
      */
     private boolean isAmountValid(String amount) {
-        return amount.matches("\\d{1,8}") && Double.parseDouble(amount) <= Data.getInstance().getBalanceByAccountNum(fromAccountNumber);
+        return amount.matches("\\d{1,8}") && Double.parseDouble(amount) <= session.getAccount().getBalance();
     }
 }
@@ -5,6 +5,10 @@
  */
 package ui.atm;
 
+import ui.main.Controller;
+import util.auth.AuthenticationService;
+import util.auth.Session;
+
 import javax.swing.*;
 import java.awt.*;
 
@@ -62,4 +66,22 @@ public class UIUtil {
             case "right" -> f.setLocation(10 * screenSize.width / 20, screenSize.height / 4);
         }
     }
+
+    /**
+     * Checks that the session of an ATM frame is still valid before an operation. If it expired, tells
+     * the user, closes the frame and shows the controller again.
+     *
+     * @param f       The frame of the session.
+     * @param session The session.
+     * @return true if the operation may go ahead.
+     */
+    public static boolean resumeSession(JFrame f, Session session) {
+        if (AuthenticationService.getInstance().resume(session)) {
+            return true;
+        }
+        JOptionPane.showMessageDialog(f, "Your session has expired. Please log in again.", "Error", JOptionPane.ERROR_MESSAGE);
+        f.dispose();
+        Controller.getInstance().setVisible(true);
+        return false;
+    }
 }
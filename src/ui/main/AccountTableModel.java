@@ -0,0 +1,212 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package ui.main;
+
+import pojo.Account;
+import util.Data;
+import util.Money;
+import util.event.BalanceChange;
+import util.shard.ShardSet;
+import util.store.AccountKeys;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.List;
+
+/**
+ * Table model over the accounts of the current {@link Data} instance, or of a {@link ShardSet} when the
+ * ATMs operate on shards, which hold the live balances after being seeded from the Data instance.
+ * <p>
+ * Cells are read straight from the read-only account list of the store, so the table only touches the
+ * rows it paints. {@link #applyChanges(List)} takes the changes delivered by the balance event bus and fires
+ * an update for each row whose balance differs from the last one seen. {@link #refresh()} instead compares
+ * every row and fires updates for the runs of rows that changed. Either fires a full data change when the
+ * Data instance or the number of accounts changed. Sorting and filtering are left to a TableRowSorter,
+ * which keeps its own index mapping and does not copy the accounts. The balance column shows the balance
+ * recorded at the last refresh or change, so the table only changes together with the updates it fires.
+ */
+@SuppressWarnings("serial") // Swing models are never serialized here
+public class AccountTableModel extends AbstractTableModel {
+    public static final int ACCOUNT_NUM_COLUMN = 0;
+    public static final int PIN_COLUMN = 1;
+    public static final int USERNAME_COLUMN = 2;
+    public static final int BALANCE_COLUMN = 3;
+    private static final String[] COLUMN_NAMES = {"Account Number", "PIN", "Username", "Balance"};
+
+    private final ShardSet shards; // Shards the rows are read from, null to read the Data singleton
+    private Data data; // Instance the rows were read from, null when reading shards
+    private List<Account> accounts; // Read-only view of the accounts of data
+    private long[] balances = new long[0]; // Balance in minor units per row at the last refresh
+    private int[] rowByAccountNum; // Row + 1 per 6-digit account number, built on the first change, null until then
+
+    /**
+     * Constructs a model over the current Data instance.
+     */
+    public AccountTableModel() {
+        this(null);
+    }
+
+    /**
+     * Constructs a model over the accounts of shards.
+     *
+     * @param shards The shards, or null for the current Data instance
+     */
+    public AccountTableModel(ShardSet shards) {
+        this.shards = shards;
+        reload();
+    }
+
+    /**
+     * Reads the account list of the shards or the current Data instance and records every balance.
+     */
+    private void reload() {
+        if (shards != null) {
+            accounts = shards.getAccounts();
+        } else {
+            data = Data.getInstance();
+            accounts = data.getAccounts();
+        }
+        rowByAccountNum = null;
+        int size = accounts.size();
+        balances = new long[size];
+        for (int row = 0; row < size; row++) {
+            balances[row] = accounts.get(row).getBalanceMinor();
+        }
+    }
+
+    /**
+     * Picks up balance changes since the last refresh. Must be called on the event dispatch thread.
+     *
+     * @return The number of rows that changed, or -1 if the whole table was reloaded
+     */
+    public int refresh() {
+        if (isStale()) {
+            reload();
+            fireTableDataChanged();
+            return -1;
+        }
+        int changed = 0;
+        int runStart = -1;
+        for (int row = 0; row < balances.length; row++) {
+            long balance = accounts.get(row).getBalanceMinor();
+            if (balance != balances[row]) {
+                balances[row] = balance;
+                changed++;
+                if (runStart < 0) {
+                    runStart = row;
+                }
+            } else if (runStart >= 0) {
+                fireTableRowsUpdated(runStart, row - 1);
+                runStart = -1;
+            }
+        }
+        if (runStart >= 0) {
+            fireTableRowsUpdated(runStart, balances.length - 1);
+        }
+        return changed;
+    }
+
+    /**
+     * Applies balance changes delivered by the balance event bus. Must be called on the event dispatch thread.
+     * Falls back to {@link #refresh()} for an account that has no row yet or a non-standard account number.
+     *
+     * @param changes The changed balances
+     */
+    public void applyChanges(List<BalanceChange> changes) {
+        if (isStale()) {
+            reload();
+            fireTableDataChanged();
+            return;
+        }
+        int[] rows = rowIndex();
+        for (BalanceChange change : changes) {
+            int accountNum = AccountKeys.parseAccountNum(change.getAccountNum());
+            int row = accountNum >= 0 ? rows[accountNum] - 1 : -1;
+            if (row < 0) {
+                refresh();
+                return;
+            }
+            if (balances[row] != change.getBalanceMinor()) {
+                balances[row] = change.getBalanceMinor();
+                fireTableRowsUpdated(row, row);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the rows must be read again: another Data instance was installed or the number of
+     * accounts changed. The accounts of shards are fixed once they are open.
+     *
+     * @return true if the model must be reloaded
+     */
+    private boolean isStale() {
+        return (shards == null && data != Data.getInstance()) || accounts.size() != balances.length;
+    }
+
+    /**
+     * Maps account numbers to rows, building the map on first use. An int per possible 6-digit account number
+     * is far smaller than a hash map over the accounts.
+     *
+     * @return Row + 1 per account number, 0 if it has no row
+     */
+    private int[] rowIndex() {
+        if (rowByAccountNum == null) {
+            int[] rows = new int[(int) Math.pow(10, AccountKeys.ACCOUNT_NUM_DIGITS)];
+            for (int row = 0; row < balances.length; row++) {
+                int accountNum = AccountKeys.parseAccountNum(accounts.get(row).getAccountNum());
+                if (accountNum >= 0) {
+                    rows[accountNum] = row + 1;
+                }
+            }
+            rowByAccountNum = rows;
+        }
+        return rowByAccountNum;
+    }
+
+    /**
+     * Retrieves the account shown in a row.
+     *
+     * @param row The row index in the model
+     * @return The account
+     */
+    public Account getAccount(int row) {
+        return accounts.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return balances.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == BALANCE_COLUMN ? Double.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Account account = accounts.get(row);
+        switch (column) {
+            case ACCOUNT_NUM_COLUMN:
+                return account.getAccountNum();
+            case PIN_COLUMN:
+                return account.getPIN();
+            case USERNAME_COLUMN:
+                return account.getUsername();
+            default:
+                return Money.toMajor(balances[row]);
+        }
+    }
+}
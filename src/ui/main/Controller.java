@@ -6,18 +6,27 @@
 package ui.main;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableCellRenderer;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
-import java.io.IOException;
-import java.util.List;
+import java.util.regex.Pattern;
 
 import ui.atm.LoginFrame;
 import ui.simulator.DemoEnvironment;
+import ui.simulator.Scenario;
+import ui.simulator.ScenarioEngine;
 import util.Data;
-import pojo.Account;
-import util.strategy.impl.ConsistentStrategy;
+import util.event.BalanceSubscriber;
+import util.shard.ShardSet;
+import util.strategy.StrategyFactory;
+import util.strategy.impl.InstrumentedStrategy;
+import util.strategy.impl.RemoteStrategy;
+import util.strategy.impl.ShardedStrategy;
 
 /**
  * Controller class for the EZ ATM application.
@@ -26,8 +35,16 @@ import util.strategy.impl.ConsistentStrategy;
  * and launching the single ATM interface.
  */
 public class Controller extends JFrame {
+    private static final String DEMO_ACCOUNT = "000001"; // Account the auto demos run on
+    private static final String STRATEGY_NAME = System.getProperty("atm.strategy", "consistent"); // Strategy of the ATMs started here
     private static Controller controller;
-    private JPanel accountsPanel;
+    private final InstrumentedStrategy strategy = new InstrumentedStrategy(StrategyFactory.shared(STRATEGY_NAME)); // Strategy of the ATMs started here, remote for a thin client
+    private final boolean remote = strategy.getStrategy() instanceof RemoteStrategy; // Whether the accounts are kept by a transaction server, so the local data is never loaded
+    private final ShardSet shards = strategy.getStrategy() instanceof ShardedStrategy ? ((ShardedStrategy) strategy.getStrategy()).getShards() : null; // Shards holding the live balances, null unless sharded
+    private final AccountTableModel accountsModel = remote ? null : new AccountTableModel(shards); // Rows of the account table, null for a thin client
+    private final TableRowSorter<AccountTableModel> accountsSorter = remote ? null : new TableRowSorter<>(accountsModel); // Sorts and filters the rows, null for a thin client
+    private final JButton demoDataRaceButton = new JButton("Auto Demo Data Race"); // Starts the race on the inconsistent strategy
+    private final JButton demoNoDataRaceButton = new JButton("Auto Demo No Data Race"); // Starts the race on the consistent strategy
 
     /**
      * Singleton method to get the instance of Controller.
@@ -51,11 +68,15 @@ public class Controller extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
 
-        // Save data to file on window close
+        // Save data to file on window close: the shards fold their logs into their own files, a thin client has none
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosed(WindowEvent e) {
-                Data.writeDataToLocalFile("data.txt");
+                if (shards != null) {
+                    shards.compact();
+                } else if (!remote) {
+                    Data.writeDataToLocalFile("data.txt");
+                }
             }
         });
 
@@ -72,13 +93,8 @@ public class Controller extends JFrame {
         titleLabel.setPreferredSize(new Dimension(720, 100));
         mainPanel.add(titleLabel, BorderLayout.NORTH);
 
-        // Accounts panel setup
-        accountsPanel = new JPanel();
-        accountsPanel.setBackground(Color.WHITE);
-        accountsPanel.setLayout(new GridBagLayout());
-        JScrollPane scrollPane = new JScrollPane(accountsPanel);
-        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
-        mainPanel.add(scrollPane, BorderLayout.CENTER);
+        // Accounts of this process, or a note where the accounts of a thin client are kept
+        mainPanel.add(accountsModel != null ? createAccountsPanel() : createServerPanel(), BorderLayout.CENTER);
 
         // Button panel setup
         JPanel buttonPanel = new JPanel();
@@ -94,42 +110,20 @@ public class Controller extends JFrame {
             refreshData();
             setVisible(true);
         });
-        JButton demoDataRaceButton = new JButton("Auto Demo Data Race");
-        demoDataRaceButton.addActionListener((e)->{
-            dispose();
-            String exePath = "demo_inconsistent.exe";
-            Runtime runtime = Runtime.getRuntime();
-            try {
-                Process process = runtime.exec(exePath);
-                process.waitFor();
-            } catch (IOException | InterruptedException ex) {
-                ex.printStackTrace();
-            }
-            Data.refresh();
-            refreshData();
-            setVisible(true);
-        });
-        JButton demoNoDataRaceButton = new JButton("Auto Demo No Data Race");
-        demoNoDataRaceButton.addActionListener((e)->{
-            dispose();
-            String exePath = "demo_consistent.exe";
-            Runtime runtime = Runtime.getRuntime();
-            try {
-                Process process = runtime.exec(exePath);
-                process.waitFor();
-            } catch (IOException | InterruptedException ex) {
-                ex.printStackTrace();
-            }
-            Data.refresh();
-            refreshData();
-            setVisible(true);
-        });
+        demoDataRaceButton.addActionListener((e) ->
+                runScenario(demoDataRaceButton, Scenario.depositWithdrawRace("inconsistent", DEMO_ACCOUNT, 1)));
+        demoNoDataRaceButton.addActionListener((e) ->
+                runScenario(demoNoDataRaceButton, Scenario.depositWithdrawRace(safeStrategyName(), DEMO_ACCOUNT, 1)));
         JButton manualButton = new JButton("Single ATM");
         manualButton.addActionListener((e) -> {
             dispose();
-            new LoginFrame(new ConsistentStrategy());
+            new LoginFrame(strategy);
         });
 
+        // The demos run on the accounts of the Data instance, which a thin client does not load and shards only seed
+        refreshButton.setEnabled(!remote);
+        setDemosEnabled(!remote && shards == null);
+
         // Set fonts for buttons
         refreshButton.setFont(new Font("Arial", Font.PLAIN, 20));
         demoDataRaceButton.setFont(new Font("Arial", Font.PLAIN, 20));
@@ -163,38 +157,164 @@ public class Controller extends JFrame {
         refreshData();
     }
 
+    /**
+     * Creates the filterable table of the accounts of this process and keeps it updated from balance change events.
+     *
+     * @return The accounts panel
+     */
+    private JPanel createAccountsPanel() {
+        // Accounts table setup, only the visible rows are rendered
+        Color lightBlue = new Color(224, 255, 255);
+        JTable accountsTable = new JTable(accountsModel) {
+            @Override
+            public Component prepareRenderer(TableCellRenderer renderer, int row, int column) {
+                Component component = super.prepareRenderer(renderer, row, column);
+                if (!isRowSelected(row)) {
+                    component.setBackground(row % 2 == 1 ? lightBlue : Color.WHITE);
+                }
+                return component;
+            }
+        };
+        accountsTable.setRowSorter(accountsSorter);
+        accountsTable.setFont(new Font("Arial", Font.PLAIN, 18));
+        accountsTable.setRowHeight(28);
+        accountsTable.setFillsViewportHeight(true);
+        accountsTable.getTableHeader().setFont(new Font("Arial", Font.BOLD, 18));
+        JScrollPane scrollPane = new JScrollPane(accountsTable);
+        scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
+
+        // Filter field, matching account numbers and usernames
+        JTextField filterField = new JTextField();
+        filterField.setFont(new Font("Arial", Font.PLAIN, 18));
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                applyFilter(filterField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                applyFilter(filterField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                applyFilter(filterField.getText());
+            }
+        });
+        JPanel filterPanel = new JPanel(new BorderLayout(10, 0));
+        filterPanel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        JLabel filterLabel = new JLabel("Filter:");
+        filterLabel.setFont(new Font("Arial", Font.PLAIN, 18));
+        filterPanel.add(filterLabel, BorderLayout.WEST);
+        filterPanel.add(filterField, BorderLayout.CENTER);
+
+        JPanel accountsPanel = new JPanel(new BorderLayout());
+        accountsPanel.add(filterPanel, BorderLayout.NORTH);
+        accountsPanel.add(scrollPane, BorderLayout.CENTER);
+
+        // Update the rows from balance change events instead of rescanning the accounts
+        BalanceSubscriber.subscribe(SwingUtilities::invokeLater, accountsModel::applyChanges);
+        return accountsPanel;
+    }
+
+    /**
+     * Creates the panel shown instead of the accounts table when the ATMs are thin clients of a transaction
+     * server, whose accounts this process does not hold.
+     *
+     * @return The server panel
+     */
+    private JPanel createServerPanel() {
+        JPanel serverPanel = new JPanel(new BorderLayout());
+        JLabel serverLabel = new JLabel("Accounts are kept by the transaction server at "
+                + System.getProperty("atm.server.address", "localhost:7200"), JLabel.CENTER);
+        serverLabel.setFont(new Font("Arial", Font.PLAIN, 18));
+        serverPanel.add(serverLabel, BorderLayout.CENTER);
+        return serverPanel;
+    }
+
     /**
      * Refreshes the displayed account information.
-     * Retrieves the latest account data from the data source
-     * and updates the GUI accordingly.
+     * Only the rows whose balance changed are repainted; the whole table is reloaded
+     * if the Data instance or the number of accounts changed. The rows are then sorted again,
+     * since balance updates do not reorder a sorted table by themselves.
      */
     public void refreshData() {
-        List<Account> accounts = Data.getInstance().getAccounts();
-        accountsPanel.removeAll();
-        boolean isAlternate = false;
-        Color lightBlue = new Color(224, 255, 255);
-        GridBagConstraints gbc = new GridBagConstraints();
-        gbc.fill = GridBagConstraints.HORIZONTAL;
-        gbc.insets = new Insets(5, 5, 5, 5);
-        gbc.weightx = 1.0;
-        gbc.gridx = 0;
-        int y = 0;
-        for (Account account : accounts) {
-            JPanel accountPanel = new JPanel();
-            accountPanel.setLayout(new BorderLayout());
-            accountPanel.setBackground(isAlternate ? lightBlue : Color.WHITE);
-            JLabel accountLabel = new JLabel("Account Number: " + account.getAccountNum() +
-                    ", PIN: " + account.getPIN() +
-                    ", Username: " + account.getUsername() +
-                    ", Balance: " + account.getBalance());
-            accountLabel.setFont(new Font("Arial", Font.PLAIN, 20));
-            accountPanel.add(accountLabel, BorderLayout.CENTER);
-            gbc.gridy = y++;
-            accountsPanel.add(accountPanel, gbc);
-            isAlternate = !isAlternate;
+        if (accountsModel == null) {
+            return;
+        }
+        accountsModel.refresh();
+        accountsSorter.sort();
+    }
+
+    /**
+     * Runs a scenario in this process against the live accounts. The table follows the balance changes as they
+     * happen, the button shows the progress and the outcome is shown when the scenario ends. Both demo buttons
+     * are disabled while it runs, so only one demo touches the accounts at a time.
+     *
+     * @param button The button that started the scenario, showing the progress
+     * @param scenario The scenario to run
+     */
+    private void runScenario(JButton button, Scenario scenario) {
+        String text = button.getText();
+        setDemosEnabled(false);
+        button.setText("Running...");
+        new ScenarioEngine().run(scenario, (finished, total) ->
+                        SwingUtilities.invokeLater(() -> button.setText("Running " + finished + "/" + total)))
+                .whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+                    button.setText(text);
+                    setDemosEnabled(true);
+                    if (error != null) {
+                        error.printStackTrace();
+                        JOptionPane.showMessageDialog(Controller.this, "The demo failed.", "Demo Ends", JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    JOptionPane.showMessageDialog(Controller.this, result.toString(), "Demo Ends",
+                            result.isConsistent() ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                }));
+    }
+
+    /**
+     * Names the strategy of the demo without a data race: the strategy of the ATMs started here, so the demo
+     * shares its locks with them, unless that one is the inconsistent strategy.
+     *
+     * @return The strategy name
+     */
+    private static String safeStrategyName() {
+        return "inconsistent".equals(STRATEGY_NAME) ? "consistent" : STRATEGY_NAME;
+    }
+
+    /**
+     * Enables or disables both demo buttons.
+     *
+     * @param enabled Whether the demos can be started
+     */
+    private void setDemosEnabled(boolean enabled) {
+        demoDataRaceButton.setEnabled(enabled);
+        demoNoDataRaceButton.setEnabled(enabled);
+    }
+
+    /**
+     * Shows only the accounts whose account number or username contains the given text.
+     *
+     * @param text The text to look for, ignoring case; empty to show all accounts
+     */
+    private void applyFilter(String text) {
+        if (text.isEmpty()) {
+            accountsSorter.setRowFilter(null);
+        } else {
+            accountsSorter.setRowFilter(RowFilter.regexFilter("(?i)" + Pattern.quote(text),
+                    AccountTableModel.ACCOUNT_NUM_COLUMN, AccountTableModel.USERNAME_COLUMN));
         }
-        accountsPanel.revalidate();
-        accountsPanel.repaint();
+    }
+
+    /**
+     * Retrieves the operation counts and latencies of the ATMs started from this controller.
+     *
+     * @return The values recorded so far
+     */
+    public InstrumentedStrategy.Snapshot getMetrics() {
+        return strategy.snapshot();
     }
 
     /**
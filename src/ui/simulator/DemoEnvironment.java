@@ -2,6 +2,7 @@ package ui.simulator;
 
 import ui.atm.UIUtil;
 import util.Data;
+import util.concurrent.OperationExecutor;
 import util.strategy.AccountOperationStrategy;
 import util.strategy.impl.ConsistentStrategy;
 import util.strategy.impl.InconsistentStrategy;
@@ -136,7 +137,7 @@ public class DemoEnvironment {
             if (depositAmount.get() >= Data.getInstance().getBalanceByAccountNum(accountNum)) {
                 JOptionPane.showMessageDialog(this.demoFrames[0], "Deposit amount exceeds balance.", "Error", JOptionPane.ERROR_MESSAGE);
             } else {
-                new Thread(()->accountOperationStrategy.deposit(accountNum, depositAmount.get())).start();
+                OperationExecutor.getInstance().execute(()->accountOperationStrategy.deposit(accountNum, depositAmount.get()));
             }
         });
         mainPanel.add(enterJButtonPanel, BorderLayout.SOUTH);
@@ -247,7 +248,7 @@ public class DemoEnvironment {
             enterJButtonPanel.setLayout(new BorderLayout());
             enterJButtonPanel.add(enterJButton, BorderLayout.WEST);
             enterJButton.addActionListener((e) -> {
-                new Thread(()->accountOperationStrategy.withdraw(accountNum, withdrawAmount.get())).start();
+                OperationExecutor.getInstance().execute(()->accountOperationStrategy.withdraw(accountNum, withdrawAmount.get()));
 
             });
             mainPanel.add(enterJButtonPanel, BorderLayout.SOUTH);
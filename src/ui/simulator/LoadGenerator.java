@@ -0,0 +1,400 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package ui.simulator;
+
+import pojo.Account;
+import util.Data;
+import util.Money;
+import util.metrics.LatencyHistogram;
+import util.store.AccountKeys;
+import util.strategy.AccountOperationStrategy;
+import util.concurrent.OperationExecutor;
+import util.strategy.StrategyFactory;
+import util.shard.ShardSet;
+import util.strategy.impl.ContentionProfiler;
+import util.strategy.impl.ShardedStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless load generator that runs many simulated ATM sessions against an {@link AccountOperationStrategy}.
+ * <p>
+ * Each worker runs sessions back to back on the shared {@link OperationExecutor}, so at most
+ * atm.executor.maxConcurrent sessions run at once. A session picks an account with a {@link ZipfSampler}
+ * and performs a fixed number of operations on it, drawn from an {@link OperationMix}; transfers go to
+ * a second account drawn the same way. Without a target rate the workers issue operations as fast as
+ * the strategy allows (closed loop). With a target rate each worker follows a fixed schedule and latency
+ * is measured from the scheduled start, so time spent waiting behind a slow operation is counted.
+ * <p>
+ * {@link #main(String[])} runs against accounts held in memory only, so the data file and the log are not changed.
+ * The strategies never reject an operation, so at the end the total balance must equal the starting
+ * total plus deposits minus withdrawals. The report says whether it does.
+ * <p>
+ * {@link #main(String[])} is configured with these system properties:
+ * <ul>
+ *     <li>atm.sim.strategy - consistent, inconsistent, striped, lockfree or sharded, default consistent</li>
+ *     <li>atm.shards.count - number of in-memory shards for the sharded strategy, default 4</li>
+ *     <li>atm.sim.accounts - number of generated accounts, default 0 to use copies of the accounts in the data file</li>
+ *     <li>atm.sim.concurrency - number of concurrent sessions, default 64</li>
+ *     <li>atm.sim.rate - target operations per second over all sessions, default 0 for closed loop</li>
+ *     <li>atm.sim.durationSeconds - how long to run, default 10</li>
+ *     <li>atm.sim.sessions - stop after this many sessions, default 0 for no limit</li>
+ *     <li>atm.sim.opsPerSession - operations per session, default 5</li>
+ *     <li>atm.sim.mix - operation weights, default deposit=25,withdraw=25,transfer=25,inquire=25</li>
+ *     <li>atm.sim.zipf - account skew, default 0 for uniform</li>
+ *     <li>atm.sim.maxAmount - largest whole amount per operation, default 100</li>
+ *     <li>atm.sim.seed - random seed, default random</li>
+ * </ul>
+ * With atm.profile.contention=true the {@link ContentionProfiler} report of the consistent strategy is printed too.
+ */
+public class LoadGenerator {
+    private final AccountOperationStrategy strategy; // Strategy under test
+    private final List<String> accountNums; // Accounts the sessions pick from
+    private final OperationMix mix; // Operation weights
+    private final ZipfSampler sampler; // Account popularity
+    private final int concurrency; // Number of worker threads
+    private final double rate; // Target operations per second, 0 for closed loop
+    private final long durationNanos; // Run time
+    private final long sessionLimit; // Maximum number of sessions, 0 for no limit
+    private final int opsPerSession; // Operations per session
+    private final int maxAmount; // Largest whole amount per operation
+    private final long seed; // Seed of the first worker, the others follow
+
+    /**
+     * Constructs a load generator.
+     *
+     * @param strategy The strategy under test
+     * @param accountNums The accounts to use, the first ones are the hottest under skew
+     * @param mix The operation weights
+     * @param skew The Zipf exponent, 0 for uniform
+     * @param concurrency The number of concurrent sessions
+     * @param rate The target operations per second over all sessions, 0 for closed loop
+     * @param durationMillis How long to run
+     * @param sessionLimit The maximum number of sessions, 0 for no limit
+     * @param opsPerSession The operations per session
+     * @param maxAmount The largest whole amount per operation
+     * @param seed The random seed
+     */
+    public LoadGenerator(AccountOperationStrategy strategy, List<String> accountNums, OperationMix mix, double skew,
+                         int concurrency, double rate, long durationMillis, long sessionLimit, int opsPerSession,
+                         int maxAmount, long seed) {
+        this.strategy = strategy;
+        this.accountNums = new ArrayList<>(accountNums);
+        this.mix = mix;
+        this.sampler = new ZipfSampler(accountNums.size(), skew);
+        this.concurrency = Math.max(1, concurrency);
+        this.rate = Math.max(0, rate);
+        this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        this.sessionLimit = sessionLimit;
+        this.opsPerSession = Math.max(1, opsPerSession);
+        this.maxAmount = Math.max(1, maxAmount);
+        this.seed = seed;
+    }
+
+    /**
+     * Runs the sessions until the duration or the session limit is reached.
+     *
+     * @return The report of the run
+     * @throws InterruptedException If interrupted while waiting for the workers
+     * @throws IllegalStateException If a session failed
+     */
+    public Report run() throws InterruptedException {
+        long before = totalBalanceMinor();
+        AtomicLong sessionsStarted = new AtomicLong();
+        Worker[] workers = new Worker[concurrency];
+        CompletableFuture<?>[] running = new CompletableFuture<?>[concurrency];
+        long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Worker(new SplittableRandom(seed + i), start, i, sessionsStarted);
+            running[i] = OperationExecutor.getInstance().execute(workers[i]);
+        }
+        try {
+            CompletableFuture.allOf(running).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A session failed", e.getCause());
+        }
+        long elapsed = System.nanoTime() - start;
+
+        LatencyHistogram[] latencies = new LatencyHistogram[OperationMix.Operation.values().length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        long sessions = 0;
+        long deposited = 0;
+        long withdrawn = 0;
+        for (Worker worker : workers) {
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i].add(worker.latencies[i]);
+            }
+            sessions += worker.sessions;
+            deposited += worker.depositedMinor;
+            withdrawn += worker.withdrawnMinor;
+        }
+        return new Report(elapsed, sessions, latencies, before + deposited - withdrawn, totalBalanceMinor());
+    }
+
+    /**
+     * Sums the balances of the accounts used by the sessions, read through the strategy so accounts held
+     * outside the Data singleton, as by the sharded strategy, are found too.
+     *
+     * @return The total balance in minor units
+     */
+    private long totalBalanceMinor() {
+        long total = 0;
+        for (String accountNum : accountNums) {
+            Account account = strategy.inquire(accountNum);
+            if (account != null) {
+                total += account.getBalanceMinor();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * One worker running sessions back to back.
+     */
+    private class Worker implements Runnable {
+        private final SplittableRandom random; // Random source of this worker
+        private final long start; // Start of the run
+        private final long deadline; // End of the run
+        private final long interval; // Time between scheduled operations, 0 for closed loop
+        private final long firstSlot; // Offset of the first scheduled operation, staggers the workers
+        private final AtomicLong sessionsStarted; // Sessions started by all workers
+        private final LatencyHistogram[] latencies = new LatencyHistogram[OperationMix.Operation.values().length];
+        private long sessions; // Sessions completed by this worker
+        private long depositedMinor; // Total deposited by this worker
+        private long withdrawnMinor; // Total withdrawn by this worker
+
+        /**
+         * Constructs a worker.
+         *
+         * @param random The random source
+         * @param start The start of the run
+         * @param index The worker number
+         * @param sessionsStarted The shared session counter
+         */
+        Worker(SplittableRandom random, long start, int index, AtomicLong sessionsStarted) {
+            this.random = random;
+            this.start = start;
+            this.deadline = start + durationNanos;
+            this.interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * concurrency / rate) : 0;
+            this.firstSlot = interval * index / concurrency;
+            this.sessionsStarted = sessionsStarted;
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void run() {
+            long scheduled = start + firstSlot;
+            while (System.nanoTime() < deadline && (sessionLimit <= 0 || sessionsStarted.getAndIncrement() < sessionLimit)) {
+                String accountNum = accountNums.get(sampler.next(random));
+                for (int i = 0; i < opsPerSession; i++) {
+                    long begin;
+                    if (interval > 0) {
+                        long wait = scheduled - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        begin = scheduled;
+                        scheduled += interval;
+                    } else {
+                        begin = System.nanoTime();
+                    }
+                    if (begin >= deadline) {
+                        return;
+                    }
+                    OperationMix.Operation operation = mix.next(random);
+                    int amount = 1 + random.nextInt(maxAmount);
+                    switch (operation) {
+                        case DEPOSIT:
+                            strategy.deposit(accountNum, amount);
+                            depositedMinor += Money.toMinor(amount);
+                            break;
+                        case WITHDRAW:
+                            strategy.withdraw(accountNum, amount);
+                            withdrawnMinor += Money.toMinor(amount);
+                            break;
+                        case TRANSFER:
+                            strategy.transfer(accountNum, accountNums.get(sampler.next(random)), amount);
+                            break;
+                        default:
+                            strategy.inquire(accountNum);
+                            break;
+                    }
+                    latencies[operation.ordinal()].record(System.nanoTime() - begin);
+                }
+                sessions++;
+            }
+        }
+    }
+
+    /**
+     * Results of a load generator run.
+     */
+    public static class Report {
+        private final long elapsedNanos; // Wall-clock time of the run
+        private final long sessions; // Completed sessions
+        private final LatencyHistogram[] latencies; // Latency per operation
+        private final long expectedTotalMinor; // Starting total plus deposits minus withdrawals
+        private final long actualTotalMinor; // Total balance after the run
+
+        /**
+         * Constructs a report.
+         *
+         * @param elapsedNanos The wall-clock time of the run
+         * @param sessions The number of completed sessions
+         * @param latencies The latency histogram of each operation
+         * @param expectedTotalMinor The total balance the run should end with
+         * @param actualTotalMinor The total balance the run ended with
+         */
+        Report(long elapsedNanos, long sessions, LatencyHistogram[] latencies, long expectedTotalMinor, long actualTotalMinor) {
+            this.elapsedNanos = elapsedNanos;
+            this.sessions = sessions;
+            this.latencies = latencies;
+            this.expectedTotalMinor = expectedTotalMinor;
+            this.actualTotalMinor = actualTotalMinor;
+        }
+
+        /**
+         * Retrieves the number of operations performed.
+         *
+         * @return The operation count
+         */
+        public long getOperations() {
+            long total = 0;
+            for (LatencyHistogram latency : latencies) {
+                total += latency.getCount();
+            }
+            return total;
+        }
+
+        /**
+         * Retrieves the throughput of the run.
+         *
+         * @return Operations per second
+         */
+        public double getThroughput() {
+            return getOperations() * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        /**
+         * Retrieves the latencies of one operation.
+         *
+         * @param operation The operation
+         * @return The latency histogram
+         */
+        public LatencyHistogram getLatency(OperationMix.Operation operation) {
+            return latencies[operation.ordinal()];
+        }
+
+        /**
+         * Retrieves the latencies of all operations together.
+         *
+         * @return A new histogram holding every latency
+         */
+        public LatencyHistogram getOverallLatency() {
+            LatencyHistogram overall = new LatencyHistogram();
+            for (LatencyHistogram latency : latencies) {
+                overall.add(latency);
+            }
+            return overall;
+        }
+
+        /**
+         * Whether the total balance matches the starting total plus deposits minus withdrawals.
+         *
+         * @return true if no money was created or lost
+         */
+        public boolean isMoneyConserved() {
+            return expectedTotalMinor == actualTotalMinor;
+        }
+
+        /**
+         * Formats the report over several lines.
+         *
+         * @return The report as text
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("sessions=%d operations=%d elapsed=%.2fs throughput=%.0f ops/s%n",
+                    sessions, getOperations(), elapsedNanos / 1e9, getThroughput()));
+            text.append(String.format("  %-9s %s%n", "all", getOverallLatency().summary()));
+            for (OperationMix.Operation operation : OperationMix.Operation.values()) {
+                text.append(String.format("  %-9s %s%n", operation.name().toLowerCase(), getLatency(operation).summary()));
+            }
+            text.append(String.format("money conserved: %s (expected %.2f, actual %.2f)",
+                    isMoneyConserved() ? "yes" : "NO", Money.toMajor(expectedTotalMinor), Money.toMajor(actualTotalMinor)));
+            return text.toString();
+        }
+    }
+
+    /**
+     * Runs the load generator with the configuration from system properties and prints the report.
+     *
+     * @param args Not used
+     * @throws InterruptedException If interrupted while running
+     */
+    public static void main(String[] args) throws InterruptedException {
+        String strategyName = System.getProperty("atm.sim.strategy", "consistent");
+        int generatedAccounts = Integer.getInteger("atm.sim.accounts", 0);
+        List<Account> accounts = new ArrayList<>();
+        if (generatedAccounts > 0) {
+            for (int i = 0; i < generatedAccounts; i++) {
+                accounts.add(new Account(AccountKeys.formatAccountNum(i), "0000", "Simulated" + i, 1000));
+            }
+        } else {
+            // Work on copies so the run does not change the data file or the log
+            for (Account account : Data.getInstance().getAccounts()) {
+                Account copy = new Account(account.getAccountNum(), account.getPIN(), account.getUsername(), 0);
+                copy.setBalanceMinor(account.getBalanceMinor());
+                accounts.add(copy);
+            }
+        }
+        Data.setInstance(Data.inMemory(accounts));
+        // The sharded strategy gets in-memory shards of the same copies, not the shards on disk
+        AccountOperationStrategy strategy = "sharded".equals(strategyName)
+                ? new ShardedStrategy(ShardSet.inMemory(accounts, Integer.getInteger("atm.shards.count", 4)))
+                : StrategyFactory.create(strategyName);
+        List<String> accountNums = new ArrayList<>(accounts.size());
+        for (Account account : accounts) {
+            accountNums.add(account.getAccountNum());
+        }
+        if (accountNums.isEmpty()) {
+            System.err.println("No accounts to run against, set atm.sim.accounts or provide data.txt");
+            return;
+        }
+
+        OperationMix mix = OperationMix.parse(System.getProperty("atm.sim.mix", "deposit=25,withdraw=25,transfer=25,inquire=25"));
+        double skew = Double.parseDouble(System.getProperty("atm.sim.zipf", "0"));
+        int concurrency = Integer.getInteger("atm.sim.concurrency", 64);
+        double rate = Double.parseDouble(System.getProperty("atm.sim.rate", "0"));
+        long durationMillis = TimeUnit.SECONDS.toMillis(Long.getLong("atm.sim.durationSeconds", 10));
+        long sessions = Long.getLong("atm.sim.sessions", 0);
+        int opsPerSession = Integer.getInteger("atm.sim.opsPerSession", 5);
+        int maxAmount = Integer.getInteger("atm.sim.maxAmount", 100);
+        long seed = Long.getLong("atm.sim.seed", System.nanoTime());
+
+        System.out.println("strategy=" + strategyName + " accounts=" + accountNums.size() + " concurrency=" + concurrency
+                + " rate=" + (rate > 0 ? rate + " ops/s" : "closed loop") + " mix=" + mix + " zipf=" + skew + " seed=" + seed);
+        LoadGenerator generator = new LoadGenerator(strategy, accountNums, mix, skew, concurrency, rate,
+                durationMillis, sessions, opsPerSession, maxAmount, seed);
+        System.out.println(generator.run());
+        if (ContentionProfiler.getInstance().isEnabled()) {
+            System.out.println(ContentionProfiler.getInstance().report(10));
+        }
+        System.exit(0);
+    }
+}
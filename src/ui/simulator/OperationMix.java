@@ -0,0 +1,106 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package ui.simulator;
+
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Relative weights of the operations issued by the {@link LoadGenerator}.
+ */
+public class OperationMix {
+
+    /**
+     * The operations a simulated ATM session can perform.
+     */
+    public enum Operation {
+        DEPOSIT, WITHDRAW, TRANSFER, INQUIRE
+    }
+
+    private final int[] cumulative = new int[Operation.values().length]; // Running sum of the weights
+
+    /**
+     * Constructs a mix from weights given in the order deposit, withdraw, transfer, inquire.
+     *
+     * @param weights The non-negative weight of each operation
+     * @throws IllegalArgumentException If a weight is negative, the count is wrong or all weights are 0
+     */
+    public OperationMix(int... weights) {
+        if (weights.length != cumulative.length) {
+            throw new IllegalArgumentException("Expected " + cumulative.length + " weights, got " + weights.length);
+        }
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("Negative weight for " + Operation.values()[i]);
+            }
+            total += weights[i];
+            cumulative[i] = total;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one operation needs a positive weight");
+        }
+    }
+
+    /**
+     * Parses a mix such as "deposit=40,withdraw=30,transfer=20,inquire=10".
+     * Operations that are not listed get weight 0.
+     *
+     * @param spec The mix specification
+     * @return The parsed mix
+     * @throws IllegalArgumentException If the specification is malformed
+     */
+    public static OperationMix parse(String spec) {
+        int[] weights = new int[Operation.values().length];
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Expected operation=weight: " + part);
+            }
+            try {
+                Operation operation = Operation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT));
+                weights[operation.ordinal()] = Integer.parseInt(pair[1].trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid operation weight: " + part, e);
+            }
+        }
+        return new OperationMix(weights);
+    }
+
+    /**
+     * Draws an operation according to the weights.
+     *
+     * @param random The random source
+     * @return The operation
+     */
+    public Operation next(SplittableRandom random) {
+        int r = random.nextInt(cumulative[cumulative.length - 1]);
+        for (int i = 0; i < cumulative.length; i++) {
+            if (r < cumulative[i]) {
+                return Operation.values()[i];
+            }
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * Formats the mix as the weight of each operation.
+     *
+     * @return The mix as text
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < cumulative.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(Operation.values()[i].name().toLowerCase(Locale.ROOT)).append('=')
+                    .append(cumulative[i] - (i == 0 ? 0 : cumulative[i - 1]));
+        }
+        return text.toString();
+    }
+}
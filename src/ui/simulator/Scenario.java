@@ -0,0 +1,89 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package ui.simulator;
+
+import util.strategy.AccountCommand;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A scripted sequence of account operations run in process by the {@link ScenarioEngine}.
+ * <p>
+ * A scenario is a list of steps. The commands of a step are started together, so they race on the accounts
+ * they share, and the next step starts once all of them have finished. The strategy is given by the name
+ * accepted by {@link util.strategy.StrategyFactory}.
+ */
+public class Scenario {
+    private final String name; // Name shown to the user
+    private final String strategy; // Name of the strategy running the commands
+    private final List<List<AccountCommand>> steps; // Commands started together, per step
+
+    /**
+     * Constructs a scenario.
+     *
+     * @param name The name shown to the user
+     * @param strategy The name of the strategy running the commands
+     * @param steps The commands started together, per step
+     */
+    public Scenario(String name, String strategy, List<List<AccountCommand>> steps) {
+        this.name = name;
+        this.strategy = strategy;
+        List<List<AccountCommand>> copy = new ArrayList<>(steps.size());
+        for (List<AccountCommand> step : steps) {
+            copy.add(Collections.unmodifiableList(new ArrayList<>(step)));
+        }
+        this.steps = Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Creates the scenario of the auto demo: a deposit of 100 and a withdrawal of 40 on the same account,
+     * started together. Run with the inconsistent strategy one of the two updates is lost.
+     *
+     * @param strategy The name of the strategy
+     * @param accountNum The account both operations apply to
+     * @param rounds The number of times the pair is repeated
+     * @return The scenario
+     */
+    public static Scenario depositWithdrawRace(String strategy, String accountNum, int rounds) {
+        List<List<AccountCommand>> steps = new ArrayList<>(rounds);
+        for (int i = 0; i < rounds; i++) {
+            List<AccountCommand> step = new ArrayList<>(2);
+            step.add(AccountCommand.deposit(accountNum, 100));
+            step.add(AccountCommand.withdraw(accountNum, 40));
+            steps.add(step);
+        }
+        return new Scenario("Deposit and withdraw race (" + strategy + ")", strategy, steps);
+    }
+
+    /**
+     * Retrieves the name shown to the user.
+     *
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Retrieves the name of the strategy running the commands.
+     *
+     * @return The strategy name
+     */
+    public String getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Retrieves the steps.
+     *
+     * @return The read-only commands per step
+     */
+    public List<List<AccountCommand>> getSteps() {
+        return steps;
+    }
+}
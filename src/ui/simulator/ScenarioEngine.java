@@ -0,0 +1,249 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package ui.simulator;
+
+import pojo.Account;
+import util.Data;
+import util.Money;
+import util.concurrent.OperationExecutor;
+import util.strategy.AccountCommand;
+import util.strategy.AccountOperationStrategy;
+import util.strategy.StrategyFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs {@link Scenario}s inside the current process, against the live {@link Data} instance.
+ * <p>
+ * The commands run on the shared {@link OperationExecutor} through the shared instance of the strategy named by
+ * the scenario, {@link StrategyFactory#shared(String)}, so they lock against the ATMs of this process, their
+ * balance changes reach the transaction log and the balance event bus like those of an ATM, and open
+ * frames follow them as they happen. Nothing is written to or reread from the data file.
+ * <p>
+ * Before the first step the engine notes the balance of every account the scenario touches and adds up the
+ * changes the commands should make, so the result can tell whether any update was lost.
+ */
+public class ScenarioEngine {
+
+    /**
+     * Receives the progress of a running scenario, on an executor thread.
+     */
+    public interface Listener {
+
+        /**
+         * Called when all commands of a step have finished.
+         *
+         * @param finished The number of finished steps
+         * @param total The number of steps of the scenario
+         */
+        void onStepFinished(int finished, int total);
+    }
+
+    private final OperationExecutor executor; // Runs the commands
+
+    /**
+     * Constructs an engine running on the shared executor.
+     */
+    public ScenarioEngine() {
+        this(OperationExecutor.getInstance());
+    }
+
+    /**
+     * Constructs an engine running on the given executor.
+     *
+     * @param executor The executor for the commands
+     */
+    public ScenarioEngine(OperationExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Starts a scenario.
+     *
+     * @param scenario The scenario to run
+     * @param listener Receives the progress, may be null
+     * @return A future completed with the outcome once the last step has finished, or exceptionally if a command threw
+     * @throws IllegalArgumentException If the strategy of the scenario is unknown
+     */
+    public CompletableFuture<Result> run(Scenario scenario, Listener listener) {
+        AccountOperationStrategy strategy = StrategyFactory.shared(scenario.getStrategy());
+        List<List<AccountCommand>> steps = scenario.getSteps();
+        Map<String, Long> expected = expectedBalances(steps);
+        long start = System.nanoTime();
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < steps.size(); i++) {
+            List<AccountCommand> step = steps.get(i);
+            int finished = i + 1;
+            chain = chain.thenCompose(ignored -> runStep(strategy, step)).thenRun(() -> {
+                if (listener != null) {
+                    listener.onStepFinished(finished, steps.size());
+                }
+            });
+        }
+        return chain.thenApply(ignored -> {
+            Map<String, Long> actual = new LinkedHashMap<>();
+            for (String accountNum : expected.keySet()) {
+                actual.put(accountNum, Data.getInstance().getAccountByAccountNum(accountNum).getBalanceMinor());
+            }
+            return new Result(scenario.getName(), System.nanoTime() - start, expected, actual);
+        });
+    }
+
+    /**
+     * Starts all commands of a step together.
+     *
+     * @param strategy The strategy running the commands
+     * @param step The commands
+     * @return A future completed when all commands have finished
+     */
+    private CompletableFuture<Void> runStep(AccountOperationStrategy strategy, List<AccountCommand> step) {
+        CompletableFuture<?>[] running = new CompletableFuture<?>[step.size()];
+        for (int i = 0; i < running.length; i++) {
+            AccountCommand command = step.get(i);
+            running[i] = executor.execute(() -> apply(strategy, command));
+        }
+        return CompletableFuture.allOf(running);
+    }
+
+    /**
+     * Applies a command through the single-operation method of the strategy.
+     *
+     * @param strategy The strategy
+     * @param command The command
+     */
+    private static void apply(AccountOperationStrategy strategy, AccountCommand command) {
+        switch (command.getType()) {
+            case DEPOSIT:
+                strategy.deposit(command.getAccountNum(), command.getMoney());
+                break;
+            case WITHDRAW:
+                strategy.withdraw(command.getAccountNum(), command.getMoney());
+                break;
+            default:
+                strategy.transfer(command.getAccountNum(), command.getToAccountNum(), command.getMoney());
+                break;
+        }
+    }
+
+    /**
+     * Computes the balance every touched account should have after the scenario, starting from the current balances.
+     * Commands on unknown accounts are left out, as the strategies ignore them.
+     *
+     * @param steps The steps of the scenario
+     * @return The expected balance in minor units per account, in order of first use
+     */
+    private static Map<String, Long> expectedBalances(List<List<AccountCommand>> steps) {
+        Map<String, Long> expected = new LinkedHashMap<>();
+        for (List<AccountCommand> step : steps) {
+            for (AccountCommand command : step) {
+                long amount = Money.toMinor(command.getMoney());
+                Account from = Data.getInstance().getAccountByAccountNum(command.getAccountNum());
+                if (from == null) {
+                    continue;
+                }
+                switch (command.getType()) {
+                    case DEPOSIT:
+                        addTo(expected, from, amount);
+                        break;
+                    case WITHDRAW:
+                        addTo(expected, from, -amount);
+                        break;
+                    default:
+                        Account to = Data.getInstance().getAccountByAccountNum(command.getToAccountNum());
+                        if (to != null) {
+                            addTo(expected, from, -amount);
+                            addTo(expected, to, amount);
+                        }
+                        break;
+                }
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Adds a change to the expected balance of an account, starting from its current balance.
+     *
+     * @param expected The expected balances
+     * @param account The account
+     * @param delta The change in minor units
+     */
+    private static void addTo(Map<String, Long> expected, Account account, long delta) {
+        expected.merge(account.getAccountNum(), account.getBalanceMinor() + delta, (current, ignored) -> current + delta);
+    }
+
+    /**
+     * The outcome of a scenario: the expected and actual balance of every account it touched.
+     */
+    public static class Result {
+        private final String name; // Name of the scenario
+        private final long elapsedNanos; // Time from start to the end of the last step
+        private final Map<String, Long> expected; // Expected balance in minor units per account
+        private final Map<String, Long> actual; // Balance in minor units per account after the last step
+
+        /**
+         * Constructs a result.
+         *
+         * @param name The name of the scenario
+         * @param elapsedNanos The running time
+         * @param expected The expected balance per account
+         * @param actual The balance per account after the last step
+         */
+        Result(String name, long elapsedNanos, Map<String, Long> expected, Map<String, Long> actual) {
+            this.name = name;
+            this.elapsedNanos = elapsedNanos;
+            this.expected = Collections.unmodifiableMap(expected);
+            this.actual = Collections.unmodifiableMap(actual);
+        }
+
+        /**
+         * Retrieves the expected balances.
+         *
+         * @return The expected balance in minor units per account
+         */
+        public Map<String, Long> getExpected() {
+            return expected;
+        }
+
+        /**
+         * Retrieves the balances after the scenario.
+         *
+         * @return The balance in minor units per account
+         */
+        public Map<String, Long> getActual() {
+            return actual;
+        }
+
+        /**
+         * Whether every account ended with its expected balance, that is, no update was lost.
+         *
+         * @return true if all balances match
+         */
+        public boolean isConsistent() {
+            return expected.equals(actual);
+        }
+
+        /**
+         * Formats the outcome for display.
+         *
+         * @return The outcome, one line per account
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(name).append(String.format(" finished in %.1f s", elapsedNanos / 1e9));
+            for (Map.Entry<String, Long> entry : expected.entrySet()) {
+                text.append(System.lineSeparator()).append(String.format("Account %s: balance %.2f, expected %.2f",
+                        entry.getKey(), Money.toMajor(actual.get(entry.getKey())), Money.toMajor(entry.getValue())));
+            }
+            text.append(System.lineSeparator()).append(isConsistent() ? "No update was lost." : "Updates were lost to a data race.");
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package ui.simulator;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws indexes from 0 to n - 1 with Zipf-distributed popularity, where index k is drawn with
+ * probability proportional to 1 / (k + 1)^skew. A skew of 0 draws uniformly; around 1 a small
+ * set of hot accounts receives most of the traffic.
+ */
+public class ZipfSampler {
+    private final int n; // Number of indexes
+    private final double[] cumulative; // Cumulative weights, null when uniform
+
+    /**
+     * Constructs a sampler.
+     *
+     * @param n The number of indexes, at least 1
+     * @param skew The Zipf exponent, 0 for uniform
+     * @throws IllegalArgumentException If n is not positive or skew is negative
+     */
+    public ZipfSampler(int n, double skew) {
+        if (n < 1 || skew < 0) {
+            throw new IllegalArgumentException("Need n >= 1 and skew >= 0, got n=" + n + " skew=" + skew);
+        }
+        this.n = n;
+        if (skew == 0) {
+            cumulative = null;
+        } else {
+            cumulative = new double[n];
+            double total = 0;
+            for (int k = 0; k < n; k++) {
+                total += 1 / Math.pow(k + 1, skew);
+                cumulative[k] = total;
+            }
+        }
+    }
+
+    /**
+     * Draws an index.
+     *
+     * @param random The random source
+     * @return The index
+     */
+    public int next(SplittableRandom random) {
+        if (cumulative == null) {
+            return random.nextInt(n);
+        }
+        double u = random.nextDouble() * cumulative[n - 1];
+        int position = Arrays.binarySearch(cumulative, u);
+        return position >= 0 ? position : Math.min(n - 1, -position - 1);
+    }
+}
@@ -6,17 +6,83 @@
 package util;
 
 import pojo.Account;
+import util.event.BalanceEventBus;
+import util.log.FsyncPolicy;
+import util.log.TransactionLog;
+import util.log.TransactionRecord;
+import util.store.AccountFileParser;
+import util.store.AccountKeys;
+import util.store.AccountStore;
+import util.store.CachedAccountStore;
+import util.store.ColumnarAccountStore;
+import util.store.MappedAccountStore;
+import util.store.MemoryAccountStore;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Utility class for managing accounts data.
+ * Accounts are held by an {@link AccountStore}. By default this is a {@link MemoryAccountStore} filled
+ * from the data file; with atm.store=mapped it is a {@link MappedAccountStore} over a binary account file
+ * (atm.store.file, default "data.bin" next to the data file) that is converted from the data file on first use.
+ * With atm.store=cached it is a {@link CachedAccountStore} over the same binary file that reads accounts on demand
+ * and keeps at most atm.store.cacheSize of them (default 10000) on the heap.
+ * With atm.store=columnar it is a {@link ColumnarAccountStore} filled from the data file that keeps the accounts
+ * in primitive arrays instead of one object per account.
+ * <p>
+ * Every operation applied by the strategies is written ahead to a {@link TransactionLog}, inside the critical
+ * section that applies it, and the operation returns once its record is as durable as the fsync policy asks.
+ * The data file is a snapshot that records the last log sequence number it contains,
+ * and on startup the log records after that number are replayed on top of it.
+ * The mapped and cached stores keep balances in the file itself and do not use the log, so a crash may persist
+ * half of a transfer with them; only the stores that use the log are crash-consistent.
+ * The log is also what {@link util.replication} ships from a primary to its backups: a backup applies the
+ * records with {@link #applyReplicated(List)} and logs them under the same sequence numbers.
+ * The log is configured with these system properties:
+ * <ul>
+ *     <li>atm.journal.enabled - whether to log operations, default true</li>
+ *     <li>atm.journal.dir - log directory, default "journal" next to the data file</li>
+ *     <li>atm.journal.fsync - always, interval or never, default always</li>
+ *     <li>atm.journal.fsyncIntervalMillis - force interval for the interval policy, default 100</li>
+ *     <li>atm.snapshot.intervalSeconds - how often the {@link Snapshotter} folds the log into the data file, default 30, 0 turns it off</li>
+ * </ul>
+ * Data files of at least atm.load.parallelThresholdBytes (default 4 MiB) are cut into newline-aligned
+ * chunks that are parsed on a fork-join pool of atm.load.parallelism threads (default one per core, 1 turns it off).
+ * The chunks are merged in file order, so the account listing and the duplicate handling do not depend on timing.
  */
 public class Data {
-    private List<Account> accounts;
-    private static Data data = readDataFromLocalFile("data.txt");
+    private static final String CHECKPOINT_PREFIX = "#checkpoint "; // Snapshot header holding the last log sequence number
+    private static final boolean JOURNAL_ENABLED = Boolean.parseBoolean(System.getProperty("atm.journal.enabled", "true"));
+    private static final FsyncPolicy JOURNAL_FSYNC = FsyncPolicy.parse(System.getProperty("atm.journal.fsync", "always"));
+    private static final long JOURNAL_FSYNC_INTERVAL = Long.getLong("atm.journal.fsyncIntervalMillis", 100);
+    private static final long SNAPSHOT_INTERVAL = Long.getLong("atm.snapshot.intervalSeconds", 30);
+    private static final Object SNAPSHOT_LOCK = new Object(); // Serializes writers of the data file
+    private static final String STORE = System.getProperty("atm.store", "memory");
+    private static final int STORE_CACHE_SIZE = Integer.getInteger("atm.store.cacheSize", 10000);
+    private static final int LOAD_PARALLELISM = Integer.getInteger("atm.load.parallelism", Runtime.getRuntime().availableProcessors());
+    private static final long LOAD_PARALLEL_THRESHOLD = Long.getLong("atm.load.parallelThresholdBytes", 4L << 20);
+
+    private AccountStore store = "columnar".equals(STORE) ? new ColumnarAccountStore() : new MemoryAccountStore(); // Backing storage of the accounts
+    private String path; // Data file this instance was loaded from
+    private volatile long checkpointSeq; // Last log sequence number contained in the data file
+    private volatile TransactionLog log; // Log of applied operations, null when logging is off
+    private Snapshotter snapshotter; // Background log compaction, null when off
+    private final Set<Long> replayedTransactions = new HashSet<>(); // Cross-shard transactions found in the log on load
+    private static Data data = load("data.txt");
 
     /**
      * Private constructor to prevent instantiation from outside the class.
@@ -31,29 +97,135 @@ public class Data {
     public static Data getInstance() {
         return data;
     }
-    public static void refresh() {data = readDataFromLocalFile("data.txt");}
+
+    /**
+     * Reloads the singleton instance from the data file and the transaction log.
+     */
+    public static void refresh() {
+        data.close();
+        data = load("data.txt");
+    }
+
+    /**
+     * Replaces the singleton instance and closes the previous one.
+     * This lets the strategies run against accounts that do not come from the data file, such as generated load.
+     *
+     * @param instance The new singleton instance.
+     */
+    public static void setInstance(Data instance) {
+        Data previous = data;
+        data = instance;
+        previous.close();
+    }
+
+    /**
+     * Creates a Data object that holds the given accounts in memory only, with no data file,
+     * transaction log or snapshots behind it.
+     *
+     * @param accounts The accounts to hold.
+     * @return The Data object.
+     */
+    public static Data inMemory(Iterable<Account> accounts) {
+        Data ret = new Data();
+        for (Account account : accounts) {
+            ret.addAccount(account);
+        }
+        return ret;
+    }
+
+    /**
+     * Loads the snapshot in the data file, replays the transaction log on top of it
+     * and opens the log for new operations.
+     *
+     * @param path The path to the data file.
+     * @return The Data object holding the recovered state.
+     */
+    public static Data load(String path) {
+        return load(path, journalDirectory(path), storeFile(path), SNAPSHOT_INTERVAL);
+    }
+
+    /**
+     * Loads a data file with its own log directory and binary account file, as the shards of a
+     * {@link util.shard.ShardSet} do, and optionally without background compaction.
+     *
+     * @param path The path to the data file.
+     * @param journalDirectory The transaction log directory.
+     * @param storeFile The binary account file of the mapped and cached stores.
+     * @param snapshotIntervalSeconds How often the {@link Snapshotter} compacts the log, 0 to leave it to the caller.
+     * @return The Data object holding the recovered state.
+     */
+    public static Data load(String path, Path journalDirectory, Path storeFile, long snapshotIntervalSeconds) {
+        if ("mapped".equals(STORE) || "cached".equals(STORE)) {
+            Data ret = new Data();
+            ret.path = path;
+            try {
+                ret.store = "mapped".equals(STORE)
+                        ? MappedAccountStore.openOrConvert(storeFile, Paths.get(path), journalDirectory)
+                        : CachedAccountStore.openOrConvert(storeFile, Paths.get(path), journalDirectory, STORE_CACHE_SIZE);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (snapshotIntervalSeconds > 0) {
+                ret.snapshotter = new Snapshotter(ret, snapshotIntervalSeconds);
+            }
+            return ret;
+        }
+        Data ret = readDataFromLocalFile(path);
+        ret.path = path;
+        if (JOURNAL_ENABLED) {
+            try {
+                long lastSeq = TransactionLog.replay(journalDirectory, ret.checkpointSeq, ret::apply);
+                ret.log = new TransactionLog(journalDirectory, lastSeq, JOURNAL_FSYNC, JOURNAL_FSYNC_INTERVAL);
+                if (snapshotIntervalSeconds > 0) {
+                    ret.snapshotter = new Snapshotter(ret, snapshotIntervalSeconds);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Resolves the binary account file for a data file.
+     *
+     * @param path The path to the data file.
+     * @return The binary account file.
+     */
+    private static Path storeFile(String path) {
+        String configured = System.getProperty("atm.store.file");
+        if (configured != null) {
+            return Paths.get(configured);
+        }
+        return Paths.get(path).toAbsolutePath().getParent().resolve("data.bin");
+    }
+
+    /**
+     * Resolves the transaction log directory for a data file.
+     *
+     * @param path The path to the data file.
+     * @return The log directory.
+     */
+    private static Path journalDirectory(String path) {
+        String configured = System.getProperty("atm.journal.dir");
+        if (configured != null) {
+            return Paths.get(configured);
+        }
+        Path parent = Paths.get(path).toAbsolutePath().getParent();
+        return parent.resolve("journal");
+    }
+
     /**
      * Reads account data from a local file and initializes Data object.
+     * Malformed lines are skipped and reported on the error stream with their line number.
      *
      * @param path The path to the data file.
      * @return The Data object populated with account data from the file.
      */
     public static Data readDataFromLocalFile(String path) {
         Data ret = new Data();
-        ret.accounts = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(" ");
-                if (parts.length == 4) {
-                    String accountNum = parts[0];
-                    String pin = parts[1];
-                    String username = parts[2];
-                    double balance = Double.parseDouble(parts[3]);
-                    Account account = new Account(accountNum, pin, username, balance);
-                    ret.getAccounts().add(account);
-                }
-            }
+        try {
+            ret.readAccounts(path);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -61,31 +233,609 @@ public class Data {
     }
 
     /**
-     * Writes account data to a local file.
+     * Reads a data file and replays the transaction log on top of it without opening the log, which gives the
+     * state the default store would load. The stores that keep balances in a file of their own are converted
+     * from this state, so operations logged since the last snapshot are not lost.
+     *
+     * @param path The path to the data file.
+     * @param journalDirectory The transaction log directory.
+     * @return The Data object holding the recovered accounts.
+     * @throws IOException If the data file or the log cannot be read.
+     */
+    public static Data readRecovered(String path, Path journalDirectory) throws IOException {
+        Data ret = new Data();
+        ret.readAccounts(path);
+        TransactionLog.replay(journalDirectory, ret.checkpointSeq, ret::apply);
+        return ret;
+    }
+
+    /**
+     * Reads the accounts and the checkpoint of a data file into this object.
+     *
+     * @param path The path to the data file.
+     * @throws IOException If the file cannot be read.
+     */
+    private void readAccounts(String path) throws IOException {
+        Path file = Paths.get(path);
+        List<Chunk> chunks = new ArrayList<>();
+        if (LOAD_PARALLELISM > 1 && Files.size(file) >= LOAD_PARALLEL_THRESHOLD) {
+            long[] bounds = AccountFileParser.split(file, LOAD_PARALLELISM);
+            ForkJoinPool pool = new ForkJoinPool(LOAD_PARALLELISM);
+            try {
+                // The tasks must not call back into this class, the workers would block on its initialization
+                List<ForkJoinTask<Chunk>> tasks = new ArrayList<>();
+                for (int i = 0; i + 1 < bounds.length; i++) {
+                    tasks.add(pool.submit(new Chunk(file, bounds[i], bounds[i + 1])));
+                }
+                for (ForkJoinTask<Chunk> task : tasks) {
+                    chunks.add(task.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while loading " + path);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            Chunk chunk = new Chunk(file, 0, Long.MAX_VALUE);
+            chunk.read();
+            chunks.add(chunk);
+        }
+
+        // Merge in file order, line numbers of later chunks are offset by the lines before them
+        long firstLine = 0;
+        for (Chunk chunk : chunks) {
+            if (chunk.hasCheckpoint) {
+                checkpointSeq = chunk.checkpoint;
+            }
+            for (int i = 0; i < chunk.count; i++) {
+                int usernameStart = i == 0 ? 0 : chunk.usernameEnds[i - 1];
+                if (!store.add(chunk.accountNums[i], chunk.pins[i], chunk.usernames, usernameStart,
+                        chunk.usernameEnds[i] - usernameStart, chunk.balances[i])) {
+                    System.err.println(path + ": duplicate account number " + AccountKeys.formatAccountNum(chunk.accountNums[i]) + ", keeping the first one");
+                }
+            }
+            for (int i = 0; i < chunk.malformedLines.size(); i++) {
+                System.err.println(path + ":" + (firstLine + chunk.malformedLines.get(i)) + ": skipping malformed line, " + chunk.malformedReasons.get(i));
+            }
+            firstLine += chunk.lines;
+        }
+    }
+
+    /**
+     * The accounts, checkpoint and malformed lines parsed from one byte range of a data file.
+     * Accounts are buffered as primitive columns so loading does not create an object per account.
+     */
+    @SuppressWarnings("serial") // Only ever run on a fork-join pool, never serialized
+    private static final class Chunk extends RecursiveTask<Chunk> implements AccountFileParser.Listener {
+        private final Path file; // The data file
+        private final long start; // Offset of the first byte of the range
+        private final long end; // Offset just after the last byte of the range
+        private int count; // Number of accounts
+        private int[] accountNums = new int[64]; // Account numbers in file order
+        private int[] pins = new int[64]; // PINs matching accountNums
+        private long[] balances = new long[64]; // Balances in minor units matching accountNums
+        private int[] usernameEnds = new int[64]; // End of each username in usernames, the start is the previous end
+        private byte[] usernames = new byte[1024]; // UTF-8 usernames back to back
+        private final List<Long> malformedLines = new ArrayList<>(); // Line numbers within the chunk
+        private final List<String> malformedReasons = new ArrayList<>(); // Reasons matching malformedLines
+        private boolean hasCheckpoint; // Whether a checkpoint header was found
+        private long checkpoint; // Sequence number of the checkpoint header
+        private long lines; // Number of lines in the chunk
+
+        /**
+         * Constructs a chunk for a byte range of a data file.
+         *
+         * @param file The data file.
+         * @param start Offset of the first byte of the range.
+         * @param end Offset just after the last byte of the range.
+         */
+        Chunk(Path file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Parses the byte range into this chunk.
+         *
+         * @throws IOException If the file cannot be read.
+         */
+        void read() throws IOException {
+            lines = AccountFileParser.parse(file, start, end, this);
+        }
+
+        @Override
+        protected Chunk compute() {
+            try {
+                read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        @Override
+        public void onAccount(int accountNum, int pin, byte[] buffer, int usernameOffset, int usernameLength, long balanceMinor) {
+            if (count == accountNums.length) {
+                int capacity = count * 2;
+                accountNums = Arrays.copyOf(accountNums, capacity);
+                pins = Arrays.copyOf(pins, capacity);
+                balances = Arrays.copyOf(balances, capacity);
+                usernameEnds = Arrays.copyOf(usernameEnds, capacity);
+            }
+            int usernameStart = count == 0 ? 0 : usernameEnds[count - 1];
+            if (usernameStart + usernameLength > usernames.length) {
+                usernames = Arrays.copyOf(usernames, Math.max(usernames.length * 2, usernameStart + usernameLength));
+            }
+            System.arraycopy(buffer, usernameOffset, usernames, usernameStart, usernameLength);
+            accountNums[count] = accountNum;
+            pins[count] = pin;
+            balances[count] = balanceMinor;
+            usernameEnds[count] = usernameStart + usernameLength;
+            count++;
+        }
+
+        @Override
+        public void onCheckpoint(long seq) {
+            hasCheckpoint = true;
+            checkpoint = seq;
+        }
+
+        @Override
+        public void onMalformedLine(long lineNumber, String reason) {
+            malformedLines.add(lineNumber);
+            malformedReasons.add(reason);
+        }
+    }
+
+    /**
+     * Writes account data to a local file as a snapshot and drops the log segments it covers.
+     * With the transaction log this is {@link #compactLog()} of the singleton instance, which folds the log into
+     * the file the instance was loaded from and never reads the live accounts, so it is safe while operations
+     * are running. Without the log the live accounts are written
+     * through a temporary file and rename; with a store that persists balances by itself, the store is flushed.
      *
      * @param path The path to the file where data will be written.
      */
     public static void writeDataToLocalFile(String path) {
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(path))) {
-            for (Account account : getInstance().getAccounts()) {
+        Data current = getInstance();
+        if (current.log != null || current.store.persistsBalances()) {
+            current.compactLog();
+            return;
+        }
+        synchronized (SNAPSHOT_LOCK) {
+            try {
+                writeSnapshot(current, Paths.get(path), current.checkpointSeq);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Folds the transaction log into the data file without touching the live accounts.
+     * The log is rolled, the records up to the roll point are replayed onto a fresh copy of the data file,
+     * the copy is written back through a temporary file and rename, and the covered log segments are deleted.
+     * The result is the exact state as of the roll point, so the strategies keep running meanwhile.
+     * With a store that persists balances by itself, the store is flushed instead.
+     */
+    public void compactLog() {
+        if (store.persistsBalances()) {
+            flushStore();
+            return;
+        }
+        TransactionLog current = log;
+        if (current == null || current.getLastSeq() == checkpointSeq) {
+            return;
+        }
+        synchronized (SNAPSHOT_LOCK) {
+            try {
+                long checkpoint = current.roll();
+                // Read strictly, a partially read base must never be written back
+                Data base = new Data();
+                base.readAccounts(path);
+                if (base.checkpointSeq < checkpoint) {
+                    TransactionLog.replay(current.getDirectory(), base.checkpointSeq, checkpoint, base::apply);
+                    writeSnapshot(base, Paths.get(path), checkpoint);
+                }
+                checkpointSeq = Math.max(base.checkpointSeq, checkpoint);
+                current.deleteSegmentsUpTo(checkpointSeq);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Writes the accounts of a Data object to a temporary file and renames it over the target.
+     *
+     * @param source The accounts to write.
+     * @param target The data file.
+     * @param checkpoint The last log sequence number contained in the accounts.
+     * @throws IOException If writing or renaming fails.
+     */
+    private static void writeSnapshot(Data source, Path target, long checkpoint) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (BufferedWriter bw = Files.newBufferedWriter(temp)) {
+            bw.write(CHECKPOINT_PREFIX + checkpoint);
+            bw.newLine();
+            for (Account account : source.getAccounts()) {
                 bw.write(account.getAccountNum() + " " +
                         account.getPIN() + " " +
                         account.getUsername() + " " +
                         account.getBalance());
                 bw.newLine();
             }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Writes an operation ahead to the transaction log. Must be called inside the critical section that applies
+     * the operation, before any balance changes: the log then holds the operations in the order they were
+     * applied, and an operation the log refuses is never applied. The record is only queued; once the critical
+     * section is left, {@link #commit(long, String, String)} waits for it. Logging is skipped when it is off.
+     *
+     * @param type The kind of operation.
+     * @param from The account number the operation applies to.
+     * @param to The destination account number of a transfer, or null.
+     * @param amountMinor The amount in minor units, or the new balance for SET.
+     * @return The sequence number of the record, 0 when logging is off.
+     * @throws IllegalStateException If the log is closed.
+     * @throws java.io.UncheckedIOException If the log writer has failed.
+     */
+    public long journal(TransactionRecord.Type type, String from, String to, long amountMinor) {
+        return journal(type, from, to, amountMinor, 0);
+    }
+
+    /**
+     * Writes the part of a cross-shard transaction applied to this Data object ahead to the transaction log,
+     * like {@link #journal(TransactionRecord.Type, String, String, long)}.
+     *
+     * @param type The kind of operation.
+     * @param from The account number the operation applies to.
+     * @param to The destination account number of a transfer, or null.
+     * @param amountMinor The amount in minor units.
+     * @param txId The id of the cross-shard transaction, 0 for none.
+     * @return The sequence number of the record, 0 when logging is off.
+     * @throws IllegalStateException If the log is closed.
+     * @throws java.io.UncheckedIOException If the log writer has failed.
+     */
+    public long journal(TransactionRecord.Type type, String from, String to, long amountMinor, long txId) {
+        TransactionLog current = log;
+        return current != null ? current.enqueue(type, from, to, amountMinor, txId) : 0;
+    }
+
+    /**
+     * Completes an operation written ahead by {@link #journal}: announces the changed balances on the
+     * {@link BalanceEventBus} and waits until the record is as durable as the fsync policy asks.
+     * Must be called after leaving the critical section, so concurrent operations share the force.
+     *
+     * @param seq The sequence number returned by journal, 0 when logging is off.
+     * @param from The account number the operation applied to.
+     * @param to The destination account number of a transfer, or null.
+     * @throws java.io.UncheckedIOException If the log writer fails before the record is durable.
+     */
+    public void commit(long seq, String from, String to) {
+        BalanceEventBus events = BalanceEventBus.getInstance();
+        events.publish(this, from);
+        events.publish(this, to);
+        TransactionLog current = log;
+        if (current != null && seq > 0) {
+            current.await(seq);
+        }
+    }
+
+    /**
+     * Retrieves the cross-shard transactions whose records were replayed from the log on load.
+     * Transactions already folded into the data file are not included.
+     *
+     * @return The read-only set of transaction ids.
+     */
+    public Set<Long> getReplayedTransactions() {
+        return Collections.unmodifiableSet(replayedTransactions);
+    }
+
+    /**
+     * Writes several operations ahead to the transaction log, like
+     * {@link #journal(TransactionRecord.Type, String, String, long)}.
+     *
+     * @param records The operations, their sequence numbers are ignored.
+     * @return The sequence number of the last record, 0 when logging is off or there are no records.
+     * @throws IllegalStateException If the log is closed.
+     * @throws java.io.UncheckedIOException If the log writer has failed.
+     */
+    public long journalAll(List<TransactionRecord> records) {
+        TransactionLog current = log;
+        return current != null && !records.isEmpty() ? current.enqueueAll(records) : 0;
+    }
+
+    /**
+     * Completes several operations written ahead by {@link #journalAll}, waiting for durability once,
+     * like {@link #commit(long, String, String)}.
+     *
+     * @param seq The sequence number returned by journalAll.
+     * @param records The operations.
+     * @throws java.io.UncheckedIOException If the log writer fails before the records are durable.
+     */
+    public void commitAll(long seq, List<TransactionRecord> records) {
+        BalanceEventBus events = BalanceEventBus.getInstance();
+        for (TransactionRecord record : records) {
+            events.publish(this, record.getFrom());
+            events.publish(this, record.getTo());
+        }
+        TransactionLog current = log;
+        if (current != null && seq > 0) {
+            current.await(seq);
+        }
+    }
+
+    /**
+     * Retrieves the last sequence number in the transaction log, which for a backup is the last record
+     * received from its primary.
+     *
+     * @return The last sequence number, or the checkpoint of the data file when logging is off.
+     */
+    public long getLastSeq() {
+        TransactionLog current = log;
+        return current != null ? current.getLastSeq() : checkpointSeq;
+    }
+
+    /**
+     * Sets the listener that sees every record written to the transaction log from now on.
+     *
+     * @param listener The listener, or null to remove it.
+     * @throws IllegalStateException If logging is off.
+     */
+    public void setLogListener(TransactionLog.Listener listener) {
+        requireLog().setListener(listener);
+    }
+
+    /**
+     * Receives the state of a Data object for a replica, see {@link #exportState(long, ReplicaSink)}.
+     */
+    public interface ReplicaSink {
+        /**
+         * Receives the accounts of the data file.
+         *
+         * @param seq The last log sequence number contained in the accounts.
+         * @param accounts The accounts.
+         * @throws IOException If the accounts cannot be passed on.
+         */
+        void snapshot(long seq, List<Account> accounts) throws IOException;
+
+        /**
+         * Receives a log record, in sequence order.
+         *
+         * @param record The record.
+         * @throws IOException If the record cannot be passed on.
+         */
+        void record(TransactionRecord record) throws IOException;
+    }
+
+    /**
+     * Passes everything a replica that holds the log up to afterSeq is missing to a sink: the log records after
+     * afterSeq, preceded by the accounts of the data file if those records are no longer in the log.
+     * The replica gets the data file as well when afterSeq is 0, since it then holds no accounts yet, and when
+     * afterSeq is past the end of the log, since it then followed another primary that got further.
+     * The log is rolled first and the export stops at the roll point; records written meanwhile are left to
+     * a {@link TransactionLog.Listener}. Compaction waits until the export is done.
+     *
+     * @param afterSeq The last sequence number the replica holds.
+     * @param sink The receiver of the state.
+     * @return The last sequence number exported.
+     * @throws IOException If the data file or the log cannot be read, or the sink fails.
+     * @throws IllegalStateException If logging is off.
+     */
+    public long exportState(long afterSeq, ReplicaSink sink) throws IOException {
+        TransactionLog current = requireLog();
+        synchronized (SNAPSHOT_LOCK) {
+            long upto = current.roll();
+            long from = afterSeq;
+            if (afterSeq <= 0 || afterSeq < checkpointSeq || afterSeq > upto) {
+                // Read strictly, a replica must never be built from a partially read file
+                Data base = new Data();
+                base.readAccounts(path);
+                sink.snapshot(base.checkpointSeq, base.getAccounts());
+                from = base.checkpointSeq;
+            }
+            try {
+                TransactionLog.replay(current.getDirectory(), from, upto, record -> {
+                    try {
+                        sink.record(record);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return upto;
+        }
+    }
+
+    /**
+     * Applies records received from a primary and appends them to the transaction log, which numbers them
+     * exactly as the primary did since they follow on from its last record.
+     *
+     * @param records The records, in sequence order.
+     * @throws IllegalStateException If logging is off, or the records do not follow on from the last one in the log.
+     */
+    public void applyReplicated(List<TransactionRecord> records) {
+        long expected = requireLog().getLastSeq();
+        for (TransactionRecord record : records) {
+            if (record.getSeq() != ++expected) {
+                throw new IllegalStateException("Expected log record " + expected + " from the primary, received " + record.getSeq());
+            }
+        }
+        long seq = journalAll(records);
+        for (TransactionRecord record : records) {
+            apply(record);
+        }
+        commitAll(seq, records);
+    }
+
+    /**
+     * Replaces the data file of the singleton instance with the given accounts, drops its transaction log
+     * and loads it again. A backup does this with the copy of the data file sent by its primary.
+     *
+     * @param accounts The accounts.
+     * @param seq The last log sequence number contained in the accounts, where the new log starts.
+     * @throws IOException If the data file cannot be written or the log cannot be deleted.
+     * @throws IllegalStateException If the singleton instance does not log its operations.
+     */
+    public static void restore(List<Account> accounts, long seq) throws IOException {
+        Data previous = data;
+        Path journalDirectory = previous.requireLog().getDirectory();
+        previous.close();
+        synchronized (SNAPSHOT_LOCK) {
+            writeSnapshot(inMemory(accounts), Paths.get(previous.path), seq);
+            TransactionLog.clear(journalDirectory);
+        }
+        data = load(previous.path);
+    }
+
+    /**
+     * Retrieves the transaction log, which replication depends on.
+     *
+     * @return The log.
+     * @throws IllegalStateException If logging is off.
+     */
+    private TransactionLog requireLog() {
+        TransactionLog current = log;
+        if (current == null) {
+            throw new IllegalStateException("Replication needs the transaction log, which is off or not used by atm.store=" + STORE);
+        }
+        return current;
+    }
+
+    /**
+     * Makes the balances of a store that persists them by itself durable.
+     */
+    private void flushStore() {
+        try {
+            store.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the snapshotter, writes and forces all logged operations, stops the log writer
+     * and closes the store.
+     */
+    public void close() {
+        if (snapshotter != null) {
+            snapshotter.stop();
+            snapshotter = null;
+        }
+        TransactionLog current = log;
+        log = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        try {
+            store.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Retrieves the list of accounts managed by Data.
+     * Applies a replayed log record to the loaded accounts.
+     *
+     * @param record The record to apply.
+     */
+    private void apply(TransactionRecord record) {
+        Account from = getAccountByAccountNum(record.getFrom());
+        Account to = record.getType() == TransactionRecord.Type.TRANSFER ? getAccountByAccountNum(record.getTo()) : from;
+        if (record.getTxId() != 0) {
+            // A shard holds one side of a cross-shard transfer and applies only that side
+            replayedTransactions.add(record.getTxId());
+            if (from != null) {
+                from.setBalanceMinor(from.getBalanceMinor() - record.getAmount());
+            }
+            if (to != null) {
+                to.setBalanceMinor(to.getBalanceMinor() + record.getAmount());
+            }
+            return;
+        }
+        if (from == null || to == null) {
+            System.err.println("Skipping log record for unknown account: " + record);
+            return;
+        }
+        switch (record.getType()) {
+            case DEPOSIT:
+                from.setBalanceMinor(from.getBalanceMinor() + record.getAmount());
+                break;
+            case WITHDRAW:
+                from.setBalanceMinor(from.getBalanceMinor() - record.getAmount());
+                break;
+            case TRANSFER:
+                from.setBalanceMinor(from.getBalanceMinor() - record.getAmount());
+                to.setBalanceMinor(to.getBalanceMinor() + record.getAmount());
+                break;
+            case SET:
+                from.setBalanceMinor(record.getAmount());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Adds an account to the list and the index and announces it on the {@link BalanceEventBus}.
+     * If an account with the same account number is already present, the first one is kept.
+     *
+     * @param account The account to add.
+     * @return true if the account was added, false if its account number was already taken.
+     */
+    public boolean addAccount(Account account) {
+        boolean added = store.add(account);
+        if (added) {
+            BalanceEventBus.getInstance().publish(this, account.getAccountNum());
+        }
+        return added;
+    }
+
+    /**
+     * Retrieves the list of accounts managed by Data, in the order they were loaded.
+     * The returned list is a read-only view.
      *
      * @return The list of accounts.
      */
     public List<Account> getAccounts() {
-        return accounts;
+        return store.accounts();
+    }
+
+    /**
+     * Retrieves an account by its account number using the index of the store.
+     *
+     * @param accountNum The account number to look up.
+     * @return The Account object if found, otherwise null.
+     */
+    public Account getAccountByAccountNum(String accountNum) {
+        return store.get(accountNum);
+    }
+
+    /**
+     * Checks whether an account with the given account number exists.
+     *
+     * @param accountNum The account number to check.
+     * @return true if the account exists, false otherwise.
+     */
+    public boolean containsAccount(String accountNum) {
+        return getAccountByAccountNum(accountNum) != null;
     }
 
     /**
@@ -95,11 +845,7 @@ public class Data {
      * @return The balance of the account, or 0.0 if not found.
      */
     public double getBalanceByAccountNum(String accountNum) {
-        for (Account account : Data.getInstance().getAccounts()) {
-            if (account.getAccountNum().equals(accountNum)) {
-                return account.getBalance();
-            }
-        }
-        return 0.0;
+        Account account = getAccountByAccountNum(accountNum);
+        return account != null ? account.getBalance() : 0.0;
     }
 }
@@ -0,0 +1,39 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util;
+
+/**
+ * Utility class for converting between amounts in pounds and amounts in minor units (pence).
+ * Balances are stored in minor units so they can be updated atomically as a single long.
+ */
+public final class Money {
+    public static final int MINOR_UNITS_PER_MAJOR = 100; // Pence per pound
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private Money() {}
+
+    /**
+     * Converts an amount in pounds to minor units, rounding to the nearest penny.
+     *
+     * @param amount The amount in pounds
+     * @return The amount in minor units
+     */
+    public static long toMinor(double amount) {
+        return Math.round(amount * MINOR_UNITS_PER_MAJOR);
+    }
+
+    /**
+     * Converts an amount in minor units to pounds.
+     *
+     * @param minor The amount in minor units
+     * @return The amount in pounds
+     */
+    public static double toMajor(long minor) {
+        return (double) minor / MINOR_UNITS_PER_MAJOR;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background task that periodically folds the transaction log of a Data object into its data file,
+ * so the log that has to be replayed on startup stays short however long the process runs.
+ */
+public class Snapshotter {
+    private final ScheduledExecutorService scheduler; // Single daemon thread running the compactions
+
+    /**
+     * Starts compacting the log of the given Data object at a fixed delay.
+     *
+     * @param data The Data object whose log is compacted
+     * @param intervalSeconds Delay between the end of one compaction and the start of the next
+     */
+    public Snapshotter(Data data, long intervalSeconds) {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(data::compactLog, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops scheduling compactions and waits for a running one to finish.
+     */
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.auth;
+
+import pojo.Account;
+import util.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Verifies account numbers and PINs and keeps the sessions of logged-in users.
+ * <p>
+ * The account is found through the index of the store of the current {@link Data} instance and the PIN is
+ * compared in constant time. When the account number is unknown a dummy comparison still runs, so the time
+ * taken does not tell which account numbers exist. A successful login issues a {@link Session} with a random
+ * 128-bit token, bound to the account handle it resolved. Sessions expire after atm.session.idleTimeoutSeconds
+ * without use (default 300) and, for accounts of the Data singleton, when another instance is installed.
+ * Strategies that keep their accounts elsewhere pass their own lookup to {@link #authenticate(String, String, Function)}.
+ */
+public class AuthenticationService {
+    static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("atm.session.idleTimeoutSeconds", 300));
+    private static final byte[] DUMMY_PIN = "0000".getBytes(StandardCharsets.UTF_8); // Compared against for unknown accounts
+    private static final int TOKEN_BYTES = 16;
+    private static final AuthenticationService instance = new AuthenticationService();
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>(); // Open sessions by token
+    private final SecureRandom random = new SecureRandom(); // Source of the tokens
+    private final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding(); // Encodes the tokens
+
+    /**
+     * Private constructor to enforce the singleton.
+     */
+    private AuthenticationService() {
+    }
+
+    /**
+     * Retrieves the service.
+     *
+     * @return The shared service
+     */
+    public static AuthenticationService getInstance() {
+        return instance;
+    }
+
+    /**
+     * Verifies an account number and PIN and opens a session for the account.
+     *
+     * @param accountNum The account number
+     * @param pin The PIN
+     * @return The new session, or null if the account is unknown or the PIN does not match
+     */
+    public Session authenticate(String accountNum, String pin) {
+        Data data = Data.getInstance();
+        return authenticate(accountNum != null ? data.getAccountByAccountNum(accountNum) : null, pin, data);
+    }
+
+    /**
+     * Verifies an account number and PIN against an account resolved by the given lookup, such as the account
+     * of a shard, and opens a session for it. The session does not expire with the Data singleton.
+     *
+     * @param accountNum The account number
+     * @param pin The PIN
+     * @param lookup Resolves an account number, returning null for an unknown account
+     * @return The new session, or null if the account is unknown or the PIN does not match
+     */
+    public Session authenticate(String accountNum, String pin, Function<String, Account> lookup) {
+        return authenticate(accountNum != null ? lookup.apply(accountNum) : null, pin, null);
+    }
+
+    /**
+     * Checks the PIN of a resolved account and opens a session for it.
+     *
+     * @param account The account, null if the account number is unknown
+     * @param pin The PIN
+     * @param data The Data singleton the account belongs to, or null if it was resolved elsewhere
+     * @return The new session, or null if the account is unknown or the PIN does not match
+     */
+    private Session authenticate(Account account, String pin, Data data) {
+        if (account == null) {
+            MessageDigest.isEqual(DUMMY_PIN, pin != null ? pin.getBytes(StandardCharsets.UTF_8) : DUMMY_PIN);
+            return null;
+        }
+        if (!account.checkPIN(pin)) {
+            return null;
+        }
+        removeExpired();
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        Session session = new Session(encoder.encodeToString(bytes), account, data);
+        sessions.put(session.getToken(), session);
+        return session;
+    }
+
+    /**
+     * Opens a session for an account that was authenticated elsewhere, such as by the transaction server
+     * behind a {@link util.strategy.impl.RemoteStrategy}, under the token issued there. The session is not
+     * tied to the Data singleton, which a thin client never loads.
+     *
+     * @param token The token issued for the session
+     * @param account The account handle of the session
+     * @return The new session
+     */
+    public Session register(String token, Account account) {
+        removeExpired();
+        Session session = new Session(token, account, null);
+        sessions.put(token, session);
+        return session;
+    }
+
+    /**
+     * Retrieves an open session by its token and marks it as used.
+     *
+     * @param token The token of the session
+     * @return The session, or null if the token is unknown or the session expired
+     */
+    public Session getSession(String token) {
+        Session session = token != null ? sessions.get(token) : null;
+        if (session == null) {
+            return null;
+        }
+        if (!session.isValid()) {
+            sessions.remove(token);
+            return null;
+        }
+        session.touch();
+        return session;
+    }
+
+    /**
+     * Checks that a session is still valid and marks it as used. An expired session is closed.
+     *
+     * @param session The session
+     * @return true if the session can be used
+     */
+    public boolean resume(Session session) {
+        return getSession(session.getToken()) == session;
+    }
+
+    /**
+     * Ends a session.
+     *
+     * @param session The session, ignored if null
+     */
+    public void logout(Session session) {
+        if (session != null) {
+            session.logOut();
+            sessions.remove(session.getToken());
+        }
+    }
+
+    /**
+     * Retrieves the number of open sessions, including expired ones not yet removed.
+     *
+     * @return The number of sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Closes the sessions that are no longer valid.
+     */
+    private void removeExpired() {
+        sessions.values().removeIf(session -> !session.isValid());
+    }
+}
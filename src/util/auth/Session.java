@@ -0,0 +1,155 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.auth;
+
+import pojo.Account;
+import util.Data;
+import util.strategy.OperationResult;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A logged-in session issued by the {@link AuthenticationService}.
+ * <p>
+ * The session holds the account handle resolved at login, so operations of the session pass it to the
+ * strategy instead of looking the account number up again. A handle from the Data singleton belongs to the
+ * instance that was current at login; once another instance is installed, the session is no longer valid.
+ * A handle resolved elsewhere, such as in a shard, is not tied to the singleton.
+ * <p>
+ * The session also remembers the outcome of the last operations sent under it with an operation id, so the
+ * transaction server answers a retried request from there instead of applying it again.
+ */
+public class Session {
+    private static final int REMEMBERED_OPERATIONS = 256; // Operation ids kept per session, oldest dropped first
+
+    private final String token; // Random token identifying the session
+    private final Account account; // Account handle resolved at login
+    private final Data data; // Singleton instance the account belongs to, null if it was resolved elsewhere
+    private volatile long lastUsedNanos; // Value of System.nanoTime() when the session was last used
+    private volatile boolean loggedOut; // Whether the session was ended
+    private final Map<Long, OperationResult> operations = new HashMap<>(); // Outcome by operation id, null while running, guarded by this
+    private final ArrayDeque<Long> operationOrder = new ArrayDeque<>(); // Operation ids in the order they started, guarded by this
+
+    /**
+     * Constructs a session.
+     *
+     * @param token The token identifying the session
+     * @param account The account handle resolved at login
+     * @param data The Data singleton the account belongs to, or null if it was resolved elsewhere
+     */
+    Session(String token, Account account, Data data) {
+        this.token = token;
+        this.account = account;
+        this.data = data;
+        this.lastUsedNanos = System.nanoTime();
+    }
+
+    /**
+     * Retrieves the token identifying the session.
+     *
+     * @return The token
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Retrieves the account handle of the session.
+     *
+     * @return The account
+     */
+    public Account getAccount() {
+        return account;
+    }
+
+    /**
+     * Retrieves the account number of the session.
+     *
+     * @return The account number
+     */
+    public String getAccountNum() {
+        return account.getAccountNum();
+    }
+
+    /**
+     * Retrieves the name of the account holder.
+     *
+     * @return The username
+     */
+    public String getUsername() {
+        return account.getUsername();
+    }
+
+    /**
+     * Checks whether the session can still be used: it was not logged out, has not been idle for longer than
+     * the timeout, and an account from the Data singleton still belongs to the current instance.
+     *
+     * @return true if the session is valid
+     */
+    public boolean isValid() {
+        return !loggedOut && (data == null || data == Data.getInstance())
+                && System.nanoTime() - lastUsedNanos <= AuthenticationService.IDLE_TIMEOUT_NANOS;
+    }
+
+    /**
+     * Reserves an operation id before the operation is applied.
+     *
+     * @param operationId The id the client chose for the operation
+     * @return true if the id is new, false if the operation was already started under it
+     */
+    public synchronized boolean startOperation(long operationId) {
+        if (operations.containsKey(operationId)) {
+            return false;
+        }
+        operations.put(operationId, null);
+        operationOrder.addLast(operationId);
+        if (operationOrder.size() > REMEMBERED_OPERATIONS) {
+            operations.remove(operationOrder.removeFirst());
+        }
+        return true;
+    }
+
+    /**
+     * Records the outcome of an operation started with {@link #startOperation(long)}.
+     *
+     * @param operationId The id of the operation
+     * @param result The outcome, or null if the operation was not applied and may be sent again
+     */
+    public synchronized void finishOperation(long operationId, OperationResult result) {
+        if (result != null) {
+            operations.replace(operationId, result);
+        } else if (operations.containsKey(operationId) && operations.get(operationId) == null) {
+            operations.remove(operationId);
+            operationOrder.remove(operationId);
+        }
+    }
+
+    /**
+     * Retrieves the outcome of an operation already started under an id.
+     *
+     * @param operationId The id of the operation
+     * @return The outcome, or null if it is still running or was forgotten
+     */
+    public synchronized OperationResult getOperationResult(long operationId) {
+        return operations.get(operationId);
+    }
+
+    /**
+     * Marks the session as used now, restarting its idle timeout.
+     */
+    void touch() {
+        lastUsedNanos = System.nanoTime();
+    }
+
+    /**
+     * Ends the session.
+     */
+    void logOut() {
+        loggedOut = true;
+    }
+}
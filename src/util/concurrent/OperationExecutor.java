@@ -0,0 +1,152 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Shared executor for account operations started by the frames and the simulator.
+ * <p>
+ * On a JVM with virtual threads every operation runs on its own virtual thread, so in-flight
+ * operations cost neither a platform thread nor its stack. Older JVMs fall back to a pool of daemon
+ * platform threads. At most atm.executor.maxConcurrent operations run at once; the others wait
+ * for a permit. Operations that block while holding a monitor, as in ConsistentStrategy, keep their
+ * carrier thread busy on JDK 21 to 23.
+ * <p>
+ * A shutdown hook lets in-flight operations finish before the JVM exits. Configuration:
+ * <ul>
+ *     <li>atm.executor.virtual - use virtual threads when available, default true</li>
+ *     <li>atm.executor.maxConcurrent - operations running at once, default 256</li>
+ *     <li>atm.executor.shutdownHook - drain operations on JVM exit, default true</li>
+ *     <li>atm.executor.shutdownTimeoutSeconds - how long the hook waits, default 10</li>
+ * </ul>
+ */
+public class OperationExecutor {
+    private static final boolean VIRTUAL = Boolean.parseBoolean(System.getProperty("atm.executor.virtual", "true"));
+    private static final int MAX_CONCURRENT = Math.max(1, Integer.getInteger("atm.executor.maxConcurrent", 256));
+    private static final boolean SHUTDOWN_HOOK = Boolean.parseBoolean(System.getProperty("atm.executor.shutdownHook", "true"));
+    private static final long SHUTDOWN_TIMEOUT = Long.getLong("atm.executor.shutdownTimeoutSeconds", 10);
+    private static final OperationExecutor instance = new OperationExecutor();
+
+    private final ExecutorService executor; // Runs the operations
+    private final Semaphore permits = new Semaphore(MAX_CONCURRENT); // Bounds the operations running at once
+    private final boolean virtual; // Whether operations run on virtual threads
+
+    /**
+     * Private constructor to prevent instantiation from outside the class.
+     */
+    private OperationExecutor() {
+        ExecutorService virtualExecutor = VIRTUAL ? newVirtualThreadExecutor() : null;
+        virtual = virtualExecutor != null;
+        if (virtual) {
+            executor = virtualExecutor;
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(MAX_CONCURRENT, MAX_CONCURRENT, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "atm-operation-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        if (SHUTDOWN_HOOK) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS),
+                    "atm-operation-shutdown"));
+        }
+    }
+
+    /**
+     * Retrieves the shared executor.
+     *
+     * @return The shared executor
+     */
+    public static OperationExecutor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor if the running JVM supports it.
+     * It is looked up by reflection so the code still compiles and runs on Java 17.
+     *
+     * @return The executor, or null if virtual threads are not available
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs an operation asynchronously.
+     *
+     * @param operation The operation to run
+     * @return A future completed when the operation has finished, or exceptionally if it threw
+     */
+    public CompletableFuture<Void> execute(Runnable operation) {
+        return submit(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs an operation asynchronously and yields its result.
+     *
+     * @param operation The operation to run
+     * @param <T> The result type
+     * @return A future completed with the result, or exceptionally if the operation threw
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                return operation.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * Whether operations run on virtual threads.
+     *
+     * @return true with virtual threads, false with the platform thread pool
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Stops accepting operations and waits for the running ones to finish.
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of timeout
+     * @return true if all operations finished in time
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.event;
+
+import util.Money;
+
+/**
+ * The balance of an account after one or more changes, as delivered by the {@link BalanceEventBus}.
+ */
+public class BalanceChange {
+    private final String accountNum; // The account that changed
+    private final long balanceMinor; // Its balance in minor units when the change was delivered
+
+    /**
+     * Constructs a change.
+     *
+     * @param accountNum The account that changed
+     * @param balanceMinor The balance in minor units
+     */
+    public BalanceChange(String accountNum, long balanceMinor) {
+        this.accountNum = accountNum;
+        this.balanceMinor = balanceMinor;
+    }
+
+    /**
+     * Retrieves the account number.
+     *
+     * @return The account number
+     */
+    public String getAccountNum() {
+        return accountNum;
+    }
+
+    /**
+     * Retrieves the balance in minor units.
+     *
+     * @return The balance in minor units
+     */
+    public long getBalanceMinor() {
+        return balanceMinor;
+    }
+
+    /**
+     * Retrieves the balance.
+     *
+     * @return The balance
+     */
+    public double getBalance() {
+        return Money.toMajor(balanceMinor);
+    }
+
+    /**
+     * Formats the change.
+     *
+     * @return The account number and balance
+     */
+    @Override
+    public String toString() {
+        return accountNum + "=" + getBalance();
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.event;
+
+import pojo.Account;
+import util.Data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes the balances of accounts that changed, coalesced over a short window.
+ * <p>
+ * {@link #publish(Data, String)} only marks the account as changed and, for the first change of a window,
+ * schedules a flush; it never blocks and does nothing while there are no subscribers. After
+ * atm.events.coalesceMillis (default 50) the flush reads the current balance of every marked account from the
+ * {@link Data} instance that published it, such as the data of a shard, and delivers them to the subscribers
+ * as one list, so a burst of operations on an account becomes a single change carrying its latest balance.
+ * <p>
+ * Delivery goes through a {@link SubmissionPublisher} with a buffer per subscriber. A subscriber that falls
+ * more than atm.events.bufferSize lists behind (default 256) misses the lists that do not fit and should
+ * reread the accounts it shows.
+ */
+public class BalanceEventBus implements Flow.Publisher<List<BalanceChange>> {
+    private static final long COALESCE_MILLIS = Long.getLong("atm.events.coalesceMillis", 50);
+    private static final int BUFFER_SIZE = Integer.getInteger("atm.events.bufferSize", Flow.defaultBufferSize());
+    private static final BalanceEventBus instance = new BalanceEventBus();
+
+    private final SubmissionPublisher<List<BalanceChange>> publisher; // Delivers the lists to the subscribers
+    private final Map<String, Data> changed = new ConcurrentHashMap<>(); // Accounts changed since the last flush, with the instance holding each
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(); // Whether a flush is pending
+    private final ScheduledExecutorService scheduler; // Single daemon thread running the flushes
+
+    /**
+     * Private constructor to enforce the singleton.
+     */
+    private BalanceEventBus() {
+        publisher = new SubmissionPublisher<>(ForkJoinPool.commonPool(), BUFFER_SIZE);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "balance-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Retrieves the bus.
+     *
+     * @return The shared bus
+     */
+    public static BalanceEventBus getInstance() {
+        return instance;
+    }
+
+    /**
+     * Subscribes to the changed balances. Each item is the list of changes of one window.
+     *
+     * @param subscriber The subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super List<BalanceChange>> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    /**
+     * Records that the balance of an account changed. A shard commits both sides of a transfer between shards,
+     * so an account the source does not hold is ignored; the shard holding it publishes it too.
+     *
+     * @param source The Data instance holding the account, its balance is read from there
+     * @param accountNum The account, ignored if null
+     */
+    public void publish(Data source, String accountNum) {
+        if (accountNum == null || !publisher.hasSubscribers() || source.getAccountByAccountNum(accountNum) == null) {
+            return;
+        }
+        changed.put(accountNum, source);
+        if (flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::flush, COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Delivers the balances of the accounts changed since the last flush.
+     */
+    private void flush() {
+        // Clear the flag first, so a change made while draining schedules the next flush
+        flushScheduled.set(false);
+        List<BalanceChange> changes = new ArrayList<>(changed.size());
+        Iterator<Map.Entry<String, Data>> iterator = changed.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Data> entry = iterator.next();
+            String accountNum = entry.getKey();
+            Data data = entry.getValue();
+            iterator.remove();
+            Account account = data.getAccountByAccountNum(accountNum);
+            if (account != null) {
+                changes.add(new BalanceChange(accountNum, account.getBalanceMinor()));
+            }
+        }
+        if (!changes.isEmpty()) {
+            publisher.offer(Collections.unmodifiableList(changes), (subscriber, dropped) -> false);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.event;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Subscriber of the {@link BalanceEventBus} that hands every list of changes to a handler on a given executor,
+ * such as SwingUtilities::invokeLater for a frame. It requests without limit, since the bus already coalesces.
+ */
+public class BalanceSubscriber implements Flow.Subscriber<List<BalanceChange>> {
+    private final Executor executor; // Runs the handler
+    private final Consumer<List<BalanceChange>> handler; // Receives the changes
+    private volatile Flow.Subscription subscription; // Set once subscribed
+    private volatile boolean cancelled; // Whether cancel() was called
+
+    /**
+     * Constructs a subscriber.
+     *
+     * @param executor Runs the handler
+     * @param handler Receives each list of changes
+     */
+    public BalanceSubscriber(Executor executor, Consumer<List<BalanceChange>> handler) {
+        this.executor = executor;
+        this.handler = handler;
+    }
+
+    /**
+     * Subscribes a handler to the shared bus.
+     *
+     * @param executor Runs the handler
+     * @param handler Receives each list of changes
+     * @return The subscriber, to be cancelled when the handler is no longer needed
+     */
+    public static BalanceSubscriber subscribe(Executor executor, Consumer<List<BalanceChange>> handler) {
+        BalanceSubscriber subscriber = new BalanceSubscriber(executor, handler);
+        BalanceEventBus.getInstance().subscribe(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Stops receiving changes. Lists already handed to the executor are dropped.
+     */
+    public void cancel() {
+        cancelled = true;
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        if (cancelled) {
+            subscription.cancel();
+        } else {
+            subscription.request(Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public void onNext(List<BalanceChange> changes) {
+        executor.execute(() -> {
+            if (!cancelled) {
+                handler.accept(changes);
+            }
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        throwable.printStackTrace();
+    }
+
+    @Override
+    public void onComplete() {
+    }
+}
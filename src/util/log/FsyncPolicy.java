@@ -0,0 +1,34 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.log;
+
+/**
+ * Controls when the transaction log forces its writes to the storage device.
+ */
+public enum FsyncPolicy {
+    /**
+     * Every commit group is forced before the callers in it return. Nothing acknowledged is lost on a crash.
+     */
+    ALWAYS,
+    /**
+     * Records are written as they arrive and forced at a fixed interval. A crash can lose up to one interval.
+     */
+    INTERVAL,
+    /**
+     * Records are written as they arrive and only forced on sync, roll and close.
+     */
+    NEVER;
+
+    /**
+     * Parses a policy name, ignoring case.
+     *
+     * @param name The policy name, for example "always"
+     * @return The matching policy
+     */
+    public static FsyncPolicy parse(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,696 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of account operations.
+ * <p>
+ * Records are queued by the calling threads and written by a single background writer, which
+ * drains everything queued since its last write in one go (group commit). The {@link FsyncPolicy}
+ * decides when the writer forces the file and whether appenders wait for that.
+ * <p>
+ * {@link #enqueue} and {@link #await} split an append in two, so a caller can queue its record inside the
+ * critical section that applies the operation, fixing its place in the log, and wait for the disk once it
+ * has left the critical section, so other operations still share the force.
+ * <p>
+ * The log is a directory of segment files named after the sequence number of their first record.
+ * Each record is stored as its body length, a CRC32 of the body, and the body itself, so a record
+ * torn by a crash is detected and ignored on replay.
+ * <p>
+ * A {@link Listener} sees every record once it is written, in sequence order, which is how a replication
+ * primary ships the log to its backups.
+ */
+public class TransactionLog implements Closeable {
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory; // Directory holding the segment files
+    private final FsyncPolicy policy; // When to force writes to disk
+    private final long intervalNanos; // Force interval for FsyncPolicy.INTERVAL
+
+    private final ReentrantLock lock = new ReentrantLock(); // Guards the fields below
+    private final Condition pendingChanged = lock.newCondition(); // Signalled when records are queued or on close
+    private final Condition durableChanged = lock.newCondition(); // Signalled when durableSeq advances
+    private List<TransactionRecord> pending = new ArrayList<>(); // Records queued but not yet written
+    private long lastSeq; // Last sequence number handed out
+    private long durableSeq; // Last sequence number written and forced as required by the policy
+    private boolean closed;
+    private IOException failure; // Set when the writer fails, all later appends fail with it
+
+    private final ReentrantLock ioLock = new ReentrantLock(); // Serializes writes to the segment file
+    private FileChannel segment; // Segment currently written, opened on the first write after a roll
+    private volatile long lastForceNanos = System.nanoTime(); // When the segment was last forced
+    private volatile boolean unforced; // Whether data was written since the last force
+    private volatile Listener listener; // Sees written records, null for none
+
+    private final Thread writer;
+
+    /**
+     * Receives the records of a log as they are written.
+     */
+    public interface Listener {
+        /**
+         * Called with every batch of records right after it was written, and forced if the policy asks for it.
+         * Batches arrive one at a time and in sequence order. The call holds up the log writer, so it should
+         * only hand the records over.
+         *
+         * @param records The records written, in sequence order
+         */
+        void onWritten(List<TransactionRecord> records);
+
+        /**
+         * Called by an appender once its record is durable, before the append returns, so the listener can
+         * hold the appender until the record is stored elsewhere as well.
+         *
+         * @param seq The sequence number of the last record appended by the caller
+         */
+        default void awaitReplicated(long seq) {
+        }
+    }
+
+    /**
+     * Opens a log in the given directory. New records are numbered after lastSeq.
+     *
+     * @param directory The directory holding the segment files, created if missing
+     * @param lastSeq The last sequence number already present in the snapshot or the log
+     * @param policy When to force writes to disk
+     * @param intervalMillis Force interval in milliseconds for FsyncPolicy.INTERVAL
+     * @throws IOException If the directory cannot be created
+     */
+    public TransactionLog(Path directory, long lastSeq, FsyncPolicy policy, long intervalMillis) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.policy = policy;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+        this.lastSeq = lastSeq;
+        this.durableSeq = lastSeq;
+        writer = new Thread(this::writeLoop, "transaction-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Appends a record to the log. With FsyncPolicy.ALWAYS the call returns only once the record is on disk.
+     *
+     * @param type The kind of operation
+     * @param from The account number the operation applies to
+     * @param to The destination account number of a transfer, or null
+     * @param amount The amount in minor units, or the new balance for SET
+     * @return The sequence number of the record
+     */
+    public long append(TransactionRecord.Type type, String from, String to, long amount) {
+        return append(type, from, to, amount, 0);
+    }
+
+    /**
+     * Appends a record belonging to a cross-shard transaction. With FsyncPolicy.ALWAYS the call returns only
+     * once the record is on disk.
+     *
+     * @param type The kind of operation
+     * @param from The account number the operation applies to
+     * @param to The destination account number of a transfer, or null
+     * @param amount The amount in minor units, or the new balance for SET
+     * @param txId The id of the cross-shard transaction, 0 for none
+     * @return The sequence number of the record
+     */
+    public long append(TransactionRecord.Type type, String from, String to, long amount, long txId) {
+        long seq = enqueue(type, from, to, amount, txId);
+        await(seq);
+        return seq;
+    }
+
+    /**
+     * Queues a record without waiting for it to be written.
+     *
+     * @param type The kind of operation
+     * @param from The account number the operation applies to
+     * @param to The destination account number of a transfer, or null
+     * @param amount The amount in minor units, or the new balance for SET
+     * @param txId The id of the cross-shard transaction, 0 for none
+     * @return The sequence number of the record, to pass to {@link #await(long)}
+     * @throws IllegalStateException If the log is closed
+     * @throws UncheckedIOException If the writer has failed
+     */
+    public long enqueue(TransactionRecord.Type type, String from, String to, long amount, long txId) {
+        lock.lock();
+        try {
+            checkUsable();
+            long seq = ++lastSeq;
+            pending.add(new TransactionRecord(seq, type, from, to, amount, txId));
+            pendingChanged.signal();
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends several records at once. With FsyncPolicy.ALWAYS the call waits once, until the last of them is on disk.
+     *
+     * @param records The records to append, their sequence numbers are ignored and assigned in order
+     * @return The sequence number of the last record, or the last sequence number in the log if records is empty
+     */
+    public long appendAll(List<TransactionRecord> records) {
+        long seq = enqueueAll(records);
+        if (!records.isEmpty()) {
+            await(seq);
+        }
+        return seq;
+    }
+
+    /**
+     * Queues several records at once without waiting for them to be written.
+     *
+     * @param records The records to queue, their sequence numbers are ignored and assigned in order
+     * @return The sequence number of the last record, or the last sequence number in the log if records is empty
+     * @throws IllegalStateException If the log is closed
+     * @throws UncheckedIOException If the writer has failed
+     */
+    public long enqueueAll(List<TransactionRecord> records) {
+        lock.lock();
+        try {
+            checkUsable();
+            for (TransactionRecord record : records) {
+                pending.add(new TransactionRecord(++lastSeq, record.getType(), record.getFrom(), record.getTo(),
+                        record.getAmount(), record.getTxId()));
+            }
+            if (!records.isEmpty()) {
+                pendingChanged.signal();
+            }
+            return lastSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a queued record is as durable as the policy asks, which with FsyncPolicy.ALWAYS means on disk,
+     * and until the listener is done with it. Must be called without holding the caller's own locks if other
+     * appenders are to share the force.
+     *
+     * @param seq The sequence number returned by {@link #enqueue} or {@link #enqueueAll}
+     * @throws UncheckedIOException If the writer fails before the record is durable
+     */
+    public void await(long seq) {
+        if (policy == FsyncPolicy.ALWAYS) {
+            lock.lock();
+            try {
+                awaitDurable(seq);
+            } finally {
+                lock.unlock();
+            }
+        }
+        awaitReplicated(seq);
+    }
+
+    /**
+     * Lets the listener hold an appender until its record is replicated. Must be called without holding lock.
+     *
+     * @param seq The sequence number of the last record appended by the caller
+     */
+    private void awaitReplicated(long seq) {
+        Listener current = listener;
+        if (current != null) {
+            current.awaitReplicated(seq);
+        }
+    }
+
+    /**
+     * Sets the listener that sees every record written from now on.
+     *
+     * @param listener The listener, or null to remove it
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Writes and forces everything appended so far.
+     *
+     * @return The last sequence number in the log
+     * @throws IOException If writing fails
+     */
+    public long sync() throws IOException {
+        writePending(true);
+        lock.lock();
+        try {
+            return durableSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes and forces everything appended so far and closes the current segment,
+     * so every record up to the returned sequence number is in a closed segment.
+     *
+     * @return The last sequence number in the closed segments
+     * @throws IOException If writing fails
+     */
+    public long roll() throws IOException {
+        ioLock.lock();
+        try {
+            long seq = sync();
+            if (segment != null) {
+                segment.close();
+                segment = null;
+            }
+            return seq;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments whose records all have a sequence number of at most seq.
+     * Only segments closed by {@link #roll()} are considered.
+     *
+     * @param seq The sequence number covered by a snapshot
+     * @throws IOException If listing or deleting fails
+     */
+    public void deleteSegmentsUpTo(long seq) throws IOException {
+        ioLock.lock();
+        try {
+            List<Path> segments = listSegments(directory);
+            for (int i = 0; i < segments.size(); i++) {
+                // A segment only holds records below the first record of the next one
+                long nextFirst = i + 1 < segments.size() ? firstSeqOf(segments.get(i + 1)) : Long.MAX_VALUE;
+                boolean active = segment != null && i == segments.size() - 1;
+                if (!active && (nextFirst - 1 <= seq || lastSeqOf(segments.get(i)) <= seq)) {
+                    Files.deleteIfExists(segments.get(i));
+                }
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the last sequence number handed out.
+     *
+     * @return The last sequence number
+     */
+    public long getLastSeq() {
+        lock.lock();
+        try {
+            return lastSeq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the directory the log is written to.
+     *
+     * @return The log directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes and forces everything appended so far and stops the writer.
+     *
+     * @throws IOException If the final write fails
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pendingChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ioLock.lock();
+        try {
+            writePending(true);
+            if (segment != null) {
+                segment.close();
+                segment = null;
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Deletes every segment in a directory. The log of the directory must be closed.
+     *
+     * @param directory The directory holding the segment files
+     * @throws IOException If listing or deleting fails
+     */
+    public static void clear(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        for (Path path : listSegments(directory)) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Reads every intact record with a sequence number greater than afterSeq, in log order.
+     * Reading a segment stops at the first torn or corrupt record.
+     *
+     * @param directory The log directory
+     * @param afterSeq Records up to and including this sequence number are skipped
+     * @param consumer Receives the records
+     * @return The highest sequence number seen in the log, or afterSeq if there is none higher
+     * @throws IOException If a segment cannot be read
+     */
+    public static long replay(Path directory, long afterSeq, Consumer<TransactionRecord> consumer) throws IOException {
+        return replay(directory, afterSeq, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Reads every intact record with a sequence number greater than afterSeq and at most uptoSeq, in log order.
+     * Segments starting after uptoSeq are not opened, so a segment still being written by the log is left alone
+     * when uptoSeq was returned by {@link #roll()}.
+     *
+     * @param directory The log directory
+     * @param afterSeq Records up to and including this sequence number are skipped
+     * @param uptoSeq Records after this sequence number are skipped
+     * @param consumer Receives the records
+     * @return The highest sequence number seen in the range, or afterSeq if there is none higher
+     * @throws IOException If a segment cannot be read
+     */
+    public static long replay(Path directory, long afterSeq, long uptoSeq, Consumer<TransactionRecord> consumer) throws IOException {
+        long maxSeq = afterSeq;
+        if (!Files.isDirectory(directory)) {
+            return maxSeq;
+        }
+        for (Path path : listSegments(directory)) {
+            if (firstSeqOf(path) > uptoSeq) {
+                break;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                TransactionRecord record;
+                while ((record = readRecord(in, path)) != null) {
+                    if (record.getSeq() > afterSeq && record.getSeq() <= uptoSeq) {
+                        maxSeq = Math.max(maxSeq, record.getSeq());
+                        consumer.accept(record);
+                    }
+                }
+            }
+        }
+        return maxSeq;
+    }
+
+    /**
+     * Lists the segment files of a log directory ordered by their first sequence number.
+     *
+     * @param directory The log directory
+     * @return The segment files
+     * @throws IOException If the directory cannot be listed
+     */
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).forEach(segments::add);
+        }
+        segments.sort((a, b) -> Long.compare(firstSeqOf(a), firstSeqOf(b)));
+        return segments;
+    }
+
+    /**
+     * Parses the first sequence number of a segment from its file name.
+     *
+     * @param segment The segment file
+     * @return The sequence number of its first record
+     */
+    private static long firstSeqOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Reads a segment to find the sequence number of its last intact record.
+     *
+     * @param segment The segment file
+     * @return The last sequence number, or Long.MAX_VALUE if the segment cannot be read
+     */
+    private static long lastSeqOf(Path segment) {
+        long last = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)))) {
+            TransactionRecord record;
+            while ((record = readRecord(in, segment)) != null) {
+                last = record.getSeq();
+            }
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
+        }
+        return last;
+    }
+
+    /**
+     * Reads one record.
+     *
+     * @param in The segment stream
+     * @param path The segment file, for error messages
+     * @return The record, or null at the end of the segment or at a torn or corrupt record
+     * @throws IOException If reading fails
+     */
+    private static TransactionRecord readRecord(DataInputStream in, Path path) throws IOException {
+        int length;
+        int crc;
+        byte[] body;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        try {
+            crc = in.readInt();
+            if (length <= 0 || length > 1 << 16) {
+                System.err.println("Corrupt record length in " + path + ", ignoring the rest of the segment");
+                return null;
+            }
+            body = new byte[length];
+            in.readFully(body);
+        } catch (EOFException e) {
+            System.err.println("Torn record at the end of " + path + ", ignoring it");
+            return null;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(body);
+        if ((int) checksum.getValue() != crc) {
+            System.err.println("Checksum mismatch in " + path + ", ignoring the rest of the segment");
+            return null;
+        }
+        DataInputStream bodyIn = new DataInputStream(new ByteArrayInputStream(body));
+        long seq = bodyIn.readLong();
+        TransactionRecord.Type type = TransactionRecord.Type.fromCode(bodyIn.readByte());
+        String from = bodyIn.readUTF();
+        String to = bodyIn.readUTF();
+        long amount = bodyIn.readLong();
+        // Only records of cross-shard transactions carry an id
+        long txId = bodyIn.available() >= Long.BYTES ? bodyIn.readLong() : 0;
+        return new TransactionRecord(seq, type, from, to, amount, txId);
+    }
+
+    /**
+     * Encodes records into their on-disk form.
+     *
+     * @param batch The records to encode
+     * @return A buffer ready to be written
+     * @throws IOException Never, the streams are in memory
+     */
+    private static ByteBuffer encode(List<TransactionRecord> batch) throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(64);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        ByteArrayOutputStream frameBytes = new ByteArrayOutputStream(batch.size() * 48);
+        DataOutputStream frame = new DataOutputStream(frameBytes);
+        CRC32 checksum = new CRC32();
+        for (TransactionRecord record : batch) {
+            bodyBytes.reset();
+            body.writeLong(record.getSeq());
+            body.writeByte(record.getType().ordinal());
+            body.writeUTF(record.getFrom());
+            body.writeUTF(record.getTo());
+            body.writeLong(record.getAmount());
+            if (record.getTxId() != 0) {
+                body.writeLong(record.getTxId());
+            }
+            body.flush();
+            checksum.reset();
+            checksum.update(bodyBytes.toByteArray());
+            frame.writeInt(bodyBytes.size());
+            frame.writeInt((int) checksum.getValue());
+            bodyBytes.writeTo(frame);
+        }
+        frame.flush();
+        return ByteBuffer.wrap(frameBytes.toByteArray());
+    }
+
+    /**
+     * Body of the writer thread. Waits for queued records and writes them in groups.
+     */
+    private void writeLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !closed) {
+                    if (policy == FsyncPolicy.INTERVAL && unforced) {
+                        if (pendingChanged.awaitNanos(intervalNanos) <= 0) {
+                            break;
+                        }
+                    } else {
+                        pendingChanged.await();
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                boolean force = policy == FsyncPolicy.ALWAYS
+                        || (policy == FsyncPolicy.INTERVAL && System.nanoTime() - lastForceNanos >= intervalNanos);
+                writePending(force);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes all queued records to the current segment and optionally forces the file.
+     *
+     * @param force Whether to force the file to disk after writing
+     * @throws IOException If writing fails, the log is unusable afterwards
+     */
+    private void writePending(boolean force) throws IOException {
+        ioLock.lock();
+        try {
+            List<TransactionRecord> batch;
+            lock.lock();
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    if (segment == null) {
+                        Path path = directory.resolve(String.format("%020d%s", batch.get(0).getSeq(), SEGMENT_SUFFIX));
+                        segment = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    }
+                    ByteBuffer buffer = encode(batch);
+                    while (buffer.hasRemaining()) {
+                        segment.write(buffer);
+                    }
+                    unforced = true;
+                }
+                if (force && unforced && segment != null) {
+                    segment.force(false);
+                    unforced = false;
+                    lastForceNanos = System.nanoTime();
+                }
+            } catch (IOException e) {
+                fail(e);
+                throw e;
+            }
+            if (!batch.isEmpty()) {
+                lock.lock();
+                try {
+                    durableSeq = Math.max(durableSeq, batch.get(batch.size() - 1).getSeq());
+                    durableChanged.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                // Still holding ioLock, so batches reach the listener in order
+                Listener current = listener;
+                if (current != null) {
+                    current.onWritten(batch);
+                }
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Marks the log as failed and wakes every waiting appender.
+     *
+     * @param e The cause
+     */
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            durableChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until the given record is durable. Must be called while holding lock.
+     *
+     * @param seq The sequence number to wait for
+     */
+    private void awaitDurable(long seq) {
+        boolean interrupted = false;
+        while (durableSeq < seq) {
+            checkFailure();
+            try {
+                durableChanged.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fails if the log is closed or the writer has failed. Must be called while holding lock.
+     */
+    private void checkUsable() {
+        if (closed) {
+            throw new IllegalStateException("Transaction log is closed");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Fails if the writer has failed. Must be called while holding lock.
+     */
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Transaction log write failed", failure);
+        }
+    }
+}
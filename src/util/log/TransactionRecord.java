@@ -0,0 +1,140 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.log;
+
+/**
+ * A single entry of the transaction log. Amounts are in minor units.
+ * <p>
+ * Records written for a transfer between two shards carry the id of the cross-shard transaction, so recovery
+ * can tell which shards already hold it. The id is stored after the other fields only when it is set, so logs
+ * written before it existed read back with an id of 0.
+ */
+public final class TransactionRecord {
+
+    /**
+     * The kind of operation a record describes.
+     */
+    public enum Type {
+        DEPOSIT, // Adds amount to the balance of from
+        WITHDRAW, // Subtracts amount from the balance of from
+        TRANSFER, // Moves amount from the balance of from to the balance of to
+        SET, // Overwrites the balance of from with amount
+        DONE; // Marks cross-shard transaction txId as applied by every shard, written to the coordinator log only
+
+        private static final Type[] VALUES = values();
+
+        /**
+         * Looks up a type by its ordinal as stored in the log.
+         *
+         * @param code The stored ordinal
+         * @return The type
+         */
+        public static Type fromCode(int code) {
+            if (code < 0 || code >= VALUES.length) {
+                throw new IllegalArgumentException("Unknown record type: " + code);
+            }
+            return VALUES[code];
+        }
+    }
+
+    private final long seq; // Position of the record in the log, starting at 1
+    private final Type type; // Kind of operation
+    private final String from; // Account the operation applies to, or the source of a transfer
+    private final String to; // Destination of a transfer, empty for other types
+    private final long amount; // Amount in minor units, or the new balance for SET
+    private final long txId; // Id of the cross-shard transaction, 0 for none
+
+    /**
+     * Constructs a record.
+     *
+     * @param seq The sequence number
+     * @param type The kind of operation
+     * @param from The account number the operation applies to
+     * @param to The destination account number of a transfer, or an empty string
+     * @param amount The amount in minor units
+     */
+    public TransactionRecord(long seq, Type type, String from, String to, long amount) {
+        this(seq, type, from, to, amount, 0);
+    }
+
+    /**
+     * Constructs a record belonging to a cross-shard transaction.
+     *
+     * @param seq The sequence number
+     * @param type The kind of operation
+     * @param from The account number the operation applies to
+     * @param to The destination account number of a transfer, or an empty string
+     * @param amount The amount in minor units
+     * @param txId The id of the cross-shard transaction, 0 for none
+     */
+    public TransactionRecord(long seq, Type type, String from, String to, long amount, long txId) {
+        this.seq = seq;
+        this.type = type;
+        this.from = from;
+        this.to = to == null ? "" : to;
+        this.amount = amount;
+        this.txId = txId;
+    }
+
+    /**
+     * Retrieves the sequence number of the record.
+     *
+     * @return The sequence number of the record.
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * Retrieves the kind of operation.
+     *
+     * @return The kind of operation.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the account number the operation applies to.
+     *
+     * @return The account number the operation applies to.
+     */
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * Retrieves the destination account number of a transfer, or an empty string.
+     *
+     * @return The destination account number of a transfer, or an empty string.
+     */
+    public String getTo() {
+        return to;
+    }
+
+    /**
+     * Retrieves the amount in minor units, or the new balance for SET records.
+     *
+     * @return The amount in minor units, or the new balance for SET records.
+     */
+    public long getAmount() {
+        return amount;
+    }
+
+    /**
+     * Retrieves the id of the cross-shard transaction the record belongs to.
+     *
+     * @return The transaction id, or 0 if the record is not part of one.
+     */
+    public long getTxId() {
+        return txId;
+    }
+
+    @Override
+    public String toString() {
+        return seq + " " + type + " " + from + (to.isEmpty() ? "" : " -> " + to) + " " + amount + (txId == 0 ? "" : " tx " + txId);
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram of latencies in nanoseconds with log-linear buckets.
+ * <p>
+ * Values below 32 have a bucket each. Above that, every power of two is split into 32 buckets,
+ * so a recorded value is reported with an error of at most about 3%. The whole range of long
+ * fits in 1920 buckets, so recording never allocates and never overflows.
+ * <p>
+ * Recording touches as little shared state as possible: one bucket counter, a {@link LongAdder} for the sum,
+ * and the maximum only when the value exceeds it. The count is not kept separately but summed from the buckets
+ * when read.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // Buckets per power of two
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS); // Number of values per bucket
+    private final LongAdder sum = new LongAdder(); // Sum of recorded values
+    private final AtomicLong max = new AtomicLong(); // Largest recorded value
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Adds all values recorded by another histogram to this one.
+     *
+     * @param other The histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        sum.add(other.sum.sum());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Retrieves the number of recorded values, summed over the buckets.
+     *
+     * @return The count
+     */
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Retrieves the largest recorded value.
+     *
+     * @return The maximum in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Retrieves the mean of the recorded values.
+     *
+     * @return The mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Retrieves the value below which the given percentage of the recorded values fall.
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The value in nanoseconds, rounded up to the end of its bucket, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Formats the count, mean, common percentiles and maximum in microseconds.
+     *
+     * @return The summary
+     */
+    public String summary() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                getCount(), getMean() / 1000, micros(getValueAtPercentile(50)), micros(getValueAtPercentile(90)),
+                micros(getValueAtPercentile(99)), micros(getValueAtPercentile(99.9)), micros(getMax()));
+    }
+
+    /**
+     * Converts nanoseconds to fractional microseconds.
+     *
+     * @param nanos The value in nanoseconds
+     * @return The value in microseconds
+     */
+    private static double micros(long nanos) {
+        return (double) nanos / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    /**
+     * Finds the bucket of a value.
+     *
+     * @param value A non-negative value
+     * @return The bucket index
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (exponent + 1) * SUB_BUCKETS + (int) ((value >>> exponent) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Finds the largest value that falls into a bucket.
+     *
+     * @param index The bucket index
+     * @return The largest value of the bucket
+     */
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << exponent;
+        return lowest + (1L << exponent) - 1;
+    }
+}
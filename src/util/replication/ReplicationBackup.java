@@ -0,0 +1,212 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.replication;
+
+import pojo.Account;
+import util.Data;
+import util.log.TransactionRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Follows a {@link ReplicationPrimary}, applying the log it ships to the {@link Data} singleton.
+ * <p>
+ * The backup connects with the last sequence number in its own log. A copy of the data file from the
+ * primary replaces the local one through {@link Data#restore(List, long)}; records are applied and logged
+ * in batches through {@link Data#applyReplicated(List)}, so the local log numbers them as the primary did
+ * and a restarted backup resumes where it stopped. Each batch is acknowledged once it is logged.
+ * <p>
+ * If the primary sends nothing, not even a heartbeat, for three times atm.replication.heartbeatMillis
+ * (default 1000), or the connection fails, the backup reconnects every atm.replication.retryMillis
+ * (default 1000) until it is closed. It never promotes itself: that is left to an operator, see
+ * {@link ReplicationNode}, so two primaries are never started by a network split.
+ */
+public class ReplicationBackup implements Closeable {
+    private static final long HEARTBEAT_MILLIS = Long.getLong("atm.replication.heartbeatMillis", 1000);
+    private static final long RETRY_MILLIS = Long.getLong("atm.replication.retryMillis", 1000);
+    private static final int MAX_BATCH = 1024; // Records applied and logged at once
+
+    private final String host; // Host of the primary
+    private final int port; // Replication port of the primary
+    private final Thread follower; // Connects and applies the stream
+    private volatile boolean running = true;
+    private volatile Socket socket; // Current connection, null between attempts
+    private volatile boolean connected; // Whether the handshake with the primary succeeded
+    private volatile long primarySeq; // Last sequence number the primary reported
+
+    /**
+     * Starts following a primary.
+     *
+     * @param host The host of the primary
+     * @param port The replication port of the primary
+     */
+    public ReplicationBackup(String host, int port) {
+        this.host = host;
+        this.port = port;
+        follower = new Thread(this::followLoop, "replication-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    /**
+     * Connects to the primary and follows it, reconnecting after every failure until closed.
+     */
+    private void followLoop() {
+        while (running) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                s.connect(new InetSocketAddress(host, port), (int) (3 * HEARTBEAT_MILLIS));
+                s.setSoTimeout((int) (3 * HEARTBEAT_MILLIS));
+                s.setTcpNoDelay(true);
+                follow(s);
+            } catch (IOException | RuntimeException e) {
+                if (running && connected) {
+                    System.err.println("Lost the primary at " + host + ":" + port + ": " + e);
+                }
+            } finally {
+                socket = null;
+                connected = false;
+            }
+            if (running) {
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one connection: sends the handshake, then applies the messages of the primary.
+     *
+     * @param s The connected socket
+     * @throws IOException If the connection fails or the primary sends something unexpected
+     */
+    private void follow(Socket s) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        long lastSeq = Data.getInstance().getLastSeq();
+        out.writeInt(ReplicationProtocol.MAGIC);
+        out.writeLong(lastSeq);
+        out.flush();
+        connected = true;
+        System.err.println("Following the primary at " + host + ":" + port + " from record " + lastSeq);
+        List<TransactionRecord> batch = new ArrayList<>();
+        while (running) {
+            byte type = in.readByte();
+            switch (type) {
+                case ReplicationProtocol.SNAPSHOT:
+                    long seq = in.readLong();
+                    List<Account> accounts = ReplicationProtocol.readAccounts(in);
+                    Data.restore(accounts, seq);
+                    System.err.println("Copied " + accounts.size() + " accounts from the primary as of record " + seq);
+                    acknowledge(out);
+                    break;
+                case ReplicationProtocol.RECORD:
+                    TransactionRecord record = ReplicationProtocol.readRecord(in);
+                    batch.add(record);
+                    primarySeq = Math.max(primarySeq, record.getSeq());
+                    // Apply once the buffered records are used up, so a burst is logged in one go
+                    if (in.available() == 0 || batch.size() >= MAX_BATCH) {
+                        apply(batch);
+                        acknowledge(out);
+                    }
+                    break;
+                case ReplicationProtocol.HEARTBEAT:
+                    // A heartbeat may already be buffered behind the last records of a burst
+                    apply(batch);
+                    primarySeq = in.readLong();
+                    acknowledge(out);
+                    break;
+                default:
+                    throw new IOException("Unknown message from the primary: " + type);
+            }
+        }
+    }
+
+    /**
+     * Applies and logs the received records, if any, and empties the batch.
+     *
+     * @param batch The records, in sequence order
+     */
+    private static void apply(List<TransactionRecord> batch) {
+        if (!batch.isEmpty()) {
+            Data.getInstance().applyReplicated(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Tells the primary the last record logged here.
+     *
+     * @param out The stream of the connection
+     * @throws IOException If writing fails
+     */
+    private static void acknowledge(DataOutputStream out) throws IOException {
+        ReplicationProtocol.writeSeq(out, ReplicationProtocol.ACK, Data.getInstance().getLastSeq());
+        out.flush();
+    }
+
+    /**
+     * Checks whether the backup is connected to its primary.
+     *
+     * @return true if connected
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Retrieves the last sequence number the primary reported.
+     *
+     * @return The sequence number, 0 before the first report
+     */
+    public long getPrimarySeq() {
+        return primarySeq;
+    }
+
+    /**
+     * Retrieves the address of the primary.
+     *
+     * @return host:port
+     */
+    public String getPrimary() {
+        return host + ":" + port;
+    }
+
+    /**
+     * Stops following the primary. Records received but not yet applied are dropped, as they were never
+     * acknowledged. Returns once the follower thread has stopped, so the Data singleton can then be written to.
+     */
+    @Override
+    public void close() {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        follower.interrupt();
+        try {
+            follower.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
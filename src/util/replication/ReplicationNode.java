@@ -0,0 +1,236 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.replication;
+
+import pojo.Account;
+import util.Data;
+import util.Money;
+import util.strategy.AccountOperationStrategy;
+import util.strategy.StrategyFactory;
+import util.strategy.impl.ReadOnlyStrategy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Headless replication node with a command console, one per process and working directory.
+ * <p>
+ * Run it as a primary with {@code ReplicationNode primary <port>} or as a backup with
+ * {@code ReplicationNode backup <host>:<port>}. Each node uses the data.txt and journal of its working
+ * directory, so several nodes run on one machine from different directories. A backup needs no data file
+ * of its own, it gets a copy from the primary. Commands are read from standard input, one per line:
+ * <ul>
+ *     <li>inquire &lt;account&gt; - prints the balance, on any node</li>
+ *     <li>deposit &lt;account&gt; &lt;amount&gt;, withdraw &lt;account&gt; &lt;amount&gt;,
+ *         transfer &lt;from&gt; &lt;to&gt; &lt;amount&gt; - on the primary only</li>
+ *     <li>load &lt;count&gt; - runs count random deposits, withdrawals and transfers, on the primary only</li>
+ *     <li>status - prints the role, the last record and the backups or the primary</li>
+ *     <li>promote &lt;port&gt; - turns a backup into a primary listening on port, for failover</li>
+ *     <li>follow &lt;host&gt;:&lt;port&gt; - points a backup at another primary, such as a promoted one</li>
+ *     <li>quit - closes the log and exits</li>
+ * </ul>
+ * To fail over, stop the old primary, promote the backup with the highest last record, and point the other
+ * backups at it. A backup that got further than the new primary is sent a fresh copy. The primary writes
+ * with the strategy named by atm.strategy (default consistent); sharded is not supported.
+ */
+public class ReplicationNode {
+    private ReplicationPrimary primary; // Set while this node is the primary
+    private ReplicationBackup backup; // Set while this node is a backup
+    private AccountOperationStrategy strategy; // Applies the commands
+
+    /**
+     * Starts a node and runs its console until quit or the end of input.
+     *
+     * @param args primary &lt;port&gt; or backup &lt;host&gt;:&lt;port&gt;
+     * @throws IOException If the primary cannot listen or the console cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 || !("primary".equals(args[0]) || "backup".equals(args[0]))) {
+            System.err.println("Usage: ReplicationNode primary <port> | backup <host>:<port>");
+            System.exit(2);
+        }
+        ReplicationNode node = new ReplicationNode();
+        if ("primary".equals(args[0])) {
+            node.promote(Integer.parseInt(args[1]));
+        } else {
+            node.follow(args[1]);
+        }
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = console.readLine()) != null) {
+            String[] words = line.trim().split("\\s+");
+            if ("quit".equals(words[0])) {
+                break;
+            }
+            if (!words[0].isEmpty()) {
+                try {
+                    node.execute(words);
+                } catch (RuntimeException e) {
+                    System.out.println("error: " + e.getMessage());
+                }
+            }
+        }
+        node.shutdown();
+        System.exit(0);
+    }
+
+    /**
+     * Runs one console command.
+     *
+     * @param words The command and its arguments
+     */
+    private void execute(String[] words) {
+        switch (words[0]) {
+            case "inquire":
+                Account account = strategy.inquire(words[1]);
+                System.out.println(account == null ? "no such account" : account.getAccountNum() + " " + account.getBalance());
+                break;
+            case "deposit":
+                strategy.deposit(words[1], Double.parseDouble(words[2]));
+                System.out.println("ok");
+                break;
+            case "withdraw":
+                strategy.withdraw(words[1], Double.parseDouble(words[2]));
+                System.out.println("ok");
+                break;
+            case "transfer":
+                strategy.transfer(words[1], words[2], Double.parseDouble(words[3]));
+                System.out.println("ok");
+                break;
+            case "load":
+                load(Integer.parseInt(words[1]));
+                break;
+            case "status":
+                status();
+                break;
+            case "promote":
+                if (primary != null) {
+                    System.out.println("error: already the primary");
+                } else {
+                    promote(Integer.parseInt(words[1]));
+                }
+                break;
+            case "follow":
+                if (primary != null) {
+                    System.out.println("error: a primary cannot follow, restart it as a backup");
+                } else {
+                    follow(words[1]);
+                }
+                break;
+            default:
+                System.out.println("error: unknown command " + words[0]);
+        }
+    }
+
+    /**
+     * Makes this node the primary: stops following, then ships the log to backups connecting to the port.
+     *
+     * @param port The replication port
+     */
+    private void promote(int port) {
+        if (backup != null) {
+            backup.close();
+            backup = null;
+        }
+        try {
+            primary = new ReplicationPrimary(Data.getInstance(), port);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot listen on port " + port + ": " + e.getMessage(), e);
+        }
+        strategy = StrategyFactory.create(System.getProperty("atm.strategy", "consistent"));
+        System.out.println("primary on port " + primary.getPort() + " at record " + Data.getInstance().getLastSeq());
+    }
+
+    /**
+     * Makes this node a backup of the given primary, stopping to follow the previous one.
+     *
+     * @param address host:port of the primary
+     */
+    private void follow(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected host:port, got " + address);
+        }
+        if (backup != null) {
+            backup.close();
+        }
+        backup = new ReplicationBackup(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        strategy = new ReadOnlyStrategy();
+        System.out.println("backup of " + backup.getPrimary());
+    }
+
+    /**
+     * Runs random deposits, withdrawals and transfers of whole amounts over the accounts and reports the rate.
+     *
+     * @param count The number of operations
+     */
+    private void load(int count) {
+        List<Account> accounts = Data.getInstance().getAccounts();
+        if (accounts.isEmpty()) {
+            System.out.println("error: no accounts");
+            return;
+        }
+        SplittableRandom random = new SplittableRandom();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            String accountNum = accounts.get(random.nextInt(accounts.size())).getAccountNum();
+            int amount = 1 + random.nextInt(100);
+            switch (random.nextInt(3)) {
+                case 0:
+                    strategy.deposit(accountNum, amount);
+                    break;
+                case 1:
+                    strategy.withdraw(accountNum, amount);
+                    break;
+                default:
+                    strategy.transfer(accountNum, accounts.get(random.nextInt(accounts.size())).getAccountNum(), amount);
+                    break;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d operations in %.2f s, %.0f ops/s, last record %d%n", count, seconds, count / seconds,
+                Data.getInstance().getLastSeq());
+    }
+
+    /**
+     * Prints the role, the last record and the total balance, then the backups or the primary.
+     */
+    private void status() {
+        long total = 0;
+        for (Account account : Data.getInstance().getAccounts()) {
+            total += account.getBalanceMinor();
+        }
+        long last = Data.getInstance().getLastSeq();
+        if (primary != null) {
+            System.out.println("primary at record " + last + " total " + Money.toMajor(total));
+            for (String line : primary.status()) {
+                System.out.println("  backup " + line);
+            }
+        } else {
+            System.out.println("backup of " + backup.getPrimary() + (backup.isConnected() ? " connected" : " disconnected")
+                    + " at record " + last + " primary at " + backup.getPrimarySeq() + " total " + Money.toMajor(total));
+        }
+    }
+
+    /**
+     * Stops replicating and closes the log.
+     *
+     * @throws IOException If the primary cannot be closed
+     */
+    private void shutdown() throws IOException {
+        if (primary != null) {
+            primary.close();
+        }
+        if (backup != null) {
+            backup.close();
+        }
+        Data.getInstance().close();
+    }
+}
@@ -0,0 +1,347 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.replication;
+
+import pojo.Account;
+import util.Data;
+import util.log.TransactionLog;
+import util.log.TransactionRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ships the transaction log of a {@link Data} object to {@link ReplicationBackup}s over TCP.
+ * <p>
+ * The primary listens for backups on a port. A backup connecting with the last sequence number it holds first
+ * gets what it is missing from {@link Data#exportState(long, Data.ReplicaSink)}, then every record as the log
+ * writes it, so a backup that was down catches up by itself. Each backup is served by a sender thread fed
+ * through a queue of atm.replication.queueBatches batches (default 4096); a backup that falls further behind
+ * is disconnected and catches up from the log when it reconnects.
+ * <p>
+ * With atm.replication.syncBackups above 0 (default 1), an operation returns only once that many backups
+ * logged it, so a committed operation survives the loss of the primary. If the backups do not answer within
+ * atm.replication.ackTimeoutMillis (default 1000), the primary stops waiting and replicates asynchronously
+ * until they catch up, so a slow backup does not stop the ATM. Without connected backups nothing is awaited.
+ * The primary sends a heartbeat every atm.replication.heartbeatMillis (default 1000) when idle.
+ */
+public class ReplicationPrimary implements TransactionLog.Listener, Closeable {
+    private static final int SYNC_BACKUPS = Integer.getInteger("atm.replication.syncBackups", 1);
+    private static final long ACK_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("atm.replication.ackTimeoutMillis", 1000));
+    private static final long HEARTBEAT_MILLIS = Long.getLong("atm.replication.heartbeatMillis", 1000);
+    private static final int QUEUE_BATCHES = Integer.getInteger("atm.replication.queueBatches", 4096);
+
+    private final Data data; // Accounts and log being replicated
+    private final ServerSocket server; // Accepts backups
+    private final List<Link> links = new CopyOnWriteArrayList<>(); // Connected backups
+    private final Object ackLock = new Object(); // Guards degradedAt, notified on every acknowledgement
+    private long degradedAt; // Record that timed out waiting for backups, 0 while replicating synchronously
+    private volatile boolean closed;
+
+    /**
+     * Starts replicating a Data object to the backups connecting to a port.
+     *
+     * @param data The Data object, which must log its operations
+     * @param port The port to listen on, 0 for any free port
+     * @throws IOException If the port cannot be bound
+     * @throws IllegalStateException If the Data object does not log its operations
+     */
+    public ReplicationPrimary(Data data, int port) throws IOException {
+        this.data = data;
+        this.server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(new InetSocketAddress(port));
+        try {
+            data.setLogListener(this);
+        } catch (IllegalStateException e) {
+            server.close();
+            throw e;
+        }
+        Thread acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Retrieves the port the primary listens on.
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts backups until the primary is closed, serving each on its own thread.
+     */
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                Link link = new Link(socket);
+                Thread sender = new Thread(link::send, "replication-sender-" + link.name);
+                sender.setDaemon(true);
+                sender.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands a written batch to every connected backup.
+     *
+     * @param records The records written, in sequence order
+     */
+    @Override
+    public void onWritten(List<TransactionRecord> records) {
+        for (Link link : links) {
+            link.offer(records);
+        }
+    }
+
+    /**
+     * Waits until atm.replication.syncBackups of the connected backups logged the record, or the timeout expires.
+     *
+     * @param seq The sequence number of the last record appended by the caller
+     */
+    @Override
+    public void awaitReplicated(long seq) {
+        if (SYNC_BACKUPS <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + ACK_TIMEOUT_NANOS;
+        synchronized (ackLock) {
+            while (degradedAt == 0) {
+                int live = 0;
+                int acked = 0;
+                for (Link link : links) {
+                    if (link.live) {
+                        live++;
+                        if (link.ackedSeq >= seq) {
+                            acked++;
+                        }
+                    }
+                }
+                if (acked >= Math.min(SYNC_BACKUPS, live)) {
+                    return;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    degradedAt = seq;
+                    System.err.println("Backups did not acknowledge record " + seq + " in time, replicating asynchronously until they catch up");
+                    return;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(ackLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Records an acknowledgement and wakes the waiting operations. Synchronous replication resumes once a
+     * backup acknowledges the record that timed out.
+     *
+     * @param seq The last sequence number the backup logged
+     */
+    private void acknowledged(long seq) {
+        synchronized (ackLock) {
+            if (degradedAt != 0 && seq >= degradedAt) {
+                degradedAt = 0;
+                System.err.println("Backups caught up at record " + seq + ", replicating synchronously");
+            }
+            ackLock.notifyAll();
+        }
+    }
+
+    /**
+     * Describes the connected backups, one line each.
+     *
+     * @return The address, last acknowledged record and lag of each backup
+     */
+    public List<String> status() {
+        long last = data.getLastSeq();
+        List<String> lines = new ArrayList<>();
+        for (Link link : links) {
+            lines.add(link.name + (link.live ? " acked " + link.ackedSeq + " lag " + (last - link.ackedSeq) : " catching up"));
+        }
+        return lines;
+    }
+
+    /**
+     * Stops accepting backups, disconnects the connected ones and detaches from the log.
+     *
+     * @throws IOException If the server socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            data.setLogListener(null);
+        } catch (IllegalStateException e) {
+            // The log was closed first, so nothing is listening any more
+        }
+        server.close();
+        for (Link link : links) {
+            link.close();
+        }
+        synchronized (ackLock) {
+            ackLock.notifyAll();
+        }
+    }
+
+    /**
+     * The connection to one backup.
+     */
+    private final class Link {
+        private final Socket socket; // Connection to the backup
+        private final String name; // Remote address, for messages
+        private final BlockingQueue<List<TransactionRecord>> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES); // Written batches not yet sent
+        private volatile long ackedSeq; // Last record the backup logged
+        private volatile boolean live; // Whether the backup caught up and receives records as they are written
+        private volatile boolean disconnected;
+
+        /**
+         * Constructs a link.
+         *
+         * @param socket The accepted connection
+         */
+        Link(Socket socket) {
+            this.socket = socket;
+            this.name = socket.getRemoteSocketAddress().toString();
+        }
+
+        /**
+         * Runs the link: reads the handshake, sends the missing state, then streams records as the log writes them.
+         */
+        void send() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                if (in.readInt() != ReplicationProtocol.MAGIC) {
+                    throw new IOException("Not a replication backup");
+                }
+                long lastSeq = in.readLong();
+                // Listen before exporting, so no record falls between the export and the stream
+                links.add(this);
+                long sentSeq = data.exportState(lastSeq, new Data.ReplicaSink() {
+                    @Override
+                    public void snapshot(long seq, List<Account> accounts) throws IOException {
+                        ReplicationProtocol.writeSnapshot(out, seq, accounts);
+                    }
+
+                    @Override
+                    public void record(TransactionRecord record) throws IOException {
+                        ReplicationProtocol.writeRecord(out, record);
+                    }
+                });
+                out.flush();
+                System.err.println("Backup " + name + " connected at record " + lastSeq + ", sent up to " + sentSeq);
+                Thread reader = new Thread(() -> readAcks(in), "replication-acks-" + name);
+                reader.setDaemon(true);
+                reader.start();
+                live = true;
+                while (!disconnected) {
+                    List<TransactionRecord> batch = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        ReplicationProtocol.writeSeq(out, ReplicationProtocol.HEARTBEAT, data.getLastSeq());
+                        out.flush();
+                        continue;
+                    }
+                    for (TransactionRecord record : batch) {
+                        // Records up to the export point may also come through the queue
+                        if (record.getSeq() > sentSeq) {
+                            ReplicationProtocol.writeRecord(out, record);
+                            sentSeq = record.getSeq();
+                        }
+                    }
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                if (!disconnected && !closed) {
+                    System.err.println("Backup " + name + " disconnected: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Reads the acknowledgements of the backup until the connection ends.
+         *
+         * @param in The stream of the connection
+         */
+        private void readAcks(DataInputStream in) {
+            try {
+                while (!disconnected) {
+                    if (in.readByte() != ReplicationProtocol.ACK) {
+                        throw new IOException("Unexpected message from backup");
+                    }
+                    ackedSeq = in.readLong();
+                    acknowledged(ackedSeq);
+                }
+            } catch (IOException e) {
+                if (!disconnected && !closed) {
+                    System.err.println("Backup " + name + " disconnected: " + e.getMessage());
+                }
+                close();
+            }
+        }
+
+        /**
+         * Queues a written batch, disconnecting the backup if it fell too far behind.
+         *
+         * @param records The records written
+         */
+        void offer(List<TransactionRecord> records) {
+            if (!queue.offer(records)) {
+                System.err.println("Backup " + name + " fell behind by " + QUEUE_BATCHES + " batches, disconnecting it");
+                close();
+            }
+        }
+
+        /**
+         * Drops the backup and closes the connection.
+         */
+        void close() {
+            disconnected = true;
+            live = false;
+            links.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            synchronized (ackLock) {
+                ackLock.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.replication;
+
+import pojo.Account;
+import util.log.TransactionRecord;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Messages exchanged between a {@link ReplicationPrimary} and a {@link ReplicationBackup}.
+ * <p>
+ * A backup opens the connection with {@link #MAGIC} and the last log sequence number it holds. From then on
+ * the primary sends SNAPSHOT, RECORD and HEARTBEAT messages and the backup answers with ACK messages.
+ * Each message is a type byte followed by its fields:
+ * <ul>
+ *     <li>SNAPSHOT - checkpoint seq, account count, then number, PIN, username and balance in minor units of each account</li>
+ *     <li>RECORD - seq, type ordinal, from, to, amount and cross-shard transaction id of a log record</li>
+ *     <li>HEARTBEAT - the last seq written by the primary, sent when there is nothing else to send</li>
+ *     <li>ACK - the last seq the backup applied and logged</li>
+ * </ul>
+ */
+final class ReplicationProtocol {
+    static final int MAGIC = 0x41544d52; // "ATMR", opens the connection of a backup
+    static final byte SNAPSHOT = 1;
+    static final byte RECORD = 2;
+    static final byte HEARTBEAT = 3;
+    static final byte ACK = 4;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private ReplicationProtocol() {}
+
+    /**
+     * Writes a SNAPSHOT message.
+     *
+     * @param out The stream
+     * @param seq The last log sequence number contained in the accounts
+     * @param accounts The accounts
+     * @throws IOException If writing fails
+     */
+    static void writeSnapshot(DataOutputStream out, long seq, List<Account> accounts) throws IOException {
+        out.writeByte(SNAPSHOT);
+        out.writeLong(seq);
+        out.writeInt(accounts.size());
+        for (Account account : accounts) {
+            out.writeUTF(account.getAccountNum());
+            out.writeUTF(account.getPIN());
+            out.writeUTF(account.getUsername());
+            out.writeLong(account.getBalanceMinor());
+        }
+    }
+
+    /**
+     * Reads the accounts of a SNAPSHOT message whose type byte and seq were already read.
+     *
+     * @param in The stream
+     * @return The accounts
+     * @throws IOException If reading fails
+     */
+    static List<Account> readAccounts(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Account> accounts = new ArrayList<>(Math.max(0, Math.min(count, 1 << 20)));
+        for (int i = 0; i < count; i++) {
+            Account account = new Account(in.readUTF(), in.readUTF(), in.readUTF(), 0);
+            account.setBalanceMinor(in.readLong());
+            accounts.add(account);
+        }
+        return accounts;
+    }
+
+    /**
+     * Writes a RECORD message.
+     *
+     * @param out The stream
+     * @param record The log record
+     * @throws IOException If writing fails
+     */
+    static void writeRecord(DataOutputStream out, TransactionRecord record) throws IOException {
+        out.writeByte(RECORD);
+        out.writeLong(record.getSeq());
+        out.writeByte(record.getType().ordinal());
+        out.writeUTF(record.getFrom());
+        out.writeUTF(record.getTo());
+        out.writeLong(record.getAmount());
+        out.writeLong(record.getTxId());
+    }
+
+    /**
+     * Reads a RECORD message whose type byte was already read.
+     *
+     * @param in The stream
+     * @return The log record
+     * @throws IOException If reading fails
+     */
+    static TransactionRecord readRecord(DataInputStream in) throws IOException {
+        long seq = in.readLong();
+        TransactionRecord.Type type = TransactionRecord.Type.fromCode(in.readByte());
+        String from = in.readUTF();
+        String to = in.readUTF();
+        long amount = in.readLong();
+        long txId = in.readLong();
+        return new TransactionRecord(seq, type, from, to, amount, txId);
+    }
+
+    /**
+     * Writes a message made of a type byte and a sequence number, which is what HEARTBEAT and ACK are.
+     *
+     * @param out The stream
+     * @param type HEARTBEAT or ACK
+     * @param seq The sequence number
+     * @throws IOException If writing fails
+     */
+    static void writeSeq(DataOutputStream out, byte type, long seq) throws IOException {
+        out.writeByte(type);
+        out.writeLong(seq);
+    }
+}
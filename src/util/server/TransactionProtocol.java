@@ -0,0 +1,102 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.server;
+
+import util.strategy.OperationResult;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary protocol between a {@link TransactionServer} and a {@link util.strategy.impl.RemoteStrategy}.
+ * <p>
+ * Every message is a frame: its length as an int, then that many bytes, at most {@link #MAX_FRAME}. A request
+ * holds a request id chosen by the client, an operation byte and the fields of the operation; the response
+ * holds the same request id, a status byte and either the fields of the result or, if the status is not OK,
+ * a message. A client may send further requests before the responses arrive (pipelining); the server answers
+ * the requests of a connection in the order they were sent. Strings are written as by
+ * {@link DataOutputStream#writeUTF(String)}, amounts and balances as longs in minor units.
+ * The operations, with their request fields and the fields of an OK response:
+ * <ul>
+ *     <li>LOGIN - account number, PIN; token, username, balance</li>
+ *     <li>LOGOUT - token; nothing</li>
+ *     <li>DEPOSIT - token, operation id, amount; balance</li>
+ *     <li>WITHDRAW - token, operation id, amount; balance</li>
+ *     <li>TRANSFER - token, destination account number, operation id, amount; balance of the source</li>
+ *     <li>WITHDRAW_COVERED - as WITHDRAW, but refused with INSUFFICIENT_FUNDS unless the balance covers it</li>
+ *     <li>TRANSFER_COVERED - as TRANSFER, but refused with INSUFFICIENT_FUNDS unless the balance of the source covers it</li>
+ *     <li>INQUIRE - token or empty, account number; own flag, username, balance</li>
+ * </ul>
+ * Deposits, withdrawals and transfers apply to the account of the session of the token. The covered variants
+ * check the balance and update it atomically on the server, so terminals sharing an account cannot overdraw it. An inquiry reports
+ * the username and balance only for the account of the session; for other accounts it only tells that the
+ * account exists, with an empty username and a zero balance.
+ * <p>
+ * The operation id is a long the client chooses, unique among the operations of a session, and reuses when it
+ * sends an operation again because no response arrived. The server remembers the outcome of the recent
+ * operation ids of each session and answers a repeated one with it instead of applying the operation twice,
+ * or with IN_PROGRESS while the first request is still running.
+ */
+public final class TransactionProtocol {
+    public static final int MAX_FRAME = 1 << 16; // Largest frame body in bytes
+
+    public static final byte LOGIN = 1;
+    public static final byte LOGOUT = 2;
+    public static final byte DEPOSIT = 3;
+    public static final byte WITHDRAW = 4;
+    public static final byte TRANSFER = 5;
+    public static final byte INQUIRE = 6;
+    public static final byte WITHDRAW_COVERED = 7;
+    public static final byte TRANSFER_COVERED = 8;
+
+    public static final byte OK = 0;
+    public static final byte REJECTED = 1; // Invalid amount, transfer to the same account, or refused by the strategy
+    public static final byte INSUFFICIENT_FUNDS = 2;
+    public static final byte UNKNOWN_ACCOUNT = 3;
+    public static final byte UNAUTHORIZED = 4; // Wrong account number or PIN, or the session expired
+    public static final byte BAD_REQUEST = 5; // Unknown operation or malformed fields
+    public static final byte IN_PROGRESS = 6; // Repeated operation id whose first request is still running, ask again later
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private TransactionProtocol() {}
+
+    /**
+     * Maps the status of an operation result to its status byte.
+     *
+     * @param status The status
+     * @return The status byte
+     */
+    public static byte status(OperationResult.Status status) {
+        switch (status) {
+            case OK:
+                return OK;
+            case INSUFFICIENT_FUNDS:
+                return INSUFFICIENT_FUNDS;
+            case UNKNOWN_ACCOUNT:
+                return UNKNOWN_ACCOUNT;
+            default:
+                return REJECTED;
+        }
+    }
+
+    /**
+     * Writes a frame: the length of the body, then the body.
+     *
+     * @param out The stream
+     * @param body The body, at most MAX_FRAME bytes
+     * @throws IOException If writing fails
+     */
+    public static void writeFrame(DataOutputStream out, ByteArrayOutputStream body) throws IOException {
+        if (body.size() > MAX_FRAME) {
+            throw new IOException("Frame of " + body.size() + " bytes exceeds " + MAX_FRAME);
+        }
+        out.writeInt(body.size());
+        body.writeTo(out);
+    }
+}
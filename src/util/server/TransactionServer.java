@@ -0,0 +1,815 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.server;
+
+import pojo.Account;
+import util.Data;
+import util.Money;
+import util.auth.AuthenticationService;
+import util.auth.Session;
+import util.concurrent.OperationExecutor;
+import util.strategy.AccountCommand;
+import util.strategy.AccountOperationStrategy;
+import util.strategy.OperationResult;
+import util.strategy.StrategyFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking server exposing an {@link AccountOperationStrategy} to remote terminals over the
+ * {@link TransactionProtocol}.
+ * <p>
+ * A single selector thread accepts connections, reads and decodes requests and writes responses, so an idle
+ * terminal costs a socket and a small buffer but no thread. The requests of a connection are executed on the
+ * shared {@link OperationExecutor}, one batch at a time and in the order they arrived: every request read
+ * while the previous batch was running forms the next batch, and its consecutive deposits, withdrawals and
+ * transfers go to the strategy as one {@link AccountOperationStrategy#applyBatch(List)} call, so a
+ * pipelining terminal shares lock acquisitions and log writes across its requests. Connections run in
+ * parallel up to atm.executor.maxConcurrent.
+ * <p>
+ * Logins go through {@link AccountOperationStrategy#login(String, String)}, and every other request carries
+ * the token of its session. Plain withdrawals and transfers are applied like those of the strategies, whether
+ * or not the balance covers them; their covered variants go one at a time through
+ * {@link AccountOperationStrategy#withdrawIfCovered} and {@link AccountOperationStrategy#transferIfCovered}, which
+ * check the balance atomically, and are refused with INSUFFICIENT_FUNDS otherwise. A connection stops being read while it has
+ * atm.server.maxPipeline requests waiting (default 1024) or the terminal does not read its responses, so a
+ * terminal cannot queue unbounded work. The server is configured with these system properties:
+ * <ul>
+ *     <li>atm.server.port - port {@link #main(String[])} listens on, default 7200</li>
+ *     <li>atm.server.backlog - connections waiting to be accepted, default 1024</li>
+ *     <li>atm.strategy - strategy {@link #main(String[])} serves, default consistent</li>
+ * </ul>
+ */
+public class TransactionServer implements Closeable {
+    private static final int MAX_PIPELINE = Integer.getInteger("atm.server.maxPipeline", 1024);
+    private static final int MAX_PENDING_WRITES = 64; // Response batches of a connection not yet written before it stops being read
+    private static final int BACKLOG = Integer.getInteger("atm.server.backlog", 1024);
+    private static final int READ_BUFFER = 4096;
+
+    private final AccountOperationStrategy strategy; // Applies the operations
+    private final OperationExecutor executor; // Runs the batches
+    private final Selector selector; // Watches the server and connection channels
+    private final ServerSocketChannel server; // Accepts connections
+    private final Queue<Connection> ready = new ConcurrentLinkedQueue<>(); // Connections with new responses to write
+    private final AtomicInteger connectionCount = new AtomicInteger(); // Open connections
+    private final Thread loop; // Selector thread
+    private volatile boolean closed;
+
+    /**
+     * Starts a server on the shared executor.
+     *
+     * @param strategy The strategy applying the operations
+     * @param port The port to listen on, 0 for any free port
+     * @throws IOException If the port cannot be bound
+     */
+    public TransactionServer(AccountOperationStrategy strategy, int port) throws IOException {
+        this(strategy, port, OperationExecutor.getInstance());
+    }
+
+    /**
+     * Starts a server.
+     *
+     * @param strategy The strategy applying the operations
+     * @param port The port to listen on, 0 for any free port
+     * @param executor The executor running the batches
+     * @throws IOException If the port cannot be bound
+     */
+    public TransactionServer(AccountOperationStrategy strategy, int port, OperationExecutor executor) throws IOException {
+        this.strategy = strategy;
+        this.executor = executor;
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(new InetSocketAddress(port), BACKLOG);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        loop = new Thread(this::run, "transaction-server");
+        loop.start();
+    }
+
+    /**
+     * Retrieves the port the server listens on.
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * Retrieves the number of open connections.
+     *
+     * @return The number of connections
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Runs the selector until the server is closed.
+     */
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select();
+                Connection connection;
+                while ((connection = ready.poll()) != null) {
+                    flush(connection);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                close((Connection) key.attachment());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Accepts every pending connection.
+     *
+     * @throws IOException If the server channel fails
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connectionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Reads what a connection sent, decodes the complete requests and hands them to the executor.
+     *
+     * @param connection The connection
+     */
+    private void read(Connection connection) {
+        List<Request> requests = new ArrayList<>();
+        try {
+            if (connection.channel.read(connection.in) < 0) {
+                close(connection);
+                return;
+            }
+            ByteBuffer in = connection.in;
+            in.flip();
+            while (in.remaining() >= Integer.BYTES) {
+                int length = in.getInt(in.position());
+                if (length < Integer.BYTES + 1 || length > TransactionProtocol.MAX_FRAME) {
+                    throw new IOException("Bad frame length " + length);
+                }
+                if (in.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                in.position(in.position() + Integer.BYTES);
+                byte[] body = new byte[length];
+                in.get(body);
+                requests.add(Request.decode(body));
+            }
+            in.compact();
+            if (!in.hasRemaining()) {
+                // A frame larger than the buffer is still coming
+                ByteBuffer larger = ByteBuffer.allocate(Math.min(in.capacity() * 2, Integer.BYTES + TransactionProtocol.MAX_FRAME));
+                in.flip();
+                larger.put(in);
+                connection.in = larger;
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        boolean start;
+        synchronized (connection) {
+            connection.requests.addAll(requests);
+            start = !connection.busy;
+            connection.busy = true;
+            if (connection.requests.size() >= MAX_PIPELINE || connection.out.size() >= MAX_PENDING_WRITES) {
+                connection.readPaused = true;
+            }
+        }
+        updateInterest(connection);
+        if (start) {
+            executor.execute(() -> drain(connection));
+        }
+    }
+
+    /**
+     * Executes the requests of a connection batch by batch until none are left, queueing the responses.
+     *
+     * @param connection The connection
+     */
+    private void drain(Connection connection) {
+        while (true) {
+            List<Request> batch;
+            synchronized (connection) {
+                if (connection.requests.isEmpty() || connection.closed) {
+                    connection.busy = false;
+                    return;
+                }
+                batch = connection.requests;
+                connection.requests = new ArrayList<>();
+            }
+            ByteBuffer responses;
+            try {
+                responses = handle(batch);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                synchronized (connection) {
+                    connection.busy = false;
+                }
+                connection.failed = true;
+                ready.add(connection);
+                selector.wakeup();
+                return;
+            }
+            connection.out.add(responses);
+            ready.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Writes the queued responses of a connection as far as the socket takes them, then updates what the
+     * selector watches for.
+     *
+     * @param connection The connection
+     */
+    private void flush(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        if (connection.failed) {
+            close(connection);
+            return;
+        }
+        try {
+            ByteBuffer head;
+            while ((head = connection.out.peek()) != null) {
+                connection.channel.write(head);
+                if (head.hasRemaining()) {
+                    break;
+                }
+                connection.out.poll();
+            }
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        synchronized (connection) {
+            if (connection.readPaused && connection.requests.size() < MAX_PIPELINE / 2 && connection.out.isEmpty()) {
+                connection.readPaused = false;
+            }
+        }
+        updateInterest(connection);
+    }
+
+    /**
+     * Watches a connection for reads unless it is paused, and for writes while responses are queued.
+     * Must be called on the selector thread.
+     *
+     * @param connection The connection
+     */
+    private void updateInterest(Connection connection) {
+        if (!connection.key.isValid()) {
+            return;
+        }
+        int ops = connection.readPaused ? 0 : SelectionKey.OP_READ;
+        if (!connection.out.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        connection.key.interestOps(ops);
+    }
+
+    /**
+     * Closes a connection. Requests still running finish, but their responses are dropped.
+     *
+     * @param connection The connection
+     */
+    private void close(Connection connection) {
+        synchronized (connection) {
+            if (connection.closed) {
+                return;
+            }
+            connection.closed = true;
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        connectionCount.decrementAndGet();
+    }
+
+    /**
+     * Executes a batch of requests of one connection in order and encodes their responses.
+     *
+     * @param batch The requests
+     * @return The response frames
+     * @throws IOException Never, the streams are in memory
+     */
+    private ByteBuffer handle(List<Request> batch) throws IOException {
+        Responses responses = new Responses(batch.size());
+        int i = 0;
+        while (i < batch.size()) {
+            Request request = batch.get(i);
+            if (!request.isAccountCommand()) {
+                handleSingle(request, responses);
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end < batch.size() && batch.get(end).isAccountCommand()) {
+                end++;
+            }
+            handleCommands(batch.subList(i, end), responses);
+            i = end;
+        }
+        return responses.toBuffer();
+    }
+
+    /**
+     * Executes a login, logout or inquiry.
+     *
+     * @param request The request
+     * @param responses The responses to add to
+     * @throws IOException Never, the streams are in memory
+     */
+    private void handleSingle(Request request, Responses responses) throws IOException {
+        AuthenticationService auth = AuthenticationService.getInstance();
+        try {
+            switch (request.op) {
+                case TransactionProtocol.LOGIN:
+                    Session session = strategy.login(request.accountNum, request.pin);
+                    if (session == null) {
+                        responses.error(request.id, TransactionProtocol.UNAUTHORIZED, "Wrong account number or PIN");
+                    } else {
+                        DataOutputStream out = responses.begin(request.id, TransactionProtocol.OK);
+                        out.writeUTF(session.getToken());
+                        out.writeUTF(session.getUsername());
+                        out.writeLong(session.getAccount().getBalanceMinor());
+                        responses.end();
+                    }
+                    break;
+                case TransactionProtocol.LOGOUT:
+                    Session ended = auth.getSession(request.token);
+                    if (ended != null) {
+                        strategy.logout(ended);
+                    }
+                    responses.begin(request.id, TransactionProtocol.OK);
+                    responses.end();
+                    break;
+                case TransactionProtocol.WITHDRAW_COVERED:
+                case TransactionProtocol.TRANSFER_COVERED:
+                    handleCovered(request, responses);
+                    break;
+                case TransactionProtocol.INQUIRE:
+                    Session owner = request.token.isEmpty() ? null : auth.getSession(request.token);
+                    boolean own = owner != null && owner.getAccountNum().equals(request.accountNum);
+                    Account account = own ? strategy.inquire(request.accountNum) : strategy.find(request.accountNum);
+                    if (account == null) {
+                        responses.error(request.id, TransactionProtocol.UNKNOWN_ACCOUNT, "Unknown account " + request.accountNum);
+                    } else {
+                        DataOutputStream out = responses.begin(request.id, TransactionProtocol.OK);
+                        out.writeBoolean(own);
+                        out.writeUTF(own ? account.getUsername() : "");
+                        out.writeLong(own ? account.getBalanceMinor() : 0);
+                        responses.end();
+                    }
+                    break;
+                default:
+                    responses.error(request.id, TransactionProtocol.BAD_REQUEST, "Malformed request");
+                    break;
+            }
+        } catch (RuntimeException e) {
+            responses.error(request.id, TransactionProtocol.REJECTED, String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Executes consecutive deposits, withdrawals and transfers as one batch of the strategy. Requests whose
+     * session expired are answered without being applied, and so are requests repeating an operation id the
+     * session already started: with the recorded outcome, or as in progress while the first one is still running.
+     *
+     * @param requests The requests
+     * @param responses The responses to add to
+     * @throws IOException Never, the streams are in memory
+     */
+    private void handleCommands(List<Request> requests, Responses responses) throws IOException {
+        AuthenticationService auth = AuthenticationService.getInstance();
+        List<AccountCommand> commands = new ArrayList<>(requests.size());
+        Session[] sessions = new Session[requests.size()]; // Null where the session expired
+        boolean[] repeats = new boolean[requests.size()]; // Whether the request repeats an operation id of its session
+        OperationResult[] repeated = new OperationResult[requests.size()]; // Recorded outcome of a repeated operation id, null while running
+        for (int i = 0; i < requests.size(); i++) {
+            Request request = requests.get(i);
+            Session session = auth.getSession(request.token);
+            if (session == null) {
+                continue;
+            }
+            sessions[i] = session;
+            if (!session.startOperation(request.operationId)) {
+                repeats[i] = true;
+                repeated[i] = session.getOperationResult(request.operationId);
+                continue;
+            }
+            double money = Money.toMajor(request.amountMinor);
+            switch (request.op) {
+                case TransactionProtocol.DEPOSIT:
+                    commands.add(AccountCommand.deposit(session.getAccountNum(), money));
+                    break;
+                case TransactionProtocol.WITHDRAW:
+                    commands.add(AccountCommand.withdraw(session.getAccountNum(), money));
+                    break;
+                default:
+                    commands.add(AccountCommand.transfer(session.getAccountNum(), request.accountNum, money));
+                    break;
+            }
+        }
+        List<OperationResult> results;
+        String failure = null;
+        try {
+            results = commands.isEmpty() ? Collections.emptyList() : strategy.applyBatch(commands);
+        } catch (RuntimeException e) {
+            results = Collections.emptyList();
+            failure = String.valueOf(e.getMessage());
+        }
+        int next = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            Request request = requests.get(i);
+            if (sessions[i] == null) {
+                responses.error(request.id, TransactionProtocol.UNAUTHORIZED, "Session expired, log in again");
+            } else if (repeats[i]) {
+                respondRepeated(request, repeated[i], responses);
+            } else if (failure != null) {
+                // Nothing was applied, so the client may send the operation again
+                sessions[i].finishOperation(request.operationId, null);
+                responses.error(request.id, TransactionProtocol.REJECTED, failure);
+            } else {
+                OperationResult result = results.get(next++);
+                sessions[i].finishOperation(request.operationId, result);
+                respond(request.id, result, responses);
+            }
+        }
+    }
+
+    /**
+     * Executes a withdrawal or transfer that is refused unless the balance covers it. Like the batched
+     * commands, a request repeating an operation id of its session is answered without being applied.
+     *
+     * @param request The request
+     * @param responses The responses to add to
+     * @throws IOException Never, the streams are in memory
+     */
+    private void handleCovered(Request request, Responses responses) throws IOException {
+        Session session = AuthenticationService.getInstance().getSession(request.token);
+        if (session == null) {
+            responses.error(request.id, TransactionProtocol.UNAUTHORIZED, "Session expired, log in again");
+            return;
+        }
+        if (!session.startOperation(request.operationId)) {
+            respondRepeated(request, session.getOperationResult(request.operationId), responses);
+            return;
+        }
+        OperationResult result;
+        try {
+            result = applyCovered(request, session);
+        } catch (RuntimeException e) {
+            // Nothing was applied, so the client may send the operation again
+            session.finishOperation(request.operationId, null);
+            responses.error(request.id, TransactionProtocol.REJECTED, String.valueOf(e.getMessage()));
+            return;
+        }
+        session.finishOperation(request.operationId, result);
+        respond(request.id, result, responses);
+    }
+
+    /**
+     * Applies a covered withdrawal or transfer to the account of a session.
+     *
+     * @param request The request
+     * @param session The session
+     * @return The outcome, with the balance of the account of the session
+     */
+    private OperationResult applyCovered(Request request, Session session) {
+        double money = Money.toMajor(request.amountMinor);
+        OperationResult invalid = AccountCommand.checkAmount(money);
+        if (invalid != null) {
+            return invalid;
+        }
+        Account account = session.getAccount();
+        boolean applied;
+        if (request.op == TransactionProtocol.WITHDRAW_COVERED) {
+            applied = strategy.withdrawIfCovered(account, money);
+        } else {
+            Account toAccount = strategy.find(request.accountNum);
+            if (toAccount == null) {
+                return OperationResult.unknownAccount(request.accountNum);
+            }
+            if (account.getAccountNum().equals(request.accountNum)) {
+                return OperationResult.rejected("Cannot transfer to the same account");
+            }
+            applied = strategy.transferIfCovered(account, toAccount, money);
+        }
+        return applied ? OperationResult.ok(account.getBalanceMinor()) : OperationResult.insufficientFunds(account.getBalanceMinor());
+    }
+
+    /**
+     * Answers a request repeating an operation id its session already started: with the recorded outcome, or
+     * with IN_PROGRESS while the first request is still running, so the client asks again later.
+     *
+     * @param request The request
+     * @param recorded The recorded outcome, or null if the operation is still running
+     * @param responses The responses to add to
+     * @throws IOException Never, the streams are in memory
+     */
+    private static void respondRepeated(Request request, OperationResult recorded, Responses responses) throws IOException {
+        if (recorded == null) {
+            responses.error(request.id, TransactionProtocol.IN_PROGRESS, "Operation " + request.operationId + " is still in progress");
+        } else {
+            respond(request.id, recorded, responses);
+        }
+    }
+
+    /**
+     * Encodes the response to a deposit, withdrawal or transfer.
+     *
+     * @param requestId The request id
+     * @param result The outcome of the operation
+     * @param responses The responses to add to
+     * @throws IOException Never, the streams are in memory
+     */
+    private static void respond(int requestId, OperationResult result, Responses responses) throws IOException {
+        if (result.isOk()) {
+            responses.begin(requestId, TransactionProtocol.OK).writeLong(result.getBalanceMinor());
+            responses.end();
+        } else {
+            responses.error(requestId, TransactionProtocol.status(result.getStatus()), result.getMessage());
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones.
+     *
+     * @throws IOException If the server channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        selector.wakeup();
+        try {
+            loop.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Serves the strategy named by atm.strategy over the accounts of the data file until the process is stopped.
+     *
+     * @param args Optionally the port, overriding atm.server.port
+     * @throws IOException If the port cannot be bound
+     * @throws InterruptedException If interrupted while serving
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger("atm.server.port", 7200);
+        String strategyName = System.getProperty("atm.strategy", "consistent");
+        TransactionServer server = new TransactionServer(StrategyFactory.create(strategyName), port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            Data.getInstance().close();
+        }));
+        System.out.println("Serving " + Data.getInstance().getAccounts().size() + " accounts with the " + strategyName
+                + " strategy on port " + server.getPort());
+        server.loop.join();
+    }
+
+    /**
+     * A connection and its requests and responses.
+     */
+    private static final class Connection {
+        private final SocketChannel channel; // The socket
+        private SelectionKey key; // Registration with the selector
+        private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER); // Bytes read but not yet decoded, used by the selector thread only
+        private final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>(); // Response batches not yet written
+        private List<Request> requests = new ArrayList<>(); // Requests waiting for the executor, guarded by this
+        private boolean busy; // Whether a batch is running on the executor, guarded by this
+        private volatile boolean readPaused; // Whether reading stopped until the backlog shrinks
+        private volatile boolean failed; // Whether a batch failed, so the connection must be closed
+        private boolean closed; // Guarded by this
+
+        /**
+         * Constructs a connection.
+         *
+         * @param channel The accepted socket
+         */
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * A decoded request.
+     */
+    private static final class Request {
+        private final int id; // Request id chosen by the client
+        private final byte op; // Operation, 0 when malformed
+        private final String token; // Session token, empty for LOGIN
+        private final String accountNum; // Account of LOGIN and INQUIRE, destination of TRANSFER
+        private final String pin; // PIN of LOGIN
+        private final long operationId; // Id the client chose for a deposit, withdrawal or transfer, kept when retried
+        private final long amountMinor; // Amount of a deposit, withdrawal or transfer
+
+        /**
+         * Constructs a request.
+         *
+         * @param id The request id
+         * @param op The operation
+         * @param token The session token
+         * @param accountNum The account number
+         * @param pin The PIN
+         * @param operationId The operation id
+         * @param amountMinor The amount in minor units
+         */
+        private Request(int id, byte op, String token, String accountNum, String pin, long operationId, long amountMinor) {
+            this.id = id;
+            this.op = op;
+            this.token = token;
+            this.accountNum = accountNum;
+            this.pin = pin;
+            this.operationId = operationId;
+            this.amountMinor = amountMinor;
+        }
+
+        /**
+         * Decodes a request frame. A request with an unknown operation or malformed fields is decoded with
+         * operation 0, so it is answered with BAD_REQUEST.
+         *
+         * @param body The frame body, at least 5 bytes
+         * @return The request
+         * @throws IOException Never, the stream is in memory and long enough for the id and operation
+         */
+        static Request decode(byte[] body) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            int id = in.readInt();
+            byte op = in.readByte();
+            try {
+                switch (op) {
+                    case TransactionProtocol.LOGIN:
+                        return new Request(id, op, "", in.readUTF(), in.readUTF(), 0, 0);
+                    case TransactionProtocol.LOGOUT:
+                        return new Request(id, op, in.readUTF(), "", "", 0, 0);
+                    case TransactionProtocol.DEPOSIT:
+                    case TransactionProtocol.WITHDRAW:
+                    case TransactionProtocol.WITHDRAW_COVERED:
+                        return new Request(id, op, in.readUTF(), "", "", in.readLong(), in.readLong());
+                    case TransactionProtocol.TRANSFER:
+                    case TransactionProtocol.TRANSFER_COVERED:
+                        return new Request(id, op, in.readUTF(), in.readUTF(), "", in.readLong(), in.readLong());
+                    case TransactionProtocol.INQUIRE:
+                        return new Request(id, op, in.readUTF(), in.readUTF(), "", 0, 0);
+                    default:
+                        break;
+                }
+            } catch (IOException e) {
+                // Fields cut short, answered as malformed below
+            }
+            return new Request(id, (byte) 0, "", "", "", 0, 0);
+        }
+
+        /**
+         * Whether the request is a deposit, withdrawal or transfer, which are batched.
+         *
+         * @return true for an account command
+         */
+        boolean isAccountCommand() {
+            return op == TransactionProtocol.DEPOSIT || op == TransactionProtocol.WITHDRAW || op == TransactionProtocol.TRANSFER;
+        }
+    }
+
+    /**
+     * Encodes response frames back to back.
+     */
+    private static final class Responses {
+        private final ByteArrayOutputStream bytes; // Encoded frames
+        private final DataOutputStream out; // Writes to bytes
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(64); // Body of the frame being encoded
+        private final DataOutputStream fields = new DataOutputStream(body); // Writes to body
+
+        /**
+         * Constructs an encoder.
+         *
+         * @param count The expected number of responses
+         */
+        Responses(int count) {
+            bytes = new ByteArrayOutputStream(count * 24);
+            out = new DataOutputStream(bytes);
+        }
+
+        /**
+         * Starts a response.
+         *
+         * @param requestId The request id
+         * @param status The status byte
+         * @return The stream to write the fields of the response to
+         * @throws IOException Never, the streams are in memory
+         */
+        DataOutputStream begin(int requestId, byte status) throws IOException {
+            body.reset();
+            fields.writeInt(requestId);
+            fields.writeByte(status);
+            return fields;
+        }
+
+        /**
+         * Finishes the response started last.
+         *
+         * @throws IOException Never, the streams are in memory
+         */
+        void end() throws IOException {
+            TransactionProtocol.writeFrame(out, body);
+        }
+
+        /**
+         * Adds a failure response.
+         *
+         * @param requestId The request id
+         * @param status The status byte
+         * @param message The reason
+         * @throws IOException Never, the streams are in memory
+         */
+        void error(int requestId, byte status, String message) throws IOException {
+            begin(requestId, status).writeUTF(message);
+            end();
+        }
+
+        /**
+         * Retrieves the encoded frames.
+         *
+         * @return A buffer ready to be written
+         */
+        ByteBuffer toBuffer() {
+            return ByteBuffer.wrap(bytes.toByteArray());
+        }
+    }
+}
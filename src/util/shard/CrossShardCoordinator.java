@@ -0,0 +1,227 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.shard;
+
+import pojo.Account;
+import util.Money;
+import util.log.FsyncPolicy;
+import util.log.TransactionLog;
+import util.log.TransactionRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs transfers between accounts of different shards with a two-phase commit.
+ * <p>
+ * In the prepare phase the coordinator takes the gates and then the locks of both shards in ascending shard
+ * order, so two opposite transfers cannot deadlock, and each shard votes by holding the account. The source
+ * shard votes no if the transfer must be covered by the balance and is not; otherwise both votes are yes once
+ * the locks are held. Still under the locks, the
+ * transfer is queued in the coordinator log, and its sequence number becomes the transaction id, before the
+ * balances are updated; a transfer the log refuses is not applied at all. The commit phase then runs outside
+ * the locks: once the coordinator record is on disk the transfer is committed. Each shard then logs its side
+ * tagged with the id, and a DONE record closes the transaction in the coordinator log.
+ * <p>
+ * After a crash, {@link #recover()} completes every committed transaction without a DONE record. A shard
+ * whose log does not hold the transaction id gets its side applied and logged again. A transfer that did
+ * not reach the coordinator log was never logged by a shard either, so it is dropped as a whole (presumed
+ * abort). Without a coordinator log, as for shards held in memory only, the ids come from a counter and
+ * nothing is recovered.
+ */
+public class CrossShardCoordinator implements Closeable {
+    private final ShardSet shards; // The shards the transfers run between
+    private final TransactionLog log; // Commit and DONE records, null when logging is off
+    private final AtomicLong nextId = new AtomicLong(); // Transaction ids when there is no log
+
+    /**
+     * Constructs a coordinator without a log.
+     *
+     * @param shards The shards the transfers run between
+     */
+    CrossShardCoordinator(ShardSet shards) {
+        this.shards = shards;
+        this.log = null;
+    }
+
+    /**
+     * Opens the coordinator log in the given directory. New transaction ids are numbered after the last record
+     * in the log and after every id still present in the logs of the shards.
+     *
+     * @param shards The shards the transfers run between, already recovered from their own logs
+     * @param directory The directory of the coordinator log
+     * @param policy When to force writes to disk
+     * @param intervalMillis Force interval in milliseconds for FsyncPolicy.INTERVAL
+     * @throws IOException If the log cannot be read or opened
+     */
+    CrossShardCoordinator(ShardSet shards, Path directory, FsyncPolicy policy, long intervalMillis) throws IOException {
+        this.shards = shards;
+        long lastSeq = TransactionLog.replay(directory, 0, record -> { });
+        for (int i = 0; i < shards.getShardCount(); i++) {
+            for (long txId : shards.getShard(i).getData().getReplayedTransactions()) {
+                lastSeq = Math.max(lastSeq, txId);
+            }
+        }
+        this.log = new TransactionLog(directory, lastSeq, policy, intervalMillis);
+    }
+
+    /**
+     * Transfers money between accounts of different shards.
+     *
+     * @param fromShard The shard holding the source account
+     * @param fromAccount The account to transfer money from
+     * @param toShard The shard holding the destination account
+     * @param toAccount The account to transfer money to
+     * @param money The amount of money to transfer
+     * @param requireFunds Whether the source shard votes no if the balance does not cover the amount
+     * @return true if the transfer was committed, false if the source shard voted no
+     */
+    public boolean transfer(Shard fromShard, Account fromAccount, Shard toShard, Account toAccount, double money,
+                            boolean requireFunds) {
+        long amount = Money.toMinor(money);
+        Shard first = fromShard.getIndex() < toShard.getIndex() ? fromShard : toShard;
+        Shard second = first == fromShard ? toShard : fromShard;
+        first.getGate().readLock().lock();
+        second.getGate().readLock().lock();
+        try {
+            String from = fromAccount.getAccountNum();
+            String to = toAccount.getAccountNum();
+            long txId;
+            // Prepare: both shards hold their account and are locked, so both vote to commit unless funds are short
+            synchronized (first.getLock()) {
+                synchronized (second.getLock()) {
+                    if (requireFunds && fromAccount.getBalanceMinor() < amount) {
+                        return false;
+                    }
+                    txId = log != null ? log.enqueue(TransactionRecord.Type.TRANSFER, from, to, amount, 0) : nextId.incrementAndGet();
+                    fromAccount.setBalanceMinor(fromAccount.getBalanceMinor() - amount);
+                    toAccount.setBalanceMinor(toAccount.getBalanceMinor() + amount);
+                }
+            }
+            // Commit: the coordinator record decides the outcome, then each shard logs its side
+            if (log != null) {
+                log.await(txId);
+            }
+            journal(fromShard, from, to, amount, txId);
+            journal(toShard, from, to, amount, txId);
+            if (log != null) {
+                log.append(TransactionRecord.Type.DONE, "", null, 0, txId);
+            }
+            return true;
+        } finally {
+            second.getGate().readLock().unlock();
+            first.getGate().readLock().unlock();
+        }
+    }
+
+    /**
+     * Completes the transactions that were committed but not marked done when the process stopped, then
+     * drops the coordinator log segments, which no longer hold anything to recover.
+     * Must be called once, before any transfer.
+     *
+     * @return The number of transactions completed
+     * @throws IOException If the log cannot be read or written
+     */
+    int recover() throws IOException {
+        if (log == null) {
+            return 0;
+        }
+        Map<Long, TransactionRecord> open = new TreeMap<>();
+        TransactionLog.replay(log.getDirectory(), 0, record -> {
+            if (record.getType() == TransactionRecord.Type.TRANSFER) {
+                open.put(record.getSeq(), record);
+            } else if (record.getType() == TransactionRecord.Type.DONE) {
+                open.remove(record.getTxId());
+            }
+        });
+        for (TransactionRecord record : open.values()) {
+            redo(record, shards.shardOf(record.getFrom()), true);
+            redo(record, shards.shardOf(record.getTo()), false);
+            log.append(TransactionRecord.Type.DONE, "", null, 0, record.getSeq());
+            System.err.println("Completed cross-shard transaction " + record);
+        }
+        trim();
+        return open.size();
+    }
+
+    /**
+     * Applies and logs one side of a committed transaction on a shard that does not hold it yet.
+     *
+     * @param record The coordinator record of the transaction
+     * @param shard The shard of the side
+     * @param source Whether the side is the source account
+     */
+    private static void redo(TransactionRecord record, Shard shard, boolean source) {
+        long txId = record.getSeq();
+        if (shard.getData().getReplayedTransactions().contains(txId)) {
+            return;
+        }
+        Account account = shard.get(source ? record.getFrom() : record.getTo());
+        if (account == null) {
+            System.err.println("Skipping cross-shard transaction for unknown account: " + record);
+            return;
+        }
+        long seq;
+        synchronized (shard.getLock()) {
+            seq = shard.getData().journal(TransactionRecord.Type.TRANSFER, record.getFrom(), record.getTo(), record.getAmount(), txId);
+            account.setBalanceMinor(account.getBalanceMinor() + (source ? -record.getAmount() : record.getAmount()));
+        }
+        shard.getData().commit(seq, record.getFrom(), record.getTo());
+    }
+
+    /**
+     * Logs one side of a committed transaction, already applied, to the log of its shard.
+     * The record only changes the account of that shard by an amount, so it may follow records of operations
+     * applied after the transaction without changing the outcome of a replay.
+     *
+     * @param shard The shard of the side
+     * @param from The source account number
+     * @param to The destination account number
+     * @param amount The amount in minor units
+     * @param txId The id of the transaction
+     */
+    private static void journal(Shard shard, String from, String to, long amount, long txId) {
+        long seq = shard.getData().journal(TransactionRecord.Type.TRANSFER, from, to, amount, txId);
+        shard.getData().commit(seq, from, to);
+    }
+
+    /**
+     * Drops the coordinator log segments while no transaction is running, since every transaction in them is done.
+     *
+     * @throws IOException If the log cannot be rolled or a segment cannot be deleted
+     */
+    void trim() throws IOException {
+        if (log == null) {
+            return;
+        }
+        for (int i = 0; i < shards.getShardCount(); i++) {
+            shards.getShard(i).getGate().writeLock().lock();
+        }
+        try {
+            log.deleteSegmentsUpTo(log.roll());
+        } finally {
+            for (int i = shards.getShardCount() - 1; i >= 0; i--) {
+                shards.getShard(i).getGate().writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes and forces the coordinator log and stops its writer.
+     *
+     * @throws IOException If the final write fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+}
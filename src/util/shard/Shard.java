@@ -0,0 +1,96 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.shard;
+
+import pojo.Account;
+import util.Data;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * One partition of a {@link ShardSet}: the accounts whose account number hashes to it, held by a {@link Data}
+ * object with its own data file and transaction log.
+ * <p>
+ * Balance updates on the shard are made while holding its lock, so operations on different shards never
+ * contend. The gate is held shared by every cross-shard transaction touching the shard from its start
+ * until it is marked done, and exclusively while the log of the shard is compacted, so a snapshot never
+ * folds in half of a transaction that recovery might still have to complete.
+ */
+public class Shard {
+    private final int index; // Position of the shard in its set
+    private final Data data; // Accounts, data file and log of the shard
+    private final Object lock = new Object(); // Guards balance updates of the accounts of the shard
+    private final ReentrantReadWriteLock gate = new ReentrantReadWriteLock(); // Separates cross-shard transactions from compaction
+
+    /**
+     * Constructs a shard.
+     *
+     * @param index The position of the shard in its set
+     * @param data The accounts of the shard
+     */
+    Shard(int index, Data data) {
+        this.index = index;
+        this.data = data;
+    }
+
+    /**
+     * Retrieves the position of the shard in its set.
+     *
+     * @return The shard index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Retrieves the accounts, data file and log of the shard.
+     *
+     * @return The Data object of the shard
+     */
+    public Data getData() {
+        return data;
+    }
+
+    /**
+     * Retrieves the lock guarding balance updates of the accounts of the shard.
+     *
+     * @return The lock object
+     */
+    public Object getLock() {
+        return lock;
+    }
+
+    /**
+     * Retrieves the gate separating cross-shard transactions from compaction.
+     *
+     * @return The gate
+     */
+    ReentrantReadWriteLock getGate() {
+        return gate;
+    }
+
+    /**
+     * Looks up an account of the shard.
+     *
+     * @param accountNum The account number
+     * @return The account, or null if the shard does not hold it
+     */
+    public Account get(String accountNum) {
+        return data.getAccountByAccountNum(accountNum);
+    }
+
+    /**
+     * Folds the log of the shard into its data file while no cross-shard transaction touches it.
+     */
+    void compact() {
+        gate.writeLock().lock();
+        try {
+            data.compactLog();
+        } finally {
+            gate.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.shard;
+
+import pojo.Account;
+import util.Data;
+import util.log.FsyncPolicy;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accounts partitioned into a fixed number of {@link Shard}s by a hash of the account number.
+ * <p>
+ * Each shard lives in its own directory under the shard directory, with its own data file, transaction log
+ * and, for the mapped and cached stores, binary account file, so operations on different shards neither
+ * share a lock nor a log writer. Transfers between shards go through the {@link CrossShardCoordinator},
+ * whose log is kept in the coordinator directory. On first use the shard files are created from the
+ * accounts of the current {@link Data} instance; the number of shards is then fixed and recorded in the
+ * shard.count file.
+ * <p>
+ * Opening the set replays the log of every shard and then completes the cross-shard transactions the
+ * coordinator log shows as unfinished. The logs of the shards and of the coordinator are compacted together
+ * every atm.snapshot.intervalSeconds (default 30, 0 turns it off). The shared set is configured with these
+ * system properties:
+ * <ul>
+ *     <li>atm.shards.dir - shard directory, default "shards"</li>
+ *     <li>atm.shards.count - number of shards created on first use, default 4</li>
+ * </ul>
+ * The logs follow atm.journal.enabled, atm.journal.fsync and atm.journal.fsyncIntervalMillis like the log of Data.
+ */
+public class ShardSet implements Closeable {
+    private static final String COUNT_FILE = "shard.count"; // Written once all shard files exist
+    private static final boolean JOURNAL_ENABLED = Boolean.parseBoolean(System.getProperty("atm.journal.enabled", "true"));
+    private static final FsyncPolicy JOURNAL_FSYNC = FsyncPolicy.parse(System.getProperty("atm.journal.fsync", "always"));
+    private static final long JOURNAL_FSYNC_INTERVAL = Long.getLong("atm.journal.fsyncIntervalMillis", 100);
+    private static final long SNAPSHOT_INTERVAL = Long.getLong("atm.snapshot.intervalSeconds", 30);
+
+    private final Shard[] shards; // The shards, by index
+    private CrossShardCoordinator coordinator; // Runs transfers between shards
+    private ScheduledExecutorService compactor; // Compacts the logs, null when off
+
+    /**
+     * Holds the shared set, opened on first use.
+     */
+    private static class Holder {
+        private static final ShardSet INSTANCE = openDefault();
+    }
+
+    /**
+     * Constructs a set over loaded shards. The coordinator is set by the caller.
+     *
+     * @param shards The shards, by index
+     */
+    private ShardSet(Shard[] shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Retrieves the shared set, opening it from the shard directory on first use.
+     *
+     * @return The shared set
+     * @throws UncheckedIOException If the shards cannot be created or opened
+     */
+    public static ShardSet getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Opens the shared set with the configuration from system properties.
+     *
+     * @return The set
+     */
+    private static ShardSet openDefault() {
+        try {
+            return open(Paths.get(System.getProperty("atm.shards.dir", "shards")), Integer.getInteger("atm.shards.count", 4));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the shards", e);
+        }
+    }
+
+    /**
+     * Creates a set that holds the given accounts in memory only, with no data files, logs or recovery,
+     * like {@link Data#inMemory(Iterable)}.
+     *
+     * @param accounts The accounts to hold
+     * @param count The number of shards
+     * @return The set
+     */
+    public static ShardSet inMemory(Iterable<Account> accounts, int count) {
+        List<List<Account>> partitions = partition(accounts, count);
+        Shard[] shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(i, Data.inMemory(partitions.get(i)));
+        }
+        ShardSet set = new ShardSet(shards);
+        set.coordinator = new CrossShardCoordinator(set);
+        return set;
+    }
+
+    /**
+     * Opens the shards in a directory, creating them from the accounts of the current Data instance if the
+     * directory holds none yet, and completes unfinished cross-shard transactions.
+     *
+     * @param directory The shard directory
+     * @param count The number of shards to create, must match the directory if it already holds shards
+     * @return The set
+     * @throws IOException If the shards cannot be created, read or recovered
+     * @throws IllegalStateException If the directory holds a different number of shards, or the store keeps
+     *                               balances outside the log, which recovery needs
+     */
+    public static ShardSet open(Path directory, int count) throws IOException {
+        String store = System.getProperty("atm.store", "memory");
+        if ("mapped".equals(store) || "cached".equals(store)) {
+            throw new IllegalStateException("Shards need a store that logs its operations, not atm.store=" + store);
+        }
+        Path countFile = directory.resolve(COUNT_FILE);
+        if (Files.exists(countFile)) {
+            int existing = Integer.parseInt(new String(Files.readAllBytes(countFile), StandardCharsets.UTF_8).trim());
+            if (existing != count) {
+                throw new IllegalStateException(directory + " holds " + existing + " shards, not " + count);
+            }
+        } else {
+            create(directory, count);
+        }
+
+        Shard[] shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            Path shardDirectory = directory.resolve("shard-" + i);
+            Data data = Data.load(shardDirectory.resolve("data.txt").toString(), shardDirectory.resolve("journal"),
+                    shardDirectory.resolve("data.bin"), 0);
+            shards[i] = new Shard(i, data);
+        }
+        ShardSet set = new ShardSet(shards);
+        if (JOURNAL_ENABLED) {
+            set.coordinator = new CrossShardCoordinator(set, directory.resolve("coordinator"), JOURNAL_FSYNC, JOURNAL_FSYNC_INTERVAL);
+            set.coordinator.recover();
+            if (SNAPSHOT_INTERVAL > 0) {
+                set.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "shard-snapshotter");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                set.compactor.scheduleWithFixedDelay(set::compact, SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL, TimeUnit.SECONDS);
+            }
+        } else {
+            set.coordinator = new CrossShardCoordinator(set);
+        }
+        return set;
+    }
+
+    /**
+     * Writes the data file of every shard from the accounts of the current Data instance, then records the
+     * number of shards. A creation cut short is redone on the next open, as the count file is written last.
+     *
+     * @param directory The shard directory
+     * @param count The number of shards
+     * @throws IOException If a file cannot be written
+     */
+    private static void create(Path directory, int count) throws IOException {
+        List<List<Account>> partitions = partition(Data.getInstance().getAccounts(), count);
+        for (int i = 0; i < count; i++) {
+            Path shardDirectory = Files.createDirectories(directory.resolve("shard-" + i));
+            Path target = shardDirectory.resolve("data.txt");
+            Path temp = shardDirectory.resolve("data.txt.tmp");
+            try (BufferedWriter bw = Files.newBufferedWriter(temp)) {
+                for (Account account : partitions.get(i)) {
+                    bw.write(account.getAccountNum() + " " +
+                            account.getPIN() + " " +
+                            account.getUsername() + " " +
+                            account.getBalance());
+                    bw.newLine();
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        Files.write(directory.resolve(COUNT_FILE), String.valueOf(count).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Splits accounts by shard, keeping their order within each shard.
+     *
+     * @param accounts The accounts
+     * @param count The number of shards
+     * @return The accounts of each shard, by index
+     */
+    private static List<List<Account>> partition(Iterable<Account> accounts, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + count);
+        }
+        List<List<Account>> partitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (Account account : accounts) {
+            partitions.get(shardIndex(account.getAccountNum(), count)).add(account);
+        }
+        return partitions;
+    }
+
+    /**
+     * Maps an account number to the index of its shard.
+     *
+     * @param accountNum The account number
+     * @param count The number of shards
+     * @return The shard index
+     */
+    private static int shardIndex(String accountNum, int count) {
+        int h = accountNum.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), count);
+    }
+
+    /**
+     * Retrieves the number of shards.
+     *
+     * @return The shard count
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Retrieves a shard by index.
+     *
+     * @param index The shard index
+     * @return The shard
+     */
+    public Shard getShard(int index) {
+        return shards[index];
+    }
+
+    /**
+     * Retrieves the shard an account number belongs to, whether or not the account exists.
+     *
+     * @param accountNum The account number
+     * @return The shard
+     */
+    public Shard shardOf(String accountNum) {
+        return shards[shardIndex(accountNum, shards.length)];
+    }
+
+    /**
+     * Looks up an account in its shard.
+     *
+     * @param accountNum The account number
+     * @return The account, or null if not found
+     */
+    public Account getAccount(String accountNum) {
+        return shardOf(accountNum).get(accountNum);
+    }
+
+    /**
+     * Retrieves the accounts of all shards, shard by shard in the order each shard loaded them.
+     *
+     * @return A new list of the accounts
+     */
+    public List<Account> getAccounts() {
+        List<Account> accounts = new ArrayList<>();
+        for (Shard shard : shards) {
+            accounts.addAll(shard.getData().getAccounts());
+        }
+        return accounts;
+    }
+
+    /**
+     * Retrieves the coordinator of transfers between shards.
+     *
+     * @return The coordinator
+     */
+    public CrossShardCoordinator getCoordinator() {
+        return coordinator;
+    }
+
+    /**
+     * Folds the log of every shard into its data file, then drops the coordinator log segments.
+     */
+    public void compact() {
+        for (Shard shard : shards) {
+            shard.compact();
+        }
+        try {
+            coordinator.trim();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the compaction, then writes and forces the logs and closes the shards.
+     *
+     * @throws IOException If the coordinator log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            compactor = null;
+        }
+        coordinator.close();
+        for (Shard shard : shards) {
+            shard.getData().close();
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for the text data file.
+ * <p>
+ * The file is read through one reusable byte buffer and every field is parsed straight from the bytes,
+ * so no String is created per line or per field. Each line holds a 6-digit account number, a 4-digit PIN,
+ * a username and a balance, separated by single spaces. A line starting with "#checkpoint " carries the
+ * last transaction log sequence number contained in the file. Lines that do not match are reported to the
+ * listener with their line number. Blank lines are ignored.
+ * <p>
+ * A large file can be cut into newline-aligned byte ranges with {@link #split(Path, int)} and the
+ * ranges parsed independently, for example on several threads.
+ */
+public final class AccountFileParser {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] CHECKPOINT_PREFIX = "#checkpoint ".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Receives what the parser finds in the data file.
+     */
+    public interface Listener {
+
+        /**
+         * Called for every well-formed account line. The username bytes are only valid during the call.
+         *
+         * @param accountNum The account number
+         * @param pin The PIN
+         * @param buffer Array holding the UTF-8 username
+         * @param usernameOffset Start of the username in buffer
+         * @param usernameLength Length of the username in bytes
+         * @param balanceMinor The balance in minor units
+         */
+        void onAccount(int accountNum, int pin, byte[] buffer, int usernameOffset, int usernameLength, long balanceMinor);
+
+        /**
+         * Called for a checkpoint line.
+         *
+         * @param seq The last transaction log sequence number contained in the file
+         */
+        default void onCheckpoint(long seq) {
+        }
+
+        /**
+         * Called for every line that is neither an account nor a checkpoint.
+         *
+         * @param lineNumber The line number, starting at 1
+         * @param reason What is wrong with the line
+         */
+        void onMalformedLine(long lineNumber, String reason);
+    }
+
+    private final Listener listener;
+    private final byte[] buffer = new byte[BUFFER_SIZE]; // Reused for the whole file
+    private long lineNumber; // Number of the line being parsed
+    private String error; // Reason the current line is malformed, null while it is fine
+
+    /**
+     * Private constructor, use {@link #parse(Path, Listener)}.
+     *
+     * @param listener The listener to report to
+     */
+    private AccountFileParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Parses a data file.
+     *
+     * @param path The data file
+     * @param listener Receives the accounts, the checkpoint and the malformed lines
+     * @return The number of lines read
+     * @throws IOException If the file cannot be read
+     */
+    public static long parse(Path path, Listener listener) throws IOException {
+        return parse(path, 0, Long.MAX_VALUE, listener);
+    }
+
+    /**
+     * Parses the lines in a byte range of a data file. The range must start at the beginning of a line
+     * and end just after a newline or at the end of the file. Line numbers start at 1 within the range.
+     *
+     * @param path The data file
+     * @param start Offset of the first byte of the range
+     * @param end Offset just after the last byte of the range
+     * @param listener Receives the accounts, the checkpoint and the malformed lines
+     * @return The number of lines read
+     * @throws IOException If the file cannot be read
+     */
+    public static long parse(Path path, long start, long end, Listener listener) throws IOException {
+        AccountFileParser parser = new AccountFileParser(listener);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(start);
+            parser.run(channel, end - start);
+        }
+        return parser.lineNumber;
+    }
+
+    /**
+     * Cuts a data file into at most the given number of byte ranges of similar size, each ending just after a newline.
+     *
+     * @param path The data file
+     * @param chunks The number of ranges wanted
+     * @return The range boundaries, range i runs from element i to element i + 1
+     * @throws IOException If the file cannot be read
+     */
+    public static long[] split(Path path, int chunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = new long[chunks + 1];
+            int count = 0;
+            ByteBuffer probe = ByteBuffer.allocate(4096);
+            long previous = 0;
+            for (int i = 1; i < chunks; i++) {
+                long position = Math.max(previous, size * i / chunks);
+                // Move the boundary to just after the next newline
+                long boundary = size;
+                while (position < size) {
+                    probe.clear();
+                    int read = channel.read(probe, position);
+                    if (read <= 0) {
+                        break;
+                    }
+                    int newline = -1;
+                    for (int j = 0; j < read; j++) {
+                        if (probe.get(j) == '\n') {
+                            newline = j;
+                            break;
+                        }
+                    }
+                    if (newline >= 0) {
+                        boundary = position + newline + 1;
+                        break;
+                    }
+                    position += read;
+                }
+                if (boundary > previous && boundary < size) {
+                    bounds[++count] = boundary;
+                    previous = boundary;
+                }
+            }
+            bounds[++count] = size;
+            return Arrays.copyOf(bounds, count + 1);
+        }
+    }
+
+    /**
+     * Reads the channel buffer by buffer and parses every complete line.
+     *
+     * @param channel The channel to read, positioned at the start of a line
+     * @param length The number of bytes to read
+     * @throws IOException If reading fails
+     */
+    private void run(FileChannel channel, long length) throws IOException {
+        ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        long remaining = length; // Bytes of the range not read yet
+        int filled = 0; // Bytes in buffer
+        boolean skipping = false; // Inside a line longer than the buffer
+        while (true) {
+            wrapper.limit((int) Math.min(buffer.length, filled + remaining)).position(filled);
+            int read = remaining > 0 ? channel.read(wrapper) : -1;
+            boolean eof = read < 0;
+            if (!eof) {
+                filled += read;
+                remaining -= read;
+            }
+            int lineStart = 0;
+            for (int i = 0; i < filled; i++) {
+                if (buffer[i] == '\n') {
+                    if (skipping) {
+                        skipping = false;
+                    } else {
+                        parseLine(lineStart, i);
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            if (eof) {
+                if (lineStart < filled && !skipping) {
+                    parseLine(lineStart, filled);
+                }
+                return;
+            }
+            if (lineStart == 0 && filled == buffer.length) {
+                // No newline in a full buffer, report the line once and drop it up to its end
+                if (!skipping) {
+                    lineNumber++;
+                    listener.onMalformedLine(lineNumber, "line longer than " + buffer.length + " bytes");
+                    skipping = true;
+                }
+                filled = 0;
+                continue;
+            }
+            System.arraycopy(buffer, lineStart, buffer, 0, filled - lineStart);
+            filled -= lineStart;
+        }
+    }
+
+    /**
+     * Parses one line. end is the index of the newline or the end of the data.
+     *
+     * @param start Index of the first byte of the line
+     * @param end Index just after the last byte of the line
+     */
+    private void parseLine(int start, int end) {
+        lineNumber++;
+        error = null;
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        if (end == start) {
+            return; // Blank lines are allowed
+        }
+        if (startsWith(start, end, CHECKPOINT_PREFIX)) {
+            long seq = parseLong(start + CHECKPOINT_PREFIX.length, end);
+            if (error == null) {
+                listener.onCheckpoint(seq);
+            } else {
+                listener.onMalformedLine(lineNumber, "checkpoint " + error);
+            }
+            return;
+        }
+        int accountEnd = indexOf(' ', start, end);
+        int pinEnd = indexOf(' ', accountEnd + 1, end);
+        int usernameEnd = indexOf(' ', pinEnd + 1, end);
+        if (usernameEnd == end || indexOf(' ', usernameEnd + 1, end) != end) {
+            listener.onMalformedLine(lineNumber, "expected 4 fields separated by single spaces");
+            return;
+        }
+        int accountNum = parseDigits(start, accountEnd, AccountKeys.ACCOUNT_NUM_DIGITS, "account number");
+        int pin = parseDigits(accountEnd + 1, pinEnd, AccountKeys.PIN_DIGITS, "PIN");
+        if (usernameEnd == pinEnd + 1) {
+            setError("empty username");
+        }
+        long balance = parseMinor(usernameEnd + 1, end);
+        if (error != null) {
+            listener.onMalformedLine(lineNumber, error);
+            return;
+        }
+        listener.onAccount(accountNum, pin, buffer, pinEnd + 1, usernameEnd - pinEnd - 1, balance);
+    }
+
+    /**
+     * Finds the first occurrence of a byte.
+     *
+     * @param b The byte to find
+     * @param from First index to look at
+     * @param end Index just after the last byte to look at
+     * @return The index of the byte, or end if it does not occur
+     */
+    private int indexOf(char b, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (buffer[i] == b) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Checks whether a range starts with the given bytes.
+     *
+     * @param start Start of the range
+     * @param end End of the range
+     * @param prefix The bytes to look for
+     * @return true if the range starts with prefix
+     */
+    private boolean startsWith(int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a field of exactly width decimal digits. Sets error if the field does not match.
+     *
+     * @param start Start of the field
+     * @param end End of the field
+     * @param width Required number of digits
+     * @param name Field name for the error message
+     * @return The value, or -1 on error
+     */
+    private int parseDigits(int start, int end, int width, String name) {
+        if (end - start != width) {
+            setError(name + " must be " + width + " digits");
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                setError(name + " must be " + width + " digits");
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses a non-negative decimal integer. Sets error if the field does not match.
+     *
+     * @param start Start of the field
+     * @param end End of the field
+     * @return The value, or -1 on error
+     */
+    private long parseLong(int start, int end) {
+        if (start == end || end - start > 18) {
+            setError("must be a number");
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                setError("must be a number");
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses a balance in pounds such as "1000.0" or "-12.345" into minor units, rounding half away from zero.
+     * Balances written in scientific notation, which Double.toString uses from ten million up, take a slower path.
+     * Sets error if the field does not match.
+     *
+     * @param start Start of the field
+     * @param end End of the field
+     * @return The balance in minor units, or 0 on error
+     */
+    private long parseMinor(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+            negative = buffer[i] == '-';
+            i++;
+        }
+        long whole = 0;
+        int wholeDigits = 0;
+        while (i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+            whole = whole * 10 + (buffer[i] - '0');
+            wholeDigits++;
+            i++;
+        }
+        long fraction = 0; // First two fraction digits
+        int fractionDigits = 0;
+        boolean roundUp = false;
+        if (i < end && buffer[i] == '.') {
+            i++;
+            while (i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+                if (fractionDigits < 2) {
+                    fraction = fraction * 10 + (buffer[i] - '0');
+                } else if (fractionDigits == 2) {
+                    roundUp = buffer[i] >= '5';
+                }
+                fractionDigits++;
+                i++;
+            }
+        }
+        if (i < end && (buffer[i] == 'E' || buffer[i] == 'e')) {
+            return parseMinorSlow(start, end);
+        }
+        if (i != end || wholeDigits + fractionDigits == 0 || wholeDigits > 15) {
+            setError("balance must be a decimal number");
+            return 0;
+        }
+        for (int d = fractionDigits; d < 2; d++) {
+            fraction *= 10;
+        }
+        long minor = whole * 100 + fraction + (roundUp ? 1 : 0);
+        return negative ? -minor : minor;
+    }
+
+    /**
+     * Parses a balance through Double.parseDouble, for the rare values in scientific notation.
+     *
+     * @param start Start of the field
+     * @param end End of the field
+     * @return The balance in minor units, or 0 on error
+     */
+    private long parseMinorSlow(int start, int end) {
+        try {
+            return Math.round(Double.parseDouble(new String(buffer, start, end - start, StandardCharsets.US_ASCII)) * 100);
+        } catch (NumberFormatException e) {
+            setError("balance must be a decimal number");
+            return 0;
+        }
+    }
+
+    /**
+     * Records the first error of the current line.
+     *
+     * @param reason What is wrong with the line
+     */
+    private void setError(String reason) {
+        if (error == null) {
+            error = reason;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.store;
+
+/**
+ * Utility class for converting between the fixed-width digit strings used for account numbers
+ * and PINs and their int values.
+ */
+public final class AccountKeys {
+    public static final int ACCOUNT_NUM_DIGITS = 6; // Account numbers are always 6 digits
+    public static final int PIN_DIGITS = 4; // PINs are always 4 digits
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private AccountKeys() {}
+
+    /**
+     * Parses a 6-digit account number.
+     *
+     * @param accountNum The account number
+     * @return The account number as an int, or -1 if it is not 6 digits
+     */
+    public static int parseAccountNum(String accountNum) {
+        return parseDigits(accountNum, ACCOUNT_NUM_DIGITS);
+    }
+
+    /**
+     * Parses a 4-digit PIN.
+     *
+     * @param pin The PIN
+     * @return The PIN as an int, or -1 if it is not 4 digits
+     */
+    public static int parsePIN(String pin) {
+        return parseDigits(pin, PIN_DIGITS);
+    }
+
+    /**
+     * Formats an account number as 6 digits with leading zeros.
+     *
+     * @param accountNum The account number
+     * @return The formatted account number
+     */
+    public static String formatAccountNum(int accountNum) {
+        return formatDigits(accountNum, ACCOUNT_NUM_DIGITS);
+    }
+
+    /**
+     * Formats a PIN as 4 digits with leading zeros.
+     *
+     * @param pin The PIN
+     * @return The formatted PIN
+     */
+    public static String formatPIN(int pin) {
+        return formatDigits(pin, PIN_DIGITS);
+    }
+
+    /**
+     * Parses a string of exactly the given number of decimal digits.
+     *
+     * @param value The string
+     * @param width The number of digits
+     * @return The value, or -1 if the string is not exactly width digits
+     */
+    private static int parseDigits(String value, int width) {
+        if (value == null || value.length() != width) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = 0; i < width; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    /**
+     * Formats a non-negative value as exactly the given number of decimal digits.
+     *
+     * @param value The value
+     * @param width The number of digits
+     * @return The formatted value
+     */
+    private static String formatDigits(int value, int width) {
+        char[] digits = new char[width];
+        for (int i = width - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.store;
+
+import pojo.Account;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Backing storage for the accounts managed by {@link util.Data}.
+ */
+public interface AccountStore extends Closeable {
+
+    /**
+     * Looks up an account by its account number.
+     *
+     * @param accountNum The account number to look up
+     * @return The Account object if found, otherwise null
+     */
+    Account get(String accountNum);
+
+    /**
+     * Retrieves all accounts in a stable order as a read-only view.
+     *
+     * @return The list of accounts
+     */
+    List<Account> accounts();
+
+    /**
+     * Adds an account. If an account with the same account number is already present, the first one is kept.
+     *
+     * @param account The account to add
+     * @return true if the account was added, false if its account number was already taken
+     * @throws UnsupportedOperationException If the store has a fixed set of accounts
+     */
+    boolean add(Account account);
+
+    /**
+     * Adds an account from its parsed fields, as delivered by {@link AccountFileParser.Listener#onAccount}.
+     * If an account with the same account number is already present, the first one is kept.
+     *
+     * @param accountNum The account number
+     * @param pin The PIN
+     * @param buffer Buffer holding the username
+     * @param usernameOffset Offset of the UTF-8 username in buffer
+     * @param usernameLength Length of the username in bytes
+     * @param balanceMinor The balance in minor units
+     * @return true if the account was added, false if its account number was already taken
+     * @throws UnsupportedOperationException If the store has a fixed set of accounts
+     */
+    default boolean add(int accountNum, int pin, byte[] buffer, int usernameOffset, int usernameLength, long balanceMinor) {
+        Account account = new Account(AccountKeys.formatAccountNum(accountNum), AccountKeys.formatPIN(pin),
+                new String(buffer, usernameOffset, usernameLength, StandardCharsets.UTF_8), 0.0);
+        account.setBalanceMinor(balanceMinor);
+        return add(account);
+    }
+
+    /**
+     * Whether balance updates are written to the store itself, in which case the data file snapshot
+     * and the transaction log are not used and {@link #flush()} makes the balances durable.
+     *
+     * @return true if the store persists balances by itself
+     */
+    default boolean persistsBalances() {
+        return false;
+    }
+
+    /**
+     * Makes the current balances durable, for stores that persist balances by themselves.
+     *
+     * @throws IOException If writing fails
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Flushes and releases the store.
+     *
+     * @throws IOException If writing fails
+     */
+    @Override
+    default void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,438 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.store;
+
+import pojo.Account;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static util.store.MappedAccountStore.*;
+
+/**
+ * Account store that reads accounts on demand from the binary account file of {@link MappedAccountStore}
+ * and keeps a bounded number of them resident.
+ * <p>
+ * Only the sorted index of the file stays on the heap, 8 bytes per account. An account is read with
+ * a positional read the first time it is looked up and kept in a concurrent map, so looking up a resident
+ * account takes no lock. Misses and evictions are serialized by one lock. When the cache is full an account
+ * is chosen with the clock algorithm: a hit marks its account as referenced, and the clock hand passes a
+ * referenced account once, clearing the mark, before evicting one that was not used since. The evicted
+ * account's balance is written back if it changed.
+ * <p>
+ * Callers such as the strategies and the frames may keep an {@link Account} after it was evicted.
+ * Eviction therefore seals the balance with a compare-and-set to a sentinel value, so no update can
+ * land on the old object after its balance was taken for the write-back. Any balance access on a
+ * sealed account is forwarded to the resident copy, which is read back from the file if needed.
+ * <p>
+ * Like the mapped store, the file holds the balances and the transaction log is not used.
+ * Balances of resident accounts reach the file on eviction and on {@link #flush()}. Like the mapped store,
+ * it is therefore not crash-consistent for transfers: the two balances of a transfer reach the file at
+ * different times, so a crash in between persists half of it.
+ */
+public class CachedAccountStore implements AccountStore {
+    private static final long SEALED = Long.MIN_VALUE; // Balance of an evicted account
+
+    private final FileChannel channel;
+    private final int capacity; // Maximum number of resident accounts
+    private final long stringsOffset; // Start of the strings section
+    private final int[] keys; // Account numbers, sorted
+    private final int[] records; // Record numbers matching keys
+    private final Map<Integer, CachedAccount> resident = new ConcurrentHashMap<>(); // Resident accounts by record number
+    private final ArrayDeque<CachedAccount> clock = new ArrayDeque<>(); // Resident accounts in clock order, head is the hand
+    private final Object lock = new Object(); // Serializes misses, evictions and flushes, guards clock
+
+    /**
+     * Opens an existing binary account file and reads its index.
+     *
+     * @param path The binary account file
+     * @param capacity The maximum number of resident accounts
+     * @throws IOException If the file cannot be read or is not a binary account file
+     */
+    public CachedAccountStore(Path path, int capacity) throws IOException {
+        this.capacity = Math.max(1, capacity);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(12) != RECORD_SIZE) {
+                throw new IOException("Not a binary account file: " + path);
+            }
+            int count = header.getInt(8);
+            long indexOffset = header.getLong(16);
+            stringsOffset = header.getLong(24);
+
+            keys = new int[count];
+            records = new int[count];
+            ByteBuffer index = ByteBuffer.allocate(8192 * INDEX_ENTRY_SIZE);
+            for (int i = 0; i < count; i += 8192) {
+                int n = Math.min(8192, count - i);
+                index.clear().limit(n * INDEX_ENTRY_SIZE);
+                readFully(index, indexOffset + (long) i * INDEX_ENTRY_SIZE);
+                for (int j = 0; j < n; j++) {
+                    keys[i + j] = index.getInt();
+                    records[i + j] = index.getInt();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the binary account file, converting it from the text data file first if it does not exist yet.
+     *
+     * @param binaryPath The binary account file
+     * @param textPath The text data file to convert from
+     * @param journalDirectory The transaction log of the text data file, replayed before converting
+     * @param capacity The maximum number of resident accounts
+     * @return The cached store
+     * @throws IOException If converting or reading fails
+     */
+    public static CachedAccountStore openOrConvert(Path binaryPath, Path textPath, Path journalDirectory, int capacity) throws IOException {
+        if (!Files.exists(binaryPath)) {
+            MappedAccountStore.convert(textPath, journalDirectory, binaryPath);
+        }
+        return new CachedAccountStore(binaryPath, capacity);
+    }
+
+    @Override
+    public Account get(String accountNum) {
+        int key = AccountKeys.parseAccountNum(accountNum);
+        if (key < 0) {
+            return null;
+        }
+        int position = Arrays.binarySearch(keys, key);
+        return position >= 0 ? resident(records[position]) : null;
+    }
+
+    @Override
+    public List<Account> accounts() {
+        return new AbstractList<Account>() {
+            @Override
+            public Account get(int index) {
+                if (index < 0 || index >= records.length) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + records.length);
+                }
+                return resident(index);
+            }
+
+            @Override
+            public int size() {
+                return records.length;
+            }
+        };
+    }
+
+    @Override
+    public boolean add(Account account) {
+        throw new UnsupportedOperationException("The binary account file has a fixed set of accounts");
+    }
+
+    @Override
+    public boolean persistsBalances() {
+        return true;
+    }
+
+    /**
+     * Writes the changed balances of all resident accounts to the file and forces it to disk.
+     *
+     * @throws IOException If writing fails
+     */
+    @Override
+    public void flush() throws IOException {
+        synchronized (lock) {
+            for (CachedAccount account : clock) {
+                long balance = account.getBalanceMinor();
+                if (balance != account.persisted) {
+                    writeBalance(account.record, balance);
+                    account.persisted = balance;
+                }
+            }
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * Retrieves the resident account of a record, reading it from the file if it is not resident.
+     * A hit only marks the account as referenced. An account sealed by an eviction in progress counts as
+     * a miss, which waits for the eviction to finish.
+     *
+     * @param record The record number
+     * @return The resident account
+     * @throws UncheckedIOException If the record cannot be read
+     */
+    private CachedAccount resident(int record) {
+        CachedAccount account = resident.get(record);
+        if (account != null && !account.isSealed()) {
+            if (!account.referenced) {
+                // Only write when the mark changes, so hits on a hot account do not bounce its cache line
+                account.referenced = true;
+            }
+            return account;
+        }
+        synchronized (lock) {
+            account = resident.get(record);
+            if (account == null) {
+                try {
+                    account = read(record);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                resident.put(record, account);
+                clock.addLast(account);
+                if (clock.size() > capacity) {
+                    evictOne(account);
+                }
+            }
+            return account;
+        }
+    }
+
+    /**
+     * Advances the clock hand until an account is evicted. Referenced accounts get a second chance and an
+     * account that cannot be evicted stays resident, so after two rounds the cache is left over capacity.
+     * Called with the lock held.
+     *
+     * @param loaded The account just read, which is about to be returned and must stay resident
+     */
+    private void evictOne(CachedAccount loaded) {
+        for (int i = clock.size() * 2; i > 0; i--) {
+            CachedAccount account = clock.pollFirst();
+            if (account.referenced) {
+                account.referenced = false;
+            } else if (account != loaded && evict(account)) {
+                resident.remove(account.record);
+                return;
+            }
+            clock.addLast(account);
+        }
+    }
+
+    /**
+     * Reads a record from the file.
+     *
+     * @param record The record number
+     * @return A new account holding the record
+     * @throws IOException If reading fails
+     */
+    private CachedAccount read(int record) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(RECORD_SIZE);
+        readFully(bytes, HEADER_SIZE + (long) record * RECORD_SIZE);
+        ByteBuffer username = ByteBuffer.allocate(bytes.getShort(OFFSET_USERNAME_LENGTH) & 0xFFFF);
+        readFully(username, stringsOffset + bytes.getInt(OFFSET_USERNAME_OFFSET));
+        byte[] salt = new byte[SALT_LENGTH];
+        byte[] pinHash = new byte[HASH_LENGTH];
+        bytes.get(OFFSET_SALT, salt);
+        bytes.get(OFFSET_PIN_HASH, pinHash);
+        return new CachedAccount(record, bytes.getInt(0), new String(username.array(), StandardCharsets.UTF_8),
+                salt, pinHash, bytes.getLong(OFFSET_BALANCE));
+    }
+
+    /**
+     * Seals an account for eviction, writing its balance back if it changed. Called with the lock held.
+     *
+     * @param account The eldest resident account
+     * @return true if the account can be removed, false if writing failed or an update covering it is in
+     *         progress, and it stays resident
+     */
+    private boolean evict(CachedAccount account) {
+        long balance = account.seal();
+        if (Account.isMarker(balance)) {
+            return false;
+        }
+        if (balance != account.persisted) {
+            try {
+                writeBalance(account.record, balance);
+            } catch (IOException e) {
+                e.printStackTrace();
+                account.unseal(balance);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the balance of a record.
+     *
+     * @param record The record number
+     * @param balance The balance in minor units
+     * @throws IOException If writing fails
+     */
+    private void writeBalance(int record, long balance) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(Long.BYTES).putLong(0, balance);
+        long position = HEADER_SIZE + (long) record * RECORD_SIZE + OFFSET_BALANCE;
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    /**
+     * Fills a buffer from the given file position and flips it for reading.
+     *
+     * @param buffer The buffer to fill up to its limit
+     * @param position The file position to read from
+     * @throws IOException If reading fails or the file ends first
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Binary account file ends at " + position);
+            }
+            position += read;
+        }
+        buffer.flip();
+    }
+
+    /**
+     * A resident copy of one record. Balance accesses after eviction go to the current resident copy.
+     */
+    private class CachedAccount extends Account {
+        private final int record; // Record number in the file
+        private final byte[] salt; // PIN salt
+        private final byte[] pinHash; // SHA-256 of salt and PIN
+        private long persisted; // Balance last written to or read from the file, guarded by the store lock
+        private volatile boolean referenced; // Whether the account was looked up since the clock hand last passed it
+
+        /**
+         * Creates a resident copy of a record.
+         *
+         * @param record The record number
+         * @param accountNum The account number
+         * @param username The username
+         * @param salt The PIN salt
+         * @param pinHash The PIN hash
+         * @param balanceMinor The balance in minor units
+         */
+        CachedAccount(int record, int accountNum, String username, byte[] salt, byte[] pinHash, long balanceMinor) {
+            super(AccountKeys.formatAccountNum(accountNum), null, username, 0.0);
+            this.record = record;
+            this.salt = salt;
+            this.pinHash = pinHash;
+            this.persisted = balanceMinor;
+            super.setBalanceMinor(balanceMinor);
+        }
+
+        /**
+         * Replaces the balance with the sentinel so no further update lands on this object.
+         * An account holding the marker of an update in progress is left alone.
+         *
+         * @return The final balance in minor units, or the marker
+         */
+        long seal() {
+            while (true) {
+                long balance = super.getStoredBalanceMinor();
+                if (Account.isMarker(balance) || super.compareAndSetBalanceMinor(balance, SEALED)) {
+                    return balance;
+                }
+            }
+        }
+
+        /**
+         * Checks whether the account was sealed by an eviction.
+         *
+         * @return true if balance accesses are forwarded to the resident copy
+         */
+        boolean isSealed() {
+            return super.getStoredBalanceMinor() == SEALED;
+        }
+
+        /**
+         * Restores the balance of an account whose eviction failed.
+         *
+         * @param balance The balance returned by {@link #seal()}
+         */
+        void unseal(long balance) {
+            super.setBalanceMinor(balance);
+        }
+
+        @Override
+        public String getPIN() {
+            return "****";
+        }
+
+        @Override
+        public boolean checkPIN(String pin) {
+            return pin != null && MessageDigest.isEqual(pinHash, hashPIN(salt, pin));
+        }
+
+        @Override
+        public long getStoredBalanceMinor() {
+            long balance = super.getStoredBalanceMinor();
+            return balance != SEALED ? balance : resident(record).getStoredBalanceMinor();
+        }
+
+        @Override
+        public void setBalanceMinor(long balanceMinor) {
+            while (true) {
+                long balance = super.getStoredBalanceMinor();
+                if (balance == SEALED) {
+                    resident(record).setBalanceMinor(balanceMinor);
+                    return;
+                }
+                if (super.compareAndSetBalanceMinor(balance, balanceMinor)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean compareAndSetBalanceMinor(long expected, long newValue) {
+            if (super.compareAndSetBalanceMinor(expected, newValue)) {
+                return true;
+            }
+            return super.getStoredBalanceMinor() == SEALED && resident(record).compareAndSetBalanceMinor(expected, newValue);
+        }
+
+        @Override
+        public void setAccountNum(String accountNum) {
+            throw new UnsupportedOperationException("Account numbers in the binary account file are fixed");
+        }
+
+        @Override
+        public void setUsername(String username) {
+            throw new UnsupportedOperationException("Usernames in the binary account file are fixed");
+        }
+
+        @Override
+        public void setPIN(String PIN) {
+            throw new UnsupportedOperationException("PINs in the binary account file are fixed");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CachedAccount && ((CachedAccount) o).record == record;
+        }
+
+        @Override
+        public int hashCode() {
+            return record;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.store;
+
+import pojo.Account;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Account store keeping the accounts on the heap as primitive columns instead of one object per account.
+ * <p>
+ * Account numbers and PINs are stored as numbers, balances as longs in minor units, and usernames
+ * back to back in a shared UTF-8 byte arena. Lookups go through an open-addressing hash table of row
+ * numbers keyed by account number. This takes about 40 bytes per account plus the username, against
+ * several hundred for a {@link MemoryAccountStore}. Accounts are handed out as short-lived flyweights.
+ * <p>
+ * Balances live in fixed-size pages that are never copied, so atomic updates through any flyweight
+ * act on the same memory while the other columns grow. The columns are published through a volatile
+ * reference and the row count is written last, so lookups need no lock.
+ */
+public class ColumnarAccountStore implements AccountStore {
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT; // Balances per page
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final VarHandle BALANCES = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private volatile Columns columns = new Columns(16, 256); // Current column arrays
+    private volatile int size; // Number of rows, written after the row is complete
+    private int arenaUsed; // Bytes of the arena in use, guarded by this
+
+    @Override
+    public Account get(String accountNum) {
+        int key = AccountKeys.parseAccountNum(accountNum);
+        if (key < 0) {
+            return null;
+        }
+        int limit = size;
+        int row = find(columns, key, limit);
+        return row >= 0 ? new ColumnarAccount(row) : null;
+    }
+
+    @Override
+    public List<Account> accounts() {
+        return new AbstractList<Account>() {
+            @Override
+            public Account get(int index) {
+                int limit = size;
+                if (index < 0 || index >= limit) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + limit);
+                }
+                return new ColumnarAccount(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Adds an account, copying its fields into the columns.
+     *
+     * @param account The account to add
+     * @return true if the account was added, false if its account number was already taken
+     * @throws IllegalArgumentException If the account number is not 6 digits or the PIN not 4 digits
+     */
+    @Override
+    public boolean add(Account account) {
+        int accountNum = AccountKeys.parseAccountNum(account.getAccountNum());
+        int pin = AccountKeys.parsePIN(account.getPIN());
+        if (accountNum < 0 || pin < 0) {
+            throw new IllegalArgumentException("Account number must be 6 digits and PIN 4 digits: " + account.getAccountNum());
+        }
+        byte[] username = account.getUsername() == null ? new byte[0] : account.getUsername().getBytes(StandardCharsets.UTF_8);
+        return add(accountNum, pin, username, 0, username.length, account.getBalanceMinor());
+    }
+
+    @Override
+    public synchronized boolean add(int accountNum, int pin, byte[] buffer, int usernameOffset, int usernameLength, long balanceMinor) {
+        int row = size;
+        Columns c = columns;
+        if (find(c, accountNum, row) >= 0) {
+            return false;
+        }
+        c = ensureCapacity(c, row + 1, arenaUsed + usernameLength);
+        c.accountNums[row] = accountNum;
+        c.pins[row] = (short) pin;
+        System.arraycopy(buffer, usernameOffset, c.arena, arenaUsed, usernameLength);
+        arenaUsed += usernameLength;
+        c.usernameEnds[row] = arenaUsed;
+        c.balancePages[row >>> PAGE_SHIFT][row & PAGE_MASK] = balanceMinor;
+        insert(c.table, accountNum, row);
+        size = row + 1;
+        return true;
+    }
+
+    /**
+     * Finds the row of an account number.
+     *
+     * @param c The columns to search
+     * @param key The account number
+     * @param limit The number of complete rows, entries for later rows are ignored
+     * @return The row number, or -1 if not found
+     */
+    private static int find(Columns c, int key, int limit) {
+        int[] table = c.table;
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int row = entry - 1;
+            if (row < limit && c.accountNums[row] == key) {
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Inserts a row into a hash table that has a free slot.
+     *
+     * @param table The hash table holding row numbers plus one, 0 for an empty slot
+     * @param key The account number
+     * @param row The row number
+     */
+    private static void insert(int[] table, int key, int row) {
+        int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = row + 1;
+    }
+
+    /**
+     * Spreads the bits of an account number for the hash table.
+     *
+     * @param key The account number
+     * @return The hash
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Makes room for the given number of rows and arena bytes, publishing grown columns if needed.
+     * Called with the lock held.
+     *
+     * @param c The current columns
+     * @param rows The number of rows needed
+     * @param arenaBytes The number of arena bytes needed
+     * @return The columns to write to
+     */
+    private Columns ensureCapacity(Columns c, int rows, int arenaBytes) {
+        int page = (rows - 1) >>> PAGE_SHIFT;
+        if (rows > c.accountNums.length || arenaBytes > c.arena.length || rows * 2 > c.table.length
+                || page >= c.balancePages.length) {
+            int capacity = Math.max(c.accountNums.length, Integer.highestOneBit(rows - 1) << 1);
+            Columns grown = new Columns(
+                    Arrays.copyOf(c.accountNums, capacity),
+                    Arrays.copyOf(c.pins, capacity),
+                    Arrays.copyOf(c.usernameEnds, capacity),
+                    arenaBytes > c.arena.length ? Arrays.copyOf(c.arena, Math.max(c.arena.length * 2, arenaBytes)) : c.arena.clone(),
+                    Arrays.copyOf(c.balancePages, Math.max(c.balancePages.length, (capacity + PAGE_MASK) >>> PAGE_SHIFT)),
+                    c.table.length >= capacity * 2 ? c.table.clone() : new int[capacity * 2]);
+            if (grown.table.length != c.table.length) {
+                for (int row = 0; row < rows - 1; row++) {
+                    insert(grown.table, grown.accountNums[row], row);
+                }
+            }
+            c = grown;
+        }
+        if (c.balancePages[page] == null) {
+            c.balancePages[page] = new long[PAGE_SIZE];
+        }
+        if (c != columns) {
+            columns = c;
+        }
+        return c;
+    }
+
+    /**
+     * The column arrays of a given capacity. Arrays are replaced as a whole when they grow,
+     * except the balance pages which are shared between generations.
+     */
+    private static final class Columns {
+        private final int[] accountNums; // Account number of each row
+        private final short[] pins; // PIN of each row
+        private final int[] usernameEnds; // End of each username in the arena, the start is the previous end
+        private final byte[] arena; // UTF-8 usernames back to back
+        private final long[][] balancePages; // Balances in minor units, PAGE_SIZE rows per page
+        private final int[] table; // Open-addressing index, row number plus one by account number, 0 is empty
+
+        /**
+         * Creates empty columns.
+         *
+         * @param capacity The number of rows
+         * @param arenaCapacity The number of arena bytes
+         */
+        Columns(int capacity, int arenaCapacity) {
+            this(new int[capacity], new short[capacity], new int[capacity], new byte[arenaCapacity],
+                    new long[(capacity + PAGE_MASK) >>> PAGE_SHIFT][], new int[capacity * 2]);
+        }
+
+        /**
+         * Creates columns from existing arrays.
+         *
+         * @param accountNums The account numbers
+         * @param pins The PINs
+         * @param usernameEnds The username ends
+         * @param arena The username arena
+         * @param balancePages The balance pages
+         * @param table The hash index
+         */
+        Columns(int[] accountNums, short[] pins, int[] usernameEnds, byte[] arena, long[][] balancePages, int[] table) {
+            this.accountNums = accountNums;
+            this.pins = pins;
+            this.usernameEnds = usernameEnds;
+            this.arena = arena;
+            this.balancePages = balancePages;
+            this.table = table;
+        }
+    }
+
+    /**
+     * Flyweight view of one row.
+     */
+    private class ColumnarAccount extends Account {
+        private final int row; // Row number in the columns
+
+        /**
+         * Creates a view of the given row.
+         *
+         * @param row The row number
+         */
+        ColumnarAccount(int row) {
+            super(null, null);
+            this.row = row;
+        }
+
+        /**
+         * Retrieves the balance page holding this row.
+         *
+         * @return The page
+         */
+        private long[] page() {
+            return columns.balancePages[row >>> PAGE_SHIFT];
+        }
+
+        @Override
+        public String getAccountNum() {
+            return AccountKeys.formatAccountNum(columns.accountNums[row]);
+        }
+
+        @Override
+        public String getPIN() {
+            return AccountKeys.formatPIN(columns.pins[row]);
+        }
+
+        @Override
+        public boolean checkPIN(String PIN) {
+            int pin = AccountKeys.parsePIN(PIN);
+            return pin >= 0 && pin == columns.pins[row];
+        }
+
+        @Override
+        public String getUsername() {
+            Columns c = columns;
+            int start = row == 0 ? 0 : c.usernameEnds[row - 1];
+            return new String(c.arena, start, c.usernameEnds[row] - start, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public long getStoredBalanceMinor() {
+            return (long) BALANCES.getVolatile(page(), row & PAGE_MASK);
+        }
+
+        @Override
+        public void setBalanceMinor(long balanceMinor) {
+            BALANCES.setVolatile(page(), row & PAGE_MASK, balanceMinor);
+        }
+
+        @Override
+        public boolean compareAndSetBalanceMinor(long expected, long newValue) {
+            return BALANCES.compareAndSet(page(), row & PAGE_MASK, expected, newValue);
+        }
+
+        @Override
+        public void setAccountNum(String accountNum) {
+            throw new UnsupportedOperationException("Account numbers in the columnar store are fixed");
+        }
+
+        @Override
+        public void setUsername(String username) {
+            throw new UnsupportedOperationException("Usernames in the columnar store are fixed");
+        }
+
+        @Override
+        public void setPIN(String PIN) {
+            throw new UnsupportedOperationException("PINs in the columnar store are fixed");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ColumnarAccount && ((ColumnarAccount) o).row == row;
+        }
+
+        @Override
+        public int hashCode() {
+            return row;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.store;
+
+import pojo.Account;
+import util.Data;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Account store backed by a memory-mapped binary file of fixed-width records.
+ * <p>
+ * Opening the file only checks its header, nothing is parsed up front. Lookups binary-search a
+ * sorted index section in the mapping, and balances are read and updated in place with atomic
+ * operations on the mapped bytes, so the heap holds no per-account state. Accounts are handed out
+ * as short-lived flyweights.
+ * <p>
+ * File layout, big-endian:
+ * <pre>
+ * header   64 bytes   magic, version, record count, record size, index offset, strings offset, strings length
+ * records  64 bytes each, in data.txt order
+ *          0  int   account number
+ *          4  int   username offset in the strings section
+ *          8  long  balance in minor units
+ *          16 short username length in bytes
+ *          24 8     PIN salt
+ *          32 32    SHA-256 of salt and PIN
+ * index    8 bytes each, sorted by account number: int account number, int record number
+ * strings  UTF-8 usernames
+ * </pre>
+ * The whole file is one mapping, which limits it to about 30 million accounts.
+ * <p>
+ * The file itself holds the live balances, so the transaction log is not used with this store:
+ * the operating system may write pages back in any order, and replaying a log over them could
+ * apply an operation twice. {@link #flush()} forces the mapping to disk.
+ * <p>
+ * <b>This store is not crash-consistent for operations that change more than one balance.</b> A transfer
+ * or a batch writes each balance in place, and the operating system may write back one of the pages and
+ * not the other before a crash, so the file may then hold half a transfer and money is created or lost.
+ * The balances are consistent after a clean shutdown or a {@link #flush()} taken while no operation is
+ * running. Use the memory or columnar store, whose operations are written ahead to the transaction log,
+ * where transfers must survive a crash.
+ */
+public class MappedAccountStore implements AccountStore {
+    static final int MAGIC = 0x455A4142; // "EZAB"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = 64;
+    static final int INDEX_ENTRY_SIZE = 8;
+    static final int OFFSET_USERNAME_OFFSET = 4;
+    static final int OFFSET_BALANCE = 8;
+    static final int OFFSET_USERNAME_LENGTH = 16;
+    static final int OFFSET_SALT = 24;
+    static final int OFFSET_PIN_HASH = 32;
+    static final int SALT_LENGTH = 8;
+    static final int HASH_LENGTH = 32;
+    private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer; // Mapping of the whole file
+    private final int count; // Number of records
+    private final int indexOffset; // Start of the sorted index section
+    private final int stringsOffset; // Start of the strings section
+
+    /**
+     * Maps an existing binary account file.
+     *
+     * @param path The binary account file
+     * @throws IOException If the file cannot be mapped or is not a binary account file
+     */
+    public MappedAccountStore(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Not a binary account file: " + path);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(12) != RECORD_SIZE) {
+            channel.close();
+            throw new IOException("Not a binary account file: " + path);
+        }
+        count = buffer.getInt(8);
+        indexOffset = (int) buffer.getLong(16);
+        stringsOffset = (int) buffer.getLong(24);
+    }
+
+    /**
+     * Maps the binary account file, converting it from the text data file first if it does not exist yet.
+     *
+     * @param binaryPath The binary account file
+     * @param textPath The text data file to convert from
+     * @param journalDirectory The transaction log of the text data file, replayed before converting
+     * @return The mapped store
+     * @throws IOException If converting or mapping fails
+     */
+    public static MappedAccountStore openOrConvert(Path binaryPath, Path textPath, Path journalDirectory) throws IOException {
+        if (!Files.exists(binaryPath)) {
+            convert(textPath, journalDirectory, binaryPath);
+        }
+        return new MappedAccountStore(binaryPath);
+    }
+
+    @Override
+    public Account get(String accountNum) {
+        int key = AccountKeys.parseAccountNum(accountNum);
+        if (key < 0) {
+            return null;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = indexOffset + mid * INDEX_ENTRY_SIZE;
+            int midKey = buffer.getInt(entry);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return new MappedAccount(buffer.getInt(entry + 4));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Account> accounts() {
+        return new AbstractList<Account>() {
+            @Override
+            public Account get(int index) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+                }
+                return new MappedAccount(index);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public boolean add(Account account) {
+        throw new UnsupportedOperationException("The binary account file has a fixed set of accounts");
+    }
+
+    @Override
+    public boolean persistsBalances() {
+        return true;
+    }
+
+    @Override
+    public void flush() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * Hashes a PIN with a salt.
+     *
+     * @param salt The salt
+     * @param pin The PIN
+     * @return The SHA-256 digest
+     */
+    static byte[] hashPIN(byte[] salt, String pin) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            return digest.digest(pin.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Converts a text data file into a binary account file. The records of its transaction log that the
+     * data file does not contain yet are replayed first, as {@link Data#load(String)} would.
+     * The output is written to a temporary file and renamed into place.
+     *
+     * @param textPath The text data file
+     * @param journalDirectory The transaction log of the text data file
+     * @param binaryPath The binary account file to create
+     * @throws IOException If reading or writing fails, or an account number is not 6 digits
+     */
+    public static void convert(Path textPath, Path journalDirectory, Path binaryPath) throws IOException {
+        List<Account> accounts = Data.readRecovered(textPath.toString(), journalDirectory).getAccounts();
+        int n = accounts.size();
+        long[] index = new long[n]; // Account number in the high half, record number in the low half
+        List<byte[]> usernames = new ArrayList<>(n);
+        long stringsLength = 0;
+        for (int i = 0; i < n; i++) {
+            Account account = accounts.get(i);
+            int key = AccountKeys.parseAccountNum(account.getAccountNum());
+            if (key < 0) {
+                throw new IOException("Account number is not 6 digits: " + account.getAccountNum());
+            }
+            index[i] = ((long) key << 32) | i;
+            byte[] username = account.getUsername().getBytes(StandardCharsets.UTF_8);
+            usernames.add(username);
+            stringsLength += username.length;
+        }
+        Arrays.sort(index);
+        long indexOffset = HEADER_SIZE + (long) n * RECORD_SIZE;
+        long stringsOffset = indexOffset + (long) n * INDEX_ENTRY_SIZE;
+        if (stringsOffset + stringsLength > Integer.MAX_VALUE) {
+            throw new IOException("Too many accounts for a single mapping: " + n);
+        }
+
+        SecureRandom random = new SecureRandom();
+        Path temp = binaryPath.resolveSibling(binaryPath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(RECORD_SIZE);
+            out.writeLong(indexOffset);
+            out.writeLong(stringsOffset);
+            out.writeLong(stringsLength);
+            out.write(new byte[HEADER_SIZE - 40]);
+
+            int usernameOffset = 0;
+            byte[] salt = new byte[SALT_LENGTH];
+            for (int i = 0; i < n; i++) {
+                Account account = accounts.get(i);
+                byte[] username = usernames.get(i);
+                random.nextBytes(salt);
+                out.writeInt(AccountKeys.parseAccountNum(account.getAccountNum()));
+                out.writeInt(usernameOffset);
+                out.writeLong(account.getBalanceMinor());
+                out.writeShort(username.length);
+                out.write(new byte[OFFSET_SALT - OFFSET_USERNAME_LENGTH - 2]);
+                out.write(salt);
+                out.write(hashPIN(salt, account.getPIN()));
+                usernameOffset += username.length;
+            }
+            for (long entry : index) {
+                out.writeInt((int) (entry >>> 32));
+                out.writeInt((int) entry);
+            }
+            for (byte[] username : usernames) {
+                out.write(username);
+            }
+        }
+        Files.move(temp, binaryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Converts a text data file into a binary account file from the command line.
+     *
+     * @param args The text data file, the binary account file and the log directory, default data.txt,
+     *             data.bin and journal next to the text data file
+     * @throws IOException If converting fails
+     */
+    public static void main(String[] args) throws IOException {
+        Path textPath = Paths.get(args.length > 0 ? args[0] : "data.txt");
+        Path binaryPath = Paths.get(args.length > 1 ? args[1] : "data.bin");
+        Path journalDirectory = args.length > 2 ? Paths.get(args[2]) : textPath.toAbsolutePath().getParent().resolve("journal");
+        convert(textPath, journalDirectory, binaryPath);
+        try (MappedAccountStore store = new MappedAccountStore(binaryPath)) {
+            System.out.println("Converted " + store.count + " accounts from " + textPath + " to " + binaryPath);
+        }
+    }
+
+    /**
+     * Flyweight view of one record of the mapped file.
+     */
+    private class MappedAccount extends Account {
+        private final int record; // Byte offset of the record in the mapping
+
+        /**
+         * Creates a view of the given record.
+         *
+         * @param recordNumber The record number
+         */
+        MappedAccount(int recordNumber) {
+            super(null, null);
+            this.record = HEADER_SIZE + recordNumber * RECORD_SIZE;
+        }
+
+        @Override
+        public String getAccountNum() {
+            return AccountKeys.formatAccountNum(buffer.getInt(record));
+        }
+
+        @Override
+        public String getPIN() {
+            return "****";
+        }
+
+        @Override
+        public boolean checkPIN(String pin) {
+            byte[] salt = new byte[SALT_LENGTH];
+            byte[] stored = new byte[HASH_LENGTH];
+            buffer.get(record + OFFSET_SALT, salt);
+            buffer.get(record + OFFSET_PIN_HASH, stored);
+            return MessageDigest.isEqual(stored, hashPIN(salt, pin));
+        }
+
+        @Override
+        public String getUsername() {
+            int offset = buffer.getInt(record + OFFSET_USERNAME_OFFSET);
+            int length = buffer.getShort(record + OFFSET_USERNAME_LENGTH) & 0xFFFF;
+            byte[] bytes = new byte[length];
+            buffer.get(stringsOffset + offset, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public long getStoredBalanceMinor() {
+            return (long) LONG_VIEW.getVolatile(buffer, record + OFFSET_BALANCE);
+        }
+
+        // Writes the mapped balance in place with no log, see the class comment on crashes during transfers
+        @Override
+        public void setBalanceMinor(long balanceMinor) {
+            LONG_VIEW.setVolatile(buffer, record + OFFSET_BALANCE, balanceMinor);
+        }
+
+        // Like setBalanceMinor, atomic in memory but not ordered with other balances on disk
+        @Override
+        public boolean compareAndSetBalanceMinor(long expected, long newValue) {
+            return LONG_VIEW.compareAndSet(buffer, record + OFFSET_BALANCE, expected, newValue);
+        }
+
+        @Override
+        public void setAccountNum(String accountNum) {
+            throw new UnsupportedOperationException("Account numbers in the binary account file are fixed");
+        }
+
+        @Override
+        public void setUsername(String username) {
+            throw new UnsupportedOperationException("Usernames in the binary account file are fixed");
+        }
+
+        @Override
+        public void setPIN(String PIN) {
+            throw new UnsupportedOperationException("PINs in the binary account file are fixed");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof MappedAccount && ((MappedAccount) o).record == record;
+        }
+
+        @Override
+        public int hashCode() {
+            return record;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.store;
+
+import pojo.Account;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Account store keeping every account on the heap, in load order for listing and in a
+ * concurrent hash index keyed by account number for lookups.
+ */
+public class MemoryAccountStore implements AccountStore {
+    private final List<Account> accounts = new ArrayList<>();
+    private final Map<String, Account> accountIndex = new ConcurrentHashMap<>();
+
+    @Override
+    public Account get(String accountNum) {
+        if (accountNum == null) {
+            return null;
+        }
+        return accountIndex.get(accountNum);
+    }
+
+    @Override
+    public List<Account> accounts() {
+        return Collections.unmodifiableList(accounts);
+    }
+
+    @Override
+    public synchronized boolean add(Account account) {
+        if (accountIndex.putIfAbsent(account.getAccountNum(), account) != null) {
+            return false;
+        }
+        accounts.add(account);
+        return true;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy;
+
+import util.Money;
+
+/**
+ * A deposit, withdrawal or transfer to be applied as part of a batch, see {@link AccountOperationStrategy#applyBatch}.
+ */
+public final class AccountCommand {
+
+    /**
+     * The kinds of command.
+     */
+    public enum Type {
+        DEPOSIT, WITHDRAW, TRANSFER
+    }
+
+    private final Type type; // Kind of command
+    private final String accountNum; // Account the command applies to, or the source of a transfer
+    private final String toAccountNum; // Destination of a transfer, null for other types
+    private final double money; // Amount of money
+
+    /**
+     * Constructs a command.
+     *
+     * @param type The kind of command
+     * @param accountNum The account the command applies to, or the source of a transfer
+     * @param toAccountNum The destination of a transfer, null for other types
+     * @param money The amount of money
+     */
+    private AccountCommand(Type type, String accountNum, String toAccountNum, double money) {
+        this.type = type;
+        this.accountNum = accountNum;
+        this.toAccountNum = toAccountNum;
+        this.money = money;
+    }
+
+    /**
+     * Creates a deposit command.
+     *
+     * @param accountNum The account number where money will be deposited
+     * @param money The amount of money to deposit
+     * @return The command
+     */
+    public static AccountCommand deposit(String accountNum, double money) {
+        return new AccountCommand(Type.DEPOSIT, accountNum, null, money);
+    }
+
+    /**
+     * Creates a withdrawal command.
+     *
+     * @param accountNum The account number from which money will be withdrawn
+     * @param money The amount of money to withdraw
+     * @return The command
+     */
+    public static AccountCommand withdraw(String accountNum, double money) {
+        return new AccountCommand(Type.WITHDRAW, accountNum, null, money);
+    }
+
+    /**
+     * Creates a transfer command.
+     *
+     * @param from The account number from which money will be transferred
+     * @param to The account number to which money will be transferred
+     * @param money The amount of money to transfer
+     * @return The command
+     */
+    public static AccountCommand transfer(String from, String to, double money) {
+        return new AccountCommand(Type.TRANSFER, from, to, money);
+    }
+
+    /**
+     * Checks that an amount can be applied: positive, finite and at least one minor unit.
+     *
+     * @param money The amount
+     * @return A rejected result, or null if the amount is valid
+     */
+    public static OperationResult checkAmount(double money) {
+        if (!(money > 0) || Double.isInfinite(money) || Money.toMinor(money) <= 0) {
+            return OperationResult.rejected("Invalid amount " + money);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the kind of command.
+     *
+     * @return The type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Retrieves the account the command applies to, or the source of a transfer.
+     *
+     * @return The account number
+     */
+    public String getAccountNum() {
+        return accountNum;
+    }
+
+    /**
+     * Retrieves the destination of a transfer.
+     *
+     * @return The account number, or null for other types
+     */
+    public String getToAccountNum() {
+        return toAccountNum;
+    }
+
+    /**
+     * Retrieves the amount of money.
+     *
+     * @return The amount
+     */
+    public double getMoney() {
+        return money;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + accountNum + (toAccountNum != null ? " -> " + toAccountNum : "") + " " + money;
+    }
+}
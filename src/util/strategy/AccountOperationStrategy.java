@@ -6,6 +6,13 @@
 package util.strategy;
 
 import pojo.Account;
+import util.Data;
+import util.Money;
+import util.auth.AuthenticationService;
+import util.auth.Session;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Interface for defining operations that can be performed on accounts.
@@ -37,6 +44,74 @@ public interface AccountOperationStrategy {
      */
     void transfer(String from, String to, double money);
 
+    /**
+     * Deposits into an account resolved earlier, such as the account bound to a session, so the account
+     * number need not be looked up again. This default delegates to {@link #deposit(String, double)}.
+     *
+     * @param account The account where money will be deposited
+     * @param money The amount of money to deposit
+     */
+    default void deposit(Account account, double money) {
+        deposit(account.getAccountNum(), money);
+    }
+
+    /**
+     * Withdraws from an account resolved earlier. This default delegates to {@link #withdraw(String, double)}.
+     *
+     * @param account The account from which money will be withdrawn
+     * @param money The amount of money to withdraw
+     */
+    default void withdraw(Account account, double money) {
+        withdraw(account.getAccountNum(), money);
+    }
+
+    /**
+     * Transfers between accounts resolved earlier. This default delegates to
+     * {@link #transfer(String, String, double)}.
+     *
+     * @param from The account from which money will be transferred
+     * @param to The account to which money will be transferred
+     * @param money The amount of money to transfer
+     */
+    default void transfer(Account from, Account to, double money) {
+        transfer(from.getAccountNum(), to.getAccountNum(), money);
+    }
+
+    /**
+     * Withdraws from an account resolved earlier only if its balance covers the amount. Strategies that override
+     * this check the balance and update it atomically, so concurrent withdrawals cannot overdraw the account.
+     * This default checks first and then calls {@link #withdraw(Account, double)}, which is not atomic.
+     *
+     * @param account The account from which money will be withdrawn
+     * @param money The amount of money to withdraw
+     * @return true if the money was withdrawn, false if the balance did not cover it
+     */
+    default boolean withdrawIfCovered(Account account, double money) {
+        if (account.getBalanceMinor() < Money.toMinor(money)) {
+            return false;
+        }
+        withdraw(account, money);
+        return true;
+    }
+
+    /**
+     * Transfers between accounts resolved earlier only if the balance of the source covers the amount.
+     * Strategies that override this check the balance and update it atomically. This default checks first
+     * and then calls {@link #transfer(Account, Account, double)}, which is not atomic.
+     *
+     * @param from The account from which money will be transferred
+     * @param to The account to which money will be transferred
+     * @param money The amount of money to transfer
+     * @return true if the money was transferred, false if the balance did not cover it
+     */
+    default boolean transferIfCovered(Account from, Account to, double money) {
+        if (from.getBalanceMinor() < Money.toMinor(money)) {
+            return false;
+        }
+        transfer(from, to, money);
+        return true;
+    }
+
     /**
      * Retrieves details of the specified account.
      *
@@ -44,4 +119,88 @@ public interface AccountOperationStrategy {
      * @return The Account object if found, otherwise null
      */
     Account inquire(String accountNum);
+
+    /**
+     * Resolves an account handle to check the input of a terminal, such as the destination of a transfer,
+     * without counting as an inquiry. This default looks the account up in the Data singleton.
+     *
+     * @param accountNum The account number
+     * @return The Account object if found, otherwise null
+     */
+    default Account find(String accountNum) {
+        return Data.getInstance().getAccountByAccountNum(accountNum);
+    }
+
+    /**
+     * Verifies an account number and PIN and opens a session whose account the operations of the terminal
+     * are then applied to. This default uses the {@link AuthenticationService} of this process.
+     *
+     * @param accountNum The account number
+     * @param pin The PIN
+     * @return The new session, or null if the account is unknown or the PIN does not match
+     */
+    default Session login(String accountNum, String pin) {
+        return AuthenticationService.getInstance().authenticate(accountNum, pin);
+    }
+
+    /**
+     * Ends a session opened by {@link #login(String, String)}. This default uses the
+     * {@link AuthenticationService} of this process.
+     *
+     * @param session The session, ignored if null
+     */
+    default void logout(Session session) {
+        AuthenticationService.getInstance().logout(session);
+    }
+
+    /**
+     * Applies a batch of commands and reports a result per command, in the same order.
+     * Commands with an invalid amount, an unknown account or a transfer to the source account are
+     * rejected without being applied; the others are applied as the single-operation methods would.
+     * The balance in each result is the balance of the command's account right after it.
+     * <p>
+     * This default applies the commands one at a time, resolving accounts with {@link #find(String)} and
+     * reading the balance of each result through it. Implementations may instead group them by account and
+     * apply each account's net change at once.
+     *
+     * @param commands The commands to apply
+     * @return The result of each command
+     */
+    default List<OperationResult> applyBatch(List<AccountCommand> commands) {
+        List<OperationResult> results = new ArrayList<>(commands.size());
+        for (AccountCommand command : commands) {
+            OperationResult invalid = AccountCommand.checkAmount(command.getMoney());
+            Account account = invalid == null ? find(command.getAccountNum()) : null;
+            if (invalid != null) {
+                results.add(invalid);
+            } else if (account == null) {
+                results.add(OperationResult.unknownAccount(command.getAccountNum()));
+            } else {
+                switch (command.getType()) {
+                    case DEPOSIT:
+                        deposit(account, command.getMoney());
+                        break;
+                    case WITHDRAW:
+                        withdraw(account, command.getMoney());
+                        break;
+                    default:
+                        Account toAccount = find(command.getToAccountNum());
+                        if (toAccount == null) {
+                            results.add(OperationResult.unknownAccount(command.getToAccountNum()));
+                            continue;
+                        }
+                        if (command.getAccountNum().equals(command.getToAccountNum())) {
+                            results.add(OperationResult.rejected("Cannot transfer to the same account"));
+                            continue;
+                        }
+                        transfer(account, toAccount, command.getMoney());
+                        break;
+                }
+                // Resolve again, so a strategy handing out snapshots reports the balance after the command
+                Account current = find(command.getAccountNum());
+                results.add(OperationResult.ok((current != null ? current : account).getBalanceMinor()));
+            }
+        }
+        return results;
+    }
 }
@@ -0,0 +1,52 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous companion of {@link AccountOperationStrategy}. Every operation returns at once with a future
+ * that completes with an {@link OperationResult}, so callers can keep many operations in flight and learn
+ * whether each one was applied.
+ */
+public interface AsyncAccountOperationStrategy {
+
+    /**
+     * Deposits a specified amount of money into the specified account.
+     *
+     * @param accountNum The account number where money will be deposited
+     * @param money The amount of money to deposit
+     * @return A future completing with the new balance, or why the deposit was not applied
+     */
+    CompletableFuture<OperationResult> deposit(String accountNum, double money);
+
+    /**
+     * Withdraws a specified amount of money from the specified account.
+     *
+     * @param accountNum The account number from which money will be withdrawn
+     * @param money The amount of money to withdraw
+     * @return A future completing with the new balance, or why the withdrawal was not applied
+     */
+    CompletableFuture<OperationResult> withdraw(String accountNum, double money);
+
+    /**
+     * Transfers a specified amount of money from one account to another.
+     *
+     * @param from The account number from which money will be transferred
+     * @param to The account number to which money will be transferred
+     * @param money The amount of money to transfer
+     * @return A future completing with the new balance of the source account, or why the transfer was not applied
+     */
+    CompletableFuture<OperationResult> transfer(String from, String to, double money);
+
+    /**
+     * Retrieves the balance of the specified account.
+     *
+     * @param accountNum The account number to inquire about
+     * @return A future completing with the balance, or UNKNOWN_ACCOUNT
+     */
+    CompletableFuture<OperationResult> inquire(String accountNum);
+}
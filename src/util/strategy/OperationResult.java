@@ -0,0 +1,129 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy;
+
+import util.Money;
+
+/**
+ * Outcome of an account operation issued through an {@link AsyncAccountOperationStrategy}.
+ */
+public class OperationResult {
+
+    /**
+     * How an operation ended.
+     */
+    public enum Status {
+        OK, REJECTED, INSUFFICIENT_FUNDS, UNKNOWN_ACCOUNT
+    }
+
+    private final Status status; // How the operation ended
+    private final long balanceMinor; // Balance of the account operated on, in minor units
+    private final String message; // Reason for a failure, empty when OK
+
+    /**
+     * Constructs a result.
+     *
+     * @param status How the operation ended
+     * @param balanceMinor The balance of the account operated on, in minor units
+     * @param message The reason for a failure
+     */
+    private OperationResult(Status status, long balanceMinor, String message) {
+        this.status = status;
+        this.balanceMinor = balanceMinor;
+        this.message = message;
+    }
+
+    /**
+     * Creates the result of a successful operation.
+     *
+     * @param balanceMinor The balance after the operation, in minor units
+     * @return The result
+     */
+    public static OperationResult ok(long balanceMinor) {
+        return new OperationResult(Status.OK, balanceMinor, "");
+    }
+
+    /**
+     * Creates the result of an operation that was refused without being applied.
+     *
+     * @param message The reason
+     * @return The result
+     */
+    public static OperationResult rejected(String message) {
+        return new OperationResult(Status.REJECTED, 0, message);
+    }
+
+    /**
+     * Creates the result of a withdrawal or transfer larger than the balance.
+     *
+     * @param balanceMinor The current balance, in minor units
+     * @return The result
+     */
+    public static OperationResult insufficientFunds(long balanceMinor) {
+        return new OperationResult(Status.INSUFFICIENT_FUNDS, balanceMinor, "Insufficient funds");
+    }
+
+    /**
+     * Creates the result of an operation on an account that does not exist.
+     *
+     * @param accountNum The account number that was not found
+     * @return The result
+     */
+    public static OperationResult unknownAccount(String accountNum) {
+        return new OperationResult(Status.UNKNOWN_ACCOUNT, 0, "Unknown account " + accountNum);
+    }
+
+    /**
+     * Retrieves how the operation ended.
+     *
+     * @return The status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Whether the operation was applied.
+     *
+     * @return true if the status is OK
+     */
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    /**
+     * Retrieves the balance of the account operated on in minor units: the new balance when OK,
+     * the current balance for insufficient funds, otherwise 0. For a transfer this is the source account.
+     *
+     * @return The balance in minor units
+     */
+    public long getBalanceMinor() {
+        return balanceMinor;
+    }
+
+    /**
+     * Retrieves the balance of the account operated on, see {@link #getBalanceMinor()}.
+     *
+     * @return The balance
+     */
+    public double getBalance() {
+        return Money.toMajor(balanceMinor);
+    }
+
+    /**
+     * Retrieves the reason for a failure.
+     *
+     * @return The reason, empty when OK
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return status == Status.OK ? "OK, balance " + getBalance() : status + ": " + message;
+    }
+}
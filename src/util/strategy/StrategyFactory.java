@@ -0,0 +1,69 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy;
+
+import util.strategy.impl.ConsistentStrategy;
+import util.strategy.impl.InconsistentStrategy;
+import util.strategy.impl.LockFreeStrategy;
+import util.strategy.impl.RemoteStrategy;
+import util.strategy.impl.ShardedStrategy;
+import util.strategy.impl.StripedLockStrategy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates {@link AccountOperationStrategy} implementations by name, for tools that select one from the command line.
+ */
+public class StrategyFactory {
+    private static final Map<String, AccountOperationStrategy> shared = new ConcurrentHashMap<>(); // Shared instances by name
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private StrategyFactory() {}
+
+    /**
+     * Creates a strategy by name.
+     *
+     * @param name consistent, inconsistent, striped, lockfree, sharded, which runs over the shared
+     *             {@link util.shard.ShardSet} instead of the Data singleton, or remote, which sends the
+     *             operations to the {@link util.server.TransactionServer} at atm.server.address
+     * @return A new strategy
+     * @throws IllegalArgumentException If the name is unknown
+     */
+    public static AccountOperationStrategy create(String name) {
+        switch (name) {
+            case "consistent":
+                return new ConsistentStrategy();
+            case "inconsistent":
+                return new InconsistentStrategy();
+            case "striped":
+                return new StripedLockStrategy();
+            case "lockfree":
+                return new LockFreeStrategy();
+            case "sharded":
+                return new ShardedStrategy();
+            case "remote":
+                return new RemoteStrategy();
+            default:
+                throw new IllegalArgumentException("Unknown strategy: " + name);
+        }
+    }
+
+    /**
+     * Retrieves the instance of a strategy shared within this process, creating it on first use. The locking
+     * strategies only exclude operations issued through the same instance, so everything in one process that
+     * operates on the same accounts, such as the ATMs and the demos of the controller, should use this.
+     *
+     * @param name The name of the strategy, as accepted by {@link #create(String)}
+     * @return The shared strategy
+     * @throws IllegalArgumentException If the name is unknown
+     */
+    public static AccountOperationStrategy shared(String name) {
+        return shared.computeIfAbsent(name, StrategyFactory::create);
+    }
+}
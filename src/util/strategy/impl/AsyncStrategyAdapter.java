@@ -0,0 +1,139 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy.impl;
+
+import pojo.Account;
+import util.concurrent.OperationExecutor;
+import util.strategy.AccountCommand;
+import util.strategy.AccountOperationStrategy;
+import util.strategy.AsyncAccountOperationStrategy;
+import util.strategy.OperationResult;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs a blocking {@link AccountOperationStrategy} on the shared {@link OperationExecutor} and reports typed results.
+ * <p>
+ * The wrapped strategies apply every operation they are given, so the checks are made here before calling them:
+ * amounts must be positive and at least one minor unit, accounts must exist and a transfer needs two different
+ * accounts. Accounts are resolved through {@link AccountOperationStrategy#find(String)}, so the adapter sees the
+ * same accounts as the wrapped strategy. Withdrawals and transfers go through
+ * {@link AccountOperationStrategy#withdrawIfCovered} and {@link AccountOperationStrategy#transferIfCovered},
+ * which check the balance atomically with the update in the strategies that override them.
+ * The balance reported is read right after the operation and may include concurrent operations on the same account.
+ */
+public class AsyncStrategyAdapter implements AsyncAccountOperationStrategy {
+    private final AccountOperationStrategy strategy; // The wrapped blocking strategy
+    private final OperationExecutor executor; // Runs the blocking calls
+
+    /**
+     * Constructs an adapter running on the shared executor.
+     *
+     * @param strategy The blocking strategy to wrap
+     */
+    public AsyncStrategyAdapter(AccountOperationStrategy strategy) {
+        this(strategy, OperationExecutor.getInstance());
+    }
+
+    /**
+     * Constructs an adapter running on the given executor.
+     *
+     * @param strategy The blocking strategy to wrap
+     * @param executor The executor for the blocking calls
+     */
+    public AsyncStrategyAdapter(AccountOperationStrategy strategy, OperationExecutor executor) {
+        this.strategy = strategy;
+        this.executor = executor;
+    }
+
+    /**
+     * Retrieves the wrapped strategy.
+     *
+     * @return The blocking strategy
+     */
+    public AccountOperationStrategy getStrategy() {
+        return strategy;
+    }
+
+    @Override
+    public CompletableFuture<OperationResult> deposit(String accountNum, double money) {
+        OperationResult invalid = AccountCommand.checkAmount(money);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(invalid);
+        }
+        return executor.submit(() -> {
+            Account account = strategy.find(accountNum);
+            if (account == null) {
+                return OperationResult.unknownAccount(accountNum);
+            }
+            strategy.deposit(account, money);
+            return OperationResult.ok(balanceOf(account));
+        });
+    }
+
+    @Override
+    public CompletableFuture<OperationResult> withdraw(String accountNum, double money) {
+        OperationResult invalid = AccountCommand.checkAmount(money);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(invalid);
+        }
+        return executor.submit(() -> {
+            Account account = strategy.find(accountNum);
+            if (account == null) {
+                return OperationResult.unknownAccount(accountNum);
+            }
+            if (!strategy.withdrawIfCovered(account, money)) {
+                return OperationResult.insufficientFunds(balanceOf(account));
+            }
+            return OperationResult.ok(balanceOf(account));
+        });
+    }
+
+    @Override
+    public CompletableFuture<OperationResult> transfer(String from, String to, double money) {
+        OperationResult invalid = AccountCommand.checkAmount(money);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(invalid);
+        }
+        if (from != null && from.equals(to)) {
+            return CompletableFuture.completedFuture(OperationResult.rejected("Cannot transfer to the same account"));
+        }
+        return executor.submit(() -> {
+            Account fromAccount = strategy.find(from);
+            if (fromAccount == null) {
+                return OperationResult.unknownAccount(from);
+            }
+            Account toAccount = strategy.find(to);
+            if (toAccount == null) {
+                return OperationResult.unknownAccount(to);
+            }
+            if (!strategy.transferIfCovered(fromAccount, toAccount, money)) {
+                return OperationResult.insufficientFunds(balanceOf(fromAccount));
+            }
+            return OperationResult.ok(balanceOf(fromAccount));
+        });
+    }
+
+    /**
+     * Reads the current balance of an account resolved earlier, resolving it again through the wrapped strategy
+     * so a strategy that hands out snapshots, such as a remote one, reports the balance after the operation.
+     *
+     * @param account The account
+     * @return The balance in minor units
+     */
+    private long balanceOf(Account account) {
+        Account current = strategy.find(account.getAccountNum());
+        return (current != null ? current : account).getBalanceMinor();
+    }
+
+    @Override
+    public CompletableFuture<OperationResult> inquire(String accountNum) {
+        return executor.submit(() -> {
+            Account account = strategy.inquire(accountNum);
+            return account == null ? OperationResult.unknownAccount(accountNum) : OperationResult.ok(account.getBalanceMinor());
+        });
+    }
+}
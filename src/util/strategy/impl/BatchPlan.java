@@ -0,0 +1,222 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy.impl;
+
+import pojo.Account;
+import util.Money;
+import util.log.TransactionRecord;
+import util.strategy.AccountCommand;
+import util.strategy.OperationResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * A batch of commands grouped by account, shared by the strategies that override
+ * {@link util.strategy.AccountOperationStrategy#applyBatch}.
+ * <p>
+ * Invalid commands get their result when the plan is built. The valid ones are split into signed
+ * changes per account, a transfer into a debit of the source and a credit of the destination.
+ * The strategy writes the valid commands ahead to the log in one go and applies every {@link AccountGroup}
+ * while holding whatever protects the accounts of the batch, writing each account's net change once.
+ */
+final class BatchPlan {
+    private final List<AccountCommand> commands; // Commands in submission order
+    private final OperationResult[] results; // Result per command, null until known
+    private final TreeMap<String, AccountGroup> groups = new TreeMap<>(); // Changes per account, sorted by account number
+
+    /**
+     * Validates the commands, looks up their accounts and groups their changes by account.
+     *
+     * @param commands The commands of the batch
+     * @param lookup Resolves an account number the way the strategy does, returning null for an unknown account
+     */
+    BatchPlan(List<AccountCommand> commands, Function<String, Account> lookup) {
+        this.commands = commands;
+        this.results = new OperationResult[commands.size()];
+        for (int i = 0; i < results.length; i++) {
+            AccountCommand command = commands.get(i);
+            OperationResult invalid = AccountCommand.checkAmount(command.getMoney());
+            if (invalid != null) {
+                results[i] = invalid;
+                continue;
+            }
+            Account account = lookup.apply(command.getAccountNum());
+            if (account == null) {
+                results[i] = OperationResult.unknownAccount(command.getAccountNum());
+                continue;
+            }
+            long amount = Money.toMinor(command.getMoney());
+            switch (command.getType()) {
+                case DEPOSIT:
+                    group(account).add(i, amount, true);
+                    break;
+                case WITHDRAW:
+                    group(account).add(i, -amount, true);
+                    break;
+                default:
+                    Account toAccount = lookup.apply(command.getToAccountNum());
+                    if (toAccount == null) {
+                        results[i] = OperationResult.unknownAccount(command.getToAccountNum());
+                    } else if (command.getAccountNum().equals(command.getToAccountNum())) {
+                        results[i] = OperationResult.rejected("Cannot transfer to the same account");
+                    } else {
+                        group(account).add(i, -amount, true);
+                        group(toAccount).add(i, amount, false);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the group of an account, creating it on first use.
+     *
+     * @param account The account
+     * @return The group
+     */
+    private AccountGroup group(Account account) {
+        return groups.computeIfAbsent(account.getAccountNum(), accountNum -> new AccountGroup(account));
+    }
+
+    /**
+     * Retrieves the changes per account, sorted by account number.
+     *
+     * @return The account groups
+     */
+    Collection<AccountGroup> groups() {
+        return groups.values();
+    }
+
+    /**
+     * Applies the changes of one account with a plain write. The caller must hold the lock protecting the account.
+     *
+     * @param group The account group
+     */
+    void apply(AccountGroup group) {
+        long start = group.account.getBalanceMinor();
+        group.account.setBalanceMinor(group.settle(start));
+    }
+
+    /**
+     * Computes the balance of one account after the batch and records the results of its commands, for a
+     * strategy that writes the balance itself. Computing it again from another starting balance replaces
+     * the results.
+     *
+     * @param group The account group
+     * @param start The balance before the batch, in minor units
+     * @return The balance after the batch, in minor units
+     */
+    long settle(AccountGroup group, long start) {
+        return group.settle(start);
+    }
+
+    /**
+     * Retrieves the journal records of the valid commands, in submission order. Valid commands are always
+     * applied, so the records can be written ahead before the groups are.
+     *
+     * @return The records, with sequence number 0
+     */
+    List<TransactionRecord> journalRecords() {
+        List<TransactionRecord> records = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null || results[i].isOk()) {
+                AccountCommand command = commands.get(i);
+                TransactionRecord.Type type = TransactionRecord.Type.valueOf(command.getType().name());
+                records.add(new TransactionRecord(0, type, command.getAccountNum(), command.getToAccountNum(),
+                        Money.toMinor(command.getMoney())));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Retrieves the result of every command, once all groups are applied.
+     *
+     * @return The results in submission order
+     */
+    List<OperationResult> results() {
+        return Arrays.asList(results);
+    }
+
+    /**
+     * The changes a batch makes to one account, in submission order.
+     */
+    final class AccountGroup {
+        private final Account account; // The account changed
+        private int size; // Number of changes
+        private int[] commandIndexes = new int[4]; // Command of each change
+        private long[] deltas = new long[4]; // Signed change in minor units
+        private boolean[] primary = new boolean[4]; // Whether the command's result reports this account
+
+        /**
+         * Constructs an empty group.
+         *
+         * @param account The account changed
+         */
+        AccountGroup(Account account) {
+            this.account = account;
+        }
+
+        /**
+         * Retrieves the account of the group.
+         *
+         * @return The account
+         */
+        Account getAccount() {
+            return account;
+        }
+
+        /**
+         * Retrieves the account number of the group.
+         *
+         * @return The account number
+         */
+        String getAccountNum() {
+            return account.getAccountNum();
+        }
+
+        /**
+         * Adds a change.
+         *
+         * @param command The index of the command
+         * @param delta The signed change in minor units
+         * @param reportsBalance Whether the command's result reports this account
+         */
+        private void add(int command, long delta, boolean reportsBalance) {
+            if (size == deltas.length) {
+                commandIndexes = Arrays.copyOf(commandIndexes, size * 2);
+                deltas = Arrays.copyOf(deltas, size * 2);
+                primary = Arrays.copyOf(primary, size * 2);
+            }
+            commandIndexes[size] = command;
+            deltas[size] = delta;
+            primary[size] = reportsBalance;
+            size++;
+        }
+
+        /**
+         * Walks the changes from a starting balance, recording each command's balance as if applied one by one.
+         *
+         * @param start The balance before the batch
+         * @return The balance after the batch
+         */
+        private long settle(long start) {
+            long balance = start;
+            for (int i = 0; i < size; i++) {
+                balance += deltas[i];
+                if (primary[i]) {
+                    results[commandIndexes[i]] = OperationResult.ok(balance);
+                }
+            }
+            return balance;
+        }
+    }
+}
@@ -7,13 +7,26 @@ package util.strategy.impl;
 
 import pojo.Account;
 import util.Data;
+import util.Money;
+import util.log.TransactionRecord;
+import util.strategy.AccountCommand;
 import util.strategy.AccountOperationStrategy;
+import util.strategy.OperationResult;
+
+import java.util.List;
 
 /**
  * An implementation of AccountOperationStrategy that ensures thread-safe operations
  * on accounts by using synchronization.
+ * <p>
+ * Every operation is written ahead to the transaction log under the lock, right before its balances change,
+ * and waits for the log to reach the disk after releasing it.
+ * <p>
+ * With atm.profile.contention set, the lookup, lock wait and lock hold times of every operation are
+ * recorded by the {@link ContentionProfiler}.
  */
 public class ConsistentStrategy implements AccountOperationStrategy {
+    private final ContentionProfiler profiler = ContentionProfiler.getInstance(); // Records lock times when enabled
 
     /**
      * Retrieves an account by its account number.
@@ -22,12 +35,7 @@ public class ConsistentStrategy implements AccountOperationStrategy {
      * @return The Account object if found, otherwise null
      */
     private Account getAccountByAccountNum(String accountNum) {
-        for (Account account : Data.getInstance().getAccounts()) {
-            if (account.getAccountNum().equals(accountNum)) {
-                return account;
-            }
-        }
-        return null;
+        return Data.getInstance().getAccountByAccountNum(accountNum);
     }
 
     /**
@@ -39,13 +47,49 @@ public class ConsistentStrategy implements AccountOperationStrategy {
      */
     @Override
     public void deposit(String accountNum, double money) {
+        long start = profiler.now();
         Account account = getAccountByAccountNum(accountNum);
         if (account != null) {
-            synchronized (this) {
-                // Update balance within synchronized block
-                account.setBalance(account.getBalance() + money);
-            }
+            deposit(account, accountNum, money, profiler.now() - start);
+        }
+    }
+
+    /**
+     * Deposits a specified amount of money into an account resolved earlier, such as the account of a session.
+     * This operation is thread-safe.
+     *
+     * @param account The account to deposit money into
+     * @param money The amount of money to deposit
+     */
+    @Override
+    public void deposit(Account account, double money) {
+        deposit(account, account.getAccountNum(), money, 0);
+    }
+
+    /**
+     * Updates the balance of a resolved account under the strategy lock and journals the deposit.
+     *
+     * @param account The account
+     * @param accountNum The account number of the account
+     * @param money The amount of money
+     * @param lookupNanos The time spent resolving the account, for the profiler
+     */
+    private void deposit(Account account, String accountNum, double money, long lookupNanos) {
+        long amount = Money.toMinor(money);
+        Data data = Data.getInstance();
+        long requested = profiler.now();
+        long acquired;
+        long released;
+        long seq;
+        synchronized (this) {
+            acquired = profiler.now();
+            // Log and update balance within synchronized block
+            seq = data.journal(TransactionRecord.Type.DEPOSIT, accountNum, null, amount);
+            account.setBalanceMinor(account.getBalanceMinor() + amount);
+            released = profiler.now();
         }
+        profiler.record(InstrumentedStrategy.Operation.DEPOSIT, accountNum, null, lookupNanos, requested, acquired, released);
+        data.commit(seq, accountNum, null);
     }
 
     /**
@@ -57,13 +101,71 @@ public class ConsistentStrategy implements AccountOperationStrategy {
      */
     @Override
     public void withdraw(String accountNum, double money) {
+        long start = profiler.now();
         Account account = getAccountByAccountNum(accountNum);
         if (account != null) {
-            synchronized (this) {
-                // Update balance within synchronized block
-                account.setBalance(account.getBalance() - money);
+            withdraw(account, accountNum, money, false, profiler.now() - start);
+        }
+    }
+
+    /**
+     * Withdraws a specified amount of money from an account resolved earlier, such as the account of a session.
+     * This operation is thread-safe.
+     *
+     * @param account The account to withdraw money from
+     * @param money The amount of money to withdraw
+     */
+    @Override
+    public void withdraw(Account account, double money) {
+        withdraw(account, account.getAccountNum(), money, false, 0);
+    }
+
+    /**
+     * Withdraws from a resolved account if its balance covers the amount, checking it under the same lock
+     * as the update.
+     *
+     * @param account The account to withdraw money from
+     * @param money The amount of money to withdraw
+     * @return true if the money was withdrawn, false if the balance did not cover it
+     */
+    @Override
+    public boolean withdrawIfCovered(Account account, double money) {
+        return withdraw(account, account.getAccountNum(), money, true, 0);
+    }
+
+    /**
+     * Updates the balance of a resolved account under the strategy lock and journals the withdraw.
+     *
+     * @param account The account
+     * @param accountNum The account number of the account
+     * @param money The amount of money
+     * @param requireFunds Whether to skip the withdraw if the balance does not cover it
+     * @param lookupNanos The time spent resolving the account, for the profiler
+     * @return true if the money was withdrawn
+     */
+    private boolean withdraw(Account account, String accountNum, double money, boolean requireFunds, long lookupNanos) {
+        long amount = Money.toMinor(money);
+        Data data = Data.getInstance();
+        long requested = profiler.now();
+        long acquired;
+        long released;
+        long seq = 0;
+        boolean covered;
+        synchronized (this) {
+            acquired = profiler.now();
+            // Check, log and update balance within synchronized block
+            covered = !requireFunds || account.getBalanceMinor() >= amount;
+            if (covered) {
+                seq = data.journal(TransactionRecord.Type.WITHDRAW, accountNum, null, amount);
+                account.setBalanceMinor(account.getBalanceMinor() - amount);
             }
+            released = profiler.now();
+        }
+        profiler.record(InstrumentedStrategy.Operation.WITHDRAW, accountNum, null, lookupNanos, requested, acquired, released);
+        if (covered) {
+            data.commit(seq, accountNum, null);
         }
+        return covered;
     }
 
     /**
@@ -76,29 +178,131 @@ public class ConsistentStrategy implements AccountOperationStrategy {
      */
     @Override
     public void transfer(String from, String to, double money) {
+        long start = profiler.now();
         Account fromAccount = getAccountByAccountNum(from);
         Account toAccount = getAccountByAccountNum(to);
         if (fromAccount != null && toAccount != null) {
-            synchronized (this) {
-                // Update balances within synchronized block
-                fromAccount.setBalance(fromAccount.getBalance() - money);
-                toAccount.setBalance(toAccount.getBalance() + money);
+            transfer(fromAccount, from, toAccount, to, money, false, profiler.now() - start);
+        }
+    }
+
+    /**
+     * Transfers a specified amount of money between accounts resolved earlier, such as the account of a session
+     * and a checked destination. This operation is thread-safe.
+     *
+     * @param from The account to transfer money from
+     * @param to The account to transfer money to
+     * @param money The amount of money to transfer
+     */
+    @Override
+    public void transfer(Account from, Account to, double money) {
+        transfer(from, from.getAccountNum(), to, to.getAccountNum(), money, false, 0);
+    }
+
+    /**
+     * Transfers between resolved accounts if the balance of the source covers the amount, checking it under
+     * the same lock as the update.
+     *
+     * @param from The account to transfer money from
+     * @param to The account to transfer money to
+     * @param money The amount of money to transfer
+     * @return true if the money was transferred, false if the balance did not cover it
+     */
+    @Override
+    public boolean transferIfCovered(Account from, Account to, double money) {
+        return transfer(from, from.getAccountNum(), to, to.getAccountNum(), money, true, 0);
+    }
+
+    /**
+     * Moves money between resolved accounts under the strategy lock and journals the transfer.
+     *
+     * @param fromAccount The account to transfer money from
+     * @param from The account number of fromAccount
+     * @param toAccount The account to transfer money to
+     * @param to The account number of toAccount
+     * @param money The amount of money
+     * @param requireFunds Whether to skip the transfer if the balance of the source does not cover it
+     * @param lookupNanos The time spent resolving the accounts, for the profiler
+     * @return true if the money was transferred
+     */
+    private boolean transfer(Account fromAccount, String from, Account toAccount, String to, double money,
+                             boolean requireFunds, long lookupNanos) {
+        long amount = Money.toMinor(money);
+        Data data = Data.getInstance();
+        long requested = profiler.now();
+        long acquired;
+        long released;
+        long seq = 0;
+        boolean covered;
+        synchronized (this) {
+            acquired = profiler.now();
+            // Check, log and update balances within synchronized block
+            covered = !requireFunds || fromAccount.getBalanceMinor() >= amount;
+            if (covered) {
+                seq = data.journal(TransactionRecord.Type.TRANSFER, from, to, amount);
+                fromAccount.setBalanceMinor(fromAccount.getBalanceMinor() - amount);
+                toAccount.setBalanceMinor(toAccount.getBalanceMinor() + amount);
             }
+            released = profiler.now();
         }
+        profiler.record(InstrumentedStrategy.Operation.TRANSFER, from, to, lookupNanos, requested, acquired, released);
+        if (covered) {
+            data.commit(seq, from, to);
+        }
+        return covered;
     }
 
     /**
      * Inquires about the details of an account with the given account number.
-     * This operation is thread-safe.
+     * This operation is thread-safe. The lookup happens under the lock, so its time is also hold time.
      *
      * @param accountNum The account number to inquire about
      * @return The Account object if found, otherwise null
      */
     @Override
     public Account inquire(String accountNum) {
+        long requested = profiler.now();
+        long acquired;
+        long released;
+        Account account;
         synchronized (this) {
+            acquired = profiler.now();
             // Retrieve account details within synchronized block
-            return getAccountByAccountNum(accountNum);
+            account = getAccountByAccountNum(accountNum);
+            released = profiler.now();
+        }
+        profiler.record(InstrumentedStrategy.Operation.INQUIRE, accountNum, null, released - acquired, requested, acquired, released);
+        return account;
+    }
+
+    /**
+     * Applies a batch of commands, grouped by account. The strategy lock is taken once for the whole batch,
+     * during which all valid commands are journaled together and then each account's commands are settled
+     * in submission order and its net change is written once.
+     *
+     * @param commands The commands to apply
+     * @return The result of each command, in the same order
+     */
+    @Override
+    public List<OperationResult> applyBatch(List<AccountCommand> commands) {
+        long start = profiler.now();
+        BatchPlan plan = new BatchPlan(commands, this::getAccountByAccountNum);
+        List<TransactionRecord> records = plan.journalRecords();
+        Data data = Data.getInstance();
+        long requested = profiler.now();
+        long acquired;
+        long released;
+        long seq;
+        synchronized (this) {
+            acquired = profiler.now();
+            seq = data.journalAll(records);
+            for (BatchPlan.AccountGroup group : plan.groups()) {
+                plan.apply(group);
+            }
+            released = profiler.now();
         }
+        profiler.record(InstrumentedStrategy.Operation.BATCH, null, null, requested - start, requested, acquired, released);
+        data.commitAll(seq, records);
+        return plan.results();
     }
 }
@@ -0,0 +1,349 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy.impl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import util.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records where the time of {@link ConsistentStrategy} goes: looking up the accounts, waiting for the strategy
+ * lock and holding it.
+ * <p>
+ * Profiling is off unless the system property atm.profile.contention is true; while off, {@link #now()} returns 0
+ * without reading the clock and {@link #record} returns at once. While on, the times are kept per operation in
+ * {@link LatencyHistogram}s and per account in {@link AccountContention} counters, so the accounts with the most
+ * waiting can be listed. At most atm.profile.maxAccounts accounts (default 10000) are tracked, the first ones seen;
+ * with a skewed load the hot accounts are among them early.
+ * <p>
+ * Every operation that waited at least atm.profile.eventThresholdMicros (default 100) for the lock is also emitted
+ * as an ezatm.LockContention JFR event, which JDK Mission Control shows under EZ ATM when a recording is running,
+ * for example with -XX:StartFlightRecording.
+ */
+public class ContentionProfiler {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("atm.profile.contention", "false"));
+    private static final int MAX_ACCOUNTS = Integer.getInteger("atm.profile.maxAccounts", 10000);
+    private static final long EVENT_THRESHOLD = TimeUnit.MICROSECONDS.toNanos(Long.getLong("atm.profile.eventThresholdMicros", 100));
+    private static final InstrumentedStrategy.Operation[] OPERATIONS = InstrumentedStrategy.Operation.values();
+    private static final ContentionProfiler INSTANCE = new ContentionProfiler();
+
+    private final LatencyHistogram[] lookups = new LatencyHistogram[OPERATIONS.length]; // Lookup time per operation
+    private final LatencyHistogram[] waits = new LatencyHistogram[OPERATIONS.length]; // Lock wait time per operation
+    private final LatencyHistogram[] holds = new LatencyHistogram[OPERATIONS.length]; // Lock hold time per operation
+    private final ConcurrentHashMap<String, AccountContention> accounts = new ConcurrentHashMap<>(); // Tracked accounts
+
+    /**
+     * Private constructor to enforce the singleton.
+     */
+    private ContentionProfiler() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            lookups[i] = new LatencyHistogram();
+            waits[i] = new LatencyHistogram();
+            holds[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Retrieves the profiler.
+     *
+     * @return The shared profiler
+     */
+    public static ContentionProfiler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Checks whether profiling is on.
+     *
+     * @return True if atm.profile.contention is true
+     */
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Reads the clock if profiling is on.
+     *
+     * @return System.nanoTime(), or 0 while profiling is off
+     */
+    public long now() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records one locked operation. The times are values of {@link #now()}.
+     *
+     * @param operation The operation
+     * @param accountNum The account operated on, null if the operation has none
+     * @param toAccountNum The destination of a transfer, otherwise null
+     * @param lookupNanos The time spent looking up the accounts
+     * @param requested When the lock was requested
+     * @param acquired When the lock was acquired
+     * @param released When the lock was released
+     */
+    public void record(InstrumentedStrategy.Operation operation, String accountNum, String toAccountNum,
+                       long lookupNanos, long requested, long acquired, long released) {
+        if (!ENABLED) {
+            return;
+        }
+        long wait = acquired - requested;
+        long hold = released - acquired;
+        lookups[operation.ordinal()].record(lookupNanos);
+        waits[operation.ordinal()].record(wait);
+        holds[operation.ordinal()].record(hold);
+        recordAccount(accountNum, wait, hold);
+        recordAccount(toAccountNum, wait, hold);
+        if (wait >= EVENT_THRESHOLD) {
+            LockContentionEvent event = new LockContentionEvent();
+            if (event.isEnabled()) {
+                event.operation = operation.name();
+                event.accountNum = accountNum;
+                event.toAccountNum = toAccountNum;
+                event.lookupTime = lookupNanos;
+                event.waitTime = wait;
+                event.holdTime = hold;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Adds the times of an operation to the counters of an account.
+     *
+     * @param accountNum The account, ignored if null
+     * @param wait The lock wait time in nanoseconds
+     * @param hold The lock hold time in nanoseconds
+     */
+    private void recordAccount(String accountNum, long wait, long hold) {
+        if (accountNum == null) {
+            return;
+        }
+        AccountContention contention = accounts.get(accountNum);
+        if (contention == null) {
+            if (accounts.size() >= MAX_ACCOUNTS) {
+                return;
+            }
+            contention = accounts.computeIfAbsent(accountNum, AccountContention::new);
+        }
+        contention.record(wait, hold);
+    }
+
+    /**
+     * Retrieves the lookup times of an operation.
+     *
+     * @param operation The operation
+     * @return The live histogram
+     */
+    public LatencyHistogram getLookupLatency(InstrumentedStrategy.Operation operation) {
+        return lookups[operation.ordinal()];
+    }
+
+    /**
+     * Retrieves the lock wait times of an operation.
+     *
+     * @param operation The operation
+     * @return The live histogram
+     */
+    public LatencyHistogram getWaitLatency(InstrumentedStrategy.Operation operation) {
+        return waits[operation.ordinal()];
+    }
+
+    /**
+     * Retrieves the lock hold times of an operation.
+     *
+     * @param operation The operation
+     * @return The live histogram
+     */
+    public LatencyHistogram getHoldLatency(InstrumentedStrategy.Operation operation) {
+        return holds[operation.ordinal()];
+    }
+
+    /**
+     * Lists the tracked accounts with the most total lock wait time.
+     *
+     * @param limit The maximum number of accounts
+     * @return The accounts, most waited on first
+     */
+    public List<AccountContention> getHotAccounts(int limit) {
+        List<AccountContention> hot = new ArrayList<>(accounts.values());
+        hot.sort(Comparator.comparingLong(AccountContention::getWaitNanos).reversed());
+        return hot.size() > limit ? new ArrayList<>(hot.subList(0, limit)) : hot;
+    }
+
+    /**
+     * Clears all recorded times.
+     */
+    public void reset() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            lookups[i].reset();
+            waits[i].reset();
+            holds[i].reset();
+        }
+        accounts.clear();
+    }
+
+    /**
+     * Formats the times of every operation that was recorded and the hot accounts.
+     *
+     * @param limit The maximum number of hot accounts to list
+     * @return The report
+     */
+    public String report(int limit) {
+        StringBuilder text = new StringBuilder("Lock contention (ConsistentStrategy)");
+        for (InstrumentedStrategy.Operation operation : OPERATIONS) {
+            if (waits[operation.ordinal()].getCount() > 0) {
+                String name = operation.name().toLowerCase(Locale.ROOT);
+                text.append(System.lineSeparator()).append(String.format("  %-9s lookup %s", name, getLookupLatency(operation).summary()))
+                        .append(System.lineSeparator()).append(String.format("  %-9s wait   %s", "", getWaitLatency(operation).summary()))
+                        .append(System.lineSeparator()).append(String.format("  %-9s hold   %s", "", getHoldLatency(operation).summary()));
+            }
+        }
+        List<AccountContention> hot = getHotAccounts(limit);
+        if (!hot.isEmpty()) {
+            text.append(System.lineSeparator()).append("Hot accounts by total wait");
+            for (AccountContention contention : hot) {
+                text.append(System.lineSeparator()).append("  ").append(contention);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Lock times accumulated for one account.
+     */
+    public static class AccountContention {
+        private final String accountNum; // The account
+        private final LongAdder operations = new LongAdder(); // Number of locked operations on the account
+        private final LongAdder waitNanos = new LongAdder(); // Total lock wait time
+        private final LongAdder holdNanos = new LongAdder(); // Total lock hold time
+        private final AtomicLong maxWaitNanos = new AtomicLong(); // Longest single wait
+
+        /**
+         * Constructs empty counters.
+         *
+         * @param accountNum The account
+         */
+        AccountContention(String accountNum) {
+            this.accountNum = accountNum;
+        }
+
+        /**
+         * Adds the times of one operation.
+         *
+         * @param wait The lock wait time in nanoseconds
+         * @param hold The lock hold time in nanoseconds
+         */
+        void record(long wait, long hold) {
+            operations.increment();
+            waitNanos.add(wait);
+            holdNanos.add(hold);
+            maxWaitNanos.accumulateAndGet(wait, Math::max);
+        }
+
+        /**
+         * Retrieves the account number.
+         *
+         * @return The account number
+         */
+        public String getAccountNum() {
+            return accountNum;
+        }
+
+        /**
+         * Retrieves the number of locked operations on the account.
+         *
+         * @return The count
+         */
+        public long getOperations() {
+            return operations.sum();
+        }
+
+        /**
+         * Retrieves the total lock wait time.
+         *
+         * @return The time in nanoseconds
+         */
+        public long getWaitNanos() {
+            return waitNanos.sum();
+        }
+
+        /**
+         * Retrieves the total lock hold time.
+         *
+         * @return The time in nanoseconds
+         */
+        public long getHoldNanos() {
+            return holdNanos.sum();
+        }
+
+        /**
+         * Retrieves the longest single lock wait.
+         *
+         * @return The time in nanoseconds
+         */
+        public long getMaxWaitNanos() {
+            return maxWaitNanos.get();
+        }
+
+        /**
+         * Formats the counters in microseconds.
+         *
+         * @return The counters as text
+         */
+        @Override
+        public String toString() {
+            long n = Math.max(1, getOperations());
+            return String.format("%s ops=%d wait=%.1fus (mean %.1fus, max %.1fus) hold=%.1fus (mean %.1fus)",
+                    accountNum, getOperations(), getWaitNanos() / 1e3, getWaitNanos() / 1e3 / n, getMaxWaitNanos() / 1e3,
+                    getHoldNanos() / 1e3, getHoldNanos() / 1e3 / n);
+        }
+    }
+
+    /**
+     * JFR event for an operation that waited for the ConsistentStrategy lock.
+     */
+    @Name("ezatm.LockContention")
+    @Label("Strategy Lock Contention")
+    @Category({"EZ ATM", "Strategy"})
+    @Description("An account operation that waited for the ConsistentStrategy lock")
+    @StackTrace(false)
+    static class LockContentionEvent extends Event {
+        @Label("Operation")
+        String operation; // Name of the operation
+
+        @Label("Account Number")
+        String accountNum; // Account operated on
+
+        @Label("Destination Account Number")
+        String toAccountNum; // Destination of a transfer
+
+        @Label("Lookup Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long lookupTime; // Time spent finding the accounts
+
+        @Label("Wait Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long waitTime; // Time spent waiting for the lock
+
+        @Label("Hold Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long holdTime; // Time the lock was held
+    }
+}
@@ -8,10 +8,14 @@ package util.strategy.impl;
 import pojo.Account;
 import util.strategy.AccountOperationStrategy;
 import util.Data;
+import util.Money;
+import util.log.TransactionRecord;
 
 /**
  * An implementation of AccountOperationStrategy that introduces a delay to simulate
  * potential inconsistency in account operations.
+ * Because its writes are blind overwrites, it logs the balances it wrote rather than the amounts,
+ * so replaying the log reproduces the same lost updates.
  */
 public class InconsistentStrategy implements AccountOperationStrategy {
 
@@ -22,12 +26,7 @@ public class InconsistentStrategy implements AccountOperationStrategy {
      * @return The Account object if found, otherwise null
      */
     private Account getAccountByAccountNum(String accountNum) {
-        for (Account account : Data.getInstance().getAccounts()) {
-            if (account.getAccountNum().equals(accountNum)) {
-                return account;
-            }
-        }
-        return null;
+        return Data.getInstance().getAccountByAccountNum(accountNum);
     }
 
     /**
@@ -40,7 +39,7 @@ public class InconsistentStrategy implements AccountOperationStrategy {
     public void deposit(String accountNum, double money) {
         Account account = getAccountByAccountNum(accountNum);
         if (account != null) {
-            double originBalance = account.getBalance();
+            long originBalance = account.getBalanceMinor();
             try {
                 // Simulate delay
                 Thread.sleep(1000);
@@ -48,7 +47,15 @@ public class InconsistentStrategy implements AccountOperationStrategy {
                 e.printStackTrace();
             }
             // Update balance after delay
-            account.setBalance(originBalance + money);
+            long balance = originBalance + Money.toMinor(money);
+            Data data = Data.getInstance();
+            long seq;
+            synchronized (this) {
+                // Only the write is guarded, so the log matches it and the stale read above still loses updates
+                seq = data.journal(TransactionRecord.Type.SET, accountNum, null, balance);
+                account.setBalanceMinor(balance);
+            }
+            data.commit(seq, accountNum, null);
         }
     }
 
@@ -62,7 +69,7 @@ public class InconsistentStrategy implements AccountOperationStrategy {
     public void withdraw(String accountNum, double money) {
         Account account = getAccountByAccountNum(accountNum);
         if (account != null) {
-            double originBalance = account.getBalance();
+            long originBalance = account.getBalanceMinor();
             try {
                 // Simulate delay
                 Thread.sleep(1000);
@@ -70,7 +77,15 @@ public class InconsistentStrategy implements AccountOperationStrategy {
                 e.printStackTrace();
             }
             // Update balance after delay
-            account.setBalance(originBalance - money);
+            long balance = originBalance - Money.toMinor(money);
+            Data data = Data.getInstance();
+            long seq;
+            synchronized (this) {
+                // Only the write is guarded, so the log matches it and the stale read above still loses updates
+                seq = data.journal(TransactionRecord.Type.SET, accountNum, null, balance);
+                account.setBalanceMinor(balance);
+            }
+            data.commit(seq, accountNum, null);
         }
     }
 
@@ -87,8 +102,18 @@ public class InconsistentStrategy implements AccountOperationStrategy {
         Account toAccount = getAccountByAccountNum(to);
         if (fromAccount != null && toAccount != null) {
             // Deduct from the source account and add to the destination account
-            fromAccount.setBalance(fromAccount.getBalance() - money);
-            toAccount.setBalance(toAccount.getBalance() + money);
+            long amount = Money.toMinor(money);
+            Data data = Data.getInstance();
+            long fromBalance = fromAccount.getBalanceMinor() - amount;
+            long toBalance = toAccount.getBalanceMinor() + amount;
+            long seq;
+            synchronized (this) {
+                data.journal(TransactionRecord.Type.SET, from, null, fromBalance);
+                seq = data.journal(TransactionRecord.Type.SET, to, null, toBalance);
+                fromAccount.setBalanceMinor(fromBalance);
+                toAccount.setBalanceMinor(toBalance);
+            }
+            data.commit(seq, from, to);
         }
     }
 
@@ -0,0 +1,452 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy.impl;
+
+import pojo.Account;
+import util.auth.Session;
+import util.metrics.LatencyHistogram;
+import util.strategy.AccountCommand;
+import util.strategy.AccountOperationStrategy;
+import util.strategy.OperationResult;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wraps an {@link AccountOperationStrategy} and records, per operation, the number of calls, the number of
+ * calls that threw and a latency histogram.
+ * <p>
+ * Recording only increments atomic counters, so it takes no locks and allocates nothing on the calling thread.
+ * The recorded values are read with {@link #snapshot()}; {@link #snapshotAndReset()} starts a new interval,
+ * which suits an exporter that reports the values of the last period. A call running while the interval is
+ * swapped may be counted in either interval.
+ */
+public class InstrumentedStrategy implements AccountOperationStrategy {
+
+    /**
+     * The instrumented operations.
+     */
+    public enum Operation {
+        DEPOSIT, WITHDRAW, TRANSFER, INQUIRE, BATCH
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values(); // Cached to avoid copying values()
+
+    private final AccountOperationStrategy strategy; // The wrapped strategy
+    private volatile Interval current = new Interval(); // Counters of the running interval
+
+    /**
+     * Constructs a decorator around a strategy.
+     *
+     * @param strategy The strategy to instrument
+     */
+    public InstrumentedStrategy(AccountOperationStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Retrieves the wrapped strategy.
+     *
+     * @return The instrumented strategy
+     */
+    public AccountOperationStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Deposits money through the wrapped strategy and records the call.
+     *
+     * @param accountNum The account number where money will be deposited
+     * @param money The amount of money to deposit
+     */
+    @Override
+    public void deposit(String accountNum, double money) {
+        Interval interval = current;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            strategy.deposit(accountNum, money);
+            failed = false;
+        } finally {
+            interval.record(Operation.DEPOSIT, start, failed);
+        }
+    }
+
+    /**
+     * Withdraws money through the wrapped strategy and records the call.
+     *
+     * @param accountNum The account number from which money will be withdrawn
+     * @param money The amount of money to withdraw
+     */
+    @Override
+    public void withdraw(String accountNum, double money) {
+        Interval interval = current;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            strategy.withdraw(accountNum, money);
+            failed = false;
+        } finally {
+            interval.record(Operation.WITHDRAW, start, failed);
+        }
+    }
+
+    /**
+     * Transfers money through the wrapped strategy and records the call.
+     *
+     * @param from The account number from which money will be transferred
+     * @param to The account number to which money will be transferred
+     * @param money The amount of money to transfer
+     */
+    @Override
+    public void transfer(String from, String to, double money) {
+        Interval interval = current;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            strategy.transfer(from, to, money);
+            failed = false;
+        } finally {
+            interval.record(Operation.TRANSFER, start, failed);
+        }
+    }
+
+    /**
+     * Deposits money into a resolved account through the wrapped strategy and records the call.
+     *
+     * @param account The account where money will be deposited
+     * @param money The amount of money to deposit
+     */
+    @Override
+    public void deposit(Account account, double money) {
+        Interval interval = current;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            strategy.deposit(account, money);
+            failed = false;
+        } finally {
+            interval.record(Operation.DEPOSIT, start, failed);
+        }
+    }
+
+    /**
+     * Withdraws money from a resolved account through the wrapped strategy and records the call.
+     *
+     * @param account The account from which money will be withdrawn
+     * @param money The amount of money to withdraw
+     */
+    @Override
+    public void withdraw(Account account, double money) {
+        Interval interval = current;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            strategy.withdraw(account, money);
+            failed = false;
+        } finally {
+            interval.record(Operation.WITHDRAW, start, failed);
+        }
+    }
+
+    /**
+     * Transfers money between resolved accounts through the wrapped strategy and records the call.
+     *
+     * @param from The account from which money will be transferred
+     * @param to The account to which money will be transferred
+     * @param money The amount of money to transfer
+     */
+    @Override
+    public void transfer(Account from, Account to, double money) {
+        Interval interval = current;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            strategy.transfer(from, to, money);
+            failed = false;
+        } finally {
+            interval.record(Operation.TRANSFER, start, failed);
+        }
+    }
+
+    /**
+     * Withdraws money from a resolved account through the wrapped strategy if the balance covers it, and records the call.
+     *
+     * @param account The account from which money will be withdrawn
+     * @param money The amount of money to withdraw
+     * @return true if the money was withdrawn, false if the balance did not cover it
+     */
+    @Override
+    public boolean withdrawIfCovered(Account account, double money) {
+        Interval interval = current;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean covered = strategy.withdrawIfCovered(account, money);
+            failed = false;
+            return covered;
+        } finally {
+            interval.record(Operation.WITHDRAW, start, failed);
+        }
+    }
+
+    /**
+     * Transfers money between resolved accounts through the wrapped strategy if the balance covers it,
+     * and records the call.
+     *
+     * @param from The account from which money will be transferred
+     * @param to The account to which money will be transferred
+     * @param money The amount of money to transfer
+     * @return true if the money was transferred, false if the balance did not cover it
+     */
+    @Override
+    public boolean transferIfCovered(Account from, Account to, double money) {
+        Interval interval = current;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean covered = strategy.transferIfCovered(from, to, money);
+            failed = false;
+            return covered;
+        } finally {
+            interval.record(Operation.TRANSFER, start, failed);
+        }
+    }
+
+    /**
+     * Looks up an account through the wrapped strategy and records the call.
+     *
+     * @param accountNum The account number to inquire about
+     * @return The Account object if found, otherwise null
+     */
+    @Override
+    public Account inquire(String accountNum) {
+        Interval interval = current;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Account account = strategy.inquire(accountNum);
+            failed = false;
+            return account;
+        } finally {
+            interval.record(Operation.INQUIRE, start, failed);
+        }
+    }
+
+    /**
+     * Resolves an account through the wrapped strategy without recording the call.
+     *
+     * @param accountNum The account number
+     * @return The Account object if found, otherwise null
+     */
+    @Override
+    public Account find(String accountNum) {
+        return strategy.find(accountNum);
+    }
+
+    /**
+     * Logs in through the wrapped strategy without recording the call.
+     *
+     * @param accountNum The account number
+     * @param pin The PIN
+     * @return The new session, or null if the account is unknown or the PIN does not match
+     */
+    @Override
+    public Session login(String accountNum, String pin) {
+        return strategy.login(accountNum, pin);
+    }
+
+    /**
+     * Logs out through the wrapped strategy without recording the call.
+     *
+     * @param session The session, ignored if null
+     */
+    @Override
+    public void logout(Session session) {
+        strategy.logout(session);
+    }
+
+    /**
+     * Applies a batch through the wrapped strategy and records it as one call.
+     *
+     * @param commands The commands to apply
+     * @return The result of each command, in the same order
+     */
+    @Override
+    public List<OperationResult> applyBatch(List<AccountCommand> commands) {
+        Interval interval = current;
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<OperationResult> results = strategy.applyBatch(commands);
+            failed = false;
+            return results;
+        } finally {
+            interval.record(Operation.BATCH, start, failed);
+        }
+    }
+
+    /**
+     * Copies the values recorded in the running interval, which keeps running.
+     *
+     * @return The recorded values
+     */
+    public Snapshot snapshot() {
+        return current.copy(System.nanoTime());
+    }
+
+    /**
+     * Ends the running interval and starts a new, empty one.
+     *
+     * @return The values recorded in the interval that ended
+     */
+    public Snapshot snapshotAndReset() {
+        Interval ended;
+        synchronized (this) {
+            ended = current;
+            current = new Interval();
+        }
+        return ended.copy(System.nanoTime());
+    }
+
+    /**
+     * Discards all recorded values.
+     */
+    public void reset() {
+        snapshotAndReset();
+    }
+
+    /**
+     * The counters of one measuring interval.
+     */
+    private static class Interval {
+        private final long startNanos = System.nanoTime(); // When the interval started
+        private final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length]; // Latency per operation
+        private final LongAdder[] errors = new LongAdder[OPERATIONS.length]; // Failed calls per operation
+
+        /**
+         * Constructs an empty interval.
+         */
+        Interval() {
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                latencies[i] = new LatencyHistogram();
+                errors[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records a finished call.
+         *
+         * @param operation The operation that was called
+         * @param startNanos The value of System.nanoTime() before the call
+         * @param failed Whether the call threw
+         */
+        void record(Operation operation, long startNanos, boolean failed) {
+            latencies[operation.ordinal()].record(System.nanoTime() - startNanos);
+            if (failed) {
+                errors[operation.ordinal()].increment();
+            }
+        }
+
+        /**
+         * Copies the counters.
+         *
+         * @param nowNanos The value of System.nanoTime() at which the copy ends the interval
+         * @return The copy
+         */
+        Snapshot copy(long nowNanos) {
+            LatencyHistogram[] copies = new LatencyHistogram[OPERATIONS.length];
+            long[] errorCounts = new long[OPERATIONS.length];
+            for (int i = 0; i < OPERATIONS.length; i++) {
+                copies[i] = new LatencyHistogram();
+                copies[i].add(latencies[i]);
+                errorCounts[i] = errors[i].sum();
+            }
+            return new Snapshot(nowNanos - startNanos, copies, errorCounts);
+        }
+    }
+
+    /**
+     * Values recorded by an {@link InstrumentedStrategy} over an interval. A snapshot does not change once taken.
+     */
+    public static class Snapshot {
+        private final long intervalNanos; // Length of the interval
+        private final LatencyHistogram[] latencies; // Latency per operation
+        private final long[] errors; // Failed calls per operation
+
+        /**
+         * Constructs a snapshot.
+         *
+         * @param intervalNanos The length of the interval in nanoseconds
+         * @param latencies The latency histogram per operation, owned by the snapshot
+         * @param errors The number of failed calls per operation
+         */
+        private Snapshot(long intervalNanos, LatencyHistogram[] latencies, long[] errors) {
+            this.intervalNanos = intervalNanos;
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+
+        /**
+         * Retrieves the length of the interval.
+         *
+         * @return The interval in nanoseconds
+         */
+        public long getIntervalNanos() {
+            return intervalNanos;
+        }
+
+        /**
+         * Retrieves the number of calls of an operation, including failed ones.
+         *
+         * @param operation The operation
+         * @return The number of calls
+         */
+        public long getCount(Operation operation) {
+            return latencies[operation.ordinal()].getCount();
+        }
+
+        /**
+         * Retrieves the number of calls of an operation that threw.
+         *
+         * @param operation The operation
+         * @return The number of failed calls
+         */
+        public long getErrors(Operation operation) {
+            return errors[operation.ordinal()];
+        }
+
+        /**
+         * Retrieves the latencies of an operation. The histogram belongs to the snapshot and must not be changed.
+         *
+         * @param operation The operation
+         * @return The latency histogram
+         */
+        public LatencyHistogram getLatency(Operation operation) {
+            return latencies[operation.ordinal()];
+        }
+
+        /**
+         * Formats one line per operation that was called.
+         *
+         * @return The snapshot as text
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.format("interval=%.1fs", intervalNanos / 1e9));
+            for (Operation operation : OPERATIONS) {
+                if (getCount(operation) > 0) {
+                    text.append(System.lineSeparator())
+                            .append(String.format("%-9s errors=%d ", operation.name().toLowerCase(Locale.ROOT),
+                                    getErrors(operation)))
+                            .append(getLatency(operation).summary());
+                }
+            }
+            return text.toString();
+        }
+    }
+}
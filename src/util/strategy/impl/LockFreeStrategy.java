@@ -0,0 +1,486 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy.impl;
+
+import pojo.Account;
+import util.Data;
+import util.Money;
+import util.log.TransactionRecord;
+import util.strategy.AccountCommand;
+import util.strategy.AccountOperationStrategy;
+import util.strategy.OperationResult;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * An implementation of AccountOperationStrategy that takes no locks.
+ * Deposits and withdrawals are a compare-and-set loop on the balance of the account in minor units,
+ * so contended updates of a hot account retry instead of blocking.
+ * <p>
+ * Transfers, batches, and withdrawals that must be covered by the balance go through a multi-word compare-and-set:
+ * the operation is published as an {@link Update}, its marker is stored in the balances in account number
+ * order, and once all hold it the update is decided by a single compare-and-set of its status. Readers resolve
+ * the marker to the old balances until then and to the new ones afterwards, so no inquiry sees the money in
+ * flight, and a funds check made on the old balances holds when the update applies. A thread that finds the
+ * marker of an undecided update gives its owner a few spins and then aborts it, and the owner retries with
+ * fresh balances.
+ * <p>
+ * An update is written ahead to the transaction log at its commit point, after all its markers are in place
+ * and before it is marked succeeded. Other threads cannot abort it during that step and wait for it, which
+ * only adds to the wait for the lock of the log that the append takes anyway. Plain deposits and withdrawals
+ * have no commit point to log at, so their record is queued before the compare-and-set loop. That is safe
+ * because the loop always applies it and records of the same account that only change it by an amount
+ * commute, so any prefix of the log replays to a state the accounts pass through or will reach.
+ */
+public class LockFreeStrategy implements AccountOperationStrategy {
+    private static final int ABORT_SPINS = 32; // Spins granted to the owner of an undecided update before aborting it
+
+    /**
+     * Retrieves an account by its account number.
+     *
+     * @param accountNum The account number to search for
+     * @return The Account object if found, otherwise null
+     */
+    private Account getAccountByAccountNum(String accountNum) {
+        return Data.getInstance().getAccountByAccountNum(accountNum);
+    }
+
+    /**
+     * Atomically adds a delta to the balance of an account.
+     *
+     * @param account The account to update
+     * @param delta The amount in minor units to add, negative to subtract
+     * @return The new balance in minor units
+     */
+    private static long add(Account account, long delta) {
+        while (true) {
+            long current = read(account);
+            long updated = current + delta;
+            if (account.compareAndSetBalanceMinor(current, updated)) {
+                return updated;
+            }
+            // Another thread won the race, re-read and try again
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Reads the stored balance of an account, first clearing the marker of any update in progress on it.
+     *
+     * @param account The account
+     * @return The balance in minor units
+     */
+    static long read(Account account) {
+        while (true) {
+            long stored = account.getStoredBalanceMinor();
+            if (!Account.isMarker(stored)) {
+                return stored;
+            }
+            release(account, stored);
+        }
+    }
+
+    /**
+     * Replaces the marker of another thread's update in a balance with the balance the update decided,
+     * aborting the update first if it is still undecided after a few spins.
+     *
+     * @param account The account holding the marker
+     * @param marker The marker
+     */
+    private static void release(Account account, long marker) {
+        Account.PendingUpdate pending = Account.pendingUpdate(marker);
+        if (!(pending instanceof Update)) {
+            // Retired meanwhile, the balance holds a value again
+            Thread.onSpinWait();
+            return;
+        }
+        Update update = (Update) pending;
+        for (int i = 0; i < ABORT_SPINS && update.isUndecided(); i++) {
+            Thread.onSpinWait();
+        }
+        update.abort();
+        while (update.isCommitting()) {
+            // Past its commit point, the owner is writing it to the log
+            Thread.onSpinWait();
+        }
+        account.compareAndSetBalanceMinor(marker, update.balanceOf(account));
+    }
+
+    /**
+     * Deposits a specified amount of money into the account with the given account number.
+     *
+     * @param accountNum The account number to deposit money into
+     * @param money The amount of money to deposit
+     */
+    @Override
+    public void deposit(String accountNum, double money) {
+        Account account = getAccountByAccountNum(accountNum);
+        if (account != null) {
+            deposit(account, money);
+        }
+    }
+
+    /**
+     * Deposits a specified amount of money into an account resolved earlier, such as the account of a session.
+     *
+     * @param account The account to deposit money into
+     * @param money The amount of money to deposit
+     */
+    @Override
+    public void deposit(Account account, double money) {
+        long amount = Money.toMinor(money);
+        Data data = Data.getInstance();
+        long seq = data.journal(TransactionRecord.Type.DEPOSIT, account.getAccountNum(), null, amount);
+        add(account, amount);
+        data.commit(seq, account.getAccountNum(), null);
+    }
+
+    /**
+     * Withdraws a specified amount of money from the account with the given account number.
+     *
+     * @param accountNum The account number to withdraw money from
+     * @param money The amount of money to withdraw
+     */
+    @Override
+    public void withdraw(String accountNum, double money) {
+        Account account = getAccountByAccountNum(accountNum);
+        if (account != null) {
+            withdraw(account, money);
+        }
+    }
+
+    /**
+     * Withdraws a specified amount of money from an account resolved earlier, such as the account of a session.
+     *
+     * @param account The account to withdraw money from
+     * @param money The amount of money to withdraw
+     */
+    @Override
+    public void withdraw(Account account, double money) {
+        long amount = Money.toMinor(money);
+        Data data = Data.getInstance();
+        long seq = data.journal(TransactionRecord.Type.WITHDRAW, account.getAccountNum(), null, amount);
+        add(account, -amount);
+        data.commit(seq, account.getAccountNum(), null);
+    }
+
+    /**
+     * Withdraws from an account resolved earlier if its balance covers the amount. The check is made on the
+     * balance the {@link Update} replaces, so it still holds when the withdraw applies.
+     *
+     * @param account The account to withdraw money from
+     * @param money The amount of money to withdraw
+     * @return true if the money was withdrawn, false if the balance did not cover it
+     */
+    @Override
+    public boolean withdrawIfCovered(Account account, double money) {
+        String accountNum = account.getAccountNum();
+        long amount = Money.toMinor(money);
+        Data data = Data.getInstance();
+        Account[] accounts = {account};
+        while (true) {
+            long balance = read(account);
+            if (balance < amount) {
+                return false;
+            }
+            Update update = new Update(accounts, new long[]{balance}, new long[]{balance - amount});
+            if (update.apply(() -> data.journal(TransactionRecord.Type.WITHDRAW, accountNum, null, amount))) {
+                data.commit(update.getSeq(), accountNum, null);
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Transfers a specified amount of money from one account to another.
+     * Both balances change as one {@link Update}, retried until no other update got in between.
+     *
+     * @param from The account number to transfer money from
+     * @param to The account number to transfer money to
+     * @param money The amount of money to transfer
+     */
+    @Override
+    public void transfer(String from, String to, double money) {
+        Account fromAccount = getAccountByAccountNum(from);
+        Account toAccount = getAccountByAccountNum(to);
+        if (fromAccount != null && toAccount != null) {
+            transfer(fromAccount, toAccount, money);
+        }
+    }
+
+    /**
+     * Transfers a specified amount of money between accounts resolved earlier, changing both balances as one
+     * like {@link #transfer(String, String, double)}. A transfer to the source account is ignored.
+     *
+     * @param fromAccount The account to transfer money from
+     * @param toAccount The account to transfer money to
+     * @param money The amount of money to transfer
+     */
+    @Override
+    public void transfer(Account fromAccount, Account toAccount, double money) {
+        transfer(fromAccount, toAccount, money, false);
+    }
+
+    /**
+     * Transfers between accounts resolved earlier if the balance of the source covers the amount. The check is
+     * made on the balances the {@link Update} replaces, so it still holds when the transfer applies.
+     *
+     * @param fromAccount The account to transfer money from
+     * @param toAccount The account to transfer money to
+     * @param money The amount of money to transfer
+     * @return true if the money was transferred, false if the balance did not cover it
+     */
+    @Override
+    public boolean transferIfCovered(Account fromAccount, Account toAccount, double money) {
+        return transfer(fromAccount, toAccount, money, true);
+    }
+
+    /**
+     * Transfers between resolved accounts as one {@link Update}, retried until no other update got in between.
+     *
+     * @param fromAccount The account to transfer money from
+     * @param toAccount The account to transfer money to
+     * @param money The amount of money to transfer
+     * @param requireFunds Whether to skip the transfer if the balance of the source does not cover it
+     * @return true if the money was transferred, or the transfer was to the source account and ignored
+     */
+    private boolean transfer(Account fromAccount, Account toAccount, double money, boolean requireFunds) {
+        String from = fromAccount.getAccountNum();
+        String to = toAccount.getAccountNum();
+        if (from.equals(to)) {
+            return true;
+        }
+        long amount = Money.toMinor(money);
+        Data data = Data.getInstance();
+        boolean fromFirst = from.compareTo(to) < 0;
+        Account[] accounts = fromFirst ? new Account[]{fromAccount, toAccount} : new Account[]{toAccount, fromAccount};
+        while (true) {
+            long fromBalance = read(fromAccount);
+            long toBalance = read(toAccount);
+            if (requireFunds && fromBalance < amount) {
+                return false;
+            }
+            long[] before = fromFirst ? new long[]{fromBalance, toBalance} : new long[]{toBalance, fromBalance};
+            long[] after = fromFirst
+                    ? new long[]{fromBalance - amount, toBalance + amount}
+                    : new long[]{toBalance + amount, fromBalance - amount};
+            Update update = new Update(accounts, before, after);
+            if (update.apply(() -> data.journal(TransactionRecord.Type.TRANSFER, from, to, amount))) {
+                data.commit(update.getSeq(), from, to);
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Inquires about the details of an account with the given account number.
+     *
+     * @param accountNum The account number to inquire about
+     * @return The Account object if found, otherwise null
+     */
+    @Override
+    public Account inquire(String accountNum) {
+        return getAccountByAccountNum(accountNum);
+    }
+
+    /**
+     * Applies a batch of commands, grouped by account, as one {@link Update} over all accounts of the batch,
+     * so both sides of every transfer change together and no inquiry sees the batch half applied. Each
+     * account's commands are settled in submission order from the balance the update replaces, and all valid
+     * commands are journaled together at its commit point. On contention the whole batch is settled again.
+     *
+     * @param commands The commands to apply
+     * @return The result of each command, in the same order
+     */
+    @Override
+    public List<OperationResult> applyBatch(List<AccountCommand> commands) {
+        BatchPlan plan = new BatchPlan(commands, this::getAccountByAccountNum);
+        List<BatchPlan.AccountGroup> groups = new ArrayList<>(plan.groups());
+        if (groups.isEmpty()) {
+            return plan.results();
+        }
+        List<TransactionRecord> records = plan.journalRecords();
+        Data data = Data.getInstance();
+        Account[] accounts = new Account[groups.size()];
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = groups.get(i).getAccount();
+        }
+        while (true) {
+            long[] before = new long[accounts.length];
+            long[] after = new long[accounts.length];
+            for (int i = 0; i < accounts.length; i++) {
+                before[i] = read(accounts[i]);
+                after[i] = plan.settle(groups.get(i), before[i]);
+            }
+            Update update = new Update(accounts, before, after);
+            if (update.apply(() -> data.journalAll(records))) {
+                data.commitAll(update.getSeq(), records);
+                return plan.results();
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * A change of several balances that either happens as a whole or not at all.
+     * <p>
+     * The owner publishes the update and stores its marker in the balances in account number order, each
+     * with a compare-and-set from the balance the update was computed from. If a balance changed meanwhile,
+     * or another thread aborted the update, it fails. Once every balance holds the marker the owner moves it
+     * to committing, which no other thread can abort, writes it to the log and marks it succeeded. Either way
+     * the owner then replaces the marker with the balance the update decided and retires it. Only the owner
+     * stores the marker, so it never reaches a balance after the update was decided, and a marker found by
+     * other threads always resolves to the right balance.
+     */
+    static final class Update implements Account.PendingUpdate {
+        private static final int UNDECIDED = 0;
+        private static final int COMMITTING = 1;
+        private static final int SUCCEEDED = 2;
+        private static final int FAILED = 3;
+        private static final VarHandle STATUS; // Handle for the decision on status
+
+        private final Account[] accounts; // Accounts changed, sorted by account number
+        private final String[] accountNums; // Account numbers of accounts, for lookups
+        private final long[] before; // Balances the update was computed from
+        private final long[] after; // Balances the update sets
+        private volatile int status = UNDECIDED;
+        private long seq; // Sequence number of the log record, set by the owner on success
+
+        static {
+            try {
+                STATUS = MethodHandles.lookup().findVarHandle(Update.class, "status", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        /**
+         * Constructs an update.
+         *
+         * @param accounts The accounts to change, sorted by account number without duplicates
+         * @param before The balance of each account the update was computed from, in minor units
+         * @param after The balance of each account after the update, in minor units
+         */
+        Update(Account[] accounts, long[] before, long[] after) {
+            this.accounts = accounts;
+            this.accountNums = new String[accounts.length];
+            for (int i = 0; i < accounts.length; i++) {
+                accountNums[i] = accounts[i].getAccountNum();
+            }
+            this.before = before;
+            this.after = after;
+        }
+
+        /**
+         * Applies the update. Must be called once, by the thread that built it.
+         *
+         * @param journal Writes the update ahead to the log at the commit point and returns the sequence number
+         * @return true if the balances were changed, false if one changed first or another thread aborted
+         *         the update, in which case nothing was changed or logged
+         */
+        boolean apply(LongSupplier journal) {
+            long marker = Account.publish(this);
+            int installed = 0;
+            try {
+                while (installed < accounts.length && isUndecided() && install(accounts[installed], before[installed], marker)) {
+                    installed++;
+                }
+                if (installed == accounts.length && STATUS.compareAndSet(this, UNDECIDED, COMMITTING)) {
+                    seq = journal.getAsLong();
+                    status = SUCCEEDED;
+                }
+            } finally {
+                if (status == COMMITTING) {
+                    // The log refused the update
+                    status = FAILED;
+                }
+                abort();
+                boolean succeeded = status == SUCCEEDED;
+                for (int i = 0; i < installed; i++) {
+                    accounts[i].compareAndSetBalanceMinor(marker, succeeded ? after[i] : before[i]);
+                }
+                Account.retire(marker);
+            }
+            return status == SUCCEEDED;
+        }
+
+        /**
+         * Stores the marker in a balance that still holds the expected value, clearing other markers on the way.
+         *
+         * @param account The account
+         * @param expected The balance the update was computed from
+         * @param marker The marker of this update
+         * @return true if the balance now holds the marker, false if it changed
+         */
+        private static boolean install(Account account, long expected, long marker) {
+            while (true) {
+                long stored = account.getStoredBalanceMinor();
+                if (stored == expected) {
+                    if (account.compareAndSetBalanceMinor(expected, marker)) {
+                        return true;
+                    }
+                } else if (Account.isMarker(stored)) {
+                    release(account, stored);
+                } else {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Checks whether the update is still undecided.
+         *
+         * @return true if it has neither succeeded nor failed
+         */
+        boolean isUndecided() {
+            return status == UNDECIDED;
+        }
+
+        /**
+         * Checks whether the owner is writing the update to the log.
+         *
+         * @return true if the update is past its commit point but not yet marked succeeded
+         */
+        boolean isCommitting() {
+            return status == COMMITTING;
+        }
+
+        /**
+         * Retrieves the sequence number of the log record written at the commit point.
+         *
+         * @return The sequence number, 0 when logging is off
+         */
+        long getSeq() {
+            return seq;
+        }
+
+        /**
+         * Fails the update if it is still undecided.
+         */
+        void abort() {
+            STATUS.compareAndSet(this, UNDECIDED, FAILED);
+        }
+
+        /**
+         * Resolves the balance of one of the accounts as decided so far.
+         *
+         * @param account The account
+         * @return The balance after the update if it succeeded, the balance before it otherwise
+         */
+        @Override
+        public long balanceOf(Account account) {
+            int i = Arrays.binarySearch(accountNums, account.getAccountNum());
+            return status == SUCCEEDED ? after[i] : before[i];
+        }
+    }
+}
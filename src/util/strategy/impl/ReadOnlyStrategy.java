@@ -0,0 +1,75 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy.impl;
+
+import pojo.Account;
+import util.Data;
+import util.strategy.AccountOperationStrategy;
+
+/**
+ * An implementation of AccountOperationStrategy for a replication backup, whose accounts only change
+ * through the log shipped by its primary. Inquiries read the Data singleton; every other operation is rejected.
+ */
+public class ReadOnlyStrategy implements AccountOperationStrategy {
+
+    /**
+     * Rejects a deposit.
+     *
+     * @param accountNum The account number to deposit money into
+     * @param money The amount of money to deposit
+     * @throws IllegalStateException Always
+     */
+    @Override
+    public void deposit(String accountNum, double money) {
+        throw readOnly();
+    }
+
+    /**
+     * Rejects a withdrawal.
+     *
+     * @param accountNum The account number to withdraw money from
+     * @param money The amount of money to withdraw
+     * @throws IllegalStateException Always
+     */
+    @Override
+    public void withdraw(String accountNum, double money) {
+        throw readOnly();
+    }
+
+    /**
+     * Rejects a transfer.
+     *
+     * @param from The account number to transfer money from
+     * @param to The account number to transfer money to
+     * @param money The amount of money to transfer
+     * @throws IllegalStateException Always
+     */
+    @Override
+    public void transfer(String from, String to, double money) {
+        throw readOnly();
+    }
+
+    /**
+     * Inquires about the details of an account with the given account number, as of the last record
+     * received from the primary.
+     *
+     * @param accountNum The account number to inquire about
+     * @return The Account object if found, otherwise null
+     */
+    @Override
+    public Account inquire(String accountNum) {
+        return Data.getInstance().getAccountByAccountNum(accountNum);
+    }
+
+    /**
+     * Creates the exception thrown for operations that change a balance.
+     *
+     * @return The exception
+     */
+    private static IllegalStateException readOnly() {
+        return new IllegalStateException("This node is a read-only backup, send operations to the primary");
+    }
+}
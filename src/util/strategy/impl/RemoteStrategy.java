@@ -0,0 +1,610 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy.impl;
+
+import pojo.Account;
+import util.Money;
+import util.auth.AuthenticationService;
+import util.auth.Session;
+import util.server.TransactionProtocol;
+import util.strategy.AccountOperationStrategy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An implementation of AccountOperationStrategy that sends every operation to a
+ * {@link util.server.TransactionServer}, so terminals in different processes share one set of accounts.
+ * <p>
+ * All calls share one connection and are pipelined: a call sends its request and waits only for its own
+ * response, so concurrent calls of several frames are in flight together. A broken connection fails the calls
+ * waiting on it and is reopened by the next call. Calls fail with an IllegalStateException when the server
+ * cannot be reached, does not answer within atm.server.timeoutMillis (default 10000), or refuses the operation.
+ * A call that times out is forgotten, so a late response is dropped.
+ * <p>
+ * Deposits, withdrawals and transfers carry an operation id. When one gets no response because of a timeout
+ * or a broken connection, it is sent again with the same id up to atm.server.retries times (default 2). The
+ * server answers a repeated id with the outcome it recorded for the session, so an operation that was applied
+ * but whose response was lost is not applied twice; while the first request is still running it answers
+ * IN_PROGRESS, and the call asks again with a growing pause until the outcome is recorded. {@link #withdrawIfCovered} and {@link #transferIfCovered}
+ * use the covered operations of the server, which checks the balance atomically, rather than the balance of
+ * the local handle, which is only as fresh as the last response.
+ * <p>
+ * Logging in opens a session on the server and registers it with the local {@link AuthenticationService}
+ * under the same token, so the frames resume and end it as usual. Operations on an account use the token of
+ * its latest login. The Account objects returned are local handles, one per account number, holding the
+ * balance from the last response of the server; the server discloses the balance of the logged-in accounts
+ * only, so the handles of other accounts read zero. The server address is atm.server.address, default
+ * localhost:7200.
+ */
+public class RemoteStrategy implements AccountOperationStrategy, Closeable {
+    private static final long TIMEOUT_MILLIS = Long.getLong("atm.server.timeoutMillis", 10000);
+    private static final int RETRIES = Integer.getInteger("atm.server.retries", 2);
+
+    private final String host; // Host of the server
+    private final int port; // Port of the server
+    private final AtomicInteger nextRequestId = new AtomicInteger(); // Ids of the requests
+    private final AtomicLong nextOperationId = new AtomicLong(); // Ids of the deposits, withdrawals and transfers, kept across retries
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>(); // Handles given out, by account number
+    private final Map<String, String> tokens = new ConcurrentHashMap<>(); // Token of the latest login, by account number
+    private Connection connection; // Current connection, guarded by this
+
+    /**
+     * Creates a strategy for the server at atm.server.address.
+     */
+    public RemoteStrategy() {
+        this(System.getProperty("atm.server.address", "localhost:7200"));
+    }
+
+    /**
+     * Creates a strategy for the server at an address.
+     *
+     * @param address host:port of the server
+     */
+    public RemoteStrategy(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Expected host:port, got " + address);
+        }
+        this.host = address.substring(0, colon);
+        this.port = Integer.parseInt(address.substring(colon + 1));
+    }
+
+    /**
+     * Writes the fields of a request.
+     */
+    private interface Fields {
+        /**
+         * Writes the fields.
+         *
+         * @param out The stream
+         * @throws IOException If writing fails
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Deposits money into a logged-in account on the server.
+     *
+     * @param accountNum The account number to deposit money into
+     * @param money The amount of money to deposit
+     */
+    @Override
+    public void deposit(String accountNum, double money) {
+        String token = tokenOf(accountNum);
+        long operationId = nextOperationId.incrementAndGet();
+        DataInputStream in = ok(callWithRetries(TransactionProtocol.DEPOSIT, out -> {
+            out.writeUTF(token);
+            out.writeLong(operationId);
+            out.writeLong(Money.toMinor(money));
+        }));
+        update(accountNum, readLong(in));
+    }
+
+    /**
+     * Withdraws money from a logged-in account on the server.
+     *
+     * @param accountNum The account number to withdraw money from
+     * @param money The amount of money to withdraw
+     */
+    @Override
+    public void withdraw(String accountNum, double money) {
+        String token = tokenOf(accountNum);
+        long operationId = nextOperationId.incrementAndGet();
+        DataInputStream in = ok(callWithRetries(TransactionProtocol.WITHDRAW, out -> {
+            out.writeUTF(token);
+            out.writeLong(operationId);
+            out.writeLong(Money.toMinor(money));
+        }));
+        update(accountNum, readLong(in));
+    }
+
+    /**
+     * Transfers money from a logged-in account to another account on the server.
+     *
+     * @param from The account number to transfer money from
+     * @param to The account number to transfer money to
+     * @param money The amount of money to transfer
+     */
+    @Override
+    public void transfer(String from, String to, double money) {
+        String token = tokenOf(from);
+        long operationId = nextOperationId.incrementAndGet();
+        DataInputStream in = ok(callWithRetries(TransactionProtocol.TRANSFER, out -> {
+            out.writeUTF(token);
+            out.writeUTF(to);
+            out.writeLong(operationId);
+            out.writeLong(Money.toMinor(money));
+        }));
+        update(from, readLong(in));
+    }
+
+    /**
+     * Withdraws money from a logged-in account if the balance on the server covers it.
+     *
+     * @param account The account to withdraw money from
+     * @param money The amount of money to withdraw
+     * @return true if the money was withdrawn, false if the balance did not cover it
+     */
+    @Override
+    public boolean withdrawIfCovered(Account account, double money) {
+        String accountNum = account.getAccountNum();
+        String token = tokenOf(accountNum);
+        long operationId = nextOperationId.incrementAndGet();
+        return covered(accountNum, callWithRetries(TransactionProtocol.WITHDRAW_COVERED, out -> {
+            out.writeUTF(token);
+            out.writeLong(operationId);
+            out.writeLong(Money.toMinor(money));
+        }));
+    }
+
+    /**
+     * Transfers money from a logged-in account if the balance of the source on the server covers it.
+     *
+     * @param from The account to transfer money from
+     * @param to The account to transfer money to
+     * @param money The amount of money to transfer
+     * @return true if the money was transferred, false if the balance did not cover it
+     */
+    @Override
+    public boolean transferIfCovered(Account from, Account to, double money) {
+        String accountNum = from.getAccountNum();
+        String token = tokenOf(accountNum);
+        long operationId = nextOperationId.incrementAndGet();
+        return covered(accountNum, callWithRetries(TransactionProtocol.TRANSFER_COVERED, out -> {
+            out.writeUTF(token);
+            out.writeUTF(to.getAccountNum());
+            out.writeLong(operationId);
+            out.writeLong(Money.toMinor(money));
+        }));
+    }
+
+    /**
+     * Reads the response to a covered withdrawal or transfer and stores the new balance.
+     *
+     * @param accountNum The account operated on
+     * @param in The response, positioned at the status byte
+     * @return true if the operation was applied, false if the balance did not cover it
+     * @throws IllegalStateException With the message of the server if the operation failed otherwise
+     */
+    private boolean covered(String accountNum, DataInputStream in) {
+        try {
+            byte status = in.readByte();
+            if (status == TransactionProtocol.INSUFFICIENT_FUNDS) {
+                return false;
+            }
+            if (status != TransactionProtocol.OK) {
+                throw new IllegalStateException(in.readUTF());
+            }
+            update(accountNum, in.readLong());
+            return true;
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed response from the transaction server", e);
+        }
+    }
+
+    /**
+     * Inquires about an account on the server. The balance is only filled in for a logged-in account.
+     *
+     * @param accountNum The account number to inquire about
+     * @return The handle of the account if found, otherwise null
+     */
+    @Override
+    public Account inquire(String accountNum) {
+        String token = tokens.getOrDefault(accountNum, "");
+        DataInputStream in = call(TransactionProtocol.INQUIRE, out -> {
+            out.writeUTF(token);
+            out.writeUTF(accountNum);
+        });
+        try {
+            byte status = in.readByte();
+            if (status == TransactionProtocol.UNKNOWN_ACCOUNT) {
+                return null;
+            }
+            if (status != TransactionProtocol.OK) {
+                throw new IllegalStateException(in.readUTF());
+            }
+            boolean own = in.readBoolean();
+            Account account = handleOf(accountNum, in.readUTF());
+            long balance = in.readLong();
+            if (own) {
+                account.setBalanceMinor(balance);
+            }
+            return account;
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed response from the transaction server", e);
+        }
+    }
+
+    /**
+     * Checks on the server that an account exists.
+     *
+     * @param accountNum The account number
+     * @return The handle of the account if found, otherwise null
+     */
+    @Override
+    public Account find(String accountNum) {
+        return inquire(accountNum);
+    }
+
+    /**
+     * Logs in on the server and registers the session locally under the token the server issued.
+     *
+     * @param accountNum The account number
+     * @param pin The PIN
+     * @return The new session, or null if the account is unknown or the PIN does not match
+     */
+    @Override
+    public Session login(String accountNum, String pin) {
+        DataInputStream in = call(TransactionProtocol.LOGIN, out -> {
+            out.writeUTF(accountNum);
+            out.writeUTF(pin);
+        });
+        try {
+            byte status = in.readByte();
+            if (status == TransactionProtocol.UNAUTHORIZED) {
+                return null;
+            }
+            if (status != TransactionProtocol.OK) {
+                throw new IllegalStateException(in.readUTF());
+            }
+            String token = in.readUTF();
+            Account account = handleOf(accountNum, in.readUTF());
+            account.setBalanceMinor(in.readLong());
+            tokens.put(accountNum, token);
+            return AuthenticationService.getInstance().register(token, account);
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed response from the transaction server", e);
+        }
+    }
+
+    /**
+     * Ends a session locally and on the server, without waiting for the server.
+     *
+     * @param session The session, ignored if null
+     */
+    @Override
+    public void logout(Session session) {
+        if (session == null) {
+            return;
+        }
+        AuthenticationService.getInstance().logout(session);
+        tokens.remove(session.getAccountNum(), session.getToken());
+        try {
+            send(TransactionProtocol.LOGOUT, out -> out.writeUTF(session.getToken()));
+        } catch (IllegalStateException e) {
+            // The session expires on the server by itself
+        }
+    }
+
+    /**
+     * Retrieves the token of the latest login to an account.
+     *
+     * @param accountNum The account number
+     * @return The token
+     * @throws IllegalStateException If the account is not logged in through this strategy
+     */
+    private String tokenOf(String accountNum) {
+        String token = tokens.get(accountNum);
+        if (token == null) {
+            throw new IllegalStateException("Account " + accountNum + " is not logged in");
+        }
+        return token;
+    }
+
+    /**
+     * Retrieves the handle of an account, creating it on first use.
+     *
+     * @param accountNum The account number
+     * @param username The username reported by the server, empty if not disclosed
+     * @return The handle
+     */
+    private Account handleOf(String accountNum, String username) {
+        Account account = accounts.computeIfAbsent(accountNum, key -> new Account(key, "", username, 0));
+        if (!username.isEmpty()) {
+            account.setUsername(username);
+        }
+        return account;
+    }
+
+    /**
+     * Stores the balance the server reported for an account in its handle.
+     *
+     * @param accountNum The account number
+     * @param balanceMinor The balance in minor units
+     */
+    private void update(String accountNum, long balanceMinor) {
+        Account account = accounts.get(accountNum);
+        if (account != null) {
+            account.setBalanceMinor(balanceMinor);
+        }
+    }
+
+    /**
+     * Sends a request carrying an operation id and waits for its outcome. The request is sent again when no
+     * response arrives, and, with a growing pause, while the server answers that the first request with that id
+     * is still running. The fields must write the same operation id every time, so the server applies it at
+     * most once.
+     *
+     * @param op The operation
+     * @param fields Writes the fields of the request
+     * @return The response, positioned at the status byte
+     * @throws IllegalStateException If the server cannot be reached or does not answer in time after the retries,
+     *                               or the operation is still running after atm.server.timeoutMillis of asking again
+     */
+    private DataInputStream callWithRetries(byte op, Fields fields) {
+        int attempt = 0;
+        long backoffMillis = 10;
+        long waitingSince = 0; // Value of System.nanoTime() at the first IN_PROGRESS answer, 0 before
+        while (true) {
+            DataInputStream in;
+            try {
+                in = call(op, fields);
+            } catch (IllegalStateException e) {
+                if (attempt++ >= RETRIES || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                continue;
+            }
+            try {
+                in.mark(1);
+                if (in.readByte() != TransactionProtocol.IN_PROGRESS) {
+                    in.reset();
+                    return in;
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Malformed response from the transaction server", e);
+            }
+            long now = System.nanoTime();
+            if (waitingSince == 0) {
+                waitingSince = now;
+            } else if (now - waitingSince > TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS)) {
+                throw new IllegalStateException("The transaction server is still applying the operation after " + TIMEOUT_MILLIS + " ms");
+            }
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the transaction server");
+            }
+            backoffMillis = Math.min(backoffMillis * 2, 1000);
+        }
+    }
+
+    /**
+     * Sends a request and waits for its response.
+     *
+     * @param op The operation
+     * @param fields Writes the fields of the request
+     * @return The response, positioned at the status byte
+     * @throws IllegalStateException If the server cannot be reached or does not answer in time
+     */
+    private DataInputStream call(byte op, Fields fields) {
+        CompletableFuture<DataInputStream> response = send(op, fields);
+        try {
+            return response.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Lost the connection to the transaction server", e.getCause());
+        } catch (TimeoutException e) {
+            // Cancelling removes the call from the pending calls of its connection
+            response.cancel(false);
+            throw new IllegalStateException("No response from the transaction server within " + TIMEOUT_MILLIS + " ms");
+        } catch (InterruptedException e) {
+            response.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the transaction server");
+        }
+    }
+
+    /**
+     * Sends a request without waiting for its response.
+     *
+     * @param op The operation
+     * @param fields Writes the fields of the request
+     * @return A future completed with the response, positioned at the status byte
+     * @throws IllegalStateException If the server cannot be reached
+     */
+    private CompletableFuture<DataInputStream> send(byte op, Fields fields) {
+        int id = nextRequestId.incrementAndGet();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(body);
+        try {
+            out.writeInt(id);
+            out.writeByte(op);
+            fields.write(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot encode request", e);
+        }
+        Connection current = connection();
+        CompletableFuture<DataInputStream> response = new CompletableFuture<>();
+        current.pending.put(id, response);
+        // A call that completes other than by its response, such as by being cancelled, leaves no entry behind
+        response.whenComplete((result, error) -> current.pending.remove(id, response));
+        current.send(body);
+        return response;
+    }
+
+    /**
+     * Checks that a response reports success.
+     *
+     * @param in The response, positioned at the status byte
+     * @return The response, positioned at the fields
+     * @throws IllegalStateException With the message of the server if the operation failed
+     */
+    private static DataInputStream ok(DataInputStream in) {
+        try {
+            if (in.readByte() != TransactionProtocol.OK) {
+                throw new IllegalStateException(in.readUTF());
+            }
+            return in;
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed response from the transaction server", e);
+        }
+    }
+
+    /**
+     * Reads a balance from a response.
+     *
+     * @param in The response, positioned at the balance
+     * @return The balance in minor units
+     */
+    private static long readLong(DataInputStream in) {
+        try {
+            return in.readLong();
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed response from the transaction server", e);
+        }
+    }
+
+    /**
+     * Retrieves the open connection, opening a new one if there is none or it broke.
+     *
+     * @return The connection
+     * @throws IllegalStateException If the server cannot be reached
+     */
+    private synchronized Connection connection() {
+        if (connection == null || connection.broken) {
+            try {
+                connection = new Connection();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot reach the transaction server at " + host + ":" + port, e);
+            }
+        }
+        return connection;
+    }
+
+    /**
+     * Closes the connection. Calls waiting on it fail.
+     */
+    @Override
+    public synchronized void close() {
+        if (connection != null) {
+            connection.fail(new IOException("Strategy closed"));
+            connection = null;
+        }
+    }
+
+    /**
+     * A connection to the server with the calls waiting on it.
+     */
+    private final class Connection {
+        private final Socket socket; // Connection to the server
+        private final DataOutputStream out; // Request frames, guarded by itself
+        private final Map<Integer, CompletableFuture<DataInputStream>> pending = new ConcurrentHashMap<>(); // Calls by request id
+        private volatile boolean broken;
+
+        /**
+         * Connects to the server and starts reading responses.
+         *
+         * @throws IOException If the server cannot be reached
+         */
+        Connection() throws IOException {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), (int) TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            Thread reader = new Thread(this::readLoop, "remote-strategy-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        /**
+         * Writes a request frame.
+         *
+         * @param body The body of the frame
+         */
+        void send(ByteArrayOutputStream body) {
+            try {
+                synchronized (out) {
+                    TransactionProtocol.writeFrame(out, body);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Completes the waiting calls with their responses until the connection breaks.
+         */
+        private void readLoop() {
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+                while (true) {
+                    int length = in.readInt();
+                    if (length < Integer.BYTES + 1 || length > TransactionProtocol.MAX_FRAME) {
+                        throw new IOException("Bad frame length " + length);
+                    }
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    DataInputStream response = new DataInputStream(new ByteArrayInputStream(body));
+                    CompletableFuture<DataInputStream> call = pending.remove(response.readInt());
+                    if (call != null) {
+                        call.complete(response);
+                    }
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Marks the connection as broken, closes it and fails the waiting calls.
+         *
+         * @param cause The reason
+         */
+        void fail(IOException cause) {
+            broken = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            for (Integer id : pending.keySet()) {
+                CompletableFuture<DataInputStream> call = pending.remove(id);
+                if (call != null) {
+                    call.completeExceptionally(cause);
+                }
+            }
+        }
+    }
+}
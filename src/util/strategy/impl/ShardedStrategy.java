@@ -0,0 +1,318 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy.impl;
+
+import pojo.Account;
+import util.Money;
+import util.auth.AuthenticationService;
+import util.auth.Session;
+import util.log.TransactionRecord;
+import util.shard.Shard;
+import util.shard.ShardSet;
+import util.strategy.AccountCommand;
+import util.strategy.AccountOperationStrategy;
+import util.strategy.OperationResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An implementation of AccountOperationStrategy over the accounts of a {@link ShardSet} instead of the
+ * {@link util.Data} singleton.
+ * <p>
+ * Deposits, withdrawals and transfers within one shard lock only that shard and are written ahead to its own
+ * log while it is locked, so operations on different shards run in parallel and their log writes are forced
+ * independently.
+ * Transfers between shards are handed to the {@link util.shard.CrossShardCoordinator}, which commits them
+ * on both shards with a two-phase protocol. Inquiries take no lock. Logins, lookups and batches resolve their
+ * accounts in the shards too, never in the Data singleton.
+ */
+public class ShardedStrategy implements AccountOperationStrategy {
+    private final ShardSet shards; // Accounts the operations apply to
+
+    /**
+     * Creates a strategy over the shared shard set.
+     */
+    public ShardedStrategy() {
+        this(ShardSet.getInstance());
+    }
+
+    /**
+     * Creates a strategy over the given shards.
+     *
+     * @param shards The shards holding the accounts
+     */
+    public ShardedStrategy(ShardSet shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Retrieves the shards the operations apply to.
+     *
+     * @return The shards
+     */
+    public ShardSet getShards() {
+        return shards;
+    }
+
+    /**
+     * Deposits a specified amount of money into the account with the given account number.
+     * Only the shard of that account is locked.
+     *
+     * @param accountNum The account number to deposit money into
+     * @param money The amount of money to deposit
+     */
+    @Override
+    public void deposit(String accountNum, double money) {
+        Shard shard = shards.shardOf(accountNum);
+        Account account = shard.get(accountNum);
+        if (account != null) {
+            long amount = Money.toMinor(money);
+            long seq;
+            synchronized (shard.getLock()) {
+                seq = shard.getData().journal(TransactionRecord.Type.DEPOSIT, accountNum, null, amount);
+                account.setBalanceMinor(account.getBalanceMinor() + amount);
+            }
+            shard.getData().commit(seq, accountNum, null);
+        }
+    }
+
+    /**
+     * Withdraws a specified amount of money from the account with the given account number.
+     * Only the shard of that account is locked.
+     *
+     * @param accountNum The account number to withdraw money from
+     * @param money The amount of money to withdraw
+     */
+    @Override
+    public void withdraw(String accountNum, double money) {
+        Shard shard = shards.shardOf(accountNum);
+        Account account = shard.get(accountNum);
+        if (account != null) {
+            withdraw(shard, account, money, false);
+        }
+    }
+
+    /**
+     * Withdraws from an account resolved earlier if its balance covers the amount, checking it under the
+     * lock of its shard.
+     *
+     * @param account The account to withdraw money from
+     * @param money The amount of money to withdraw
+     * @return true if the money was withdrawn, false if the balance did not cover it
+     */
+    @Override
+    public boolean withdrawIfCovered(Account account, double money) {
+        return withdraw(shards.shardOf(account.getAccountNum()), account, money, true);
+    }
+
+    /**
+     * Withdraws from a resolved account under the lock of its shard.
+     *
+     * @param shard The shard holding the account
+     * @param account The account to withdraw money from
+     * @param money The amount of money to withdraw
+     * @param requireFunds Whether to skip the withdraw if the balance does not cover it
+     * @return true if the money was withdrawn
+     */
+    private static boolean withdraw(Shard shard, Account account, double money, boolean requireFunds) {
+        String accountNum = account.getAccountNum();
+        long amount = Money.toMinor(money);
+        long seq;
+        synchronized (shard.getLock()) {
+            if (requireFunds && account.getBalanceMinor() < amount) {
+                return false;
+            }
+            seq = shard.getData().journal(TransactionRecord.Type.WITHDRAW, accountNum, null, amount);
+            account.setBalanceMinor(account.getBalanceMinor() - amount);
+        }
+        shard.getData().commit(seq, accountNum, null);
+        return true;
+    }
+
+    /**
+     * Transfers a specified amount of money from one account to another.
+     * Within one shard, the shard is locked and the transfer logged as one record; across shards, the
+     * transfer is committed on both with the two-phase protocol of the coordinator.
+     *
+     * @param from The account number to transfer money from
+     * @param to The account number to transfer money to
+     * @param money The amount of money to transfer
+     */
+    @Override
+    public void transfer(String from, String to, double money) {
+        Shard fromShard = shards.shardOf(from);
+        Shard toShard = shards.shardOf(to);
+        Account fromAccount = fromShard.get(from);
+        Account toAccount = toShard.get(to);
+        if (fromAccount != null && toAccount != null) {
+            transfer(fromShard, fromAccount, toShard, toAccount, money, false);
+        }
+    }
+
+    /**
+     * Transfers between accounts resolved earlier if the balance of the source covers the amount, checking it
+     * under the lock of its shard, or as the vote of the source shard for a transfer between shards.
+     *
+     * @param fromAccount The account to transfer money from
+     * @param toAccount The account to transfer money to
+     * @param money The amount of money to transfer
+     * @return true if the money was transferred, false if the balance did not cover it
+     */
+    @Override
+    public boolean transferIfCovered(Account fromAccount, Account toAccount, double money) {
+        return transfer(shards.shardOf(fromAccount.getAccountNum()), fromAccount,
+                shards.shardOf(toAccount.getAccountNum()), toAccount, money, true);
+    }
+
+    /**
+     * Transfers between resolved accounts, within one shard under its lock or across shards through the coordinator.
+     *
+     * @param fromShard The shard holding the source account
+     * @param fromAccount The account to transfer money from
+     * @param toShard The shard holding the destination account
+     * @param toAccount The account to transfer money to
+     * @param money The amount of money to transfer
+     * @param requireFunds Whether to skip the transfer if the balance of the source does not cover it
+     * @return true if the money was transferred
+     */
+    private boolean transfer(Shard fromShard, Account fromAccount, Shard toShard, Account toAccount, double money,
+                             boolean requireFunds) {
+        if (fromShard != toShard) {
+            return shards.getCoordinator().transfer(fromShard, fromAccount, toShard, toAccount, money, requireFunds);
+        }
+        String from = fromAccount.getAccountNum();
+        String to = toAccount.getAccountNum();
+        long amount = Money.toMinor(money);
+        long seq;
+        synchronized (fromShard.getLock()) {
+            if (requireFunds && fromAccount.getBalanceMinor() < amount) {
+                return false;
+            }
+            seq = fromShard.getData().journal(TransactionRecord.Type.TRANSFER, from, to, amount);
+            fromAccount.setBalanceMinor(fromAccount.getBalanceMinor() - amount);
+            toAccount.setBalanceMinor(toAccount.getBalanceMinor() + amount);
+        }
+        fromShard.getData().commit(seq, from, to);
+        return true;
+    }
+
+    /**
+     * Inquires about the details of an account with the given account number.
+     * No shard is locked, the balance is volatile so the latest committed value is seen.
+     *
+     * @param accountNum The account number to inquire about
+     * @return The Account object if found, otherwise null
+     */
+    @Override
+    public Account inquire(String accountNum) {
+        return shards.getAccount(accountNum);
+    }
+
+    /**
+     * Resolves an account in its shard.
+     *
+     * @param accountNum The account number
+     * @return The Account object if found, otherwise null
+     */
+    @Override
+    public Account find(String accountNum) {
+        return shards.getAccount(accountNum);
+    }
+
+    /**
+     * Verifies an account number and PIN against the account in its shard and opens a session bound to it.
+     *
+     * @param accountNum The account number
+     * @param pin The PIN
+     * @return The new session, or null if the account is unknown or the PIN does not match
+     */
+    @Override
+    public Session login(String accountNum, String pin) {
+        return AuthenticationService.getInstance().authenticate(accountNum, pin, shards::getAccount);
+    }
+
+    /**
+     * Applies a batch of commands, grouped by account and shard. The commands that stay within one shard are
+     * planned together; each shard is then locked in turn, in ascending index order, while its valid commands
+     * are written ahead to its log together and each of its accounts is settled in submission order and
+     * written once. Transfers between shards go through the coordinator afterwards, one at a time, so the
+     * balances reported for an account they touch follow its commands within the shard. The batch is atomic
+     * per shard, not across shards.
+     *
+     * @param commands The commands to apply
+     * @return The result of each command, in the same order
+     */
+    @Override
+    public List<OperationResult> applyBatch(List<AccountCommand> commands) {
+        List<AccountCommand> local = new ArrayList<>(commands.size());
+        List<Integer> localIndexes = new ArrayList<>(commands.size()); // Index in commands of each local command
+        List<Integer> crossIndexes = new ArrayList<>(); // Index in commands of each transfer between shards
+        for (int i = 0; i < commands.size(); i++) {
+            AccountCommand command = commands.get(i);
+            if (command.getType() == AccountCommand.Type.TRANSFER
+                    && shards.shardOf(command.getAccountNum()) != shards.shardOf(command.getToAccountNum())) {
+                crossIndexes.add(i);
+            } else {
+                local.add(command);
+                localIndexes.add(i);
+            }
+        }
+
+        OperationResult[] results = new OperationResult[commands.size()];
+        if (!local.isEmpty()) {
+            BatchPlan plan = new BatchPlan(local, shards::getAccount);
+            TreeMap<Integer, List<BatchPlan.AccountGroup>> groupsByShard = new TreeMap<>();
+            for (BatchPlan.AccountGroup group : plan.groups()) {
+                groupsByShard.computeIfAbsent(shards.shardOf(group.getAccountNum()).getIndex(), index -> new ArrayList<>()).add(group);
+            }
+            Map<Integer, List<TransactionRecord>> recordsByShard = new HashMap<>();
+            for (TransactionRecord record : plan.journalRecords()) {
+                recordsByShard.computeIfAbsent(shards.shardOf(record.getFrom()).getIndex(), index -> new ArrayList<>()).add(record);
+            }
+            for (Map.Entry<Integer, List<BatchPlan.AccountGroup>> entry : groupsByShard.entrySet()) {
+                Shard shard = shards.getShard(entry.getKey());
+                List<TransactionRecord> records = recordsByShard.getOrDefault(entry.getKey(), Collections.emptyList());
+                long seq;
+                synchronized (shard.getLock()) {
+                    seq = shard.getData().journalAll(records);
+                    for (BatchPlan.AccountGroup group : entry.getValue()) {
+                        plan.apply(group);
+                    }
+                }
+                shard.getData().commitAll(seq, records);
+            }
+            List<OperationResult> localResults = plan.results();
+            for (int i = 0; i < localResults.size(); i++) {
+                results[localIndexes.get(i)] = localResults.get(i);
+            }
+        }
+
+        for (int i : crossIndexes) {
+            AccountCommand command = commands.get(i);
+            OperationResult invalid = AccountCommand.checkAmount(command.getMoney());
+            Account fromAccount = invalid == null ? shards.getAccount(command.getAccountNum()) : null;
+            Account toAccount = fromAccount != null ? shards.getAccount(command.getToAccountNum()) : null;
+            if (invalid != null) {
+                results[i] = invalid;
+            } else if (fromAccount == null) {
+                results[i] = OperationResult.unknownAccount(command.getAccountNum());
+            } else if (toAccount == null) {
+                results[i] = OperationResult.unknownAccount(command.getToAccountNum());
+            } else {
+                shards.getCoordinator().transfer(shards.shardOf(command.getAccountNum()), fromAccount,
+                        shards.shardOf(command.getToAccountNum()), toAccount, command.getMoney(), false);
+                results[i] = OperationResult.ok(fromAccount.getBalanceMinor());
+            }
+        }
+        return Arrays.asList(results);
+    }
+}
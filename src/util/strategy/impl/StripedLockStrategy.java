@@ -0,0 +1,328 @@
+/**
+ * @author Group10: Qi Xiao, Jiashuo Chang and Yaxin Huang
+ * @version 1.0
+ * @date 2024/6/16
+ */
+package util.strategy.impl;
+
+import pojo.Account;
+import util.Data;
+import util.Money;
+import util.log.TransactionRecord;
+import util.strategy.AccountCommand;
+import util.strategy.AccountOperationStrategy;
+import util.strategy.OperationResult;
+
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * An implementation of AccountOperationStrategy that guards accounts with a fixed set of
+ * lock stripes chosen by account number, so operations on unrelated accounts run in parallel.
+ * Transfers take both stripes in ascending stripe order, which rules out deadlocks.
+ * Operations are written ahead to the transaction log while their stripes are held.
+ * Inquiries take no lock at all.
+ */
+public class StripedLockStrategy implements AccountOperationStrategy {
+    private final Object[] stripes; // Lock objects, one per stripe
+    private final int mask; // Stripe count minus one, the stripe count is a power of two
+
+    /**
+     * Creates a strategy with four stripes per available processor.
+     */
+    public StripedLockStrategy() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Creates a strategy with at least the given number of stripes.
+     * The count is rounded up to the next power of two.
+     *
+     * @param stripeCount The minimum number of lock stripes
+     */
+    public StripedLockStrategy(int stripeCount) {
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + stripeCount);
+        }
+        int size = Integer.highestOneBit(stripeCount);
+        if (size < stripeCount) {
+            size <<= 1;
+        }
+        stripes = new Object[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Object();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Retrieves an account by its account number.
+     *
+     * @param accountNum The account number to search for
+     * @return The Account object if found, otherwise null
+     */
+    private Account getAccountByAccountNum(String accountNum) {
+        return Data.getInstance().getAccountByAccountNum(accountNum);
+    }
+
+    /**
+     * Maps an account number to the index of the stripe guarding it.
+     *
+     * @param accountNum The account number
+     * @return The stripe index
+     */
+    private int stripeIndex(String accountNum) {
+        int h = accountNum.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Deposits a specified amount of money into the account with the given account number.
+     * Only the stripe of that account is locked.
+     *
+     * @param accountNum The account number to deposit money into
+     * @param money The amount of money to deposit
+     */
+    @Override
+    public void deposit(String accountNum, double money) {
+        Account account = getAccountByAccountNum(accountNum);
+        if (account != null) {
+            deposit(account, money);
+        }
+    }
+
+    /**
+     * Deposits a specified amount of money into an account resolved earlier, such as the account of a session.
+     * Only the stripe of that account is locked.
+     *
+     * @param account The account to deposit money into
+     * @param money The amount of money to deposit
+     */
+    @Override
+    public void deposit(Account account, double money) {
+        String accountNum = account.getAccountNum();
+        long amount = Money.toMinor(money);
+        Data data = Data.getInstance();
+        long seq;
+        synchronized (stripes[stripeIndex(accountNum)]) {
+            seq = data.journal(TransactionRecord.Type.DEPOSIT, accountNum, null, amount);
+            account.setBalanceMinor(account.getBalanceMinor() + amount);
+        }
+        data.commit(seq, accountNum, null);
+    }
+
+    /**
+     * Withdraws a specified amount of money from the account with the given account number.
+     * Only the stripe of that account is locked.
+     *
+     * @param accountNum The account number to withdraw money from
+     * @param money The amount of money to withdraw
+     */
+    @Override
+    public void withdraw(String accountNum, double money) {
+        Account account = getAccountByAccountNum(accountNum);
+        if (account != null) {
+            withdraw(account, money);
+        }
+    }
+
+    /**
+     * Withdraws a specified amount of money from an account resolved earlier, such as the account of a session.
+     * Only the stripe of that account is locked.
+     *
+     * @param account The account to withdraw money from
+     * @param money The amount of money to withdraw
+     */
+    @Override
+    public void withdraw(Account account, double money) {
+        withdraw(account, money, false);
+    }
+
+    /**
+     * Withdraws from a resolved account if its balance covers the amount, checking it under the stripe lock.
+     *
+     * @param account The account to withdraw money from
+     * @param money The amount of money to withdraw
+     * @return true if the money was withdrawn, false if the balance did not cover it
+     */
+    @Override
+    public boolean withdrawIfCovered(Account account, double money) {
+        return withdraw(account, money, true);
+    }
+
+    /**
+     * Withdraws from a resolved account under the lock of its stripe.
+     *
+     * @param account The account to withdraw money from
+     * @param money The amount of money to withdraw
+     * @param requireFunds Whether to skip the withdraw if the balance does not cover it
+     * @return true if the money was withdrawn
+     */
+    private boolean withdraw(Account account, double money, boolean requireFunds) {
+        String accountNum = account.getAccountNum();
+        long amount = Money.toMinor(money);
+        Data data = Data.getInstance();
+        long seq;
+        synchronized (stripes[stripeIndex(accountNum)]) {
+            if (requireFunds && account.getBalanceMinor() < amount) {
+                return false;
+            }
+            seq = data.journal(TransactionRecord.Type.WITHDRAW, accountNum, null, amount);
+            account.setBalanceMinor(account.getBalanceMinor() - amount);
+        }
+        data.commit(seq, accountNum, null);
+        return true;
+    }
+
+    /**
+     * Transfers a specified amount of money from one account to another.
+     * The stripes of both accounts are locked in ascending index order.
+     *
+     * @param from The account number to transfer money from
+     * @param to The account number to transfer money to
+     * @param money The amount of money to transfer
+     */
+    @Override
+    public void transfer(String from, String to, double money) {
+        Account fromAccount = getAccountByAccountNum(from);
+        Account toAccount = getAccountByAccountNum(to);
+        if (fromAccount != null && toAccount != null) {
+            transfer(fromAccount, toAccount, money);
+        }
+    }
+
+    /**
+     * Transfers a specified amount of money between accounts resolved earlier.
+     * The stripes of both accounts are locked in ascending index order.
+     *
+     * @param fromAccount The account to transfer money from
+     * @param toAccount The account to transfer money to
+     * @param money The amount of money to transfer
+     */
+    @Override
+    public void transfer(Account fromAccount, Account toAccount, double money) {
+        transfer(fromAccount, toAccount, money, false);
+    }
+
+    /**
+     * Transfers between resolved accounts if the balance of the source covers the amount, checking it while
+     * both stripes are locked.
+     *
+     * @param fromAccount The account to transfer money from
+     * @param toAccount The account to transfer money to
+     * @param money The amount of money to transfer
+     * @return true if the money was transferred, false if the balance did not cover it
+     */
+    @Override
+    public boolean transferIfCovered(Account fromAccount, Account toAccount, double money) {
+        return transfer(fromAccount, toAccount, money, true);
+    }
+
+    /**
+     * Transfers between resolved accounts with the stripes of both locked in ascending index order.
+     *
+     * @param fromAccount The account to transfer money from
+     * @param toAccount The account to transfer money to
+     * @param money The amount of money to transfer
+     * @param requireFunds Whether to skip the transfer if the balance of the source does not cover it
+     * @return true if the money was transferred
+     */
+    private boolean transfer(Account fromAccount, Account toAccount, double money, boolean requireFunds) {
+        String from = fromAccount.getAccountNum();
+        String to = toAccount.getAccountNum();
+        long amount = Money.toMinor(money);
+        Data data = Data.getInstance();
+        long seq;
+        int fromStripe = stripeIndex(from);
+        int toStripe = stripeIndex(to);
+        if (fromStripe == toStripe) {
+            synchronized (stripes[fromStripe]) {
+                if (requireFunds && fromAccount.getBalanceMinor() < amount) {
+                    return false;
+                }
+                seq = data.journal(TransactionRecord.Type.TRANSFER, from, to, amount);
+                fromAccount.setBalanceMinor(fromAccount.getBalanceMinor() - amount);
+                toAccount.setBalanceMinor(toAccount.getBalanceMinor() + amount);
+            }
+        } else {
+            // Always lock the lower stripe first so two opposite transfers cannot deadlock
+            Object first = stripes[Math.min(fromStripe, toStripe)];
+            Object second = stripes[Math.max(fromStripe, toStripe)];
+            synchronized (first) {
+                synchronized (second) {
+                    if (requireFunds && fromAccount.getBalanceMinor() < amount) {
+                        return false;
+                    }
+                    seq = data.journal(TransactionRecord.Type.TRANSFER, from, to, amount);
+                    fromAccount.setBalanceMinor(fromAccount.getBalanceMinor() - amount);
+                    toAccount.setBalanceMinor(toAccount.getBalanceMinor() + amount);
+                }
+            }
+        }
+        data.commit(seq, from, to);
+        return true;
+    }
+
+    /**
+     * Inquires about the details of an account with the given account number.
+     * No stripe is locked, the balance is volatile so the latest committed value is seen.
+     *
+     * @param accountNum The account number to inquire about
+     * @return The Account object if found, otherwise null
+     */
+    @Override
+    public Account inquire(String accountNum) {
+        return getAccountByAccountNum(accountNum);
+    }
+
+    /**
+     * Applies a batch of commands, grouped by account. The stripes of all accounts in the batch are locked
+     * in ascending index order and held for the whole batch, so both sides of every transfer change together
+     * and no other operation sees the batch half applied. While they are held all valid commands are journaled
+     * together, then each account's commands are settled in submission order and its net change is written once.
+     *
+     * @param commands The commands to apply
+     * @return The result of each command, in the same order
+     */
+    @Override
+    public List<OperationResult> applyBatch(List<AccountCommand> commands) {
+        BatchPlan plan = new BatchPlan(commands, this::getAccountByAccountNum);
+        List<TransactionRecord> records = plan.journalRecords();
+        TreeSet<Integer> touched = new TreeSet<>();
+        for (BatchPlan.AccountGroup group : plan.groups()) {
+            touched.add(stripeIndex(group.getAccountNum()));
+        }
+        int[] order = new int[touched.size()];
+        int i = 0;
+        for (int stripe : touched) {
+            order[i++] = stripe;
+        }
+        Data data = Data.getInstance();
+        long seq = applyLocked(plan, records, data, order, 0);
+        data.commitAll(seq, records);
+        return plan.results();
+    }
+
+    /**
+     * Locks the remaining stripes of a batch one inside the other, then journals and applies the batch.
+     *
+     * @param plan The batch
+     * @param records The journal records of the batch
+     * @param data The Data object logging the batch
+     * @param order The stripes to lock, in ascending order
+     * @param next The position in order of the next stripe to lock
+     * @return The sequence number of the last record
+     */
+    private long applyLocked(BatchPlan plan, List<TransactionRecord> records, Data data, int[] order, int next) {
+        if (next < order.length) {
+            synchronized (stripes[order[next]]) {
+                return applyLocked(plan, records, data, order, next + 1);
+            }
+        }
+        long seq = data.journalAll(records);
+        for (BatchPlan.AccountGroup group : plan.groups()) {
+            plan.apply(group);
+        }
+        return seq;
+    }
+}